@@ -0,0 +1,63 @@
+package tech.octopusdragon.dice.batch;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Counts faces for as many states at once as the CPU's vector registers hold.
+ * Each lane holds one state: a die is shifted out of every lane together,
+ * compared against each face and added to that face's counts. The states left
+ * over at the end of a block are counted one at a time.
+ * <p>
+ * This class needs the {@code jdk.incubator.vector} module, so it is kept in
+ * its own source root and compiled apart from the rest, into the same output
+ * and with the module added:
+ * <pre>
+ * javac --add-modules jdk.incubator.vector -cp classes -d classes \
+ *     src-vector/tech/octopusdragon/dice/batch/VectorFaceCounter.java
+ * </pre>
+ * javac warns that the module is incubating. {@link BatchScorer} only loads
+ * this class when it has been compiled and the module is present.
+ * @author Alex Gill
+ *
+ */
+class VectorFaceCounter implements FaceCounter {
+
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+
+	@Override
+	public void count(int[] states, int from, int length, int numDice, int[][] faceCounts, int[] totals) {
+		int numSides = faceCounts.length - 1;
+		int vectorLength = SPECIES.loopBound(length);
+
+		for (int face = 1; face <= numSides; face++)
+			Arrays.fill(faceCounts[face], 0, vectorLength, 0);
+
+		for (int i = 0; i < vectorLength; i += SPECIES.length()) {
+			IntVector state = IntVector.fromArray(SPECIES, states, from + i);
+			IntVector total = IntVector.zero(SPECIES);
+
+			// Take each die out of every lane, total them and count its face
+			for (int die = 0; die < numDice; die++) {
+				IntVector value = state.lanewise(VectorOperators.LSHR, die * PackedDice.BITS_PER_DIE)
+						.and(PackedDice.DIE_MASK);
+				total = total.add(value);
+				for (int face = 1; face <= numSides; face++) {
+					VectorMask<Integer> shown = value.eq(face);
+					IntVector.fromArray(SPECIES, faceCounts[face], i)
+							.add(1, shown)
+							.intoArray(faceCounts[face], i);
+				}
+			}
+			total.intoArray(totals, i);
+		}
+
+		// Count the states that do not fill a vector
+		ScalarFaceCounter.count(states, from, vectorLength, length, numDice, faceCounts, totals);
+	}
+}
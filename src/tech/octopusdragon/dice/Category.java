@@ -1,88 +1,129 @@
 package tech.octopusdragon.dice;
 
 /**
- * A scoring category which a player can use to get points in a dice game.
+ * A scoring category which a player can use to get points in a dice game. The
+ * categories of the standard variants are constants of this class; other
+ * categories can be created with a scoring function, usually one built with
+ * {@link Scorers}.
  * @author Alex Gill
  *
  */
-public enum Category {
+public final class Category {
 	
-	ONES(	"Ones",
+	public static final Category ONES = new Category(
+			"Ones",
 			"Any combination",
-			"The sum of dice with the 1 face"),
+			"The sum of dice with the 1 face",
+			Scorers.count(1));
 	
-	TWOS(	"Twos",
+	public static final Category TWOS = new Category(
+			"Twos",
 			"Any combination",
-			"The sum of dice with the 2 face"),
+			"The sum of dice with the 2 face",
+			Scorers.count(2));
 	
-	THREES(	"Threes",
+	public static final Category THREES = new Category(
+			"Threes",
 			"Any combination",
-			"The sum of dice with the 3 face"),
+			"The sum of dice with the 3 face",
+			Scorers.count(3));
 	
-	FOURS(	"Fours",
+	public static final Category FOURS = new Category(
+			"Fours",
 			"Any combination",
-			"The sum of dice with the 4 face"),
+			"The sum of dice with the 4 face",
+			Scorers.count(4));
 	
-	FIVES(	"Fives",
+	public static final Category FIVES = new Category(
+			"Fives",
 			"Any combination",
-			"The sum of dice with the 5 face"),
+			"The sum of dice with the 5 face",
+			Scorers.count(5));
 	
-	SIXES(	"Sixes",
+	public static final Category SIXES = new Category(
+			"Sixes",
 			"Any combination",
-			"The sum of dice with the 6 face"),
-	
-	FULL_HOUSE(	"Full House",
-				"Three of one same face and two of another",
-				"25"),
-	
-	FOUR_OF_A_KIND(	"Four-Of-A-Kind",
-					"At least four dice showing the same face",
-					"Sum of those four dice"),
-	
-	LITTLE_STRAIGHT("Little Straight",
-					"1-2-3-4-5",
-					"30"),
-	
-	BIG_STRAIGHT(	"Big Straight",
-					"2-3-4-5-6",
-					"30"),
-	
-	CHOICE(	"Choice",
+			"The sum of dice with the 6 face",
+			Scorers.count(6));
+	
+	public static final Category FULL_HOUSE = new Category(
+			"Full House",
+			"Three of one same face and two of another",
+			"25",
+			Scorers.when(25, Scorers.fullHouse()));
+	
+	public static final Category FOUR_OF_A_KIND = new Category(
+			"Four-Of-A-Kind",
+			"At least four dice showing the same face",
+			"Sum of those four dice",
+			Scorers.ofAKind(4));
+	
+	public static final Category LITTLE_STRAIGHT = new Category(
+			"Little Straight",
+			"1-2-3-4-5",
+			"30",
+			Scorers.when(30, Scorers.faces(1, 2, 3, 4, 5)));
+	
+	public static final Category BIG_STRAIGHT = new Category(
+			"Big Straight",
+			"2-3-4-5-6",
+			"30",
+			Scorers.when(30, Scorers.faces(2, 3, 4, 5, 6)));
+	
+	public static final Category CHOICE = new Category(
+			"Choice",
 			"Any combination",
-			"Sum of all dice"),
+			"Sum of all dice",
+			Scorers.sum());
 	
-	YACHT(	"Yacht",
+	public static final Category YACHT = new Category(
+			"Yacht",
 			"All five dice showing the same face",
-			"50"),
-
-	
-	CRAG(	"Crag",
-			"Any combination containing a pair and totalling 13",
-			"50"),
+			"50",
+			Scorers.when(50, Scorers.allSame()));
 	
-	THIRTEEN(	"Thirteen",
-				"Any combination totalling 13",
-				"26"),
 	
-	THREE_OF_A_KIND("Three-Of-A-Kind",
-					"Three dice showing the same face",
-					"25"),
-	
-	LOW_STRAIGHT(	"Low Straight",
-					"1-2-3",
-					"20"),
-	
-	HIGH_STRAIGHT(	"High Straight",
-					"4-5-6",
-					"20"),
-	
-	ODD_STRAIGHT(	"Odd Straight",
-					"1-3-5",
-					"20"),
-	
-	EVEN_STRAIGHT(	"Even Straight",
-					"2-4-6",
-					"20");
+	public static final Category CRAG = new Category(
+			"Crag",
+			"Any combination containing a pair and totalling 13",
+			"50",
+			Scorers.when(50, Scorers.and(Scorers.atLeastOfAKind(2), Scorers.total(13))));
+	
+	public static final Category THIRTEEN = new Category(
+			"Thirteen",
+			"Any combination totalling 13",
+			"26",
+			Scorers.when(26, Scorers.total(13)));
+	
+	public static final Category THREE_OF_A_KIND = new Category(
+			"Three-Of-A-Kind",
+			"Three dice showing the same face",
+			"25",
+			Scorers.when(25, Scorers.exactlyOfAKind(3)));
+	
+	public static final Category LOW_STRAIGHT = new Category(
+			"Low Straight",
+			"1-2-3",
+			"20",
+			Scorers.when(20, Scorers.faces(1, 2, 3)));
+	
+	public static final Category HIGH_STRAIGHT = new Category(
+			"High Straight",
+			"4-5-6",
+			"20",
+			Scorers.when(20, Scorers.faces(4, 5, 6)));
+	
+	public static final Category ODD_STRAIGHT = new Category(
+			"Odd Straight",
+			"1-3-5",
+			"20",
+			Scorers.when(20, Scorers.faces(1, 3, 5)));
+	
+	public static final Category EVEN_STRAIGHT = new Category(
+			"Even Straight",
+			"2-4-6",
+			"20",
+			Scorers.when(20, Scorers.faces(2, 4, 6)));
 	
 	
 	
@@ -90,6 +131,7 @@ public enum Category {
 	private final String name;			// The name of the category
 	private final String description;	// A brief description
 	private final String scoring;		// How the dice are scored
+	private final CategoryScorer scorer;	// Calculates the points
 	
 	
 	
@@ -98,11 +140,13 @@ public enum Category {
 	 * @param name the name of the category
 	 * @param description a brief description
 	 * @param score how the dice are scored
+	 * @param scorer calculates the points
 	 */
-	private Category(String name, String description, String score) {
+	public Category(String name, String description, String score, CategoryScorer scorer) {
 		this.name = name;
 		this.description = description;
 		this.scoring = score;
+		this.scorer = scorer;
 	}
 	
 	
@@ -141,197 +185,43 @@ public enum Category {
 	 * @return The number of points
 	 */
 	public int score(Die[] dice) {
-		int score = 0; 
-		
-		switch (this) {
-		
-			case ONES:
-				score = numDiceWithValue(dice, 1) * 1;
-				break;
-				
-				
-			case TWOS:
-				score = numDiceWithValue(dice, 2) * 2;
-				break;
-				
-				
-			case THREES:
-				score = numDiceWithValue(dice, 3) * 3;
-				break;
-				
-				
-			case FOURS:
-				score = numDiceWithValue(dice, 4) * 4;
-				break;
-				
-				
-			case FIVES:
-				score = numDiceWithValue(dice, 5) * 5;
-				break;
-				
-				
-			case SIXES:
-				score = numDiceWithValue(dice, 6) * 6;
-				break;
-				
-				
-			case FULL_HOUSE:
-				boolean fullHouse = false;
-				for (int i = 1; i <= 6; i++) {
-					for (int j = 1; j <= 6; j++) {
-						if (i != j &&
-							numDiceWithValue(dice, i) == 2 &&
-							numDiceWithValue(dice, j) == 3) {
-							fullHouse = true;
-							break;
-						}
-					}
-				}
-				
-				if (fullHouse)
-					score = 25;
-				break;
-				
-				
-			case FOUR_OF_A_KIND:
-				if (numDiceWithValue(dice, 1) >= 4)
-					score = 1 * 4;
-				
-				else if (numDiceWithValue(dice, 2) >= 4)
-					score = 2 * 4;
-				
-				else if (numDiceWithValue(dice, 3) >= 4)
-					score = 3 * 4;
-				
-				else if (numDiceWithValue(dice, 4) >= 4)
-					score = 4 * 4;
-				
-				else if (numDiceWithValue(dice, 5) >= 4)
-					score = 5 * 4;
-				
-				else if (numDiceWithValue(dice, 6) >= 4)
-					score = 6 * 4;
-				break;
-				
-				
-			case LITTLE_STRAIGHT:
-				if (numDiceWithValue(dice, 1) >= 1 &&
-					numDiceWithValue(dice, 2) >= 1 &&
-					numDiceWithValue(dice, 3) >= 1 &&
-					numDiceWithValue(dice, 4) >= 1 &&
-					numDiceWithValue(dice, 5) >= 1)
-						score = 30;
-				break;
-				
-				
-			case BIG_STRAIGHT:
-				if (numDiceWithValue(dice, 2) >= 1 &&
-					numDiceWithValue(dice, 3) >= 1 &&
-					numDiceWithValue(dice, 4) >= 1 &&
-					numDiceWithValue(dice, 5) >= 1 &&
-					numDiceWithValue(dice, 6) >= 1)
-						score = 30;
-				break;
-				
-				
-			case CHOICE:
-				for (Die die: dice)
-					score += die.getValue();
-				break;
-				
-				
-			case YACHT:
-				if (numDiceWithValue(dice, 1) == 5 ||
-					numDiceWithValue(dice, 2) == 5 ||
-					numDiceWithValue(dice, 3) == 5 ||
-					numDiceWithValue(dice, 4) == 5 ||
-					numDiceWithValue(dice, 5) == 5 ||
-					numDiceWithValue(dice, 6) == 5)
-						score = 50;
-				break;
-				
-				
-			case CRAG:
-				if ((numDiceWithValue(dice, 1) >= 2 ||
-					 numDiceWithValue(dice, 2) >= 2 ||
-					 numDiceWithValue(dice, 3) >= 2 ||
-					 numDiceWithValue(dice, 4) >= 2 ||
-					 numDiceWithValue(dice, 5) >= 2 ||
-					 numDiceWithValue(dice, 6) >= 2) &&
-					diceTotal(dice) == 13)
-					score = 50;
-				break;
-				
-				
-			case THIRTEEN:
-				if (diceTotal(dice) == 13)
-					score = 26;
-				break;
-				
-				
-			case THREE_OF_A_KIND:
-				if (numDiceWithValue(dice, 1) == 3 ||
-					numDiceWithValue(dice, 2) == 3 ||
-					numDiceWithValue(dice, 3) == 3 ||
-					numDiceWithValue(dice, 4) == 3 ||
-					numDiceWithValue(dice, 5) == 3 ||
-					numDiceWithValue(dice, 6) == 3)
-					score = 25;
-				break;
-				
-				
-			case LOW_STRAIGHT:
-				if (numDiceWithValue(dice, 1) >= 1 &&
-					numDiceWithValue(dice, 2) >= 1 &&
-					numDiceWithValue(dice, 3) >= 1)
-					score = 20;
-				break;
-				
-				
-			case HIGH_STRAIGHT:
-				if (numDiceWithValue(dice, 4) >= 1 &&
-					numDiceWithValue(dice, 5) >= 1 &&
-					numDiceWithValue(dice, 6) >= 1)
-					score = 20;
-				break;
-				
-				
-			case ODD_STRAIGHT:
-				if (numDiceWithValue(dice, 1) >= 1 &&
-					numDiceWithValue(dice, 3) >= 1 &&
-					numDiceWithValue(dice, 5) >= 1)
-					score = 20;
-				break;
-				
-				
-			case EVEN_STRAIGHT:
-				if (numDiceWithValue(dice, 2) >= 1 &&
-					numDiceWithValue(dice, 4) >= 1 &&
-					numDiceWithValue(dice, 6) >= 1)
-					score = 20;
-				break;
-		}
-		
-		
-		return score;
+		return score(countFaces(dice), diceTotal(dice));
 	}
 	
 	
 	
 	/**
-	 * Returns the number of dice with the given value right-side up.
+	 * Calculates and returns the number of points a player would get by playing
+	 * on this category, given how many dice show each face. Every category is
+	 * scored in time proportional to the number of faces, however many dice
+	 * there are.
+	 * @param faceCounts The number of dice showing each face, indexed by face.
+	 * Index 0 is unused.
+	 * @param total The total of the dice values
+	 * @return The number of points
+	 */
+	public int score(int[] faceCounts, int total) {
+		return scorer.score(faceCounts, total);
+	}
+	
+	
+	
+	/**
+	 * Counts how many dice show each face.
 	 * @param dice The dice
-	 * @param value The value (1 - 6)
-	 * @return The number of dice with the given value
+	 * @return The number of dice showing each face, indexed by face, with room
+	 * for every face of the die with the most sides
 	 */
-	private int numDiceWithValue(Die[] dice, int value) {
-		int numDice = 0;
+	public static int[] countFaces(Die[] dice) {
+		int sides = 0;
+		for (Die die: dice)
+			sides = Math.max(sides, die.getSides());
 		
+		int[] faceCounts = new int[sides + 1];
 		for (Die die: dice)
-			if (die.getValue() == value)
-				numDice++;
+			faceCounts[die.getValue()]++;
 		
-		return numDice;
+		return faceCounts;
 	}
 	
 	
@@ -341,7 +231,7 @@ public enum Category {
 	 * @param dice The dice
 	 * @return The total of the dice values
 	 */
-	private int diceTotal(Die[] dice) {
+	private static int diceTotal(Die[] dice) {
 		int total = 0;
 		
 		for (Die die: dice)
@@ -349,4 +239,11 @@ public enum Category {
 		
 		return total;
 	}
+	
+	
+	
+	@Override
+	public String toString() {
+		return name;
+	}
 }
@@ -0,0 +1,19 @@
+package tech.octopusdragon.dice;
+
+/**
+ * Calculates the points a set of dice is worth in a scoring category.
+ * @author Alex Gill
+ *
+ */
+@FunctionalInterface
+public interface CategoryScorer {
+	
+	/**
+	 * Calculates the number of points the dice are worth.
+	 * @param faceCounts The number of dice showing each face, indexed by face.
+	 * Index 0 is unused.
+	 * @param total The total of the dice values
+	 * @return The number of points
+	 */
+	int score(int[] faceCounts, int total);
+}
@@ -0,0 +1,19 @@
+package tech.octopusdragon.dice;
+
+/**
+ * A combination the dice must make for a scoring category to award points.
+ * @author Alex Gill
+ *
+ */
+@FunctionalInterface
+public interface DiceCondition {
+	
+	/**
+	 * Returns whether the dice make the combination.
+	 * @param faceCounts The number of dice showing each face, indexed by face.
+	 * Index 0 is unused.
+	 * @param total The total of the dice values
+	 * @return Whether the dice make the combination
+	 */
+	boolean test(int[] faceCounts, int total);
+}
@@ -1,5 +1,13 @@
 package tech.octopusdragon.dice;
 
+import java.util.Arrays;
+
+import tech.octopusdragon.dice.event.GameEvent;
+import tech.octopusdragon.dice.event.GameEventPublisher;
+import tech.octopusdragon.dice.jfr.DiceResolvedEvent;
+import tech.octopusdragon.dice.jfr.NextPlayerEvent;
+import tech.octopusdragon.dice.jfr.ScoreComputedEvent;
+
 public abstract class DiceGame {
 	
 	/**
@@ -20,6 +28,24 @@ public abstract class DiceGame {
 	 */
 	public abstract int numDice();
 	
+	/**
+	 * Returns the number of sides on each die. Dice are six-sided unless a
+	 * variant says otherwise.
+	 * @return The number of sides
+	 */
+	public int numSides() {
+		return Die.DEFAULT_SIDES;
+	}
+	
+	/**
+	 * Returns the theme the variant is shown with. Variants are shown with
+	 * the Yacht theme unless they say otherwise.
+	 * @return The theme
+	 */
+	public Theme theme() {
+		return Theme.YACHT;
+	}
+	
 	/**
 	 * Returns the maximum number of rolls a player can make per turn.
 	 * @return The number of rolls
@@ -35,8 +61,13 @@ public abstract class DiceGame {
 	private Die[] dice;			// The dice
 	private Player[] players;	// The players
 	private int curPlayerIndex;	// The current player
+	private long turn;			// The number of the current turn
 	private boolean curPlayerHasGone;	// Whether the current player has gone
 	private int rollsLeft;		// The number of rolls left for the player
+	private Category[] categories;	// The scoring categories
+	private int[] potentialScores;	// Points each category would score for the dice
+	private int[] faceCounts;	// Number of dice showing each face
+	private final GameEventPublisher events = new GameEventPublisher();	// Tells subscribers what happens
 	
 	
 	
@@ -45,9 +76,33 @@ public abstract class DiceGame {
 	 * @param numPlayers The number of players
 	 */
 	public DiceGame(int numPlayers) {
+		setUp(numPlayers);
+	}
+	
+	
+	
+	/**
+	 * Instantiates a new game without setting it up. This is for variants
+	 * whose rules are not known until their own constructor has run; they
+	 * must call {@link #setUp(int)} before the game is used.
+	 */
+	protected DiceGame() {
+	}
+	
+	
+	
+	/**
+	 * Creates the dice and players and starts the first player's turn.
+	 * @param numPlayers The number of players
+	 */
+	protected final void setUp(int numPlayers) {
 		dice = new Die[numDice()];
 		for (int i = 0; i < numDice(); i++)
-			dice[i] = new Die();
+			dice[i] = new Die(numSides());
+		
+		categories = categories();
+		potentialScores = new int[categories.length];
+		faceCounts = new int[numSides() + 1];
 		
 		players = new Player[numPlayers];
 		for (int i = 0; i < numPlayers; i++)
@@ -101,10 +156,46 @@ public abstract class DiceGame {
 	
 	
 	
+	/**
+	 * Returns the index of the current player.
+	 * @return The index of the current player
+	 */
+	public int curPlayerIndex() {
+		return curPlayerIndex;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of the current turn, counting every player's turns
+	 * from 1 at the start of the game.
+	 * @return The number of the current turn
+	 */
+	public long turn() {
+		return turn;
+	}
+	
+	
+	
+	/**
+	 * Returns the publisher of the game's events. Subscribers receive every
+	 * roll, submission and new turn from when they subscribe, then the end
+	 * of the game, after which they are completed. Events are only made
+	 * while someone is subscribed, so subscribe before playing.
+	 * @return The publisher
+	 */
+	public GameEventPublisher events() {
+		return events;
+	}
+	
+	
+	
 	/**
 	 * Advances to the next player.
 	 */
 	public void nextPlayer() {
+		NextPlayerEvent event = new NextPlayerEvent();
+		event.begin();
 		
 		// Increment the player index
 		curPlayerIndex++;
@@ -116,6 +207,15 @@ public abstract class DiceGame {
 		
 		// The current player has a number of rolls
 		rollsLeft = numRolls();
+		turn++;
+		
+		if (events.hasSubscribers())
+			events.publish(GameEvent.nextPlayer(turn, curPlayerIndex, rollsLeft));
+		
+		if (event.shouldCommit()) {
+			event.setGame(this);
+			event.commit();
+		}
 	}
 	
 	
@@ -141,11 +241,89 @@ public abstract class DiceGame {
 		// Do nothing if the player has no rolls left
 		if (rollsLeft == 0)
 			return;
+		DiceResolvedEvent event = new DiceResolvedEvent();
+		event.begin();
 		
 		// Roll
 		for (int i = 0; i < dieIndexes.length; i++)
 			dice[dieIndexes[i]].roll();
 		rollsLeft--;
+		
+		// Score the new dice in every open category at once
+		updatePotentialScores();
+		
+		if (events.hasSubscribers())
+			events.publish(GameEvent.roll(turn, curPlayerIndex, rollsLeft, dieIndexes, diceValues()));
+		
+		if (event.shouldCommit()) {
+			event.setGame(this);
+			event.diceRolled = dieIndexes.length;
+			event.dice = diceString();
+			event.rollsLeft = rollsLeft;
+			event.commit();
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the values of the dice as a string, such as "[3, 5, 5, 1, 6]".
+	 * @return The values of the dice
+	 */
+	private String diceString() {
+		return Arrays.toString(diceValues());
+	}
+	
+	
+	
+	/**
+	 * Returns the values of the dice.
+	 * @return The values of the dice
+	 */
+	private int[] diceValues() {
+		int[] values = new int[dice.length];
+		for (int i = 0; i < dice.length; i++)
+			values[i] = dice[i].getValue();
+		return values;
+	}
+	
+	
+	
+	/**
+	 * Calculates the number of points the current player would get in each of
+	 * their open categories with the dice as they are. Used categories are
+	 * given 0 points.
+	 */
+	private void updatePotentialScores() {
+		
+		// Count the faces once for all of the categories
+		Arrays.fill(faceCounts, 0);
+		int total = 0;
+		for (Die die: dice) {
+			faceCounts[die.getValue()]++;
+			total += die.getValue();
+		}
+		
+		Player player = curPlayer();
+		for (int i = 0; i < categories.length; i++) {
+			if (player.hasUsedCategory(categories[i]))
+				potentialScores[i] = 0;
+			else
+				potentialScores[i] = categories[i].score(faceCounts, total);
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the number of points the current player would get by submitting
+	 * the dice as they were last rolled to a category. The points are
+	 * calculated once per roll, so this is cheap to call repeatedly.
+	 * @param categoryIndex The index of the category in {@link #categories()}
+	 * @return The number of points, or 0 if the category has been used
+	 */
+	public int potentialScore(int categoryIndex) {
+		return potentialScores[categoryIndex];
 	}
 	
 	
@@ -189,11 +367,32 @@ public abstract class DiceGame {
 	 * @param category The scoring category
 	 */
 	public void submit(Category category) {
+		ScoreComputedEvent event = new ScoreComputedEvent();
+		event.begin();
 		
 		// Award the player with the number of points earned.
-		curPlayer().submit(category, category.score(dice));
+		int points = category.score(dice);
+		curPlayer().submit(category, points);
+		
+		if (event.shouldCommit()) {
+			event.setGame(this);
+			event.category = category.getName();
+			event.points = points;
+			event.commit();
+		}
 		
 		// The current player has gone
 		curPlayerHasGone = true;
+		
+		if (events.hasSubscribers()) {
+			int categoryIndex = 0;
+			while (categoryIndex < categories.length && categories[categoryIndex] != category)
+				categoryIndex++;
+			events.publish(GameEvent.submit(turn, curPlayerIndex, categoryIndex, points, diceValues()));
+			if (isOver()) {
+				events.publish(GameEvent.gameOver(turn, curPlayerIndex));
+				events.close();
+			}
+		}
 	}
 }
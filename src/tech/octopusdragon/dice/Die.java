@@ -1,28 +1,76 @@
 package tech.octopusdragon.dice;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 /**
- * Represents a standard six-sided die.
+ * Represents a die. Dice are six-sided unless given another number of sides.
  * @author Alex Gill
  *
  */
 public class Die {
 	
-	private final int SIDES = 6;	// The number of sides on the die
+	public static final int DEFAULT_SIDES = 6;	// The number of sides of a standard die
+	
+	// Generates the values of dice not given their own generator
+	private static final Random SHARED_RANDOM = new Random();
+	
+	// Told about every roll of every die
+	private static volatile RollListener[] rollListeners = new RollListener[0];
+	
+	private final int sides;	// The number of sides on the die
+	private final Random random;	// Generates the die's values
 	
 	private int value;	// The value of the die's face-up side
 	
 	
 	
 	/**
-	 * Instantiates a new die.
+	 * Instantiates a new six-sided die.
 	 */
 	public Die() {
+		this(DEFAULT_SIDES);
+	}
+	
+	
+	
+	/**
+	 * Instantiates a new die with the given number of sides.
+	 * @param sides The number of sides, numbered from 1
+	 */
+	public Die(int sides) {
+		this(sides, SHARED_RANDOM);
+	}
+	
+	
+	
+	/**
+	 * Instantiates a new die with the given number of sides whose values are
+	 * generated by the given random number generator.
+	 * @param sides The number of sides, numbered from 1
+	 * @param random The random number generator
+	 */
+	public Die(int sides, Random random) {
+		if (sides < 1)
+			throw new IllegalArgumentException("A die needs at least one side");
+		this.sides = sides;
+		this.random = random;
 		value = 1;
 	}
 	
 	
 	
+	/**
+	 * Returns the number of sides on the die.
+	 * @return The number of sides
+	 */
+	public int getSides() {
+		return sides;
+	}
+	
+	
+	
 	/**
 	 * Returns the value of the die's face-up side.
 	 * @return The value of the die's face-up side.
@@ -38,10 +86,36 @@ public class Die {
 	 */
 	public void roll() {
 		
-		// Create a Random object for generating the die's value.
-		Random rand = new Random();
+		// Generate a new value between 1 and the number of sides
+		value = random.nextInt(sides) + 1;
 		
-		// Generate a new value between 1 and 6
-		value = rand.nextInt(SIDES) + 1;
+		// Tell the listeners
+		for (RollListener listener: rollListeners)
+			listener.rolled(this, value);
+	}
+	
+	
+	
+	/**
+	 * Adds a listener that is told about every roll of every die. Listeners
+	 * are called on the thread that rolled the die.
+	 * @param listener The listener
+	 */
+	public static synchronized void addRollListener(RollListener listener) {
+		RollListener[] listeners = Arrays.copyOf(rollListeners, rollListeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		rollListeners = listeners;
+	}
+	
+	
+	
+	/**
+	 * Removes a roll listener.
+	 * @param listener The listener
+	 */
+	public static synchronized void removeRollListener(RollListener listener) {
+		List<RollListener> listeners = new ArrayList<RollListener>(Arrays.asList(rollListeners));
+		listeners.remove(listener);
+		rollListeners = listeners.toArray(new RollListener[0]);
 	}
 }
@@ -0,0 +1,17 @@
+package tech.octopusdragon.dice;
+
+/**
+ * Is told about every roll of a die.
+ * @author Alex Gill
+ *
+ */
+@FunctionalInterface
+public interface RollListener {
+	
+	/**
+	 * Called after a die is rolled.
+	 * @param die The die
+	 * @param value The value rolled
+	 */
+	void rolled(Die die, int value);
+}
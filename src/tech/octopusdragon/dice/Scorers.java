@@ -0,0 +1,216 @@
+package tech.octopusdragon.dice;
+
+/**
+ * Builds the scoring functions of categories out of a few building blocks: the
+ * points awarded, such as a fixed number or the sum of the dice, and the
+ * combinations the dice must make to be awarded them. Each building block
+ * captures its parameters as plain values, so a category built from them is
+ * scored as fast as one written out by hand. Every function runs in time
+ * proportional to the number of faces.
+ * @author Alex Gill
+ *
+ */
+public final class Scorers {
+
+	/**
+	 * Cannot be instantiated.
+	 */
+	private Scorers() {
+	}
+
+
+
+	// --- Points ---
+
+	/**
+	 * The sum of the dice showing a face.
+	 * @param face The face
+	 * @return The scoring function
+	 */
+	public static CategoryScorer count(int face) {
+		return (faceCounts, total) -> face < faceCounts.length ? faceCounts[face] * face : 0;
+	}
+
+
+
+	/**
+	 * The sum of all of the dice.
+	 * @return The scoring function
+	 */
+	public static CategoryScorer sum() {
+		return (faceCounts, total) -> total;
+	}
+
+
+
+	/**
+	 * The sum of a number of dice showing the same face, using the lowest face
+	 * shown by at least that many dice, or 0 if there is none.
+	 * @param numDice The number of dice
+	 * @return The scoring function
+	 */
+	public static CategoryScorer ofAKind(int numDice) {
+		return (faceCounts, total) -> {
+			for (int face = 1; face < faceCounts.length; face++)
+				if (faceCounts[face] >= numDice)
+					return face * numDice;
+			return 0;
+		};
+	}
+
+
+
+	/**
+	 * A fixed number of points if the dice make a combination.
+	 * @param points The number of points
+	 * @param condition The combination
+	 * @return The scoring function
+	 */
+	public static CategoryScorer when(int points, DiceCondition condition) {
+		return (faceCounts, total) -> condition.test(faceCounts, total) ? points : 0;
+	}
+
+
+
+	/**
+	 * The points of another scoring function if the dice make a combination.
+	 * @param scorer The other scoring function
+	 * @param condition The combination
+	 * @return The scoring function
+	 */
+	public static CategoryScorer when(CategoryScorer scorer, DiceCondition condition) {
+		return (faceCounts, total) -> condition.test(faceCounts, total) ?
+				scorer.score(faceCounts, total) : 0;
+	}
+
+
+
+	// --- Combinations ---
+
+	/**
+	 * At least one die showing each of the given faces.
+	 * @param faces The faces
+	 * @return The combination
+	 */
+	public static DiceCondition faces(int... faces) {
+		int[] required = faces.clone();
+		return (faceCounts, total) -> {
+			for (int face: required)
+				if (face >= faceCounts.length || faceCounts[face] == 0)
+					return false;
+			return true;
+		};
+	}
+
+
+
+	/**
+	 * Dice showing a run of consecutive faces.
+	 * @param length The length of the run
+	 * @return The combination
+	 */
+	public static DiceCondition straight(int length) {
+		return (faceCounts, total) -> {
+			int run = 0;
+			for (int face = 1; face < faceCounts.length; face++) {
+				run = faceCounts[face] > 0 ? run + 1 : 0;
+				if (run >= length)
+					return true;
+			}
+			return false;
+		};
+	}
+
+
+
+	/**
+	 * At least a number of dice showing the same face.
+	 * @param numDice The number of dice
+	 * @return The combination
+	 */
+	public static DiceCondition atLeastOfAKind(int numDice) {
+		return (faceCounts, total) -> {
+			for (int face = 1; face < faceCounts.length; face++)
+				if (faceCounts[face] >= numDice)
+					return true;
+			return false;
+		};
+	}
+
+
+
+	/**
+	 * Exactly a number of dice showing the same face.
+	 * @param numDice The number of dice
+	 * @return The combination
+	 */
+	public static DiceCondition exactlyOfAKind(int numDice) {
+		return (faceCounts, total) -> {
+			for (int face = 1; face < faceCounts.length; face++)
+				if (faceCounts[face] == numDice)
+					return true;
+			return false;
+		};
+	}
+
+
+
+	/**
+	 * All of the dice showing the same face.
+	 * @return The combination
+	 */
+	public static DiceCondition allSame() {
+		return (faceCounts, total) -> {
+			int numDice = 0;
+			int mostOfAKind = 0;
+			for (int face = 1; face < faceCounts.length; face++) {
+				numDice += faceCounts[face];
+				mostOfAKind = Math.max(mostOfAKind, faceCounts[face]);
+			}
+			return numDice > 0 && mostOfAKind == numDice;
+		};
+	}
+
+
+
+	/**
+	 * Three dice showing one face and two showing another.
+	 * @return The combination
+	 */
+	public static DiceCondition fullHouse() {
+		return (faceCounts, total) -> {
+			boolean three = false;
+			boolean two = false;
+			for (int face = 1; face < faceCounts.length; face++) {
+				if (faceCounts[face] == 3)
+					three = true;
+				else if (faceCounts[face] == 2)
+					two = true;
+			}
+			return three && two;
+		};
+	}
+
+
+
+	/**
+	 * Dice totalling a number.
+	 * @param target The total
+	 * @return The combination
+	 */
+	public static DiceCondition total(int target) {
+		return (faceCounts, total) -> total == target;
+	}
+
+
+
+	/**
+	 * Dice making both of two combinations.
+	 * @param first The first combination
+	 * @param second The second combination
+	 * @return The combination
+	 */
+	public static DiceCondition and(DiceCondition first, DiceCondition second) {
+		return (faceCounts, total) -> first.test(faceCounts, total) && second.test(faceCounts, total);
+	}
+}
@@ -0,0 +1,16 @@
+package tech.octopusdragon.dice;
+
+/**
+ * The look a variant is shown with. A theme only names the look; how it is
+ * drawn is up to whatever shows the game.
+ * @author Alex Gill
+ *
+ */
+public enum Theme {
+	
+	/** Light yellow on maroon, with rounded black borders. */
+	YACHT,
+	
+	/** Azure on sea green, with square golden borders. */
+	CRAG
+}
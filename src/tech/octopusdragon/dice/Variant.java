@@ -0,0 +1,38 @@
+package tech.octopusdragon.dice;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * A variant of the dice game that can be played, such as Yacht or Crag. A
+ * variant creates new games of itself.
+ * @author Alex Gill
+ *
+ */
+@FunctionalInterface
+public interface Variant {
+	
+	/**
+	 * Creates a new game of the variant.
+	 * @param numPlayers The number of players
+	 * @return The new game
+	 */
+	DiceGame newGame(int numPlayers);
+	
+	
+	
+	/**
+	 * Returns the variant played by a dice game class. The class must have a
+	 * constructor taking the number of players.
+	 * @param gameClass The dice game class
+	 * @return The variant
+	 */
+	static Variant of(Class<? extends DiceGame> gameClass) {
+		return numPlayers -> {
+			try {
+				return gameClass.getDeclaredConstructor(int.class).newInstance(numPlayers);
+			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
+				throw new IllegalStateException("Error instantiating dice game class " + gameClass.getName(), e);
+			}
+		};
+	}
+}
@@ -0,0 +1,77 @@
+package tech.octopusdragon.dice.audit;
+
+/**
+ * Reports that a fairness test crossed its threshold.
+ * @author Alex Gill
+ *
+ */
+public class FairnessAlert {
+	
+	private final FairnessTest test;	// The test that crossed its threshold
+	private final double zScore;		// The z-score of the test
+	private final double threshold;		// The threshold it crossed
+	private final long rolls;			// The number of rolls audited so far
+	
+	
+	
+	/**
+	 * Instantiates an alert.
+	 * @param test The test that crossed its threshold
+	 * @param zScore The z-score of the test
+	 * @param threshold The threshold it crossed
+	 * @param rolls The number of rolls audited so far
+	 */
+	public FairnessAlert(FairnessTest test, double zScore, double threshold, long rolls) {
+		this.test = test;
+		this.zScore = zScore;
+		this.threshold = threshold;
+		this.rolls = rolls;
+	}
+	
+	
+	
+	/**
+	 * Returns the test that crossed its threshold.
+	 * @return The test
+	 */
+	public FairnessTest getTest() {
+		return test;
+	}
+	
+	
+	
+	/**
+	 * Returns the z-score of the test when it crossed its threshold.
+	 * @return The z-score
+	 */
+	public double getZScore() {
+		return zScore;
+	}
+	
+	
+	
+	/**
+	 * Returns the threshold that was crossed.
+	 * @return The threshold
+	 */
+	public double getThreshold() {
+		return threshold;
+	}
+	
+	
+	
+	/**
+	 * Returns the number of rolls audited when the threshold was crossed.
+	 * @return The number of rolls
+	 */
+	public long getRolls() {
+		return rolls;
+	}
+	
+	
+	
+	@Override
+	public String toString() {
+		return String.format("%s z=%.2f (threshold %.2f) after %d rolls", test, zScore, threshold, rolls);
+	}
+}
@@ -0,0 +1,387 @@
+package tech.octopusdragon.dice.audit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.RollListener;
+
+/**
+ * Audits a stream of die rolls for fairness as they happen, in constant
+ * memory. The auditor keeps how often each face and each pair of consecutive
+ * faces has come up, the running sums needed for the serial correlation and
+ * how long the runs of repeated faces are. Every statistic is updated in a
+ * few additions per roll, so the tests can be scored at any time without
+ * looking at past rolls.
+ * <p>
+ * The tests are scored every {@link #getCheckInterval()} rolls once enough
+ * rolls have been seen for them to be meaningful. When a test's z-score
+ * crosses the threshold the listeners are alerted, and they are told again
+ * when it comes back under.
+ * <p>
+ * Register an auditor with {@link Die#addRollListener(RollListener)} to
+ * watch every die, or call {@link #record(int)} with the output of another
+ * random number generator. An auditor watches one stream of rolls and must be
+ * fed from one thread at a time.
+ * @author Alex Gill
+ *
+ */
+public class FairnessAuditor implements RollListener {
+	
+	// --- Constants ---
+	public static final double DEFAULT_THRESHOLD = 5.0;	// Around one false alarm in 3.5 million checks
+	public static final int DEFAULT_CHECK_INTERVAL = 4096;	// Rolls between checks
+	private static final int MAX_RUN_LENGTH = 32;	// Longer runs share the last run length count
+	private static final int MIN_EXPECTED_PAIRS = 20;	// Expected count of each pair before testing
+	
+	// --- Settings ---
+	private final int numSides;		// The number of sides on the dice audited
+	private final double threshold;	// The z-score that raises an alert
+	private final int checkMask;	// Checks when the rolls masked by this are 0
+	private final long minRolls;	// The rolls needed before the tests are scored
+	private final List<FairnessListener> listeners = new ArrayList<FairnessListener>();
+	
+	// --- Face and pair frequencies ---
+	private long rolls;				// The number of rolls
+	private final long[] faceCounts;	// The rolls of each face, indexed by face
+	private long faceSquares;		// The sum of the squares of the face counts
+	private final long[] pairCounts;	// The rolls of each face after each face
+	private long pairSquares;		// The sum of the squares of the pair counts
+	private int previous;			// The face rolled last, or 0 before the first roll
+	
+	// --- Serial correlation ---
+	private long sum;				// The sum of the faces
+	private long sumSquares;		// The sum of the squares of the faces
+	private long sumProducts;		// The sum of the products of consecutive faces
+	
+	// --- Runs ---
+	private int currentRun;			// The length of the current run of one face
+	private long changes;			// How often the face differed from the one before
+	private long longestRun;		// The length of the longest finished run
+	private final long[] runCounts = new long[MAX_RUN_LENGTH + 1];	// Finished runs by length
+	
+	// --- Alerts ---
+	private final boolean[] alerting = new boolean[FairnessTest.values().length];
+	
+	
+	
+	/**
+	 * Instantiates an auditor with the default threshold and check interval.
+	 * @param numSides The number of sides on the dice audited
+	 */
+	public FairnessAuditor(int numSides) {
+		this(numSides, DEFAULT_THRESHOLD, DEFAULT_CHECK_INTERVAL);
+	}
+	
+	
+	
+	/**
+	 * Instantiates an auditor.
+	 * @param numSides The number of sides on the dice audited
+	 * @param threshold The z-score above which a test raises an alert
+	 * @param checkInterval The number of rolls between checks, rounded up to
+	 * a power of two
+	 */
+	public FairnessAuditor(int numSides, double threshold, int checkInterval) {
+		if (numSides < 2)
+			throw new IllegalArgumentException("Only dice with at least two sides can be audited");
+		if (checkInterval < 1)
+			throw new IllegalArgumentException("The check interval must be positive");
+		this.numSides = numSides;
+		this.threshold = threshold;
+		checkMask = checkInterval == 1 ? 0 : Integer.highestOneBit(checkInterval - 1) * 2 - 1;
+		minRolls = (long) MIN_EXPECTED_PAIRS * numSides * numSides;
+		faceCounts = new long[numSides + 1];
+		pairCounts = new long[numSides * numSides];
+	}
+	
+	
+	
+	/**
+	 * Adds a listener that is alerted when a test crosses the threshold.
+	 * Listeners are called on the thread that recorded the roll.
+	 * @param listener The listener
+	 */
+	public void addListener(FairnessListener listener) {
+		listeners.add(listener);
+	}
+	
+	
+	
+	/**
+	 * Removes a listener.
+	 * @param listener The listener
+	 */
+	public void removeListener(FairnessListener listener) {
+		listeners.remove(listener);
+	}
+	
+	
+	
+	/**
+	 * Records a roll of a die, if it has the number of sides audited.
+	 */
+	@Override
+	public void rolled(Die die, int value) {
+		if (die.getSides() == numSides)
+			record(value);
+	}
+	
+	
+	
+	/**
+	 * Records a roll.
+	 * @param face The face rolled, from 1 to the number of sides
+	 */
+	public void record(int face) {
+		if (face < 1 || face > numSides)
+			throw new IllegalArgumentException("Face out of range: " + face);
+		
+		// Face frequency, keeping the sum of squares up to date:
+		// (c + 1)^2 = c^2 + 2c + 1
+		rolls++;
+		faceSquares += 2 * faceCounts[face]++ + 1;
+		sum += face;
+		sumSquares += face * face;
+		
+		// Pairs, correlation and runs need the face before
+		if (previous != 0) {
+			pairSquares += 2 * pairCounts[(previous - 1) * numSides + face - 1]++ + 1;
+			sumProducts += previous * face;
+			if (face == previous) {
+				currentRun++;
+			}
+			else {
+				endRun();
+				changes++;
+				currentRun = 1;
+			}
+		}
+		else {
+			currentRun = 1;
+		}
+		previous = face;
+		
+		if ((rolls & checkMask) == 0 && rolls >= minRolls)
+			check();
+	}
+	
+	
+	
+	/**
+	 * Records the end of the current run.
+	 */
+	private void endRun() {
+		runCounts[Math.min(currentRun, MAX_RUN_LENGTH)]++;
+		if (currentRun > longestRun)
+			longestRun = currentRun;
+	}
+	
+	
+	
+	/**
+	 * Scores every test now and alerts the listeners of any that crossed the
+	 * threshold since the last check. Called automatically every check
+	 * interval.
+	 */
+	public void check() {
+		if (rolls < 2)
+			return;
+		for (FairnessTest test: FairnessTest.values()) {
+			double z = zScore(test);
+			boolean over = z > threshold;
+			if (over != alerting[test.ordinal()]) {
+				alerting[test.ordinal()] = over;
+				FairnessAlert alert = new FairnessAlert(test, z, threshold, rolls);
+				for (FairnessListener listener: new ArrayList<FairnessListener>(listeners)) {
+					if (over)
+						listener.alertRaised(alert);
+					else
+						listener.alertCleared(alert);
+				}
+			}
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the z-score of a test. Tests that can fail in both directions
+	 * give the size of the z-score.
+	 * @param test The test
+	 * @return The z-score, or 0 before two rolls have been recorded
+	 */
+	public double zScore(FairnessTest test) {
+		if (rolls < 2)
+			return 0.0;
+		switch (test) {
+			case FACE_FREQUENCY:
+				return chiSquareToZ(faceChiSquare(), numSides - 1);
+			case PAIR_FREQUENCY:
+				// Good's serial test: the pair statistic less the face
+				// statistic, which removes the overlap between pairs
+				return chiSquareToZ(pairChiSquare() - faceChiSquare(), numSides * (numSides - 1));
+			case SERIAL_CORRELATION:
+				return Math.abs(serialCorrelation()) * Math.sqrt(rolls);
+			case RUNS:
+				// Each roll after the first changes face with probability
+				// 1 - 1/sides, independently of the others
+				double p = 1.0 - 1.0 / numSides;
+				long n = rolls - 1;
+				return Math.abs(changes - n * p) / Math.sqrt(n * p * (1.0 - p));
+			default:
+				throw new IllegalArgumentException("Unknown test " + test);
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns the chi-square statistic of the face counts, with one less
+	 * degree of freedom than the number of sides.
+	 * @return The chi-square statistic
+	 */
+	public double faceChiSquare() {
+		// The sum of (count - expected)^2 / expected, where expected is
+		// rolls / sides, expands to sides * sum(count^2) / rolls - rolls
+		return rolls == 0 ? 0.0 : (double) numSides * faceSquares / rolls - rolls;
+	}
+	
+	
+	
+	/**
+	 * Returns the chi-square statistic of the counts of pairs of consecutive
+	 * faces.
+	 * @return The chi-square statistic
+	 */
+	public double pairChiSquare() {
+		long pairs = rolls - 1;
+		return pairs <= 0 ? 0.0 : (double) numSides * numSides * pairSquares / pairs - pairs;
+	}
+	
+	
+	
+	/**
+	 * Returns the correlation between each face and the one before it.
+	 * @return The serial correlation coefficient, from -1 to 1
+	 */
+	public double serialCorrelation() {
+		double n = rolls;
+		double variance = n * sumSquares - (double) sum * sum;
+		return variance == 0.0 ? 0.0 : (n * sumProducts - (double) sum * sum) / variance;
+	}
+	
+	
+	
+	/**
+	 * Converts a chi-square statistic to an approximate z-score using the
+	 * Wilson-Hilferty transformation.
+	 * @param chiSquare The chi-square statistic
+	 * @param degrees The degrees of freedom
+	 * @return The z-score
+	 */
+	private static double chiSquareToZ(double chiSquare, int degrees) {
+		double scale = 2.0 / (9.0 * degrees);
+		return (Math.cbrt(Math.max(chiSquare, 0.0) / degrees) - (1.0 - scale)) / Math.sqrt(scale);
+	}
+	
+	
+	
+	/**
+	 * Forgets every roll and alert.
+	 */
+	public void reset() {
+		rolls = 0;
+		Arrays.fill(faceCounts, 0);
+		faceSquares = 0;
+		Arrays.fill(pairCounts, 0);
+		pairSquares = 0;
+		previous = 0;
+		sum = 0;
+		sumSquares = 0;
+		sumProducts = 0;
+		currentRun = 0;
+		changes = 0;
+		longestRun = 0;
+		Arrays.fill(runCounts, 0);
+		Arrays.fill(alerting, false);
+	}
+	
+	
+	
+	/**
+	 * Returns the number of rolls recorded.
+	 * @return The number of rolls
+	 */
+	public long getRolls() {
+		return rolls;
+	}
+	
+	
+	
+	/**
+	 * Returns how often a face was rolled.
+	 * @param face The face
+	 * @return The number of rolls of the face
+	 */
+	public long getFaceCount(int face) {
+		return faceCounts[face];
+	}
+	
+	
+	
+	/**
+	 * Returns how often a face was rolled straight after another.
+	 * @param first The face rolled first
+	 * @param second The face rolled straight after
+	 * @return The number of times the pair came up
+	 */
+	public long getPairCount(int first, int second) {
+		return pairCounts[(first - 1) * numSides + second - 1];
+	}
+	
+	
+	
+	/**
+	 * Returns how many finished runs of one face had a length. Runs longer
+	 * than 32 are counted together under 32.
+	 * @param length The length of the runs
+	 * @return The number of runs
+	 */
+	public long getRunCount(int length) {
+		return runCounts[Math.min(length, MAX_RUN_LENGTH)];
+	}
+	
+	
+	
+	/**
+	 * Returns the length of the longest run of one face, including the
+	 * current one.
+	 * @return The length of the longest run
+	 */
+	public long getLongestRun() {
+		return Math.max(longestRun, currentRun);
+	}
+	
+	
+	
+	/**
+	 * Returns whether a test is over the threshold as of the last check.
+	 * @param test The test
+	 * @return Whether the test is raising an alert
+	 */
+	public boolean isAlerting(FairnessTest test) {
+		return alerting[test.ordinal()];
+	}
+	
+	
+	
+	/**
+	 * Returns the number of rolls between checks.
+	 * @return The check interval
+	 */
+	public int getCheckInterval() {
+		return checkMask + 1;
+	}
+}
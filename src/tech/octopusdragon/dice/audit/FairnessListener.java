@@ -0,0 +1,26 @@
+package tech.octopusdragon.dice.audit;
+
+/**
+ * Is told when a fairness test crosses its threshold, and again when it
+ * comes back under it.
+ * @author Alex Gill
+ *
+ */
+public interface FairnessListener {
+	
+	/**
+	 * Called when a test crosses its threshold.
+	 * @param alert The alert
+	 */
+	void alertRaised(FairnessAlert alert);
+	
+	
+	
+	/**
+	 * Called when a test that had crossed its threshold comes back under it.
+	 * Does nothing by default.
+	 * @param alert The test, its new z-score and the number of rolls
+	 */
+	default void alertCleared(FairnessAlert alert) {
+	}
+}
@@ -0,0 +1,23 @@
+package tech.octopusdragon.dice.audit;
+
+/**
+ * The goodness-of-fit tests run by a {@link FairnessAuditor}. Every test
+ * gives a z-score, which is near 0 for fair dice and grows with the evidence
+ * against them.
+ * @author Alex Gill
+ *
+ */
+public enum FairnessTest {
+	
+	/** Whether every face comes up equally often (chi-square). */
+	FACE_FREQUENCY,
+	
+	/** Whether every pair of consecutive faces comes up equally often (serial chi-square). */
+	PAIR_FREQUENCY,
+	
+	/** Whether each face is correlated with the one before it. */
+	SERIAL_CORRELATION,
+	
+	/** Whether the same face repeats as often as it should. */
+	RUNS
+}
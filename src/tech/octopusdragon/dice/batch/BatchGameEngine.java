@@ -0,0 +1,634 @@
+package tech.octopusdragon.dice.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * Plays many games of a variant at once, for simulations of millions of
+ * games. Instead of a {@link DiceGame} with its own dice and players, every
+ * game is a column of parallel primitive arrays: the packed dice, the rolls
+ * left, and each player's used categories, points and total. The games move
+ * in lockstep, a turn at a time, and each step of a turn is one loop over
+ * every game: roll, count the faces, let the players decide, and score.
+ * Categories are only scored when the dice are submitted or a player asks,
+ * rather than after every roll. If the dice have few enough faces, every way
+ * they can land is scored once up front, and scoring is a table look-up.
+ * <p>
+ * The rules are the same as {@link DiceGame}'s. Each turn starts by rolling
+ * every die, a player may roll any of the dice again while they have rolls
+ * left, and then scores the dice in a category they have not used. Since
+ * every game has the same number of turns, every game is on the same
+ * player's turn, and a game is over when the batch is.
+ * <p>
+ * Dice are rolled either from a random generator, or with common random
+ * numbers: every die is then a function of a seed and where it is rolled (the
+ * game, the turn, the roll and the die), so two players who play the same
+ * games with the same seed see the same dice for as long as they make the
+ * same choices. Comparing players this way takes far fewer games than with
+ * dice that differ from one player to the next.
+ * <p>
+ * An engine is not thread-safe. To use more threads, give each its own
+ * engine.
+ * @author Alex Gill
+ *
+ */
+public class BatchGameEngine {
+
+	// --- Constants ---
+	private static final int MAX_KEYS = 1 << 20;	// The most face count keys to keep a score table for
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;	// Spreads nearby seeds apart before mixing
+
+	// --- Variant ---
+	private final Category[] categories;	// The scoring categories
+	private final int numDice;			// The number of dice
+	private final int numSides;			// The number of sides on each die
+	private final int numRolls;			// The number of rolls per turn
+	private final int numPlayers;		// The number of players in each game
+	private final int numGames;			// The number of games
+	private final SplittableRandom random;	// Rolls the dice, or null for common random numbers
+	private final long seed;			// Decides the dice with common random numbers
+	private final long rejectBelow;		// Random fractions below this would favour some faces
+
+	// --- Games, indexed by game ---
+	private final int[] dice;			// The packed dice
+	private final int[] rollsLeft;		// The rolls the current player has left
+	private final boolean[] rolled;		// Whether the dice were rolled in the last step
+	private final int[][] usedMasks;	// The categories each player has used, by player
+	private final int[][][] points;		// Each player's points, by player and category
+	private final int[][] totals;		// Each player's total score, by player
+	private final int[][] faceCounts;	// The dice showing each face, by face
+	private final int[] diceTotals;		// The total of the dice
+	private final int[] diceStates;		// The number of the dice's face counts, if there is a score table
+
+	// --- Score table, or null if the dice have too many faces ---
+	private final int[] faceWeights;	// Each face's place value in a face count key
+	private int[] stateOfKey;			// The number of each face count key
+	private int[][] stateScores;		// The score of each numbered state, by category
+	private int numStates;				// The number of states numbered so far
+
+	// --- The turn, the same in every game ---
+	private int curPlayerIndex;			// The current player
+	private long turn;					// The number of the current turn
+
+	// Scratch space
+	private long randomBits;			// Random bits not used yet
+	private int randomHalvesLeft;		// The 32-bit halves of them left
+	private final int[] toRoll;			// The dice each game rolls next, one bit per die
+	private final int[] counts;			// The face counts of one game
+	private int countsGame = -1;		// The game they are of, or -1
+
+
+
+	/**
+	 * Instantiates a batch of new games.
+	 * @param game A game of the variant
+	 * @param numPlayers The number of players in each game
+	 * @param numGames The number of games
+	 * @param random Rolls the dice
+	 */
+	public BatchGameEngine(DiceGame game, int numPlayers, int numGames, SplittableRandom random) {
+		this(game.categories(), game.numDice(), game.numSides(), game.numRolls(), numPlayers, numGames, random);
+	}
+
+
+
+	/**
+	 * Instantiates a batch of new games rolled with common random numbers.
+	 * @param game A game of the variant
+	 * @param numPlayers The number of players in each game
+	 * @param numGames The number of games
+	 * @param seed Decides every die, so engines with the same seed roll the
+	 * same dice in the same places
+	 */
+	public BatchGameEngine(DiceGame game, int numPlayers, int numGames, long seed) {
+		this(game.categories(), game.numDice(), game.numSides(), game.numRolls(), numPlayers, numGames, null, seed);
+	}
+
+
+
+	/**
+	 * Instantiates a batch of new games.
+	 * @param categories The categories of the variant
+	 * @param numDice The number of dice
+	 * @param numSides The number of sides on each die
+	 * @param numRolls The number of rolls per turn
+	 * @param numPlayers The number of players in each game
+	 * @param numGames The number of games
+	 * @param random Rolls the dice
+	 */
+	public BatchGameEngine(Category[] categories, int numDice, int numSides, int numRolls,
+			int numPlayers, int numGames, SplittableRandom random) {
+		this(categories, numDice, numSides, numRolls, numPlayers, numGames, random, 0);
+	}
+
+
+
+	/**
+	 * Instantiates a batch of new games.
+	 * @param categories The categories of the variant
+	 * @param numDice The number of dice
+	 * @param numSides The number of sides on each die
+	 * @param numRolls The number of rolls per turn
+	 * @param numPlayers The number of players in each game
+	 * @param numGames The number of games
+	 * @param random Rolls the dice, or null for common random numbers
+	 * @param seed Decides the dice with common random numbers
+	 */
+	private BatchGameEngine(Category[] categories, int numDice, int numSides, int numRolls,
+			int numPlayers, int numGames, SplittableRandom random, long seed) {
+		if (numDice < 1 || numDice > PackedDice.MAX_DICE)
+			throw new IllegalArgumentException("Can only play with 1 to " + PackedDice.MAX_DICE + " dice");
+		if (numSides < 1 || numSides > PackedDice.MAX_SIDES)
+			throw new IllegalArgumentException("Can only play with dice with 1 to " + PackedDice.MAX_SIDES + " sides");
+		if (categories.length > Integer.SIZE - 1)
+			throw new IllegalArgumentException("Can only play with up to " + (Integer.SIZE - 1) + " categories");
+		if (numPlayers < 1 || numGames < 1)
+			throw new IllegalArgumentException("Need at least one player and one game");
+		this.categories = categories.clone();
+		this.numDice = numDice;
+		this.numSides = numSides;
+		this.numRolls = numRolls;
+		this.numPlayers = numPlayers;
+		this.numGames = numGames;
+		this.random = random;
+		this.seed = seed;
+		rejectBelow = (1L << Integer.SIZE) % numSides;
+
+		dice = new int[numGames];
+		rollsLeft = new int[numGames];
+		rolled = new boolean[numGames];
+		usedMasks = new int[numPlayers][numGames];
+		points = new int[numPlayers][categories.length][numGames];
+		totals = new int[numPlayers][numGames];
+		faceCounts = new int[numSides + 1][numGames];
+		diceTotals = new int[numGames];
+		toRoll = new int[numGames];
+		counts = new int[numSides + 1];
+
+		// Score every way the dice can land, if there are few enough
+		faceWeights = new int[numSides + 1];
+		long numKeys = 1;
+		for (int face = 1; face <= numSides && numKeys <= MAX_KEYS; face++) {
+			faceWeights[face] = (int)numKeys;
+			numKeys *= numDice + 1;
+		}
+		if (numKeys <= MAX_KEYS) {
+			stateOfKey = new int[(int)numKeys];
+			stateScores = new int[categories.length][];
+			List<int[]> scores = new ArrayList<int[]>();
+			enumerate(new int[numSides + 1], 1, numDice, scores);
+			for (int c = 0; c < categories.length; c++) {
+				stateScores[c] = new int[numStates];
+				for (int state = 0; state < numStates; state++)
+					stateScores[c][state] = scores.get(state)[c];
+			}
+			diceStates = new int[numGames];
+		} else {
+			diceStates = null;
+		}
+
+		newGames();
+	}
+
+
+
+	/**
+	 * Starts every game again from the beginning, so one engine can play
+	 * batch after batch without allocating.
+	 */
+	public void newGames() {
+		Arrays.fill(dice, 0);
+		Arrays.fill(rollsLeft, numRolls);
+		for (int player = 0; player < numPlayers; player++) {
+			Arrays.fill(usedMasks[player], 0);
+			Arrays.fill(totals[player], 0);
+			for (int[] categoryPoints: points[player])
+				Arrays.fill(categoryPoints, 0);
+		}
+		curPlayerIndex = 0;
+		turn = 1;
+	}
+
+
+
+	/**
+	 * Plays every game to the end.
+	 * @param players Plays each seat, or one for every seat
+	 */
+	public void play(BatchPlayer... players) {
+		if (players.length != 1 && players.length != numPlayers)
+			throw new IllegalArgumentException("Expected 1 or " + numPlayers + " players");
+		while (!isOver())
+			playTurn(players[players.length == 1 ? 0 : curPlayerIndex]);
+	}
+
+
+
+	/**
+	 * Plays the current player's turn in every game and moves on to the next
+	 * player.
+	 * @param player Makes the current player's decisions
+	 */
+	public void playTurn(BatchPlayer player) {
+		if (isOver())
+			throw new IllegalStateException("The games are over");
+
+		// Roll every die to start the turn
+		int allDice = (1 << numDice) - 1;
+		Arrays.fill(toRoll, allDice);
+		roll();
+		count();
+
+		// Roll again while the players want to and have rolls left
+		while (true) {
+			boolean anyRolled = false;
+			for (int game = 0; game < numGames; game++) {
+				int mask = rollsLeft[game] > 0 && rolled[game] ? player.diceToRoll(this, game) & allDice : 0;
+				toRoll[game] = mask;
+				anyRolled |= mask != 0;
+			}
+			if (!anyRolled)
+				break;
+			roll();
+			count();
+		}
+
+		// Score the dice
+		int[] used = usedMasks[curPlayerIndex];
+		int[] playerTotals = totals[curPlayerIndex];
+		int[][] playerPoints = points[curPlayerIndex];
+		for (int game = 0; game < numGames; game++) {
+			int category = player.category(this, game);
+			if (category < 0 || category >= categories.length || (used[game] & 1 << category) != 0)
+				throw new IllegalArgumentException("Category " + category + " cannot be used in game " + game);
+			int earned = points(game, category);
+			playerTotals[game] += earned;
+			playerPoints[category][game] = earned;
+			used[game] |= 1 << category;
+		}
+
+		// Advance to the next player
+		curPlayerIndex = (curPlayerIndex + 1) % numPlayers;
+		Arrays.fill(rollsLeft, numRolls);
+		turn++;
+	}
+
+
+
+	/**
+	 * Rolls the dice each game asks to. A game that rolls no dice keeps its
+	 * rolls.
+	 */
+	private void roll() {
+		for (int game = 0; game < numGames; game++) {
+			int mask = toRoll[game];
+			rolled[game] = mask != 0;
+			if (mask == 0)
+				continue;
+			int state = dice[game];
+			for (; mask != 0; mask &= mask - 1) {
+				int die = Integer.numberOfTrailingZeros(mask);
+				int shift = die * PackedDice.BITS_PER_DIE;
+				int face = random != null ? nextFace() : commonFace(game, die);
+				state = state & ~(PackedDice.DIE_MASK << shift) | face << shift;
+			}
+			dice[game] = state;
+			rollsLeft[game]--;
+		}
+	}
+
+
+
+	/**
+	 * Rolls a die, using 32 random bits, so each call to the generator rolls
+	 * two dice. The bits are scaled to the number of sides by multiplying
+	 * rather than dividing, and the few values that would make some faces
+	 * likelier than others are thrown away, so every face is equally likely.
+	 * @return The face rolled
+	 */
+	private int nextFace() {
+		while (true) {
+			if (randomHalvesLeft == 0) {
+				randomBits = random.nextLong();
+				randomHalvesLeft = 2;
+			}
+			long scaled = (randomBits & 0xFFFFFFFFL) * numSides;
+			randomBits >>>= Integer.SIZE;
+			randomHalvesLeft--;
+			if ((scaled & 0xFFFFFFFFL) >= rejectBelow)
+				return (int)(scaled >>> Integer.SIZE) + 1;
+		}
+	}
+
+
+
+	/**
+	 * Rolls a die with common random numbers: the face is a hash of the seed
+	 * and where the die is rolled, thrown away and hashed again in the rare
+	 * cases that would favour some faces.
+	 * @param game The game
+	 * @param die The index of the die
+	 * @return The face rolled
+	 */
+	private int commonFace(int game, int die) {
+		long roll = (turn * numRolls + numRolls - rollsLeft[game]) * PackedDice.MAX_DICE + die;
+		long bits = mix(seed + (roll * numGames + game) * GOLDEN_GAMMA);
+		while (true) {
+			long scaled = (bits & 0xFFFFFFFFL) * numSides;
+			if ((scaled & 0xFFFFFFFFL) >= rejectBelow)
+				return (int)(scaled >>> Integer.SIZE) + 1;
+			bits = mix(bits + GOLDEN_GAMMA);
+		}
+	}
+
+
+
+	/**
+	 * Scrambles 64 bits, so nearby inputs give unrelated outputs.
+	 * @param z The bits
+	 * @return The scrambled bits
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+
+	/**
+	 * Counts the faces of every game.
+	 */
+	private void count() {
+		BatchScorer.COUNTER.count(dice, 0, numGames, numDice, faceCounts, diceTotals);
+		countsGame = -1;
+		if (diceStates == null)
+			return;
+
+		// Number the face counts
+		Arrays.fill(diceStates, 0);
+		for (int face = 1; face <= numSides; face++) {
+			int[] faceCount = faceCounts[face];
+			int weight = faceWeights[face];
+			for (int game = 0; game < numGames; game++)
+				diceStates[game] += faceCount[game] * weight;
+		}
+		for (int game = 0; game < numGames; game++)
+			diceStates[game] = stateOfKey[diceStates[game]];
+	}
+
+
+
+	/**
+	 * Scores a game's dice in a category.
+	 * @param game The index of the game
+	 * @param categoryIndex The index of the category
+	 * @return The number of points
+	 */
+	private int points(int game, int categoryIndex) {
+		if (diceStates != null)
+			return stateScores[categoryIndex][diceStates[game]];
+		return categories[categoryIndex].score(faceCounts(game), diceTotals[game]);
+	}
+
+
+
+	/**
+	 * Numbers and scores every way some dice can land, from a face on.
+	 * @param counts The dice showing each face so far
+	 * @param face The face to place dice on next
+	 * @param left The number of dice left to place
+	 * @param scores Receives the scores of each state, by category
+	 */
+	private void enumerate(int[] counts, int face, int left, List<int[]> scores) {
+		if (face == numSides) {
+			counts[face] = left;
+			int key = 0;
+			int total = 0;
+			for (int f = 1; f <= numSides; f++) {
+				key += counts[f] * faceWeights[f];
+				total += counts[f] * f;
+			}
+			int[] stateScore = new int[categories.length];
+			for (int c = 0; c < categories.length; c++)
+				stateScore[c] = categories[c].score(counts, total);
+			stateOfKey[key] = numStates++;
+			scores.add(stateScore);
+			return;
+		}
+		for (int n = 0; n <= left; n++) {
+			counts[face] = n;
+			enumerate(counts, face + 1, left - n, scores);
+		}
+		counts[face] = 0;
+	}
+
+
+
+	/**
+	 * Copies a game's face counts into the scratch array.
+	 * @param game The index of the game
+	 * @return The face counts, indexed by face
+	 */
+	private int[] faceCounts(int game) {
+		if (game == countsGame)
+			return counts;
+		countsGame = game;
+		for (int face = 1; face <= numSides; face++)
+			counts[face] = faceCounts[face][game];
+		return counts;
+	}
+
+
+
+	/**
+	 * Returns whether every game is over.
+	 * @return Whether the games are over
+	 */
+	public boolean isOver() {
+		return turn > (long)numPlayers * categories.length;
+	}
+
+
+
+	/**
+	 * Returns the number of games.
+	 * @return The number of games
+	 */
+	public int numGames() {
+		return numGames;
+	}
+
+
+
+	/**
+	 * Returns the number of players in each game.
+	 * @return The number of players
+	 */
+	public int numPlayers() {
+		return numPlayers;
+	}
+
+
+
+	/**
+	 * Returns the number of dice.
+	 * @return The number of dice
+	 */
+	public int numDice() {
+		return numDice;
+	}
+
+
+
+	/**
+	 * Returns the number of sides on each die.
+	 * @return The number of sides
+	 */
+	public int numSides() {
+		return numSides;
+	}
+
+
+
+	/**
+	 * Returns the number of rolls per turn.
+	 * @return The number of rolls
+	 */
+	public int numRolls() {
+		return numRolls;
+	}
+
+
+
+	/**
+	 * Returns the scoring categories.
+	 * @return The scoring categories
+	 */
+	public Category[] categories() {
+		return categories.clone();
+	}
+
+
+
+	/**
+	 * Returns the number of scoring categories.
+	 * @return The number of categories
+	 */
+	public int numCategories() {
+		return categories.length;
+	}
+
+
+
+	/**
+	 * Returns the index of the current player, the same in every game.
+	 * @return The index of the current player
+	 */
+	public int curPlayerIndex() {
+		return curPlayerIndex;
+	}
+
+
+
+	/**
+	 * Returns the number of the current turn, counting every player's turns
+	 * from 1 at the start of the games.
+	 * @return The number of the current turn
+	 */
+	public long turn() {
+		return turn;
+	}
+
+
+
+	/**
+	 * Returns the dice of a game.
+	 * @param game The index of the game
+	 * @return The packed dice
+	 */
+	public int dice(int game) {
+		return dice[game];
+	}
+
+
+
+	/**
+	 * Returns the number of dice showing a face in a game.
+	 * @param game The index of the game
+	 * @param face The face
+	 * @return The number of dice
+	 */
+	public int faceCount(int game, int face) {
+		return faceCounts[face][game];
+	}
+
+
+
+	/**
+	 * Returns the number of rolls the current player has left in a game.
+	 * @param game The index of the game
+	 * @return The number of rolls left
+	 */
+	public int rollsLeft(int game) {
+		return rollsLeft[game];
+	}
+
+
+
+	/**
+	 * Returns the number of points the current player would get in a game by
+	 * scoring the dice in a category. The points are worked out each time
+	 * this is called.
+	 * @param game The index of the game
+	 * @param categoryIndex The index of the category
+	 * @return The number of points, or 0 if the category has been used
+	 */
+	public int potentialScore(int game, int categoryIndex) {
+		if ((usedMasks[curPlayerIndex][game] & 1 << categoryIndex) != 0)
+			return 0;
+		return points(game, categoryIndex);
+	}
+
+
+
+	/**
+	 * Returns the categories a player has used in a game.
+	 * @param game The index of the game
+	 * @param playerIndex The index of the player
+	 * @return The mask, with bit i set if category i has been used
+	 */
+	public int usedMask(int game, int playerIndex) {
+		return usedMasks[playerIndex][game];
+	}
+
+
+
+	/**
+	 * Returns a player's points in a category in a game.
+	 * @param game The index of the game
+	 * @param playerIndex The index of the player
+	 * @param categoryIndex The index of the category
+	 * @return The number of points
+	 */
+	public int getPoints(int game, int playerIndex, int categoryIndex) {
+		return points[playerIndex][categoryIndex][game];
+	}
+
+
+
+	/**
+	 * Returns a player's total score in a game.
+	 * @param game The index of the game
+	 * @param playerIndex The index of the player
+	 * @return The total score
+	 */
+	public int totalScore(int game, int playerIndex) {
+		return totals[playerIndex][game];
+	}
+}
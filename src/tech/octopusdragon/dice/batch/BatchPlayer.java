@@ -0,0 +1,31 @@
+package tech.octopusdragon.dice.batch;
+
+/**
+ * Makes the current player's decisions in the games of a
+ * {@link BatchGameEngine}. The engine asks about every game in turn in a
+ * tight loop, so a decision should be quick and should not allocate.
+ * @author Alex Gill
+ *
+ */
+public interface BatchPlayer {
+
+	/**
+	 * Chooses the dice to roll again in a game. Only asked while the current
+	 * player has rolls left.
+	 * @param engine The games
+	 * @param game The index of the game
+	 * @return The dice to roll, with bit i set to roll die i, or 0 to stop
+	 * rolling
+	 */
+	int diceToRoll(BatchGameEngine engine, int game);
+
+
+
+	/**
+	 * Chooses the category to score the dice in, in a game.
+	 * @param engine The games
+	 * @param game The index of the game
+	 * @return The index of the category
+	 */
+	int category(BatchGameEngine engine, int game);
+}
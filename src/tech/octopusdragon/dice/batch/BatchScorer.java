@@ -0,0 +1,141 @@
+package tech.octopusdragon.dice.batch;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * Scores whole arrays of packed dice states in every category of a variant,
+ * for simulators and analytics jobs that score a generation of states at once.
+ * The states are worked through in blocks: the faces of a block are counted
+ * together, using the Vector API when the optional vector face counter has
+ * been compiled from {@code src-vector} and the {@code jdk.incubator.vector}
+ * module is present (run with {@code --add-modules jdk.incubator.vector}), and
+ * one state at a time otherwise, and then every category is scored from the
+ * counts. The scores are the same as {@link Category#score(int[], int)} gives.
+ * <p>
+ * A scorer keeps no state between calls, so it can be shared by threads.
+ * @author Alex Gill
+ *
+ */
+public class BatchScorer {
+
+	// --- Constants ---
+	private static final int BLOCK_SIZE = 1024;	// States counted together
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+	private static final String VECTOR_COUNTER = "tech.octopusdragon.dice.batch.VectorFaceCounter";
+
+	// The fastest way to count faces on this JVM
+	static final FaceCounter COUNTER = createCounter();
+
+	// --- Variant ---
+	private final Category[] categories;	// The categories to score
+	private final int numDice;		// The number of dice in each state
+	private final int numSides;		// The number of sides on each die
+
+
+
+	/**
+	 * Instantiates a scorer for the categories of a game.
+	 * @param game A game of the variant
+	 */
+	public BatchScorer(DiceGame game) {
+		this(game.categories(), game.numDice(), game.numSides());
+	}
+
+
+
+	/**
+	 * Instantiates a scorer.
+	 * @param categories The categories to score
+	 * @param numDice The number of dice in each state
+	 * @param numSides The number of sides on each die
+	 */
+	public BatchScorer(Category[] categories, int numDice, int numSides) {
+		if (numDice < 1 || numDice > PackedDice.MAX_DICE)
+			throw new IllegalArgumentException("Can only score 1 to " + PackedDice.MAX_DICE + " dice");
+		if (numSides < 1 || numSides > PackedDice.MAX_SIDES)
+			throw new IllegalArgumentException("Can only score dice with 1 to " + PackedDice.MAX_SIDES + " sides");
+		this.categories = categories.clone();
+		this.numDice = numDice;
+		this.numSides = numSides;
+	}
+
+
+
+	/**
+	 * Returns whether faces are counted with the Vector API.
+	 * @return Whether the Vector API is used
+	 */
+	public static boolean isVectorized() {
+		return !(COUNTER instanceof ScalarFaceCounter);
+	}
+
+
+
+	/**
+	 * Scores every state in every category.
+	 * @param states The packed states. Every die must show a face from 1 to
+	 * the number of sides.
+	 * @return The scores, indexed by category and then by state
+	 */
+	public int[][] score(int[] states) {
+		int[][] scores = new int[categories.length][states.length];
+		score(states, 0, states.length, scores, 0);
+		return scores;
+	}
+
+
+
+	/**
+	 * Scores a range of states in every category.
+	 * @param states The packed states. Every die must show a face from 1 to
+	 * the number of sides.
+	 * @param from The index of the first state to score
+	 * @param length The number of states to score
+	 * @param scores Receives the scores, indexed by category and then by state
+	 * @param offset Where the score of the first state goes in each category's
+	 * array
+	 */
+	public void score(int[] states, int from, int length, int[][] scores, int offset) {
+		if (scores.length != categories.length)
+			throw new IllegalArgumentException("Expected scores for " + categories.length + " categories");
+
+		int[][] blockCounts = new int[numSides + 1][BLOCK_SIZE];
+		int[] blockTotals = new int[BLOCK_SIZE];
+		int[] faceCounts = new int[numSides + 1];
+
+		for (int start = 0; start < length; start += BLOCK_SIZE) {
+			int blockLength = Math.min(BLOCK_SIZE, length - start);
+			COUNTER.count(states, from + start, blockLength, numDice, blockCounts, blockTotals);
+
+			// Score each state from its column of the counts
+			for (int i = 0; i < blockLength; i++) {
+				for (int face = 1; face <= numSides; face++)
+					faceCounts[face] = blockCounts[face][i];
+				for (int c = 0; c < categories.length; c++)
+					scores[c][offset + start + i] = categories[c].score(faceCounts, blockTotals[i]);
+			}
+		}
+	}
+
+
+
+	/**
+	 * Creates the face counter that uses the Vector API if it was compiled
+	 * and its module is present, or one that counts a state at a time if not.
+	 * @return The face counter
+	 */
+	private static FaceCounter createCounter() {
+		if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+			try {
+				return (FaceCounter) Class.forName(VECTOR_COUNTER).getDeclaredConstructor().newInstance();
+			} catch (ClassNotFoundException e) {
+				// Built without the vector face counter
+			} catch (ReflectiveOperationException | LinkageError e) {
+				System.out.println("Error loading the vector face counter, counting faces one state at a time...");
+				e.printStackTrace();
+			}
+		}
+		return new ScalarFaceCounter();
+	}
+}
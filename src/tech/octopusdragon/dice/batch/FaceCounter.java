@@ -0,0 +1,23 @@
+package tech.octopusdragon.dice.batch;
+
+/**
+ * Counts the faces shown by a block of packed dice states. The counts are
+ * stored by face rather than by state, so that a kernel can fill one face for
+ * many states at once.
+ * @author Alex Gill
+ *
+ */
+interface FaceCounter {
+
+	/**
+	 * Counts the faces and totals of a block of states.
+	 * @param states The packed states
+	 * @param from The index of the first state in the block
+	 * @param length The number of states in the block
+	 * @param numDice The number of dice in each state
+	 * @param faceCounts Receives, for each face, the number of dice showing it
+	 * in each state of the block. Index 0 is unused.
+	 * @param totals Receives the total of the dice in each state of the block
+	 */
+	void count(int[] states, int from, int length, int numDice, int[][] faceCounts, int[] totals);
+}
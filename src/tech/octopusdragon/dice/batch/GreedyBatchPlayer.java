@@ -0,0 +1,47 @@
+package tech.octopusdragon.dice.batch;
+
+/**
+ * Plays a simple strategy: keep the face showing most, rolling the rest until
+ * every die shows it or the rolls run out, then score in the open category
+ * worth the most. This is the strategy of the play-outs of
+ * {@link tech.octopusdragon.dice.solver.WinEstimator}.
+ * @author Alex Gill
+ *
+ */
+public class GreedyBatchPlayer implements BatchPlayer {
+
+	@Override
+	public int diceToRoll(BatchGameEngine engine, int game) {
+		int numSides = engine.numSides();
+		int kept = numSides;
+		for (int face = numSides - 1; face >= 1; face--)
+			if (engine.faceCount(game, face) > engine.faceCount(game, kept))
+				kept = face;
+
+		int state = engine.dice(game);
+		int mask = 0;
+		for (int die = 0; die < engine.numDice(); die++)
+			if (PackedDice.value(state, die) != kept)
+				mask |= 1 << die;
+		return mask;
+	}
+
+
+
+	@Override
+	public int category(BatchGameEngine engine, int game) {
+		int used = engine.usedMask(game, engine.curPlayerIndex());
+		int best = -1;
+		int bestPoints = -1;
+		for (int c = 0; c < engine.numCategories(); c++) {
+			if ((used & 1 << c) != 0)
+				continue;
+			int points = engine.potentialScore(game, c);
+			if (points > bestPoints) {
+				best = c;
+				bestPoints = points;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,89 @@
+package tech.octopusdragon.dice.batch;
+
+import tech.octopusdragon.dice.Die;
+
+/**
+ * Packs the values of a set of dice into a single int, four bits per die, so
+ * that large numbers of dice states can be kept in a primitive array. The
+ * first die is in the lowest four bits. Up to eight dice with up to fifteen
+ * sides can be packed.
+ * @author Alex Gill
+ *
+ */
+public final class PackedDice {
+
+	// --- Constants ---
+	public static final int BITS_PER_DIE = 4;	// The bits used by each die
+	public static final int MAX_DICE = Integer.SIZE / BITS_PER_DIE;	// The most dice in a state
+	public static final int MAX_SIDES = (1 << BITS_PER_DIE) - 1;	// The most sides on a die
+	static final int DIE_MASK = (1 << BITS_PER_DIE) - 1;	// Selects one die
+
+
+
+	/**
+	 * Cannot be instantiated.
+	 */
+	private PackedDice() {
+	}
+
+
+
+	/**
+	 * Packs dice values into a state.
+	 * @param values The dice values, each from 1 to {@link #MAX_SIDES}
+	 * @return The packed state
+	 */
+	public static int pack(int... values) {
+		if (values.length > MAX_DICE)
+			throw new IllegalArgumentException("At most " + MAX_DICE + " dice can be packed");
+
+		int state = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] < 1 || values[i] > MAX_SIDES)
+				throw new IllegalArgumentException("Die value out of range: " + values[i]);
+			state |= values[i] << (i * BITS_PER_DIE);
+		}
+		return state;
+	}
+
+
+
+	/**
+	 * Packs the values of dice into a state.
+	 * @param dice The dice
+	 * @return The packed state
+	 */
+	public static int pack(Die[] dice) {
+		int[] values = new int[dice.length];
+		for (int i = 0; i < dice.length; i++)
+			values[i] = dice[i].getValue();
+		return pack(values);
+	}
+
+
+
+	/**
+	 * Returns the value of one die in a state.
+	 * @param state The packed state
+	 * @param index The index of the die
+	 * @return The value of the die
+	 */
+	public static int value(int state, int index) {
+		return (state >>> (index * BITS_PER_DIE)) & DIE_MASK;
+	}
+
+
+
+	/**
+	 * Unpacks a state into dice values.
+	 * @param state The packed state
+	 * @param numDice The number of dice in the state
+	 * @return The dice values
+	 */
+	public static int[] unpack(int state, int numDice) {
+		int[] values = new int[numDice];
+		for (int i = 0; i < numDice; i++)
+			values[i] = value(state, i);
+		return values;
+	}
+}
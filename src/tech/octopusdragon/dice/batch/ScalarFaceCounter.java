@@ -0,0 +1,46 @@
+package tech.octopusdragon.dice.batch;
+
+import java.util.Arrays;
+
+/**
+ * Counts faces one state at a time. Used when the Vector API is not
+ * available.
+ * @author Alex Gill
+ *
+ */
+class ScalarFaceCounter implements FaceCounter {
+
+	@Override
+	public void count(int[] states, int from, int length, int numDice, int[][] faceCounts, int[] totals) {
+		count(states, from, 0, length, numDice, faceCounts, totals);
+	}
+
+
+
+	/**
+	 * Counts the faces and totals of part of a block of states.
+	 * @param states The packed states
+	 * @param from The index of the first state in the block
+	 * @param start The first state to count, relative to the block
+	 * @param end The state after the last one to count, relative to the block
+	 * @param numDice The number of dice in each state
+	 * @param faceCounts Receives the face counts of the states
+	 * @param totals Receives the totals of the states
+	 */
+	static void count(int[] states, int from, int start, int end, int numDice, int[][] faceCounts, int[] totals) {
+		for (int[] counts: faceCounts)
+			Arrays.fill(counts, start, end, 0);
+
+		for (int i = start; i < end; i++) {
+			int state = states[from + i];
+			int total = 0;
+			for (int die = 0; die < numDice; die++) {
+				int value = state & PackedDice.DIE_MASK;
+				faceCounts[value][i]++;
+				total += value;
+				state >>>= PackedDice.BITS_PER_DIE;
+			}
+			totals[i] = total;
+		}
+	}
+}
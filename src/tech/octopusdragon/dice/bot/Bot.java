@@ -0,0 +1,21 @@
+package tech.octopusdragon.dice.bot;
+
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * Plays the current player's turn in a dice game, one move at a time.
+ * @author Alex Gill
+ *
+ */
+public interface Bot {
+
+	/**
+	 * Chooses the current player's next move. The first move of a turn rolls
+	 * every die; after that, a bot may roll some of the dice while rolls are
+	 * left, or score the dice.
+	 * @param game The game, on the current player's turn before they have
+	 * scored
+	 * @return The move
+	 */
+	BotMove chooseMove(DiceGame game);
+}
@@ -0,0 +1,96 @@
+package tech.octopusdragon.dice.bot;
+
+import java.util.Arrays;
+
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * A move a bot makes: rolling some of the dice, or scoring the dice in a
+ * category.
+ * @author Alex Gill
+ *
+ */
+public final class BotMove {
+
+	private final int[] diceToRoll;	// The indexes of the dice to roll, or null to score
+	private final int categoryIndex;	// The category to score in, or -1 to roll
+
+
+
+	private BotMove(int[] diceToRoll, int categoryIndex) {
+		this.diceToRoll = diceToRoll;
+		this.categoryIndex = categoryIndex;
+	}
+
+
+
+	/**
+	 * Returns a move that rolls some of the dice.
+	 * @param dieIndexes The indexes of the dice to roll
+	 * @return The move
+	 */
+	public static BotMove roll(int... dieIndexes) {
+		return new BotMove(dieIndexes.clone(), -1);
+	}
+
+
+
+	/**
+	 * Returns a move that scores the dice in a category.
+	 * @param categoryIndex The index of the category in the game's categories
+	 * @return The move
+	 */
+	public static BotMove submit(int categoryIndex) {
+		return new BotMove(null, categoryIndex);
+	}
+
+
+
+	/**
+	 * Returns whether the move scores the dice.
+	 * @return Whether the move scores the dice
+	 */
+	public boolean isSubmit() {
+		return diceToRoll == null;
+	}
+
+
+
+	/**
+	 * Returns the indexes of the dice to roll.
+	 * @return The indexes of the dice, or null if the move scores the dice
+	 */
+	public int[] getDiceToRoll() {
+		return diceToRoll == null ? null : diceToRoll.clone();
+	}
+
+
+
+	/**
+	 * Returns the category to score in.
+	 * @return The index of the category, or -1 if the move rolls dice
+	 */
+	public int getCategoryIndex() {
+		return categoryIndex;
+	}
+
+
+
+	/**
+	 * Makes the move in a game. Scoring does not advance to the next player.
+	 * @param game The game
+	 */
+	public void apply(DiceGame game) {
+		if (isSubmit())
+			game.submit(game.categories()[categoryIndex]);
+		else
+			game.roll(diceToRoll);
+	}
+
+
+
+	@Override
+	public String toString() {
+		return isSubmit() ? "submit " + categoryIndex : "roll " + Arrays.toString(diceToRoll);
+	}
+}
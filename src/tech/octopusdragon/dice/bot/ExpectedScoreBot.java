@@ -0,0 +1,113 @@
+package tech.octopusdragon.dice.bot;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.solver.CachingPolicy;
+import tech.octopusdragon.dice.solver.DecisionCache;
+import tech.octopusdragon.dice.solver.DiceStates;
+import tech.octopusdragon.dice.solver.OptimalPolicy;
+import tech.octopusdragon.dice.solver.Policy;
+
+/**
+ * Plays to score as many points as possible on average, ignoring the other
+ * players, by following an {@link OptimalPolicy}. Bots given a
+ * {@link DecisionCache} look their decisions up in it first, so bots playing
+ * many games of the same variant seldom have to solve a turn.
+ * @author Alex Gill
+ *
+ */
+public class ExpectedScoreBot implements Bot {
+
+	private final OptimalPolicy policy;	// The solved variant
+	private final Policy decisions;		// The decisions, from the cache if there is one
+	private final Category[] categories;	// The categories of the variant
+	private final int numRolls;			// The number of rolls per turn
+
+
+
+	/**
+	 * Instantiates a bot for the variant of a game, solving it.
+	 * @param game A game of the variant
+	 */
+	public ExpectedScoreBot(DiceGame game) {
+		this(new OptimalPolicy(new DiceStates(game.numDice(), game.numSides()), game.categories(), game.numRolls()),
+				game.categories(), game.numRolls());
+	}
+
+
+
+	/**
+	 * Instantiates a bot from a solved variant.
+	 * @param policy The solved variant
+	 * @param categories The categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 */
+	public ExpectedScoreBot(OptimalPolicy policy, Category[] categories, int numRolls) {
+		this(policy, categories, numRolls, null);
+	}
+
+
+
+	/**
+	 * Instantiates a bot from a solved variant that caches its decisions.
+	 * @param policy The solved variant
+	 * @param categories The categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 * @param cache The decisions made so far, shared only with bots of the
+	 * same variant, or null to solve every turn
+	 */
+	public ExpectedScoreBot(OptimalPolicy policy, Category[] categories, int numRolls, DecisionCache cache) {
+		this.policy = policy;
+		decisions = cache == null ? policy : new CachingPolicy(policy, cache);
+		this.categories = categories.clone();
+		this.numRolls = numRolls;
+	}
+
+
+
+	@Override
+	public BotMove chooseMove(DiceGame game) {
+		Die[] dice = game.getDice();
+		if (game.rollsLeft() == numRolls)
+			return BotMove.roll(allDice(dice.length));
+
+		DiceStates states = policy.getStates();
+		Policy.TurnPolicy turn = decisions.turn(Policy.usedMask(game.curPlayer(), categories));
+		int rolled = states.index(dice);
+		if (game.rollsLeft() > 0) {
+			int kept = turn.keep(game.rollsLeft(), rolled);
+			if (kept != rolled)
+				return BotMove.roll(states.diceToRoll(values(dice), kept));
+		}
+		return BotMove.submit(turn.category(rolled));
+	}
+
+
+
+	/**
+	 * Returns the indexes of every die.
+	 * @param numDice The number of dice
+	 * @return The indexes
+	 */
+	static int[] allDice(int numDice) {
+		int[] dieIndexes = new int[numDice];
+		for (int i = 0; i < numDice; i++)
+			dieIndexes[i] = i;
+		return dieIndexes;
+	}
+
+
+
+	/**
+	 * Returns the values of dice.
+	 * @param dice The dice
+	 * @return The values
+	 */
+	static int[] values(Die[] dice) {
+		int[] values = new int[dice.length];
+		for (int i = 0; i < dice.length; i++)
+			values[i] = dice[i].getValue();
+		return values;
+	}
+}
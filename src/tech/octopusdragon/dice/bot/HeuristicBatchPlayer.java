@@ -0,0 +1,86 @@
+package tech.octopusdragon.dice.bot;
+
+import tech.octopusdragon.dice.batch.BatchGameEngine;
+import tech.octopusdragon.dice.batch.BatchPlayer;
+import tech.octopusdragon.dice.batch.PackedDice;
+
+/**
+ * Plays the games of a {@link BatchGameEngine} by a {@link HeuristicPolicy},
+ * for tuning and simulating it. A player keeps scratch space for its
+ * decisions, so it should be used by one thread at a time.
+ * @author Alex Gill
+ *
+ */
+public class HeuristicBatchPlayer implements BatchPlayer {
+
+	private final HeuristicPolicy policy;	// Makes the decisions
+
+	// Scratch space
+	private final int[] points;		// The points of each category
+	private int[] faceCounts = new int[0];	// The dice showing each face
+	private int[] kept = new int[0];		// The dice of each face to keep
+
+
+
+	/**
+	 * Instantiates a player.
+	 * @param policy Makes the decisions
+	 */
+	public HeuristicBatchPlayer(HeuristicPolicy policy) {
+		this.policy = policy;
+		points = new int[policy.numCategories()];
+	}
+
+
+
+	@Override
+	public int diceToRoll(BatchGameEngine engine, int game) {
+		int used = fillPoints(engine, game);
+		if (policy.stop(points, used, engine.rollsLeft(game)))
+			return 0;
+
+		int numSides = engine.numSides();
+		if (faceCounts.length != numSides + 1) {
+			faceCounts = new int[numSides + 1];
+			kept = new int[numSides + 1];
+		}
+		for (int face = 1; face <= numSides; face++)
+			faceCounts[face] = engine.faceCount(game, face);
+		policy.keep(faceCounts, numSides, kept);
+
+		int state = engine.dice(game);
+		int mask = 0;
+		for (int die = 0; die < engine.numDice(); die++) {
+			int value = PackedDice.value(state, die);
+			if (kept[value] > 0)
+				kept[value]--;
+			else
+				mask |= 1 << die;
+		}
+		return mask;
+	}
+
+
+
+	@Override
+	public int category(BatchGameEngine engine, int game) {
+		int used = fillPoints(engine, game);
+		return policy.category(points, used);
+	}
+
+
+
+	/**
+	 * Works out the points the dice of a game would score in each open
+	 * category.
+	 * @param engine The games
+	 * @param game The index of the game
+	 * @return The current player's used categories
+	 */
+	private int fillPoints(BatchGameEngine engine, int game) {
+		int used = engine.usedMask(game, engine.curPlayerIndex());
+		for (int c = 0; c < points.length; c++)
+			points[c] = (used & 1 << c) == 0 ? engine.potentialScore(game, c) : 0;
+		return used;
+	}
+}
@@ -0,0 +1,71 @@
+package tech.octopusdragon.dice.bot;
+
+import java.util.Arrays;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.solver.Policy;
+
+/**
+ * Plays by a {@link HeuristicPolicy}: a strong bot once the policy is tuned,
+ * but cheap enough for machines that cannot run a solver.
+ * @author Alex Gill
+ *
+ */
+public class HeuristicBot implements Bot {
+
+	private final HeuristicPolicy policy;	// Makes the decisions
+	private final Category[] categories;	// The categories of the variant
+	private final int numRolls;			// The number of rolls per turn
+
+
+
+	/**
+	 * Instantiates a bot.
+	 * @param policy Makes the decisions
+	 * @param game A game of the variant
+	 */
+	public HeuristicBot(HeuristicPolicy policy, DiceGame game) {
+		if (policy.numCategories() != game.categories().length || policy.numRolls() != game.numRolls())
+			throw new IllegalArgumentException("The policy is for another variant");
+		this.policy = policy;
+		categories = game.categories();
+		numRolls = game.numRolls();
+	}
+
+
+
+	@Override
+	public BotMove chooseMove(DiceGame game) {
+		Die[] dice = game.getDice();
+		if (game.rollsLeft() == numRolls)
+			return BotMove.roll(ExpectedScoreBot.allDice(dice.length));
+
+		int used = Policy.usedMask(game.curPlayer(), categories);
+		int[] points = new int[categories.length];
+		for (int c = 0; c < categories.length; c++)
+			points[c] = (used & 1 << c) == 0 ? game.potentialScore(c) : 0;
+
+		if (game.rollsLeft() > 0 && !policy.stop(points, used, game.rollsLeft())) {
+			int numSides = game.numSides();
+			int[] faceCounts = new int[numSides + 1];
+			for (Die die: dice)
+				faceCounts[die.getValue()]++;
+			int[] kept = new int[numSides + 1];
+			policy.keep(faceCounts, numSides, kept);
+
+			int[] toRoll = new int[dice.length];
+			int numToRoll = 0;
+			for (int i = 0; i < dice.length; i++) {
+				if (kept[dice[i].getValue()] > 0)
+					kept[dice[i].getValue()]--;
+				else
+					toRoll[numToRoll++] = i;
+			}
+			if (numToRoll > 0)
+				return BotMove.roll(Arrays.copyOf(toRoll, numToRoll));
+		}
+		return BotMove.submit(policy.category(points, used));
+	}
+}
@@ -0,0 +1,234 @@
+package tech.octopusdragon.dice.bot;
+
+import java.util.Arrays;
+
+import tech.octopusdragon.dice.Category;
+
+/**
+ * A few simple rules of thumb for playing a variant, with their strengths set
+ * by a vector of numbers, so they can be tuned rather than guessed. The rules
+ * look only at the dice's face counts and the points each category would
+ * score, so a decision takes a few dozen steps and no memory, however big the
+ * variant.
+ * <p>
+ * The value of scoring in a category is its points times the category's
+ * weight, less the points it is worth keeping the category open for later.
+ * The dice are scored in the open category of highest value. A player stops
+ * rolling once the highest value reaches the threshold for the rolls they
+ * have left. Otherwise they keep either every die of their favourite face,
+ * the one showing most with a bias towards high faces, or one die of each
+ * face in the longest run of faces in a row, if it is long enough.
+ * <p>
+ * The parameters, in order:
+ * <ul>
+ * <li>the weight of each category</li>
+ * <li>the points worth keeping each category open for</li>
+ * <li>the value to stop rolling at with 1, 2, ... rolls left</li>
+ * <li>the bias towards high faces, in dice per side</li>
+ * <li>the shortest run worth keeping</li>
+ * </ul>
+ * @author Alex Gill
+ *
+ */
+public class HeuristicPolicy {
+
+	private final int numCategories;	// The number of categories
+	private final int numRolls;			// The number of rolls per turn
+	private final double[] parameters;	// The strengths of the rules
+
+	// The parameters, split up
+	private final double[] weights;		// The weight of each category
+	private final double[] reserves;	// The points worth keeping each category open for
+	private final double[] stopValues;	// The value to stop rolling at, by rolls left - 1
+	private final double faceBias;		// The bias towards high faces, in dice per side
+	private final double minRun;		// The shortest run worth keeping
+
+
+
+	/**
+	 * Instantiates a policy.
+	 * @param numCategories The number of categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 * @param parameters The strengths of the rules, as described above
+	 */
+	public HeuristicPolicy(int numCategories, int numRolls, double[] parameters) {
+		if (parameters.length != numParameters(numCategories, numRolls))
+			throw new IllegalArgumentException("Expected " + numParameters(numCategories, numRolls) + " parameters");
+		this.numCategories = numCategories;
+		this.numRolls = numRolls;
+		this.parameters = parameters.clone();
+		int at = 0;
+		weights = Arrays.copyOfRange(parameters, at, at += numCategories);
+		reserves = Arrays.copyOfRange(parameters, at, at += numCategories);
+		stopValues = Arrays.copyOfRange(parameters, at, at += numRolls - 1);
+		faceBias = parameters[at++];
+		minRun = parameters[at++];
+	}
+
+
+
+	/**
+	 * Returns the number of parameters of a policy for a variant.
+	 * @param numCategories The number of categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 * @return The number of parameters
+	 */
+	public static int numParameters(int numCategories, int numRolls) {
+		return 2 * numCategories + numRolls - 1 + 2;
+	}
+
+
+
+	/**
+	 * Returns the names of the parameters of a policy for a variant.
+	 * @param categories The categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 * @return The names, in the order of the parameters
+	 */
+	public static String[] parameterNames(Category[] categories, int numRolls) {
+		String[] names = new String[numParameters(categories.length, numRolls)];
+		int at = 0;
+		for (Category category: categories)
+			names[at++] = "weight." + category.getName();
+		for (Category category: categories)
+			names[at++] = "reserve." + category.getName();
+		for (int rollsLeft = 1; rollsLeft < numRolls; rollsLeft++)
+			names[at++] = "stop." + rollsLeft;
+		names[at++] = "faceBias";
+		names[at++] = "minRun";
+		return names;
+	}
+
+
+
+	/**
+	 * Returns parameters to start tuning from: score the most points now,
+	 * roll while there is little to score, and chase faces showing most.
+	 * @param numCategories The number of categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 * @param numDice The number of dice
+	 * @return The parameters
+	 */
+	public static double[] defaults(int numCategories, int numRolls, int numDice) {
+		double[] parameters = new double[numParameters(numCategories, numRolls)];
+		int at = 0;
+		for (int c = 0; c < numCategories; c++)
+			parameters[at++] = 1.0;
+		at += numCategories;
+		for (int rollsLeft = 1; rollsLeft < numRolls; rollsLeft++)
+			parameters[at++] = 25.0;
+		parameters[at++] = 0.5;
+		parameters[at++] = numDice;
+		return parameters;
+	}
+
+
+
+	/**
+	 * Chooses the category to score the dice in.
+	 * @param points The points the dice would score in each category
+	 * @param usedMask The categories already used, one bit per category
+	 * @return The index of the open category of highest value
+	 */
+	public int category(int[] points, int usedMask) {
+		int best = -1;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int c = 0; c < numCategories; c++) {
+			if ((usedMask & 1 << c) != 0)
+				continue;
+			double value = points[c] * weights[c] - reserves[c];
+			if (value > bestValue) {
+				best = c;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+
+
+	/**
+	 * Decides whether to stop rolling.
+	 * @param points The points the dice would score in each category
+	 * @param usedMask The categories already used, one bit per category
+	 * @param rollsLeft The rolls left, from 1 to one less than the rolls per
+	 * turn
+	 * @return Whether the value of the best category is high enough to stop
+	 */
+	public boolean stop(int[] points, int usedMask, int rollsLeft) {
+		int c = category(points, usedMask);
+		return points[c] * weights[c] - reserves[c] >= stopValues[rollsLeft - 1];
+	}
+
+
+
+	/**
+	 * Chooses the dice to keep when rolling again.
+	 * @param faceCounts The dice showing each face, indexed by face from 1
+	 * @param numSides The number of sides on each die
+	 * @param kept Receives the number of dice of each face to keep, indexed
+	 * by face from 1
+	 */
+	public void keep(int[] faceCounts, int numSides, int[] kept) {
+		Arrays.fill(kept, 0, numSides + 1, 0);
+
+		// Find the longest run of faces in a row, preferring high ones
+		int runEnd = 0;
+		int runLength = 0;
+		int length = 0;
+		for (int face = 1; face <= numSides; face++) {
+			length = faceCounts[face] > 0 ? length + 1 : 0;
+			if (length > 0 && length >= runLength) {
+				runEnd = face;
+				runLength = length;
+			}
+		}
+		if (runLength > 1 && runLength >= minRun) {
+			for (int face = runEnd - runLength + 1; face <= runEnd; face++)
+				kept[face] = 1;
+			return;
+		}
+
+		// Otherwise keep the favourite face
+		int favourite = 1;
+		double favouriteValue = Double.NEGATIVE_INFINITY;
+		for (int face = 1; face <= numSides; face++) {
+			double value = faceCounts[face] + faceBias * face / numSides;
+			if (faceCounts[face] > 0 && value >= favouriteValue) {
+				favourite = face;
+				favouriteValue = value;
+			}
+		}
+		kept[favourite] = faceCounts[favourite];
+	}
+
+
+
+	/**
+	 * Returns the number of categories of the variant.
+	 * @return The number of categories
+	 */
+	public int numCategories() {
+		return numCategories;
+	}
+
+
+
+	/**
+	 * Returns the number of rolls per turn of the variant.
+	 * @return The number of rolls
+	 */
+	public int numRolls() {
+		return numRolls;
+	}
+
+
+
+	/**
+	 * Returns the strengths of the rules.
+	 * @return A copy of the parameters
+	 */
+	public double[] getParameters() {
+		return parameters.clone();
+	}
+}
@@ -0,0 +1,591 @@
+package tech.octopusdragon.dice.bot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.solver.CachingPolicy;
+import tech.octopusdragon.dice.solver.DecisionCache;
+import tech.octopusdragon.dice.solver.DiceStates;
+import tech.octopusdragon.dice.solver.Policy;
+import tech.octopusdragon.dice.solver.ScoreDistribution;
+import tech.octopusdragon.dice.solver.ScoreDistributionEngine;
+import tech.octopusdragon.dice.solver.WinProbability;
+
+/**
+ * Plays to win rather than to score the most points on average, using Monte
+ * Carlo tree search over the whole game. Decision nodes are the players'
+ * choices of dice to keep and categories to score in; each choice leads to a
+ * chance node for the roll that follows, whose outcomes are sampled with the
+ * probabilities of the dice. Each player picks the choice best for their own
+ * chance of winning.
+ * <p>
+ * Instead of playing random games to the end, a new position is valued by
+ * finishing the current turn with the optimal expected-score plan and then
+ * looking up every player's distribution of final scores in a
+ * {@link ScoreDistributionEngine}, giving each player's chance of winning
+ * directly. The plans' decisions are looked up in a {@link DecisionCache},
+ * which may be shared with other bots of the variant playing for the most
+ * points, such as an {@link ExpectedScoreBot}.
+ * <p>
+ * The search runs on several threads sharing one tree. A thread going down
+ * an edge adds a virtual loss to it until its result comes back, so the other
+ * threads spread out over other edges. The part of the tree below the
+ * position reached is kept for the next move, and each move searches until
+ * its time budget runs out.
+ * <p>
+ * {@link #close()} stops the search threads.
+ * @author Alex Gill
+ *
+ */
+public class MctsBot implements Bot, AutoCloseable {
+
+	// --- Constants ---
+	public static final long DEFAULT_BUDGET_MILLIS = 100;	// The time to search per move
+	private static final long MARGIN_NANOS = 2_000_000;	// Left of the budget to answer in
+	private static final double EXPLORATION = 0.7;		// The weight of exploration
+	private static final double PRIOR_WEIGHT = 1.0;		// The weight of the expected-score choice
+	private static final double CONFIDENCE = 3.5;	// Standard errors needed to overrule it
+	private static final int REUSE_DEPTH = 24;	// How deep to look for the new position
+	private static final long DEFAULT_CACHE_BYTES = 16L << 20;	// Memory of the cache of decisions by default
+	private static final double SCALE = 1 << 20;	// Fixed point scale of the win shares
+
+	// --- Variant ---
+	private final ScoreDistributionEngine engine;	// Distributions of final scores
+	private final DiceStates states;	// The dice states
+	private final Policy policy;		// Finishes turns when valuing positions, through the cache
+	private final int numCategories;	// The number of categories
+	private final Category[] categories;	// The categories
+	private final int fullMask;			// Every category used
+	private final int numRolls;			// The number of rolls per turn
+	private final int[][] scores;		// The score of each rolled state, by category
+	private final double[][] cumulative;	// Cumulative outcome probabilities, by kept state
+
+	// --- Search ---
+	private final long budgetNanos;		// The time to search per move
+	private final int numThreads;		// The number of search threads
+	private final ExecutorService workers;	// Runs the search threads
+	private DecisionNode root;			// The position of the last move
+
+
+
+	/**
+	 * Instantiates a bot for the variant of a game that searches for the
+	 * default time on every core.
+	 * @param game A game of the variant
+	 */
+	public MctsBot(DiceGame game) {
+		this(game, DEFAULT_BUDGET_MILLIS, Runtime.getRuntime().availableProcessors());
+	}
+
+
+
+	/**
+	 * Instantiates a bot for the variant of a game with a cache of decisions
+	 * of its own. Solving the variant's score distributions the first time can
+	 * take a few seconds.
+	 * @param game A game of the variant
+	 * @param budgetMillis The time to search per move
+	 * @param numThreads The number of search threads
+	 */
+	public MctsBot(DiceGame game, long budgetMillis, int numThreads) {
+		this(game, budgetMillis, numThreads, DecisionCache.withMemory(DEFAULT_CACHE_BYTES));
+	}
+
+
+
+	/**
+	 * Instantiates a bot for the variant of a game. Solving the variant's
+	 * score distributions the first time can take a few seconds.
+	 * @param game A game of the variant
+	 * @param budgetMillis The time to search per move
+	 * @param numThreads The number of search threads
+	 * @param cache The decisions of optimal expected-score play made so far,
+	 * shared only with bots of the same variant playing that way
+	 */
+	public MctsBot(DiceGame game, long budgetMillis, int numThreads, DecisionCache cache) {
+		engine = ScoreDistributionEngine.optimal(game);
+		states = engine.getStates();
+		policy = new CachingPolicy(engine.getPolicy(), cache, states, game.numRolls());
+		categories = game.categories();
+		numCategories = categories.length;
+		fullMask = (1 << numCategories) - 1;
+		numRolls = game.numRolls();
+		scores = new int[numCategories][];
+		for (int c = 0; c < numCategories; c++)
+			scores[c] = states.scores(categories[c]);
+		cumulative = new double[states.numStates()][];
+		for (int kept = 0; kept < cumulative.length; kept++) {
+			double[] probabilities = states.probabilities(kept);
+			cumulative[kept] = new double[probabilities.length];
+			double sum = 0.0;
+			for (int i = 0; i < probabilities.length; i++)
+				cumulative[kept][i] = sum += probabilities[i];
+		}
+
+		budgetNanos = budgetMillis * 1_000_000;
+		this.numThreads = numThreads;
+		workers = Executors.newFixedThreadPool(numThreads, runnable -> {
+			Thread thread = new Thread(runnable, "MCTS search");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+
+	@Override
+	public BotMove chooseMove(DiceGame game) {
+		Die[] dice = game.getDice();
+		if (game.rollsLeft() == numRolls)
+			return BotMove.roll(ExpectedScoreBot.allDice(dice.length));
+
+		// Carry on from the last search if the position is in its tree
+		State state = State.of(game, categories, states);
+		DecisionNode node = find(root, state);
+		root = node != null ? node : new DecisionNode(state);
+		root.expand();
+
+		// Search until the budget runs out, unless there is only one choice
+		if (root.children.length > 1)
+			search(root, System.nanoTime() + budgetNanos - MARGIN_NANOS);
+
+		// Make the expected-score choice unless another one is clearly
+		// better at winning
+		ChanceNode best = root.children[root.preferred];
+		double bestMean = mean(best, state.player);
+		double preferredMean = bestMean;
+		double preferredError = error(best, state.player);
+		for (ChanceNode child: root.children) {
+			double mean = mean(child, state.player);
+			double error = Math.sqrt(preferredError * preferredError + Math.pow(error(child, state.player), 2));
+			if (mean > bestMean && mean - preferredMean > CONFIDENCE * error) {
+				best = child;
+				bestMean = mean;
+			}
+		}
+		if (best.action < 0)
+			return BotMove.submit(-best.action - 1);
+		return BotMove.roll(states.diceToRoll(ExpectedScoreBot.values(dice), best.action));
+	}
+
+
+
+	/**
+	 * Searches the tree on every search thread until a deadline.
+	 * @param root The position to search from
+	 * @param deadline The time to stop, from {@link System#nanoTime()}
+	 */
+	private void search(DecisionNode root, long deadline) {
+		long seed = System.nanoTime();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < numThreads; i++) {
+			SplittableRandom random = new SplittableRandom(seed + i);
+			tasks.add(() -> {
+				while (System.nanoTime() < deadline)
+					iterate(root, random);
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> result: workers.invokeAll(tasks))
+				result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("The search failed", e.getCause());
+		}
+	}
+
+
+
+	/**
+	 * Goes down the tree once, values the position reached and passes the
+	 * value back up.
+	 * @param root The position to search from
+	 * @param random Samples the rolls
+	 */
+	private void iterate(DecisionNode root, SplittableRandom random) {
+		List<ChanceNode> path = new ArrayList<ChanceNode>();
+		DecisionNode node = root;
+		double[] wins;
+		while (true) {
+			if (node.state.isOver(fullMask)) {
+				wins = WinProbability.of(node.state.totals);
+				break;
+			}
+			if (node.visits.getAndIncrement() == 0 && node != root) {
+				wins = evaluate(node.state, random);
+				break;
+			}
+			node.expand();
+			ChanceNode edge = select(node);
+			edge.virtualLoss.incrementAndGet();
+			path.add(edge);
+			node = edge.child(edge.sample(random));
+		}
+
+		for (ChanceNode edge: path) {
+			for (int player = 0; player < wins.length; player++)
+				edge.wins.addAndGet(player, (long) (wins[player] * SCALE));
+			edge.visits.incrementAndGet();
+			edge.virtualLoss.decrementAndGet();
+		}
+	}
+
+
+
+	/**
+	 * Returns a player's average win share through a choice.
+	 * @param edge The choice
+	 * @param player The index of the player
+	 * @return The average win share, or 0 if the choice was not searched
+	 */
+	private static double mean(ChanceNode edge, int player) {
+		int visits = edge.visits.get();
+		return visits == 0 ? 0.0 : edge.wins.get(player) / SCALE / visits;
+	}
+
+
+
+	/**
+	 * Returns the standard error of a player's average win share through a
+	 * choice, using the largest variance a share can have for its average.
+	 * @param edge The choice
+	 * @param player The index of the player
+	 * @return The standard error, or infinity if the choice was not searched
+	 */
+	private static double error(ChanceNode edge, int player) {
+		int visits = edge.visits.get();
+		double mean = mean(edge, player);
+		return visits == 0 ? Double.POSITIVE_INFINITY : Math.sqrt(mean * (1.0 - mean) / visits);
+	}
+
+
+
+	/**
+	 * Picks the choice with the best upper confidence bound for the player
+	 * choosing, with a bias towards the expected-score choice that fades as
+	 * it is searched. Edges being searched by other threads count as losses.
+	 * @param node The position
+	 * @return The edge of the choice
+	 */
+	private ChanceNode select(DecisionNode node) {
+		int player = node.state.player;
+		double logVisits = Math.log(node.visits.get() + 1);
+		ChanceNode best = null;
+		double bestBound = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < node.children.length; i++) {
+			ChanceNode child = node.children[i];
+			int visits = child.visits.get() + child.virtualLoss.get();
+			if (visits == 0)
+				return child;
+			double bound = child.wins.get(player) / SCALE / visits + EXPLORATION * Math.sqrt(logVisits / visits);
+			if (i == node.preferred)
+				bound += PRIOR_WEIGHT / visits;
+			if (bound > bestBound) {
+				bestBound = bound;
+				best = child;
+			}
+		}
+		return best;
+	}
+
+
+
+	/**
+	 * Values a position by finishing the current turn with the expected-score
+	 * plan and working out every player's chance of winning from the
+	 * distributions of their final scores.
+	 * @param state The position
+	 * @param random Samples the rolls
+	 * @return The chance of each player winning
+	 */
+	private double[] evaluate(State state, SplittableRandom random) {
+		int player = state.player;
+		int usedMask = state.usedMasks[player];
+		Policy.TurnPolicy turn = plan(usedMask);
+
+		int rolled = state.rolled;
+		for (int rollsLeft = state.rollsLeft; rollsLeft >= 1; rollsLeft--) {
+			int kept = turn.keep(rollsLeft, rolled);
+			if (kept == rolled)
+				break;
+			rolled = states.outcomes(kept)[sample(kept, random)];
+		}
+		int category = turn.category(rolled);
+
+		ScoreDistribution[] finals = new ScoreDistribution[state.totals.length];
+		for (int i = 0; i < finals.length; i++) {
+			if (i == player)
+				finals[i] = engine.remaining(usedMask | 1 << category)
+						.plus(state.totals[i] + scores[category][rolled]);
+			else
+				finals[i] = engine.remaining(state.usedMasks[i]).plus(state.totals[i]);
+		}
+		return WinProbability.of(finals);
+	}
+
+
+
+	/**
+	 * Returns the expected-score plan of a turn, whose decisions are looked
+	 * up in the cache and only solved when missing.
+	 * @param usedMask The categories used
+	 * @return The plan
+	 */
+	private Policy.TurnPolicy plan(int usedMask) {
+		return policy.turn(usedMask);
+	}
+
+
+
+	/**
+	 * Samples the outcome of rolling the dice not kept.
+	 * @param kept The kept state
+	 * @param random The random number generator
+	 * @return The index of the outcome in {@link DiceStates#outcomes(int)}
+	 */
+	private int sample(int kept, SplittableRandom random) {
+		double[] chances = cumulative[kept];
+		int i = Arrays.binarySearch(chances, random.nextDouble());
+		i = i < 0 ? -i - 1 : i + 1;
+		return Math.min(i, chances.length - 1);
+	}
+
+
+
+	/**
+	 * Looks for a position in the tree below a node, breadth first.
+	 * @param from The node to look below, or null
+	 * @param state The position
+	 * @return The node of the position, or null if it is not in the tree
+	 */
+	private static DecisionNode find(DecisionNode from, State state) {
+		if (from == null)
+			return null;
+		ArrayDeque<DecisionNode> queue = new ArrayDeque<DecisionNode>();
+		ArrayDeque<Integer> depths = new ArrayDeque<Integer>();
+		queue.add(from);
+		depths.add(0);
+		while (!queue.isEmpty()) {
+			DecisionNode node = queue.poll();
+			int depth = depths.poll();
+			if (node.state.equals(state))
+				return node;
+			if (node.children == null || depth == REUSE_DEPTH)
+				continue;
+			for (ChanceNode edge: node.children) {
+				AtomicReferenceArray<DecisionNode> outcomes = edge.outcomes;
+				if (outcomes == null)
+					continue;
+				for (int i = 0; i < outcomes.length(); i++) {
+					DecisionNode child = outcomes.get(i);
+					if (child != null) {
+						queue.add(child);
+						depths.add(depth + 1);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+
+
+	@Override
+	public void close() {
+		workers.shutdownNow();
+	}
+
+
+
+	/**
+	 * A position where a player has rolled and must choose.
+	 */
+	private static final class State {
+
+		final int[] usedMasks;	// The categories each player has used
+		final int[] totals;		// Each player's total score
+		final int player;		// The player choosing
+		final int rolled;		// The dice as rolled
+		final int rollsLeft;	// The rolls the player has left
+
+		State(int[] usedMasks, int[] totals, int player, int rolled, int rollsLeft) {
+			this.usedMasks = usedMasks;
+			this.totals = totals;
+			this.player = player;
+			this.rolled = rolled;
+			this.rollsLeft = rollsLeft;
+		}
+
+		static State of(DiceGame game, Category[] categories, DiceStates states) {
+			int[] usedMasks = new int[game.numPlayers()];
+			int[] totals = new int[game.numPlayers()];
+			for (int i = 0; i < usedMasks.length; i++) {
+				usedMasks[i] = Policy.usedMask(game.getPlayer(i), categories);
+				totals[i] = game.getPlayer(i).getTotalScore();
+			}
+			return new State(usedMasks, totals, game.curPlayerIndex(), states.index(game.getDice()), game.rollsLeft());
+		}
+
+		boolean isOver(int fullMask) {
+			for (int usedMask: usedMasks)
+				if (usedMask != fullMask)
+					return false;
+			return true;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof State))
+				return false;
+			State state = (State) other;
+			return player == state.player && rolled == state.rolled && rollsLeft == state.rollsLeft
+					&& Arrays.equals(usedMasks, state.usedMasks) && Arrays.equals(totals, state.totals);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(usedMasks) * 31 + Arrays.hashCode(totals) + player * 7 + rolled * 13 + rollsLeft;
+		}
+	}
+
+
+
+	/**
+	 * A position where a player chooses. Its choices are expanded the first
+	 * time the search goes through it after valuing it.
+	 */
+	private final class DecisionNode {
+
+		final State state;		// The position
+		final AtomicInteger visits = new AtomicInteger();	// Times searched through
+		volatile ChanceNode[] children;	// The choices, or null before expansion
+		int preferred;			// The index of the expected-score choice
+
+		DecisionNode(State state) {
+			this.state = state;
+		}
+
+		void expand() {
+			if (children != null)
+				return;
+			synchronized (this) {
+				if (children != null)
+					return;
+				List<ChanceNode> choices = new ArrayList<ChanceNode>();
+				if (!state.isOver(fullMask)) {
+					Policy.TurnPolicy turn = plan(state.usedMasks[state.player]);
+					int preferredAction = -turn.category(state.rolled) - 1;
+					if (state.rollsLeft > 0) {
+						int preferredKept = turn.keep(state.rollsLeft, state.rolled);
+						if (preferredKept != state.rolled)
+							preferredAction = preferredKept;
+						for (int kept: states.keeps(state.rolled))
+							if (kept != state.rolled)
+								choices.add(new ChanceNode(this, kept));
+					}
+					for (int c = 0; c < numCategories; c++)
+						if ((state.usedMasks[state.player] & 1 << c) == 0)
+							choices.add(new ChanceNode(this, -c - 1));
+					for (int i = 0; i < choices.size(); i++)
+						if (choices.get(i).action == preferredAction)
+							preferred = i;
+				}
+				children = choices.toArray(new ChanceNode[0]);
+			}
+		}
+	}
+
+
+
+	/**
+	 * A choice and the roll that follows it. The statistics of the choice are
+	 * kept here.
+	 */
+	private final class ChanceNode {
+
+		final DecisionNode parent;	// The position the choice is made in
+		final int action;		// The state kept, or -1 - the category scored
+		final int kept;			// The dice kept for the roll, or -1 if the game is over
+		volatile AtomicReferenceArray<DecisionNode> outcomes;	// The positions after the roll, once rolled
+		final AtomicInteger visits = new AtomicInteger();	// Finished searches through the choice
+		final AtomicInteger virtualLoss = new AtomicInteger();	// Searches under way
+		final AtomicLongArray wins;	// The sum of each player's win shares
+
+		ChanceNode(DecisionNode parent, int action) {
+			this.parent = parent;
+			this.action = action;
+			State state = parent.state;
+			wins = new AtomicLongArray(state.totals.length);
+			if (action >= 0) {
+				kept = action;
+			}
+			else {
+				int[] usedMasks = state.usedMasks.clone();
+				usedMasks[state.player] |= 1 << (-action - 1);
+				boolean over = true;
+				for (int usedMask: usedMasks)
+					over &= usedMask == fullMask;
+				kept = over ? -1 : states.emptyState();
+			}
+		}
+
+		int sample(SplittableRandom random) {
+			return kept < 0 ? 0 : MctsBot.this.sample(kept, random);
+		}
+
+		DecisionNode child(int outcome) {
+			AtomicReferenceArray<DecisionNode> outcomes = this.outcomes;
+			if (outcomes == null) {
+				synchronized (this) {
+					outcomes = this.outcomes;
+					if (outcomes == null)
+						this.outcomes = outcomes = new AtomicReferenceArray<DecisionNode>(
+								kept < 0 ? 1 : states.outcomes(kept).length);
+				}
+			}
+			DecisionNode child = outcomes.get(outcome);
+			if (child == null) {
+				outcomes.compareAndSet(outcome, null, new DecisionNode(next(outcome)));
+				child = outcomes.get(outcome);
+			}
+			return child;
+		}
+
+		/**
+		 * Works out the position after the choice and an outcome of the roll.
+		 */
+		private State next(int outcome) {
+			State state = parent.state;
+			if (action >= 0)
+				return new State(state.usedMasks, state.totals, state.player,
+						states.outcomes(kept)[outcome], state.rollsLeft - 1);
+
+			// Score, then the next player rolls every die
+			int category = -action - 1;
+			int[] usedMasks = state.usedMasks.clone();
+			int[] totals = state.totals.clone();
+			usedMasks[state.player] |= 1 << category;
+			totals[state.player] += scores[category][state.rolled];
+			if (kept < 0)
+				return new State(usedMasks, totals, state.player, state.rolled, 0);
+			return new State(usedMasks, totals, (state.player + 1) % totals.length,
+					states.outcomes(kept)[outcome], numRolls - 1);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package tech.octopusdragon.dice.bot;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.solver.DiceStates;
+import tech.octopusdragon.dice.solver.EndgameTablebase;
+import tech.octopusdragon.dice.solver.Policy;
+
+/**
+ * Plays two-player endgames perfectly from an {@link EndgameTablebase}, and
+ * leaves the rest of the game to another bot. The decisions for a turn are
+ * worked out from the table once, at the first move of the turn, so no
+ * searching is done at all.
+ * @author Alex Gill
+ *
+ */
+public class TablebaseBot implements Bot {
+
+	private final EndgameTablebase table;	// The solved endgames
+	private final Bot fallback;			// Plays when the game is not in an endgame
+	private final Category[] categories;	// The categories of the variant
+	private final int numRolls;			// The number of rolls per turn
+
+	// The decisions for the turn being played, and the endgame they are for
+	private Policy.TurnPolicy turn;
+	private int turnMoverOpen = -1;
+	private int turnOtherOpen = -1;
+	private int turnDiff;
+
+
+
+	/**
+	 * Instantiates a bot.
+	 * @param table The solved endgames of the variant
+	 * @param fallback Plays when the game is not in an endgame in the table
+	 * @param game A game of the variant
+	 */
+	public TablebaseBot(EndgameTablebase table, Bot fallback, DiceGame game) {
+		this.table = table;
+		this.fallback = fallback;
+		categories = game.categories();
+		numRolls = game.numRolls();
+	}
+
+
+
+	@Override
+	public BotMove chooseMove(DiceGame game) {
+		if (game.numPlayers() != 2)
+			return fallback.chooseMove(game);
+		int full = (1 << categories.length) - 1;
+		int mover = game.curPlayerIndex();
+		int moverOpen = full & ~Policy.usedMask(game.curPlayer(), categories);
+		int otherOpen = full & ~Policy.usedMask(game.getPlayer(1 - mover), categories);
+		if (!table.covers(moverOpen, otherOpen))
+			return fallback.chooseMove(game);
+
+		Die[] dice = game.getDice();
+		if (game.rollsLeft() == numRolls)
+			return BotMove.roll(ExpectedScoreBot.allDice(dice.length));
+
+		// Work out the turn the first time it is asked about
+		int diff = game.curPlayer().getTotalScore() - game.getPlayer(1 - mover).getTotalScore();
+		if (turn == null || moverOpen != turnMoverOpen || otherOpen != turnOtherOpen || diff != turnDiff) {
+			turn = table.turn(moverOpen, otherOpen, diff);
+			turnMoverOpen = moverOpen;
+			turnOtherOpen = otherOpen;
+			turnDiff = diff;
+		}
+
+		DiceStates states = table.getStates();
+		int rolled = states.index(dice);
+		if (game.rollsLeft() > 0) {
+			int kept = turn.keep(game.rollsLeft(), rolled);
+			if (kept != rolled)
+				return BotMove.roll(states.diceToRoll(ExpectedScoreBot.values(dice), kept));
+		}
+		return BotMove.submit(turn.category(rolled));
+	}
+}
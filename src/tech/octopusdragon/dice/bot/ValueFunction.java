@@ -0,0 +1,546 @@
+package tech.octopusdragon.dice.bot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * A learned estimate of the points a player still has to come, for variants
+ * too big to solve exactly. It is two linear models over a few features
+ * worked out from the position, trained by
+ * {@link tech.octopusdragon.dice.tune.ValueFunctionTrainer}:
+ * <ul>
+ * <li>the start value, of the start of a turn with some categories open,
+ * over which categories are open and the square of how many</li>
+ * <li>the keep value, of rolling again keeping some dice with some rolls
+ * left, with weights of their own for each number of rolls left</li>
+ * </ul>
+ * The dice are scored in the category that gives the most points now plus
+ * start value after. Before that, the player compares stopping, worth the
+ * same, with the keep value of a few ways to keep the dice: every die of one
+ * face, one die of each face in the longest run, or none.
+ * <p>
+ * The features of keeping some dice are about what the kept dice could
+ * become. As well as the share of the dice kept and which categories are
+ * open, for each open category they are the points the kept dice would score
+ * now and the most they could score once the other dice are rolled. The most
+ * is found among a few ways the other dice could land: all showing the same
+ * face, or each showing a face not yet kept, which makes straights. The last
+ * two features are the best of points now plus start value after, for the
+ * kept dice as they are and for the best way they could become.
+ * <p>
+ * So a decision takes time in proportion to the number of faces squared
+ * times the number of categories, however many dice there are, and the models
+ * are the same size for any variant with the same number of categories. A
+ * function is immutable and may be shared by threads. Decisions are made by
+ * an {@link Evaluator}, which has the scratch space to make them without
+ * allocating and should be used by one thread at a time.
+ * @author Alex Gill
+ *
+ */
+public class ValueFunction {
+
+	// --- Constants ---
+	private static final int MAGIC = 0x56464E31;	// Starts every file
+	private static final int VERSION = 1;			// The file format
+
+	// --- Variant ---
+	private final Category[] categories;	// The categories
+	private final int numDice;			// The number of dice
+	private final int numSides;			// The number of sides on each die
+	private final int numRolls;			// The number of rolls per turn
+
+	// --- Weights ---
+	private final double[] startWeights;	// The weights of the start value
+	private final double[][] keepWeights;	// The weights of the keep value, by rolls left - 1
+
+
+
+	/**
+	 * Instantiates a function.
+	 * @param categories The categories of the variant
+	 * @param numDice The number of dice
+	 * @param numSides The number of sides on each die
+	 * @param numRolls The number of rolls per turn
+	 * @param startWeights The weights of the start value, one for each start
+	 * feature
+	 * @param keepWeights The weights of the keep value, one for each keep
+	 * feature, for 1 to one less than the rolls per turn left
+	 */
+	public ValueFunction(Category[] categories, int numDice, int numSides, int numRolls,
+			double[] startWeights, double[][] keepWeights) {
+		if (startWeights.length != numStartFeatures(categories.length))
+			throw new IllegalArgumentException("Expected " + numStartFeatures(categories.length) + " start weights");
+		if (keepWeights.length != numRolls - 1)
+			throw new IllegalArgumentException("Expected keep weights for " + (numRolls - 1) + " rolls left");
+		for (double[] weights: keepWeights)
+			if (weights.length != numKeepFeatures(categories.length))
+				throw new IllegalArgumentException("Expected " + numKeepFeatures(categories.length) + " keep weights");
+		this.categories = categories.clone();
+		this.numDice = numDice;
+		this.numSides = numSides;
+		this.numRolls = numRolls;
+		this.startWeights = startWeights.clone();
+		this.keepWeights = new double[keepWeights.length][];
+		for (int r = 0; r < keepWeights.length; r++)
+			this.keepWeights[r] = keepWeights[r].clone();
+	}
+
+
+
+	/**
+	 * Instantiates an untrained function for the variant of a game: no value
+	 * after this turn, and the value of keeping dice the most they could
+	 * score, so the player chases the best dice it can see.
+	 * @param game A game of the variant
+	 * @return The function
+	 */
+	public static ValueFunction untrained(DiceGame game) {
+		int numCategories = game.categories().length;
+		double[][] keepWeights = new double[game.numRolls() - 1][numKeepFeatures(numCategories)];
+		for (double[] weights: keepWeights)
+			weights[weights.length - 1] = 1.0;
+		return new ValueFunction(game.categories(), game.numDice(), game.numSides(), game.numRolls(),
+				new double[numStartFeatures(numCategories)], keepWeights);
+	}
+
+
+
+	/**
+	 * Returns a function with other start weights and the same keep weights.
+	 * @param weights The start weights
+	 * @return The function
+	 */
+	public ValueFunction withStartWeights(double[] weights) {
+		return new ValueFunction(categories, numDice, numSides, numRolls, weights, keepWeights);
+	}
+
+
+
+	/**
+	 * Returns a function with other keep weights and the same start weights.
+	 * @param weights The keep weights, by rolls left - 1
+	 * @return The function
+	 */
+	public ValueFunction withKeepWeights(double[][] weights) {
+		return new ValueFunction(categories, numDice, numSides, numRolls, startWeights, weights);
+	}
+
+
+
+	/**
+	 * Returns the number of features of the start value.
+	 * @param numCategories The number of categories
+	 * @return The number of features
+	 */
+	public static int numStartFeatures(int numCategories) {
+		return numCategories + 2;
+	}
+
+
+
+	/**
+	 * Returns the number of features of the keep value.
+	 * @param numCategories The number of categories
+	 * @return The number of features
+	 */
+	public static int numKeepFeatures(int numCategories) {
+		return 3 * numCategories + 4;
+	}
+
+
+
+	/**
+	 * Works out the features of the start of a turn: a constant, whether each
+	 * category is open, and the square of the number open.
+	 * @param openMask The open categories, one bit per category
+	 * @param features Receives the features
+	 */
+	public void startFeatures(int openMask, double[] features) {
+		features[0] = 1.0;
+		for (int c = 0; c < categories.length; c++)
+			features[1 + c] = (openMask & 1 << c) != 0 ? 1.0 : 0.0;
+		int numOpen = Integer.bitCount(openMask);
+		features[1 + categories.length] = numOpen * numOpen;
+	}
+
+
+
+	/**
+	 * Estimates the points still to come at the start of a turn. This is the
+	 * start weights times the start features, added up directly.
+	 * @param openMask The open categories, one bit per category
+	 * @return The points, or 0 if no category is open
+	 */
+	public double startValue(int openMask) {
+		if (openMask == 0)
+			return 0.0;
+		double value = startWeights[0];
+		for (int open = openMask; open != 0; open &= open - 1)
+			value += startWeights[1 + Integer.numberOfTrailingZeros(open)];
+		int numOpen = Integer.bitCount(openMask);
+		return value + startWeights[1 + categories.length] * numOpen * numOpen;
+	}
+
+
+
+	/**
+	 * Estimates the points still to come from scoring dice in a category:
+	 * the points, and the start value of the next turn.
+	 * @param points The points the dice score in the category
+	 * @param category The index of the category
+	 * @param openMask The open categories, one bit per category, including it
+	 * @return The points
+	 */
+	private double scoreValue(int points, int category, int openMask) {
+		int after = openMask & ~(1 << category);
+		if (after == 0)
+			return points;
+		int numOpen = Integer.bitCount(openMask);
+		return points + startValue(openMask) - startWeights[1 + category] -
+				startWeights[1 + categories.length] * (2 * numOpen - 1);
+	}
+
+
+
+	/**
+	 * Works out the features of rolling again keeping some dice, as described
+	 * above.
+	 * @param kept The kept dice showing each face, indexed by face from 1.
+	 * Changed while working, but left as it was.
+	 * @param openMask The open categories, one bit per category
+	 * @param features Receives the features
+	 */
+	public void keepFeatures(int[] kept, int openMask, double[] features) {
+		int numKept = 0;
+		int total = 0;
+		for (int face = 1; face <= numSides; face++) {
+			numKept += kept[face];
+			total += kept[face] * face;
+		}
+		int numCategories = categories.length;
+		int bestNow = 2 + 3 * numCategories;
+		features[0] = 1.0;
+		features[1] = (double)numKept / numDice;
+		features[bestNow] = Double.NEGATIVE_INFINITY;
+		for (int c = 0; c < numCategories; c++) {
+			boolean open = (openMask & 1 << c) != 0;
+			int points = open ? categories[c].score(kept, total) : 0;
+			features[2 + c] = open ? 1.0 : 0.0;
+			features[2 + numCategories + c] = points;
+			features[2 + 2 * numCategories + c] = points;
+			if (open)
+				features[bestNow] = Math.max(features[bestNow], scoreValue(points, c, openMask));
+		}
+		features[bestNow + 1] = features[bestNow];
+		int missing = numDice - numKept;
+		if (missing == 0)
+			return;
+
+		// The other dice all showing one face
+		for (int face = 1; face <= numSides; face++) {
+			kept[face] += missing;
+			potentials(kept, total + missing * face, openMask, features);
+			kept[face] -= missing;
+		}
+
+		// The other dice each showing a face not yet kept, from some face up
+		for (int from = 1; from <= numSides; from++) {
+			int addedFaces = 0;
+			int added = 0;
+			int addedTotal = 0;
+			for (int face = from; face <= numSides && added < missing; face++) {
+				if (kept[face] == 0) {
+					addedFaces |= 1 << face;
+					added++;
+					addedTotal += face;
+				}
+			}
+			if (added < missing)
+				break;
+			for (int faces = addedFaces; faces != 0; faces &= faces - 1)
+				kept[Integer.numberOfTrailingZeros(faces)] = 1;
+			potentials(kept, total + addedTotal, openMask, features);
+			for (int faces = addedFaces; faces != 0; faces &= faces - 1)
+				kept[Integer.numberOfTrailingZeros(faces)] = 0;
+		}
+	}
+
+
+
+	/**
+	 * Raises the most each open category could score, and the best of points
+	 * plus start value after, to what some dice would give.
+	 * @param faceCounts The dice showing each face
+	 * @param total The total of the dice
+	 * @param openMask The open categories, one bit per category
+	 * @param features The features
+	 */
+	private void potentials(int[] faceCounts, int total, int openMask, double[] features) {
+		int at = 2 + 2 * categories.length;
+		int bestPotential = 3 + 3 * categories.length;
+		for (int c = 0; c < categories.length; c++) {
+			if ((openMask & 1 << c) == 0)
+				continue;
+			int points = categories[c].score(faceCounts, total);
+			features[at + c] = Math.max(features[at + c], points);
+			features[bestPotential] = Math.max(features[bestPotential], scoreValue(points, c, openMask));
+		}
+	}
+
+
+
+	/**
+	 * Saves the function to a file.
+	 * @param file The file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numDice);
+			out.writeInt(numSides);
+			out.writeInt(numRolls);
+			out.writeInt(categories.length);
+			for (Category category: categories) {
+				byte[] name = category.getName().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(name.length);
+				out.write(name);
+			}
+			for (double weight: startWeights)
+				out.writeDouble(weight);
+			for (double[] weights: keepWeights)
+				for (double weight: weights)
+					out.writeDouble(weight);
+		}
+	}
+
+
+
+	/**
+	 * Loads a function saved by {@link #save(Path)}.
+	 * @param file The file
+	 * @param game A game of the variant the function is for
+	 * @return The function
+	 * @throws IOException if the file cannot be read, or is not a function
+	 * for the variant
+	 */
+	public static ValueFunction load(Path file, DiceGame game) throws IOException {
+		Category[] categories = game.categories();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(file + " is not a value function");
+			if (in.readInt() != game.numDice() || in.readInt() != game.numSides() ||
+					in.readInt() != game.numRolls() || in.readInt() != categories.length)
+				throw new IOException(file + " is for a different variant");
+			for (Category category: categories) {
+				int length = in.readInt();
+				if (length < 0 || length > 1 << 16)
+					throw new IOException(file + " is not a valid value function");
+				byte[] name = new byte[length];
+				in.readFully(name);
+				if (!category.getName().equals(new String(name, StandardCharsets.UTF_8)))
+					throw new IOException(file + " is for a different variant");
+			}
+			double[] startWeights = new double[numStartFeatures(categories.length)];
+			for (int i = 0; i < startWeights.length; i++)
+				startWeights[i] = in.readDouble();
+			double[][] keepWeights = new double[game.numRolls() - 1][numKeepFeatures(categories.length)];
+			for (double[] weights: keepWeights)
+				for (int i = 0; i < weights.length; i++)
+					weights[i] = in.readDouble();
+			return new ValueFunction(categories, game.numDice(), game.numSides(), game.numRolls(),
+					startWeights, keepWeights);
+		}
+	}
+
+
+
+	/**
+	 * Creates an evaluator to make decisions with.
+	 * @return The evaluator
+	 */
+	public Evaluator newEvaluator() {
+		return new Evaluator();
+	}
+
+
+
+	/**
+	 * Returns the categories of the variant.
+	 * @return The categories
+	 */
+	public Category[] categories() {
+		return categories.clone();
+	}
+
+
+
+	/**
+	 * Returns the number of rolls per turn of the variant.
+	 * @return The number of rolls
+	 */
+	public int numRolls() {
+		return numRolls;
+	}
+
+
+
+	/**
+	 * Makes decisions with a value function, with scratch space of its own so
+	 * no decision allocates.
+	 */
+	public class Evaluator {
+
+		private final double[] features = new double[numKeepFeatures(categories.length)];	// The features of keeping some dice
+		private final int[] candidate = new int[numSides + 1];	// A way to keep the dice
+
+
+
+		/**
+		 * Estimates the points still to come from rolling again, keeping some
+		 * dice.
+		 * @param kept The kept dice showing each face, indexed by face from 1
+		 * @param openMask The open categories, one bit per category
+		 * @param rollsLeft The rolls left before rolling
+		 * @return The points
+		 */
+		public double keepValue(int[] kept, int openMask, int rollsLeft) {
+			keepFeatures(kept, openMask, features);
+			double[] weights = keepWeights[rollsLeft - 1];
+			double sum = 0.0;
+			for (int i = 0; i < weights.length; i++)
+				sum += weights[i] * features[i];
+			return sum;
+		}
+
+
+
+		/**
+		 * Chooses the category to score the dice in.
+		 * @param points The points the dice would score in each category
+		 * @param usedMask The categories already used, one bit per category
+		 * @return The index of the open category giving the most points now
+		 * plus start value after
+		 */
+		public int category(int[] points, int usedMask) {
+			int open = (1 << categories.length) - 1 & ~usedMask;
+			int best = -1;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int c = 0; c < categories.length; c++) {
+				if ((open & 1 << c) == 0)
+					continue;
+				double value = scoreValue(points[c], c, open);
+				if (value > bestValue) {
+					best = c;
+					bestValue = value;
+				}
+			}
+			return best;
+		}
+
+
+
+		/**
+		 * Estimates the points still to come from stopping and scoring the
+		 * dice in the best category.
+		 * @param points The points the dice would score in each category
+		 * @param usedMask The categories already used, one bit per category
+		 * @return The points
+		 */
+		public double stopValue(int[] points, int usedMask) {
+			int open = (1 << categories.length) - 1 & ~usedMask;
+			int c = category(points, usedMask);
+			return scoreValue(points[c], c, open);
+		}
+
+
+
+		/**
+		 * Chooses the dice to keep, or to stop rolling.
+		 * @param faceCounts The dice showing each face, indexed by face from 1
+		 * @param points The points the dice would score in each category
+		 * @param usedMask The categories already used, one bit per category
+		 * @param rollsLeft The rolls left, from 1
+		 * @param kept Receives the dice of each face to keep, indexed by face
+		 * from 1, or all of them to stop
+		 * @param random Picks a way at random sometimes, so training sees the
+		 * worth of every way, or null never to
+		 * @param exploration The chance of picking a way at random
+		 */
+		public void keep(int[] faceCounts, int[] points, int usedMask, int rollsLeft, int[] kept,
+				SplittableRandom random, double exploration) {
+			int open = (1 << categories.length) - 1 & ~usedMask;
+			int numWays = numSides + 3;
+
+			// Stopping keeps every die
+			System.arraycopy(faceCounts, 0, kept, 0, numSides + 1);
+			if (random != null && random.nextDouble() < exploration) {
+				int way = random.nextInt(numWays);
+				if (way > 0) {
+					candidate(way, faceCounts);
+					System.arraycopy(candidate, 0, kept, 0, numSides + 1);
+				}
+				return;
+			}
+
+			// Otherwise keep the way worth the most
+			double bestValue = stopValue(points, usedMask);
+			for (int way = 1; way < numWays; way++) {
+				if (!candidate(way, faceCounts))
+					continue;
+				double value = keepValue(candidate, open, rollsLeft);
+				if (value > bestValue) {
+					bestValue = value;
+					System.arraycopy(candidate, 0, kept, 0, numSides + 1);
+				}
+			}
+		}
+
+
+
+		/**
+		 * Works out a way to keep the dice into the scratch space.
+		 * @param way 1 to {@code numSides} to keep every die of that face,
+		 * {@code numSides} + 1 to keep one die of each face in the longest run
+		 * of faces in a row, or {@code numSides} + 2 to keep none
+		 * @param faceCounts The dice showing each face
+		 * @return Whether the way is worth considering: not the same as
+		 * another way
+		 */
+		private boolean candidate(int way, int[] faceCounts) {
+			Arrays.fill(candidate, 0);
+			if (way <= numSides) {
+				candidate[way] = faceCounts[way];
+				return faceCounts[way] > 0;
+			}
+			if (way == numSides + 2)
+				return true;
+
+			int runEnd = 0;
+			int runLength = 0;
+			int length = 0;
+			for (int face = 1; face <= numSides; face++) {
+				length = faceCounts[face] > 0 ? length + 1 : 0;
+				if (length > 0 && length >= runLength) {
+					runEnd = face;
+					runLength = length;
+				}
+			}
+			for (int face = runEnd - runLength + 1; face <= runEnd; face++)
+				candidate[face] = 1;
+			return runLength > 1;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package tech.octopusdragon.dice.bot;
+
+import java.util.SplittableRandom;
+
+import tech.octopusdragon.dice.batch.BatchGameEngine;
+import tech.octopusdragon.dice.batch.BatchPlayer;
+import tech.octopusdragon.dice.batch.PackedDice;
+
+/**
+ * Plays the games of a {@link BatchGameEngine} by a {@link ValueFunction},
+ * for training and simulating it. While training, the player can keep the
+ * dice some way at random now and then, so the function learns the worth of
+ * ways it would not choose. A player keeps scratch space for its decisions,
+ * so it should be used by one thread at a time.
+ * @author Alex Gill
+ *
+ */
+public class ValueFunctionBatchPlayer implements BatchPlayer {
+
+	private final ValueFunction.Evaluator evaluator;	// Makes the decisions
+	private final SplittableRandom random;	// Picks ways to keep at random, or null
+	private final double exploration;		// The chance of picking a way at random
+
+	// Scratch space
+	private final int[] points;			// The points of each category
+	private int[] faceCounts = new int[0];	// The dice showing each face
+	private int[] kept = new int[0];		// The dice of each face to keep
+
+
+
+	/**
+	 * Instantiates a player that always keeps the way it thinks best.
+	 * @param function Makes the decisions
+	 */
+	public ValueFunctionBatchPlayer(ValueFunction function) {
+		this(function, 0.0, null);
+	}
+
+
+
+	/**
+	 * Instantiates a player that sometimes keeps the dice some way at random.
+	 * @param function Makes the decisions
+	 * @param exploration The chance of picking a way at random
+	 * @param random Picks the ways, or null never to
+	 */
+	public ValueFunctionBatchPlayer(ValueFunction function, double exploration, SplittableRandom random) {
+		evaluator = function.newEvaluator();
+		this.exploration = exploration;
+		this.random = random;
+		points = new int[function.categories().length];
+	}
+
+
+
+	@Override
+	public int diceToRoll(BatchGameEngine engine, int game) {
+		int used = fillPoints(engine, game);
+		int numSides = engine.numSides();
+		if (faceCounts.length != numSides + 1) {
+			faceCounts = new int[numSides + 1];
+			kept = new int[numSides + 1];
+		}
+		for (int face = 1; face <= numSides; face++)
+			faceCounts[face] = engine.faceCount(game, face);
+		evaluator.keep(faceCounts, points, used, engine.rollsLeft(game), kept, random, exploration);
+
+		int state = engine.dice(game);
+		int mask = 0;
+		for (int die = 0; die < engine.numDice(); die++) {
+			int value = PackedDice.value(state, die);
+			if (kept[value] > 0)
+				kept[value]--;
+			else
+				mask |= 1 << die;
+		}
+		return mask;
+	}
+
+
+
+	@Override
+	public int category(BatchGameEngine engine, int game) {
+		int used = fillPoints(engine, game);
+		return evaluator.category(points, used);
+	}
+
+
+
+	/**
+	 * Works out the points the dice of a game would score in each open
+	 * category.
+	 * @param engine The games
+	 * @param game The index of the game
+	 * @return The current player's used categories
+	 */
+	private int fillPoints(BatchGameEngine engine, int game) {
+		int used = engine.usedMask(game, engine.curPlayerIndex());
+		for (int c = 0; c < points.length; c++)
+			points[c] = (used & 1 << c) == 0 ? engine.potentialScore(game, c) : 0;
+		return used;
+	}
+}
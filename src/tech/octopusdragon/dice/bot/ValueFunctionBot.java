@@ -0,0 +1,78 @@
+package tech.octopusdragon.dice.bot;
+
+import java.util.Arrays;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.solver.Policy;
+
+/**
+ * Plays by a {@link ValueFunction}, for variants too big to solve. Each move
+ * takes the same short time however far into the game it is, and apart from
+ * the move itself allocates nothing.
+ * @author Alex Gill
+ *
+ */
+public class ValueFunctionBot implements Bot {
+
+	private final ValueFunction.Evaluator evaluator;	// Makes the decisions
+	private final Category[] categories;	// The categories of the variant
+	private final int numRolls;			// The number of rolls per turn
+
+	// Scratch space
+	private final int[] points;			// The points of each category
+	private final int[] faceCounts;		// The dice showing each face
+	private final int[] kept;			// The dice of each face to keep
+	private final int[] toRoll;			// The indexes of the dice to roll
+
+
+
+	/**
+	 * Instantiates a bot.
+	 * @param function Makes the decisions
+	 * @param game A game of the variant
+	 */
+	public ValueFunctionBot(ValueFunction function, DiceGame game) {
+		if (function.categories().length != game.categories().length || function.numRolls() != game.numRolls())
+			throw new IllegalArgumentException("The value function is for another variant");
+		evaluator = function.newEvaluator();
+		categories = game.categories();
+		numRolls = game.numRolls();
+		points = new int[categories.length];
+		faceCounts = new int[game.numSides() + 1];
+		kept = new int[game.numSides() + 1];
+		toRoll = new int[game.numDice()];
+	}
+
+
+
+	@Override
+	public BotMove chooseMove(DiceGame game) {
+		Die[] dice = game.getDice();
+		if (game.rollsLeft() == numRolls)
+			return BotMove.roll(ExpectedScoreBot.allDice(dice.length));
+
+		int used = Policy.usedMask(game.curPlayer(), categories);
+		for (int c = 0; c < categories.length; c++)
+			points[c] = (used & 1 << c) == 0 ? game.potentialScore(c) : 0;
+
+		if (game.rollsLeft() > 0) {
+			Arrays.fill(faceCounts, 0);
+			for (Die die: dice)
+				faceCounts[die.getValue()]++;
+			evaluator.keep(faceCounts, points, used, game.rollsLeft(), kept, null, 0.0);
+
+			int numToRoll = 0;
+			for (int i = 0; i < dice.length; i++) {
+				if (kept[dice[i].getValue()] > 0)
+					kept[dice[i].getValue()]--;
+				else
+					toRoll[numToRoll++] = i;
+			}
+			if (numToRoll > 0)
+				return BotMove.roll(Arrays.copyOf(toRoll, numToRoll));
+		}
+		return BotMove.submit(evaluator.category(points, used));
+	}
+}
@@ -0,0 +1,93 @@
+package tech.octopusdragon.dice.data;
+
+/**
+ * The columns of a decision file, in the order they are stored in each block.
+ * Every column has a fixed width, so any record can be found without reading
+ * the ones before it.
+ * @author Alex Gill
+ *
+ */
+public enum DecisionColumn {
+
+	/** The number of the game, unique within an export. */
+	GAME(Long.BYTES),
+
+	/** The seat of the player deciding. */
+	PLAYER(Byte.BYTES),
+
+	/** The turn of the game, from 1. */
+	TURN(Short.BYTES),
+
+	/** The dice, packed 4 bits per die. */
+	DICE(Integer.BYTES),
+
+	/** The rolls the player has left. */
+	ROLLS_LEFT(Byte.BYTES),
+
+	/** The categories the player has used, one bit per category. */
+	USED(Integer.BYTES),
+
+	/** The player's total score before the decision. */
+	SCORE(Integer.BYTES),
+
+	/** Whether the player chose dice to roll or a category to score. */
+	KIND(Byte.BYTES),
+
+	/** The dice rolled, one bit per die and 0 to stop, or the category scored. */
+	ACTION(Short.BYTES),
+
+	/** The player's score at the end of the game. */
+	FINAL_SCORE(Integer.BYTES);
+
+	private final int width;	// The bytes of each value
+
+
+
+	/**
+	 * Instantiates a column.
+	 * @param width The bytes of each value
+	 */
+	DecisionColumn(int width) {
+		this.width = width;
+	}
+
+
+
+	/**
+	 * Returns the bytes of each value of the column.
+	 * @return The width
+	 */
+	public int width() {
+		return width;
+	}
+
+
+
+	/**
+	 * Returns the bytes of a whole record.
+	 * @return The width of every column together
+	 */
+	public static int recordWidth() {
+		int total = 0;
+		for (DecisionColumn column: values())
+			total += column.width;
+		return total;
+	}
+
+
+
+	/**
+	 * Returns where the column starts within a block.
+	 * @param blockRecords The records in each block
+	 * @return The offset in bytes
+	 */
+	public int offset(int blockRecords) {
+		int before = 0;
+		for (DecisionColumn column: values()) {
+			if (column == this)
+				break;
+			before += column.width;
+		}
+		return before * blockRecords;
+	}
+}
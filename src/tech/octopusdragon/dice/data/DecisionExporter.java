@@ -0,0 +1,167 @@
+package tech.octopusdragon.dice.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.batch.BatchGameEngine;
+import tech.octopusdragon.dice.batch.BatchPlayer;
+import tech.octopusdragon.dice.shard.SimulationJob;
+
+/**
+ * Plays the games of a {@link SimulationJob} and writes every decision made
+ * to decision files, for training evaluators offline. Each shard is played on
+ * a thread of its own and written to a file of its own, so shards never wait
+ * for each other, and a shard exported again writes exactly the same file.
+ * <p>
+ * Options, given as {@code --name=value}, as well as those of the job:
+ * <ul>
+ * <li>{@code threads} - the most shards at once (default the number of
+ * processors)</li>
+ * <li>{@code out} - the directory to write decisions-N.dec to, for each
+ * shard N (default the working directory)</li>
+ * </ul>
+ * @author Alex Gill
+ *
+ */
+public class DecisionExporter {
+
+	private final SimulationJob job;	// The games to play
+	private final Path directory;		// Where the files go
+
+
+
+	/**
+	 * Instantiates an exporter.
+	 * @param job The games to play
+	 * @param directory The directory to write the files to
+	 */
+	public DecisionExporter(SimulationJob job, Path directory) {
+		this.job = job;
+		this.directory = directory;
+	}
+
+
+
+	/**
+	 * Returns the file a shard is written to.
+	 * @param shard The index of the shard
+	 * @return The file
+	 */
+	public Path file(int shard) {
+		return directory.resolve("decisions-" + shard + ".dec");
+	}
+
+
+
+	/**
+	 * Plays a shard and writes its decisions.
+	 * @param shard The index of the shard
+	 * @return The number of decisions written
+	 * @throws IOException if the file cannot be written
+	 */
+	public long exportShard(int shard) throws IOException {
+		DiceGame game = job.newGame();
+		BatchPlayer[] players = job.newPlayers();
+		DecisionRecorder recorder = new DecisionRecorder();
+		BatchPlayer[] recorded = new BatchPlayer[players.length];
+		for (int i = 0; i < players.length; i++)
+			recorded[i] = recorder.wrap(players[i]);
+
+		try (DecisionWriter writer = new DecisionWriter(file(shard), game)) {
+			for (int batch = 0; batch < job.batchesPerShard(); batch++) {
+				BatchGameEngine engine = job.newEngine(game, shard, batch);
+				engine.play(recorded);
+				recorder.finish(engine, shard * job.gamesPerShard() + (long)batch * job.gamesPerBatch(), writer);
+			}
+			return writer.numRecords();
+		}
+	}
+
+
+
+	/**
+	 * Exports every shard.
+	 * @param numThreads The most shards at once
+	 * @return The number of decisions written
+	 * @throws IOException if a file cannot be written
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public long run(int numThreads) throws IOException, InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads, runnable -> {
+			Thread thread = new Thread(runnable, "Decision exporter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<Long>> shards = new ArrayList<Future<Long>>();
+			for (int shard = 0; shard < job.numShards(); shard++) {
+				int index = shard;
+				shards.add(pool.submit(() -> exportShard(index)));
+			}
+			long total = 0;
+			for (Future<Long> shard: shards) {
+				try {
+					total += shard.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw new IOException(e.getCause());
+				}
+			}
+			return total;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+
+
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> options = SimulationJob.parseOptions(args);
+		SimulationJob job;
+		int numThreads;
+		Path directory = Paths.get(options.getOrDefault("out", "."));
+		try {
+			job = SimulationJob.fromOptions(args);
+			job.newGame();
+			job.newPlayers();
+			numThreads = Integer.parseInt(options.getOrDefault("threads",
+					Integer.toString(Runtime.getRuntime().availableProcessors())));
+			if (numThreads < 1)
+				throw new IllegalArgumentException("Need at least one thread");
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid job: " + e.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		long start = System.nanoTime();
+		long numRecords;
+		long numBytes = 0;
+		DecisionExporter exporter = new DecisionExporter(job, directory);
+		try {
+			Files.createDirectories(directory);
+			numRecords = exporter.run(numThreads);
+			for (int shard = 0; shard < job.numShards(); shard++)
+				numBytes += Files.size(exporter.file(shard));
+		} catch (IOException e) {
+			System.out.println("Error exporting decisions...");
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d decisions, %.1f MB in %.1f s (%.0f decisions/s)%n",
+				numRecords, numBytes / 1e6, seconds, numRecords / seconds);
+	}
+}
@@ -0,0 +1,318 @@
+package tech.octopusdragon.dice.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a file written by a {@link DecisionWriter}, mapped into memory, so
+ * reading a record costs a few array look-ups and the operating system pages
+ * in only the columns that are read. Files bigger than one mapping can hold
+ * are mapped in chunks of whole blocks.
+ * <p>
+ * A reader may be shared by any number of threads.
+ * @author Alex Gill
+ *
+ */
+public class DecisionReader {
+
+	// --- Constants ---
+	private static final int MAX_HEADER = 1 << 16;	// The most bytes a header can take
+
+	private final long numRecords;		// The records in the file
+	private final int blockRecords;		// The records in each block
+	private final int blockBytes;		// The bytes of each block
+	private final int blocksPerChunk;	// The blocks in each mapping
+	private final ByteBuffer[] chunks;	// The blocks, mapped into memory
+	private final int[] offsets;		// Where each column starts in a block
+
+	// --- Variant ---
+	private final String variant;		// The name of the variant
+	private final int numDice;			// The number of dice
+	private final int numSides;			// The number of sides on each die
+	private final int numRolls;			// The number of rolls per turn
+	private final int numPlayers;		// The number of players in each game
+	private final String[] categoryNames;	// The names of the categories
+
+
+
+	/**
+	 * Maps a decision file into memory.
+	 * @param file The file
+	 * @throws IOException if the file cannot be read or is not a valid
+	 * decision file
+	 */
+	public DecisionReader(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					Math.min(channel.size(), MAX_HEADER)).order(ByteOrder.LITTLE_ENDIAN);
+			try {
+				if (header.getInt() != DecisionWriter.MAGIC || header.getInt() != DecisionWriter.VERSION)
+					throw new IOException(file + " is not a decision file");
+				numRecords = header.getLong();
+				int dataOffset = header.getInt();
+				blockRecords = header.getInt();
+				DecisionColumn[] columns = DecisionColumn.values();
+				if (header.getInt() != columns.length)
+					throw new IOException(file + " has different columns");
+				for (DecisionColumn column: columns)
+					if (header.get() != column.width())
+						throw new IOException(file + " has different columns");
+				numDice = header.getInt();
+				numSides = header.getInt();
+				numRolls = header.getInt();
+				numPlayers = header.getInt();
+				variant = readString(header);
+				categoryNames = new String[header.getInt()];
+				for (int c = 0; c < categoryNames.length; c++)
+					categoryNames[c] = readString(header);
+
+				// Map the blocks
+				if (numRecords < 0 || blockRecords < 1 || dataOffset < header.position())
+					throw new IOException(file + " has an invalid header");
+				offsets = new int[columns.length];
+				for (DecisionColumn column: columns)
+					offsets[column.ordinal()] = column.offset(blockRecords);
+				blockBytes = DecisionColumn.recordWidth() * blockRecords;
+				blocksPerChunk = Integer.MAX_VALUE / blockBytes;
+				long numBlocks = (numRecords + blockRecords - 1) / blockRecords;
+				if (channel.size() < dataOffset + numBlocks * blockBytes)
+					throw new IOException(file + " is truncated");
+				chunks = new ByteBuffer[(int)((numBlocks + blocksPerChunk - 1) / blocksPerChunk)];
+				for (int chunk = 0; chunk < chunks.length; chunk++) {
+					long blocks = Math.min(blocksPerChunk, numBlocks - (long)chunk * blocksPerChunk);
+					chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY,
+							dataOffset + (long)chunk * blocksPerChunk * blockBytes, blocks * blockBytes)
+							.order(ByteOrder.LITTLE_ENDIAN);
+				}
+			} catch (RuntimeException e) {
+				throw new IOException(file + " is not a valid decision file", e);
+			}
+		}
+	}
+
+
+
+	/**
+	 * Reads a string from a header.
+	 * @param header The header
+	 * @return The string
+	 */
+	private static String readString(ByteBuffer header) {
+		byte[] bytes = new byte[header.getInt()];
+		header.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+
+	/**
+	 * Returns the mapping a record is in.
+	 * @param record The index of the record
+	 * @return The mapping
+	 */
+	private ByteBuffer chunk(long record) {
+		if (record < 0 || record >= numRecords)
+			throw new IndexOutOfBoundsException("No record " + record);
+		return chunks[(int)(record / blockRecords / blocksPerChunk)];
+	}
+
+
+
+	/**
+	 * Returns where a value of a record is in its mapping.
+	 * @param record The index of the record
+	 * @param column The column
+	 * @return The offset in bytes
+	 */
+	private int position(long record, DecisionColumn column) {
+		long block = record / blockRecords;
+		int inBlock = (int)(record % blockRecords);
+		return (int)(block % blocksPerChunk) * blockBytes + offsets[column.ordinal()] + inBlock * column.width();
+	}
+
+
+
+	/**
+	 * Returns the number of the game of a record.
+	 * @param record The index of the record
+	 * @return The number of the game
+	 */
+	public long game(long record) {
+		return chunk(record).getLong(position(record, DecisionColumn.GAME));
+	}
+
+
+
+	/**
+	 * Returns the seat of the player deciding.
+	 * @param record The index of the record
+	 * @return The seat
+	 */
+	public int player(long record) {
+		return chunk(record).get(position(record, DecisionColumn.PLAYER));
+	}
+
+
+
+	/**
+	 * Returns the turn of the game.
+	 * @param record The index of the record
+	 * @return The turn, from 1
+	 */
+	public int turn(long record) {
+		return Short.toUnsignedInt(chunk(record).getShort(position(record, DecisionColumn.TURN)));
+	}
+
+
+
+	/**
+	 * Returns the dice.
+	 * @param record The index of the record
+	 * @return The dice, packed 4 bits per die
+	 */
+	public int dice(long record) {
+		return chunk(record).getInt(position(record, DecisionColumn.DICE));
+	}
+
+
+
+	/**
+	 * Returns the rolls the player had left.
+	 * @param record The index of the record
+	 * @return The rolls left
+	 */
+	public int rollsLeft(long record) {
+		return chunk(record).get(position(record, DecisionColumn.ROLLS_LEFT));
+	}
+
+
+
+	/**
+	 * Returns the categories the player had used.
+	 * @param record The index of the record
+	 * @return The mask, with bit i set if category i had been used
+	 */
+	public int usedMask(long record) {
+		return chunk(record).getInt(position(record, DecisionColumn.USED));
+	}
+
+
+
+	/**
+	 * Returns the player's total score before the decision.
+	 * @param record The index of the record
+	 * @return The score
+	 */
+	public int score(long record) {
+		return chunk(record).getInt(position(record, DecisionColumn.SCORE));
+	}
+
+
+
+	/**
+	 * Returns the kind of the decision.
+	 * @param record The index of the record
+	 * @return {@link DecisionWriter#ROLL} or {@link DecisionWriter#SCORE}
+	 */
+	public int kind(long record) {
+		return chunk(record).get(position(record, DecisionColumn.KIND));
+	}
+
+
+
+	/**
+	 * Returns the choice made.
+	 * @param record The index of the record
+	 * @return The dice rolled, one bit per die and 0 to stop, or the category
+	 * scored
+	 */
+	public int action(long record) {
+		return Short.toUnsignedInt(chunk(record).getShort(position(record, DecisionColumn.ACTION)));
+	}
+
+
+
+	/**
+	 * Returns the player's score at the end of the game.
+	 * @param record The index of the record
+	 * @return The final score
+	 */
+	public int finalScore(long record) {
+		return chunk(record).getInt(position(record, DecisionColumn.FINAL_SCORE));
+	}
+
+
+
+	/**
+	 * Returns the number of records.
+	 * @return The number of records
+	 */
+	public long numRecords() {
+		return numRecords;
+	}
+
+
+
+	/**
+	 * Returns the name of the variant.
+	 * @return The name
+	 */
+	public String variant() {
+		return variant;
+	}
+
+
+
+	/**
+	 * Returns the number of dice.
+	 * @return The number of dice
+	 */
+	public int numDice() {
+		return numDice;
+	}
+
+
+
+	/**
+	 * Returns the number of sides on each die.
+	 * @return The number of sides
+	 */
+	public int numSides() {
+		return numSides;
+	}
+
+
+
+	/**
+	 * Returns the number of rolls per turn.
+	 * @return The number of rolls
+	 */
+	public int numRolls() {
+		return numRolls;
+	}
+
+
+
+	/**
+	 * Returns the number of players in each game.
+	 * @return The number of players
+	 */
+	public int numPlayers() {
+		return numPlayers;
+	}
+
+
+
+	/**
+	 * Returns the names of the categories.
+	 * @return The names, in the order of the bits of the used masks
+	 */
+	public String[] categoryNames() {
+		return categoryNames.clone();
+	}
+}
@@ -0,0 +1,127 @@
+package tech.octopusdragon.dice.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import tech.octopusdragon.dice.batch.BatchGameEngine;
+import tech.octopusdragon.dice.batch.BatchPlayer;
+
+/**
+ * Records every decision made in the games of a {@link BatchGameEngine}, by
+ * wrapping the players. A decision's outcome is not known until its game is
+ * over, so the decisions of a batch are kept in growing columns until the
+ * batch is played, and then written with each player's final score.
+ * <p>
+ * A recorder is not thread-safe; give each engine its own.
+ * @author Alex Gill
+ *
+ */
+public class DecisionRecorder {
+
+	// --- Constants ---
+	private static final int INITIAL_CAPACITY = 1 << 12;	// The decisions room is made for at first
+
+	// --- Decisions of the batch so far, by decision ---
+	private int size;				// The number of decisions
+	private int[] games = new int[INITIAL_CAPACITY];		// The index of the game in the batch
+	private int[] players = new int[INITIAL_CAPACITY];		// The seat deciding
+	private int[] turns = new int[INITIAL_CAPACITY];		// The turn of the game
+	private int[] dice = new int[INITIAL_CAPACITY];			// The packed dice
+	private int[] rollsLeft = new int[INITIAL_CAPACITY];	// The rolls left
+	private int[] usedMasks = new int[INITIAL_CAPACITY];	// The categories used
+	private int[] scores = new int[INITIAL_CAPACITY];		// The total score before deciding
+	private int[] kinds = new int[INITIAL_CAPACITY];		// Whether it was to roll or score
+	private int[] actions = new int[INITIAL_CAPACITY];		// The dice rolled or the category scored
+
+
+
+	/**
+	 * Wraps a player so its decisions are recorded.
+	 * @param player The player
+	 * @return A player making the same decisions
+	 */
+	public BatchPlayer wrap(BatchPlayer player) {
+		return new BatchPlayer() {
+
+			@Override
+			public int diceToRoll(BatchGameEngine engine, int game) {
+				int mask = player.diceToRoll(engine, game) & (1 << engine.numDice()) - 1;
+				record(engine, game, DecisionWriter.ROLL, mask);
+				return mask;
+			}
+
+
+
+			@Override
+			public int category(BatchGameEngine engine, int game) {
+				int category = player.category(engine, game);
+				record(engine, game, DecisionWriter.SCORE, category);
+				return category;
+			}
+		};
+	}
+
+
+
+	/**
+	 * Records a decision.
+	 * @param engine The games
+	 * @param game The index of the game
+	 * @param kind {@link DecisionWriter#ROLL} or {@link DecisionWriter#SCORE}
+	 * @param action The dice rolled, or the category scored
+	 */
+	private void record(BatchGameEngine engine, int game, int kind, int action) {
+		if (size == games.length)
+			grow();
+		int player = engine.curPlayerIndex();
+		games[size] = game;
+		players[size] = player;
+		turns[size] = (int)engine.turn();
+		dice[size] = engine.dice(game);
+		rollsLeft[size] = engine.rollsLeft(game);
+		usedMasks[size] = engine.usedMask(game, player);
+		scores[size] = engine.totalScore(game, player);
+		kinds[size] = kind;
+		actions[size] = action;
+		size++;
+	}
+
+
+
+	/**
+	 * Doubles the room for decisions.
+	 */
+	private void grow() {
+		int capacity = games.length * 2;
+		games = Arrays.copyOf(games, capacity);
+		players = Arrays.copyOf(players, capacity);
+		turns = Arrays.copyOf(turns, capacity);
+		dice = Arrays.copyOf(dice, capacity);
+		rollsLeft = Arrays.copyOf(rollsLeft, capacity);
+		usedMasks = Arrays.copyOf(usedMasks, capacity);
+		scores = Arrays.copyOf(scores, capacity);
+		kinds = Arrays.copyOf(kinds, capacity);
+		actions = Arrays.copyOf(actions, capacity);
+	}
+
+
+
+	/**
+	 * Writes the decisions of a batch that has been played to the end, and
+	 * starts on the next batch.
+	 * @param engine The games
+	 * @param firstGame The number of the batch's first game, so games have
+	 * numbers unique within the export
+	 * @param writer Receives the decisions
+	 * @throws IOException if the decisions cannot be written
+	 */
+	public void finish(BatchGameEngine engine, long firstGame, DecisionWriter writer) throws IOException {
+		if (!engine.isOver())
+			throw new IllegalStateException("The games are not over");
+		for (int i = 0; i < size; i++) {
+			writer.add(firstGame + games[i], players[i], turns[i], dice[i], rollsLeft[i], usedMasks[i],
+					scores[i], kinds[i], actions[i], engine.totalScore(games[i], players[i]));
+		}
+		size = 0;
+	}
+}
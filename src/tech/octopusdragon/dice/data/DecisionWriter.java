@@ -0,0 +1,216 @@
+package tech.octopusdragon.dice.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * Writes decisions to a file for training evaluators offline. The file is a
+ * header followed by blocks of a fixed number of records. Within a block the
+ * records are stored a column at a time, so a reader can scan one column of
+ * millions of records without touching the others, and every value has a
+ * fixed width, so the place of any value can be worked out. The last block is
+ * padded with zeros. Numbers are little-endian, so the blocks can be read
+ * straight into arrays by most tools.
+ * <p>
+ * The header holds, in order: the magic number and version, the number of
+ * records, where the first block starts, the records in each block, the
+ * width of each column, then the dice, sides, rolls per turn and players of
+ * the variant, its name and the names of its categories.
+ * <p>
+ * Records are gathered a block at a time in a direct buffer and written to
+ * the file's channel in one go. A writer is not thread-safe; to export on
+ * several threads, give each its own file.
+ * @author Alex Gill
+ *
+ */
+public class DecisionWriter implements Closeable {
+
+	// --- Constants ---
+	static final int MAGIC = 0x44454331;		// Starts every file
+	static final int VERSION = 1;				// The file format
+	static final int NUM_RECORDS_AT = 8;		// Where the number of records is in the header
+	static final int ALIGNMENT = 64;			// The first block starts at a multiple of this
+	public static final int BLOCK_RECORDS = 4096;	// The records in each block
+	public static final int ROLL = 0;			// The kind of a decision to roll dice or stop
+	public static final int SCORE = 1;			// The kind of a decision to score in a category
+
+	private final FileChannel channel;		// The file
+	private final ByteBuffer block;			// The block being filled
+	private final int[] offsets;			// Where each column starts in a block
+	private int inBlock;					// The records in the block so far
+	private long numRecords;				// The records written
+
+
+
+	/**
+	 * Creates a file, replacing any already there, and writes its header.
+	 * @param file The file
+	 * @param game A game of the variant, with the number of players of the
+	 * games to be written
+	 * @throws IOException if the file cannot be written
+	 */
+	public DecisionWriter(Path file, DiceGame game) throws IOException {
+		DecisionColumn[] columns = DecisionColumn.values();
+		offsets = new int[columns.length];
+		for (DecisionColumn column: columns)
+			offsets[column.ordinal()] = column.offset(BLOCK_RECORDS);
+		block = ByteBuffer.allocateDirect(DecisionColumn.recordWidth() * BLOCK_RECORDS).order(ByteOrder.LITTLE_ENDIAN);
+
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			writeFully(header(game));
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+
+
+	/**
+	 * Builds the header of a file.
+	 * @param game A game of the variant
+	 * @return The header, padded to where the first block starts
+	 */
+	private static ByteBuffer header(DiceGame game) {
+		Category[] categories = game.categories();
+		byte[][] names = new byte[categories.length][];
+		byte[] variant = game.name().getBytes(StandardCharsets.UTF_8);
+		int length = 9 * Integer.BYTES + Long.BYTES + DecisionColumn.values().length +
+				Integer.BYTES + variant.length;
+		for (int c = 0; c < categories.length; c++) {
+			names[c] = categories[c].getName().getBytes(StandardCharsets.UTF_8);
+			length += Integer.BYTES + names[c].length;
+		}
+		length += Integer.BYTES;
+		int dataOffset = (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+
+		ByteBuffer header = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(0);
+		header.putInt(dataOffset);
+		header.putInt(BLOCK_RECORDS);
+		header.putInt(DecisionColumn.values().length);
+		for (DecisionColumn column: DecisionColumn.values())
+			header.put((byte)column.width());
+		header.putInt(game.numDice());
+		header.putInt(game.numSides());
+		header.putInt(game.numRolls());
+		header.putInt(game.numPlayers());
+		header.putInt(variant.length);
+		header.put(variant);
+		header.putInt(categories.length);
+		for (byte[] name: names) {
+			header.putInt(name.length);
+			header.put(name);
+		}
+		header.clear();
+		return header;
+	}
+
+
+
+	/**
+	 * Adds a decision.
+	 * @param game The number of the game
+	 * @param player The seat of the player deciding
+	 * @param turn The turn of the game, from 1
+	 * @param dice The dice, packed 4 bits per die
+	 * @param rollsLeft The rolls the player has left
+	 * @param usedMask The categories the player has used
+	 * @param score The player's total score before the decision
+	 * @param kind {@link #ROLL} or {@link #SCORE}
+	 * @param action The dice rolled, or the category scored
+	 * @param finalScore The player's score at the end of the game
+	 * @throws IOException if a full block cannot be written
+	 */
+	public void add(long game, int player, int turn, int dice, int rollsLeft, int usedMask, int score,
+			int kind, int action, int finalScore) throws IOException {
+		int i = inBlock;
+		block.putLong(offsets[DecisionColumn.GAME.ordinal()] + i * Long.BYTES, game);
+		block.put(offsets[DecisionColumn.PLAYER.ordinal()] + i, (byte)player);
+		block.putShort(offsets[DecisionColumn.TURN.ordinal()] + i * Short.BYTES, (short)turn);
+		block.putInt(offsets[DecisionColumn.DICE.ordinal()] + i * Integer.BYTES, dice);
+		block.put(offsets[DecisionColumn.ROLLS_LEFT.ordinal()] + i, (byte)rollsLeft);
+		block.putInt(offsets[DecisionColumn.USED.ordinal()] + i * Integer.BYTES, usedMask);
+		block.putInt(offsets[DecisionColumn.SCORE.ordinal()] + i * Integer.BYTES, score);
+		block.put(offsets[DecisionColumn.KIND.ordinal()] + i, (byte)kind);
+		block.putShort(offsets[DecisionColumn.ACTION.ordinal()] + i * Short.BYTES, (short)action);
+		block.putInt(offsets[DecisionColumn.FINAL_SCORE.ordinal()] + i * Integer.BYTES, finalScore);
+		numRecords++;
+		if (++inBlock == BLOCK_RECORDS)
+			writeBlock();
+	}
+
+
+
+	/**
+	 * Writes the block and starts a new one.
+	 * @throws IOException if the block cannot be written
+	 */
+	private void writeBlock() throws IOException {
+		block.clear();
+		writeFully(block);
+		inBlock = 0;
+	}
+
+
+
+	/**
+	 * Writes a buffer to the end of the file.
+	 * @param buffer The buffer
+	 * @throws IOException if the buffer cannot be written
+	 */
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+
+
+	/**
+	 * Returns the number of records added.
+	 * @return The number of records
+	 */
+	public long numRecords() {
+		return numRecords;
+	}
+
+
+
+	/**
+	 * Writes the last block, padded with zeros, and the number of records,
+	 * and closes the file.
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!channel.isOpen())
+			return;
+		try (FileChannel file = channel) {
+			if (inBlock > 0) {
+				for (DecisionColumn column: DecisionColumn.values()) {
+					int end = offsets[column.ordinal()] + BLOCK_RECORDS * column.width();
+					for (int at = offsets[column.ordinal()] + inBlock * column.width(); at < end; at++)
+						block.put(at, (byte)0);
+				}
+				writeBlock();
+			}
+			ByteBuffer count = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			count.putLong(0, numRecords);
+			while (count.hasRemaining())
+				file.write(count, NUM_RECORDS_AT + count.position());
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package tech.octopusdragon.dice.event;
+
+import java.util.Arrays;
+
+/**
+ * Something that happened in a game: the dice were rolled, a player scored in
+ * a category, the next player's turn started or the game ended. Events are
+ * immutable, so one event is handed to every subscriber of a game's
+ * {@link GameEventPublisher} without copying.
+ * @author Alex Gill
+ *
+ */
+public final class GameEvent {
+
+	/**
+	 * The kinds of event.
+	 */
+	public enum Type {
+		ROLL, SUBMIT, NEXT_PLAYER, GAME_OVER
+	}
+
+	private final Type type;		// What happened
+	private final long time;		// When it happened, in milliseconds since the epoch
+	private final long turn;		// The number of the turn
+	private final int player;		// The index of the player
+	private final int rollsLeft;	// The rolls the player had left afterwards
+	private final int[] rolled;		// The indexes of the dice rolled
+	private final int[] dice;		// The values of the dice afterwards
+	private final int category;		// The index of the category scored in
+	private final int points;		// The points scored
+
+
+
+	/**
+	 * Instantiates an event.
+	 */
+	private GameEvent(Type type, long turn, int player, int rollsLeft,
+			int[] rolled, int[] dice, int category, int points) {
+		this.type = type;
+		this.time = System.currentTimeMillis();
+		this.turn = turn;
+		this.player = player;
+		this.rollsLeft = rollsLeft;
+		this.rolled = rolled;
+		this.dice = dice;
+		this.category = category;
+		this.points = points;
+	}
+
+
+
+	/**
+	 * Creates the event of a player rolling dice.
+	 * @param turn The number of the turn
+	 * @param player The index of the player
+	 * @param rollsLeft The rolls the player has left after this one
+	 * @param rolled The indexes of the dice rolled; the array is copied
+	 * @param dice The values of all of the dice after the roll; the array is
+	 * copied
+	 * @return The event
+	 */
+	public static GameEvent roll(long turn, int player, int rollsLeft, int[] rolled, int[] dice) {
+		return new GameEvent(Type.ROLL, turn, player, rollsLeft,
+				rolled.clone(), dice.clone(), -1, 0);
+	}
+
+
+
+	/**
+	 * Creates the event of a player scoring in a category.
+	 * @param turn The number of the turn
+	 * @param player The index of the player
+	 * @param category The index of the category in the game's categories
+	 * @param points The points scored
+	 * @param dice The values of the dice scored; the array is copied
+	 * @return The event
+	 */
+	public static GameEvent submit(long turn, int player, int category, int points, int[] dice) {
+		return new GameEvent(Type.SUBMIT, turn, player, 0,
+				null, dice.clone(), category, points);
+	}
+
+
+
+	/**
+	 * Creates the event of a player's turn starting.
+	 * @param turn The number of the new turn
+	 * @param player The index of the player
+	 * @param rollsLeft The rolls the player has
+	 * @return The event
+	 */
+	public static GameEvent nextPlayer(long turn, int player, int rollsLeft) {
+		return new GameEvent(Type.NEXT_PLAYER, turn, player, rollsLeft,
+				null, null, -1, 0);
+	}
+
+
+
+	/**
+	 * Creates the event of the game ending. No events follow it.
+	 * @param turn The number of the last turn
+	 * @param player The index of the last player
+	 * @return The event
+	 */
+	public static GameEvent gameOver(long turn, int player) {
+		return new GameEvent(Type.GAME_OVER, turn, player, 0,
+				null, null, -1, 0);
+	}
+
+
+
+	/**
+	 * Returns what happened.
+	 * @return The type of the event
+	 */
+	public Type getType() {
+		return type;
+	}
+
+
+
+	/**
+	 * Returns when the event happened.
+	 * @return The time, in milliseconds since the epoch
+	 */
+	public long getTime() {
+		return time;
+	}
+
+
+
+	/**
+	 * Returns the number of the turn the event happened in.
+	 * @return The number of the turn
+	 */
+	public long getTurn() {
+		return turn;
+	}
+
+
+
+	/**
+	 * Returns the player the event happened to.
+	 * @return The index of the player
+	 */
+	public int getPlayer() {
+		return player;
+	}
+
+
+
+	/**
+	 * Returns the rolls the player had left after the event.
+	 * @return The number of rolls; 0 unless the event is a roll or a new turn
+	 */
+	public int getRollsLeft() {
+		return rollsLeft;
+	}
+
+
+
+	/**
+	 * Returns the number of dice rolled.
+	 * @return The number of dice; 0 unless the event is a roll
+	 */
+	public int numRolled() {
+		return rolled == null ? 0 : rolled.length;
+	}
+
+
+
+	/**
+	 * Returns the index of one of the dice rolled.
+	 * @param i Which of the dice rolled, from 0 to {@link #numRolled()}
+	 * @return The index of the die
+	 */
+	public int rolled(int i) {
+		return rolled[i];
+	}
+
+
+
+	/**
+	 * Returns the number of dice whose values the event carries.
+	 * @return The number of dice; 0 unless the event is a roll or a
+	 * submission
+	 */
+	public int numDice() {
+		return dice == null ? 0 : dice.length;
+	}
+
+
+
+	/**
+	 * Returns the value of a die after the event.
+	 * @param i The index of the die
+	 * @return The value
+	 */
+	public int die(int i) {
+		return dice[i];
+	}
+
+
+
+	/**
+	 * Returns the category scored in.
+	 * @return The index of the category, or -1 unless the event is a
+	 * submission
+	 */
+	public int getCategory() {
+		return category;
+	}
+
+
+
+	/**
+	 * Returns the points scored.
+	 * @return The points; 0 unless the event is a submission
+	 */
+	public int getPoints() {
+		return points;
+	}
+
+
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(type).append(" turn ").append(turn).append(" player ").append(player);
+		switch (type) {
+		case ROLL:
+			sb.append(" rolled ").append(Arrays.toString(rolled))
+					.append(" dice ").append(Arrays.toString(dice))
+					.append(" rolls left ").append(rollsLeft);
+			break;
+		case SUBMIT:
+			sb.append(" category ").append(category).append(" points ").append(points)
+					.append(" dice ").append(Arrays.toString(dice));
+			break;
+		case NEXT_PLAYER:
+			sb.append(" rolls left ").append(rollsLeft);
+			break;
+		default:
+			break;
+		}
+		return sb.toString();
+	}
+}
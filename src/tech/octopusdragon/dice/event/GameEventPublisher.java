@@ -0,0 +1,427 @@
+package tech.octopusdragon.dice.event;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands a game's events to any number of subscribers, such as a journal,
+ * metrics, spectators or bots, as a {@link Flow.Publisher} of batches. Each
+ * item a subscriber requests is one batch: the events published since its last
+ * batch, in order, up to its largest batch size.
+ * <p>
+ * Every subscriber has its own ring buffer of events, so publishing an event
+ * only puts it into each buffer, under a lock held for as long as that takes,
+ * and never waits for a subscriber. Batches are delivered on an executor, one
+ * at a time for each subscriber. When a subscriber falls so far behind that
+ * its buffer is full, its {@link Overflow} policy says what gives: the oldest
+ * event buffered, the new event, or the subscription itself. A slow subscriber
+ * therefore loses events or its subscription, but never holds up the game.
+ * @author Alex Gill
+ *
+ */
+public class GameEventPublisher implements Flow.Publisher<List<GameEvent>>, AutoCloseable {
+
+	// --- Constants ---
+	public static final int DEFAULT_CAPACITY = 1024;	// Events buffered for each subscriber by default
+	public static final int DEFAULT_BATCH = 64;			// Most events in a batch by default
+
+	/**
+	 * What to do with a new event when a subscriber's buffer is full.
+	 */
+	public enum Overflow {
+		/** Drop the oldest event buffered to make room for the new one. */
+		DROP_OLDEST,
+		/** Drop the new event. */
+		DROP_NEWEST,
+		/** Cancel the subscription and signal an error to the subscriber. */
+		CANCEL
+	}
+
+	// Delivers batches for publishers not given an executor
+	private static final Executor DEFAULT_EXECUTOR;
+	static {
+		AtomicInteger threadNumber = new AtomicInteger();
+		DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "Game events " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private final Executor executor;	// Delivers the batches
+	private final List<EventSubscription> subscriptions =
+			new CopyOnWriteArrayList<EventSubscription>();	// The live subscriptions
+	private final LongAdder dropped = new LongAdder();	// Events dropped across all subscriptions
+	private volatile boolean closed;	// Whether no more events will be published
+
+
+
+	/**
+	 * Instantiates a publisher that delivers batches on a shared pool of
+	 * daemon threads.
+	 */
+	public GameEventPublisher() {
+		this(DEFAULT_EXECUTOR);
+	}
+
+
+
+	/**
+	 * Instantiates a publisher.
+	 * @param executor Delivers the batches
+	 */
+	public GameEventPublisher(Executor executor) {
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+
+
+	/**
+	 * Subscribes with a buffer of {@link #DEFAULT_CAPACITY} events, batches of
+	 * up to {@link #DEFAULT_BATCH} events and the oldest events dropped when
+	 * the buffer is full.
+	 * @param subscriber The subscriber
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super List<GameEvent>> subscriber) {
+		subscribe(subscriber, DEFAULT_CAPACITY, DEFAULT_BATCH, Overflow.DROP_OLDEST);
+	}
+
+
+
+	/**
+	 * Subscribes. The subscriber is given its subscription before this
+	 * returns, and receives every event published after that. If the
+	 * publisher is already closed, the subscriber is completed straight away.
+	 * @param subscriber The subscriber
+	 * @param capacity The most events buffered for the subscriber
+	 * @param maxBatch The most events in a batch
+	 * @param overflow What to do with a new event when the buffer is full
+	 * @return The subscription
+	 */
+	public EventSubscription subscribe(Flow.Subscriber<? super List<GameEvent>> subscriber,
+			int capacity, int maxBatch, Overflow overflow) {
+		Objects.requireNonNull(subscriber);
+		Objects.requireNonNull(overflow);
+		if (capacity < 1)
+			throw new IllegalArgumentException("A subscriber must buffer at least one event");
+		if (maxBatch < 1)
+			throw new IllegalArgumentException("A batch must hold at least one event");
+
+		EventSubscription subscription = new EventSubscription(subscriber, capacity, maxBatch, overflow);
+		subscriber.onSubscribe(subscription);
+		subscriptions.add(subscription);
+		if (closed)
+			subscription.complete();
+		return subscription;
+	}
+
+
+
+	/**
+	 * Returns whether anyone is subscribed. Publishers of events can check
+	 * this to avoid making events no one will receive.
+	 * @return Whether there are live subscriptions
+	 */
+	public boolean hasSubscribers() {
+		return !subscriptions.isEmpty();
+	}
+
+
+
+	/**
+	 * Returns the number of live subscriptions.
+	 * @return The number of subscriptions
+	 */
+	public int numSubscribers() {
+		return subscriptions.size();
+	}
+
+
+
+	/**
+	 * Publishes an event to every subscriber. This never waits for a
+	 * subscriber. Events published after the publisher is closed are
+	 * ignored.
+	 * @param event The event
+	 */
+	public void publish(GameEvent event) {
+		if (closed)
+			return;
+		for (EventSubscription subscription: subscriptions)
+			subscription.offer(event);
+	}
+
+
+
+	/**
+	 * Closes the publisher. Each subscriber is completed once it has been
+	 * delivered the events already buffered for it.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (EventSubscription subscription: subscriptions)
+			subscription.complete();
+	}
+
+
+
+	/**
+	 * Returns whether the publisher is closed.
+	 * @return Whether the publisher is closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+
+
+	/**
+	 * Returns the number of events dropped because a subscriber's buffer was
+	 * full, across all subscriptions.
+	 * @return The number of events
+	 */
+	public long dropped() {
+		return dropped.sum();
+	}
+
+
+
+	/**
+	 * One subscriber's buffer of events and outstanding demand.
+	 */
+	public final class EventSubscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super List<GameEvent>> subscriber;	// Receives the batches
+		private final GameEvent[] buffer;	// The ring buffer of events
+		private final int maxBatch;			// The most events in a batch
+		private final Overflow overflow;	// What gives when the buffer is full
+		private int head;					// The index of the oldest event buffered
+		private int size;					// The number of events buffered
+		private long numDropped;			// Events dropped because the buffer was full
+		private final AtomicLong demand = new AtomicLong();	// Batches requested and not yet delivered
+		private final AtomicBoolean scheduled = new AtomicBoolean();	// Whether a delivery is running or waiting to
+		private volatile Throwable error;	// The error to signal, if any
+		private volatile boolean completing;	// Whether to complete once the buffer is empty
+		private volatile boolean done;		// Whether the subscriber has been finished with
+
+		EventSubscription(Flow.Subscriber<? super List<GameEvent>> subscriber,
+				int capacity, int maxBatch, Overflow overflow) {
+			this.subscriber = subscriber;
+			this.buffer = new GameEvent[capacity];
+			this.maxBatch = maxBatch;
+			this.overflow = overflow;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				fail(new IllegalArgumentException("A subscriber must request at least one batch"));
+				return;
+			}
+			demand.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			finish();
+		}
+
+		/**
+		 * Returns the number of events buffered and not yet delivered.
+		 * @return The number of events
+		 */
+		public synchronized int buffered() {
+			return size;
+		}
+
+		/**
+		 * Returns the number of events dropped because the buffer was full.
+		 * @return The number of events
+		 */
+		public synchronized long dropped() {
+			return numDropped;
+		}
+
+		/**
+		 * Returns whether the subscription has ended, by being cancelled,
+		 * completed or failed.
+		 * @return Whether the subscription has ended
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Buffers an event, applying the overflow policy if the buffer is
+		 * full.
+		 * @param event The event
+		 */
+		void offer(GameEvent event) {
+			boolean overflowed = false;
+			synchronized (this) {
+				if (done || error != null)
+					return;
+				if (size < buffer.length) {
+					buffer[(head + size) % buffer.length] = event;
+					size++;
+				}
+				else if (overflow == Overflow.DROP_OLDEST) {
+					buffer[head] = event;
+					head = (head + 1) % buffer.length;
+					numDropped++;
+					dropped.increment();
+				}
+				else if (overflow == Overflow.DROP_NEWEST) {
+					numDropped++;
+					dropped.increment();
+				}
+				else
+					overflowed = true;
+			}
+			// Without demand the event waits in the buffer; the next request
+			// schedules its delivery
+			if (overflowed)
+				fail(new IllegalStateException("Subscriber fell more than " + buffer.length + " events behind"));
+			else if (demand.get() > 0)
+				schedule();
+		}
+
+		/**
+		 * Completes the subscriber once the events buffered are delivered.
+		 */
+		void complete() {
+			completing = true;
+			schedule();
+		}
+
+		/**
+		 * Signals an error to the subscriber in place of any more batches.
+		 * @param t The error
+		 */
+		private void fail(Throwable t) {
+			synchronized (this) {
+				if (error == null)
+					error = t;
+			}
+			schedule();
+		}
+
+		/**
+		 * Starts a delivery on the executor unless one is already running or
+		 * waiting to.
+		 */
+		private void schedule() {
+			if (done || !scheduled.compareAndSet(false, true))
+				return;
+			try {
+				executor.execute(this::drain);
+			}
+			catch (RejectedExecutionException e) {
+				finish();
+				subscriber.onError(e);
+			}
+		}
+
+		/**
+		 * Delivers batches until there is no demand or nothing to deliver,
+		 * then checks once more after letting another delivery be scheduled,
+		 * so an event or request that arrived in between is not missed.
+		 */
+		private void drain() {
+			do {
+				deliver();
+				scheduled.set(false);
+			} while (!done && hasWork() && scheduled.compareAndSet(false, true));
+		}
+
+		/**
+		 * Delivers batches, then the error or completion if it is due.
+		 */
+		private void deliver() {
+			while (!done) {
+				Throwable t = error;
+				if (t != null) {
+					finish();
+					subscriber.onError(t);
+					return;
+				}
+
+				List<GameEvent> batch = demand.get() > 0 ? take() : null;
+				if (batch != null) {
+					demand.decrementAndGet();
+					try {
+						subscriber.onNext(batch);
+					}
+					catch (Throwable e) {
+						// A subscriber that throws is cancelled
+						e.printStackTrace();
+						finish();
+						return;
+					}
+				}
+				else if (completing && buffered() == 0) {
+					finish();
+					subscriber.onComplete();
+					return;
+				}
+				else
+					return;
+			}
+		}
+
+		/**
+		 * Returns whether there is anything to deliver.
+		 * @return Whether there is a batch with demand for it, an error or a
+		 * completion to deliver
+		 */
+		private synchronized boolean hasWork() {
+			return error != null || (size > 0 ? demand.get() > 0 : completing);
+		}
+
+		/**
+		 * Takes the next batch from the buffer.
+		 * @return The batch, or null if the buffer is empty
+		 */
+		private List<GameEvent> take() {
+			GameEvent[] batch;
+			synchronized (this) {
+				if (size == 0)
+					return null;
+				batch = new GameEvent[Math.min(size, maxBatch)];
+				for (int i = 0; i < batch.length; i++) {
+					batch[i] = buffer[head];
+					buffer[head] = null;
+					head = (head + 1) % buffer.length;
+				}
+				size -= batch.length;
+			}
+			return Collections.unmodifiableList(Arrays.asList(batch));
+		}
+
+		/**
+		 * Ends the subscription and lets go of the events buffered.
+		 */
+		private void finish() {
+			done = true;
+			subscriptions.remove(this);
+			synchronized (this) {
+				Arrays.fill(buffer, null);
+				size = 0;
+			}
+		}
+	}
+}
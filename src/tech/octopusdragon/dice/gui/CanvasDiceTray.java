@@ -0,0 +1,432 @@
+package tech.octopusdragon.dice.gui;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.effect.Glow;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.Text;
+
+/**
+ * Draws a whole tray of dice on a single canvas. It is an alternative to
+ * giving every die its own image view for variants with many dice: one
+ * animation timer animates every rolling die, clicks and hovers are mapped to
+ * dice by their position in the tray, and the highlighted and held looks of
+ * each face are rendered once when the tray is created instead of being
+ * applied as effects every frame.
+ * @author Alex Gill
+ *
+ */
+public class CanvasDiceTray extends Canvas {
+
+	// --- Constants ---
+	private final double DURATION = 1000.0;	// The duration of a die's roll
+	private final int IMAGE_CHANGES = 12;	// The number of image changes
+	private final double MAX_STAGGER = 500.0;	// The longest delay before the last die rolls
+	private final int PLAIN = 0;		// Sprite of a die with no effect
+	private final int HIGHLIGHT = 1;	// Sprite of a highlighted die
+	private final int GLOW = 2;			// Sprite of a held die
+	private final int HIGHLIGHT_GLOW = 3;	// Sprite of a highlighted held die
+
+	// --- Layout ---
+	private int numDice;		// The number of dice
+	private int columns;		// The number of dice per row
+	private double dieLength;	// The width and height of a die
+	private double padding;		// The padding around each die
+
+	// --- Sprites ---
+	private Image[][] faceSprites;	// Pre-rendered faces by value and effect
+	private double[] spriteOffsets;	// How far each effect's sprites reach past a die
+
+	// --- Dice ---
+	private int[] values;			// The value of each die
+	private int[] effects;			// The effect of each die
+	private boolean[] rolling;		// Whether each die is rolling
+	private long[] rollStart;		// When each die starts rolling, in nanoseconds
+	private int[][] rollFrames;		// The animation frames of each rolling die
+	private int numRolling;			// The number of dice still rolling
+	private boolean firstSettled;	// Whether a die of the current roll has settled
+	private boolean dirty;			// Whether the tray has to be redrawn
+	private AnimationTimer timer;	// Redraws the tray while something changes
+	private Random rand = new Random();
+
+	// --- Callbacks ---
+	private IntConsumer onDieClicked;	// Called with the index of a clicked die
+	private IntConsumer onDieHovered;	// Called with the index of the hovered die, or -1
+	private Runnable onFirstSettled;	// Called when the first rolling die settles
+	private Runnable onAllSettled;		// Called when every rolling die has settled
+	private int hoveredDie = -1;		// The die under the mouse
+
+
+
+	/**
+	 * Instantiates the tray and pre-renders the die faces. Must be called on
+	 * the JavaFX Application Thread.
+	 * @param numDice The number of dice
+	 * @param columns The number of dice per row
+	 * @param dieLength The width and height of a die
+	 * @param padding The padding around each die
+	 * @param numSides The number of sides on each die
+	 * @param faceImages The die images by value. Faces without an image are
+	 * drawn as their number.
+	 */
+	public CanvasDiceTray(int numDice, int columns, double dieLength, double padding,
+			int numSides, Map<Integer, Image> faceImages) {
+		super(Math.min(numDice, columns) * (dieLength + 2 * padding),
+				(numDice + columns - 1) / columns * (dieLength + 2 * padding));
+		this.numDice = numDice;
+		this.columns = columns;
+		this.dieLength = dieLength;
+		this.padding = padding;
+
+		values = new int[numDice];
+		effects = new int[numDice];
+		rolling = new boolean[numDice];
+		rollStart = new long[numDice];
+		rollFrames = new int[numDice][IMAGE_CHANGES];
+		for (int i = 0; i < numDice; i++)
+			values[i] = 1;
+
+		renderSprites(numSides, faceImages);
+
+		// Redraw only while something is changing
+		timer = new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				if (numRolling > 0)
+					advance(now);
+				if (dirty)
+					draw(now);
+				if (numRolling == 0 && !dirty)
+					stop();
+			}
+		};
+
+		// Map the mouse to dice
+		setOnMouseMoved(e -> hover(dieAt(e)));
+		setOnMouseExited(e -> hover(-1));
+		setOnMouseClicked(e -> {
+			int die = dieAt(e);
+			if (die != -1 && onDieClicked != null)
+				onDieClicked.accept(die);
+		});
+
+		invalidate();
+	}
+
+
+
+	/**
+	 * Renders every face in every effect once, so drawing a die is a single
+	 * image copy.
+	 * @param numSides The number of sides on each die
+	 * @param faceImages The die images by value
+	 */
+	private void renderSprites(int numSides, Map<Integer, Image> faceImages) {
+
+		// The effects, built the same way as the image view effects
+		Glow highlightEffect = new Glow(0.5);
+		DropShadow glowEffect = new DropShadow();
+		glowEffect.setColor(Color.YELLOW);
+		glowEffect.setRadius(12.0);
+		glowEffect.setSpread(0.8);
+		DropShadow highlightGlowEffect = new DropShadow();
+		highlightGlowEffect.setColor(Color.YELLOW);
+		highlightGlowEffect.setRadius(12.0);
+		highlightGlowEffect.setSpread(0.8);
+		highlightGlowEffect.setInput(new Glow(0.5));
+
+		SnapshotParameters parameters = new SnapshotParameters();
+		parameters.setFill(Color.TRANSPARENT);
+
+		faceSprites = new Image[numSides + 1][4];
+		spriteOffsets = new double[4];
+		for (int value = 1; value <= numSides; value++) {
+			Node face = faceNode(value, faceImages.get(value));
+			faceSprites[value][PLAIN] = face.snapshot(parameters, null);
+			face.setEffect(highlightEffect);
+			faceSprites[value][HIGHLIGHT] = face.snapshot(parameters, null);
+			face.setEffect(glowEffect);
+			faceSprites[value][GLOW] = face.snapshot(parameters, null);
+			face.setEffect(highlightGlowEffect);
+			faceSprites[value][HIGHLIGHT_GLOW] = face.snapshot(parameters, null);
+		}
+		
+		// Effects may spread past the die, so center the sprites on the die
+		for (int effect = 0; effect < 4; effect++)
+			for (Image[] sprites: faceSprites)
+				if (sprites[effect] != null)
+					spriteOffsets[effect] = (sprites[effect].getWidth() - dieLength) / 2;
+	}
+
+
+
+	/**
+	 * Creates the node a face is rendered from: its image, or its number on a
+	 * plain die if it has no image.
+	 * @param value The value of the face
+	 * @param image The image of the face, or null
+	 * @return The node
+	 */
+	private Node faceNode(int value, Image image) {
+		if (image != null) {
+			ImageView view = new ImageView(image);
+			view.setPreserveRatio(true);
+			view.setFitWidth(dieLength);
+			return view;
+		}
+		
+		Rectangle body = new Rectangle(dieLength, dieLength, Color.WHITE);
+		body.setArcWidth(dieLength / 4);
+		body.setArcHeight(dieLength / 4);
+		body.setStroke(Color.BLACK);
+		Text number = new Text(Integer.toString(value));
+		number.setFont(Font.font("Georgia", FontWeight.BOLD, dieLength / 2));
+		return new StackPane(body, number);
+	}
+
+
+
+	/**
+	 * Returns the number of dice in the tray.
+	 * @return The number of dice
+	 */
+	public int numDice() {
+		return numDice;
+	}
+
+
+
+	/**
+	 * Shows a value on a die without animating it.
+	 * @param die The index of the die
+	 * @param value The value
+	 */
+	public void setValue(int die, int value) {
+		values[die] = value;
+		if (rolling[die]) {
+			rolling[die] = false;
+			numRolling--;
+		}
+		invalidate();
+	}
+
+
+
+	/**
+	 * Sets the effect of a die.
+	 * @param die The index of the die
+	 * @param highlight Whether to highlight the die
+	 * @param glow Whether to add glow to the die
+	 */
+	public void setDieEffect(int die, boolean highlight, boolean glow) {
+		int effect = highlight ? (glow ? HIGHLIGHT_GLOW : HIGHLIGHT) : (glow ? GLOW : PLAIN);
+		if (effects[die] != effect) {
+			effects[die] = effect;
+			invalidate();
+		}
+	}
+
+
+
+	/**
+	 * Animates dice rolling to the given values. The dice start one after
+	 * another, but the last one starts no later than half a second after the
+	 * first, however many dice roll.
+	 * @param dieIndexes The indexes of the dice to roll
+	 * @param endValues The values the dice end on
+	 * @param delay The time between the starts of consecutive dice
+	 */
+	public void roll(int[] dieIndexes, int[] endValues, double delay) {
+		double stagger = dieIndexes.length > 1 ?
+				Math.min(delay, MAX_STAGGER / (dieIndexes.length - 1)) : 0.0;
+		long now = System.nanoTime();
+		firstSettled = false;
+		for (int i = 0; i < dieIndexes.length; i++) {
+			int die = dieIndexes[i];
+
+			// The first frame shows the old face and the last one the new face
+			rollFrames[die][0] = -values[die];
+			for (int j = 1; j < IMAGE_CHANGES - 1; j++)
+				rollFrames[die][j] = rand.nextInt(RollAnimation.images.length);
+			rollFrames[die][IMAGE_CHANGES - 1] = -endValues[i];
+
+			values[die] = endValues[i];
+			rollStart[die] = now + (long) (i * stagger * 1e6);
+			if (!rolling[die])
+				numRolling++;
+			rolling[die] = true;
+		}
+		invalidate();
+	}
+
+
+
+	/**
+	 * Sets what happens when the first rolling die settles.
+	 * @param action The action
+	 */
+	public void setOnFirstSettled(Runnable action) {
+		onFirstSettled = action;
+	}
+
+
+
+	/**
+	 * Sets what happens when every rolling die has settled.
+	 * @param action The action
+	 */
+	public void setOnAllSettled(Runnable action) {
+		onAllSettled = action;
+	}
+
+
+
+	/**
+	 * Sets what happens when a die is clicked.
+	 * @param action The action, given the index of the die
+	 */
+	public void setOnDieClicked(IntConsumer action) {
+		onDieClicked = action;
+	}
+
+
+
+	/**
+	 * Sets what happens when the mouse moves onto a die or off the dice.
+	 * @param action The action, given the index of the die or -1
+	 */
+	public void setOnDieHovered(IntConsumer action) {
+		onDieHovered = action;
+	}
+
+
+
+	/**
+	 * Returns the index of the die under the mouse.
+	 * @param event The mouse event
+	 * @return The index of the die, or -1 if the mouse is not over a die
+	 */
+	private int dieAt(MouseEvent event) {
+		double cell = dieLength + 2 * padding;
+		int column = (int) (event.getX() / cell);
+		int row = (int) (event.getY() / cell);
+		double x = event.getX() - column * cell;
+		double y = event.getY() - row * cell;
+		int die = row * columns + column;
+		if (column >= columns || die >= numDice ||
+			x < padding || x > padding + dieLength ||
+			y < padding || y > padding + dieLength)
+			return -1;
+		return die;
+	}
+
+
+
+	/**
+	 * Reports a change of the die under the mouse.
+	 * @param die The index of the die, or -1
+	 */
+	private void hover(int die) {
+		if (die == hoveredDie)
+			return;
+		hoveredDie = die;
+		if (onDieHovered != null)
+			onDieHovered.accept(die);
+	}
+
+
+
+	/**
+	 * Settles the dice whose animations are over.
+	 * @param now The current time in nanoseconds
+	 */
+	private void advance(long now) {
+		for (int die = 0; die < numDice; die++) {
+			if (rolling[die] && (now - rollStart[die]) / 1e6 >= DURATION) {
+				rolling[die] = false;
+				numRolling--;
+				
+				// Let the caller know about the first and the last die
+				if (!firstSettled) {
+					firstSettled = true;
+					if (onFirstSettled != null)
+						onFirstSettled.run();
+				}
+				if (numRolling == 0 && onAllSettled != null)
+					onAllSettled.run();
+			}
+		}
+		dirty = true;
+	}
+
+
+
+	/**
+	 * Draws every die.
+	 * @param now The current time in nanoseconds
+	 */
+	private void draw(long now) {
+		GraphicsContext gc = getGraphicsContext2D();
+		gc.clearRect(0, 0, getWidth(), getHeight());
+		double cell = dieLength + 2 * padding;
+		for (int die = 0; die < numDice; die++) {
+			double x = die % columns * cell + padding;
+			double y = die / columns * cell + padding;
+
+			// A rolling die shows its current animation frame
+			if (rolling[die]) {
+				double elapsed = (now - rollStart[die]) / 1e6;
+				int frame = (int) Math.max(0, Math.min(IMAGE_CHANGES - 1, elapsed / (DURATION / IMAGE_CHANGES)));
+				int image = rollFrames[die][frame];
+				if (image < 0)
+					drawFace(gc, -image, PLAIN, x, y);
+				else
+					gc.drawImage(RollAnimation.images[image], x, y, dieLength, dieLength);
+			}
+			else {
+				drawFace(gc, values[die], effects[die], x, y);
+			}
+		}
+		dirty = false;
+	}
+
+
+
+	/**
+	 * Draws a pre-rendered face.
+	 * @param gc The graphics context
+	 * @param value The value of the face
+	 * @param effect The effect
+	 * @param x The x coordinate of the die
+	 * @param y The y coordinate of the die
+	 */
+	private void drawFace(GraphicsContext gc, int value, int effect, double x, double y) {
+		double offset = spriteOffsets[effect];
+		gc.drawImage(faceSprites[value][effect], x - offset, y - offset);
+	}
+
+
+
+	/**
+	 * Marks the tray for redrawing on the next frame.
+	 */
+	private void invalidate() {
+		dirty = true;
+		timer.start();
+	}
+}
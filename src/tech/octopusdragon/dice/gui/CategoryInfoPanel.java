@@ -34,6 +34,8 @@ public class CategoryInfoPanel extends GridPane {
 	// Constants
 	private final double PADDING = 5.0;
 	private final double SCORE_LABEL_WIDTH = 50.0;
+	private final Color SCORE_COLOR = Color.BLACK;
+	private final Color PREVIEW_COLOR = Color.GRAY;
 	private final Background DEFAULT_BACKGROUND = new Background(
 			new BackgroundFill(Color.WHITE, new CornerRadii(5.0), null));
 	private final Background SELECTED_BACKGROUND = new Background(
@@ -132,6 +134,9 @@ public class CategoryInfoPanel extends GridPane {
 	 */
 	public void setScore(int score, boolean show) {
 		
+		// Scores are shown in the normal color
+		scoreLabel.setTextFill(SCORE_COLOR);
+		
 		// If set to show, show the score.
 		if (show) {
 			scoreLabel.setText(Integer.toString(score));
@@ -144,6 +149,19 @@ public class CategoryInfoPanel extends GridPane {
 	}
 	
 	
+	/**
+	 * Shows the number of points the category would score with the current
+	 * dice. The preview is shown in a lighter color than a submitted score and
+	 * is replaced by the next call to {@link #setScore(int, boolean)}.
+	 * @param score The number of points the category would score
+	 */
+	public void setPreview(int score) {
+		scoreLabel.setTextFill(PREVIEW_COLOR);
+		scoreLabel.setText(Integer.toString(score));
+	}
+	
+	
+	
 	/**
 	 * Sets the disabled value.
 	 * @param d Whether the category info panel is to be disabled
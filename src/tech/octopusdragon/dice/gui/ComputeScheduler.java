@@ -0,0 +1,375 @@
+package tech.octopusdragon.dice.gui;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+/**
+ * Runs heavy work for the GUI off the JavaFX Application Thread, so event
+ * handlers stay quick however much analysis is going on. Each task is
+ * submitted under a key, and submitting a new task under a key cancels the
+ * task already submitted under it, so only the work for the latest state of
+ * the game is ever done.
+ * <p>
+ * A task publishes results as it goes. Results are handed back to the JavaFX
+ * Application Thread in batches, with one {@link Platform#runLater(Runnable)}
+ * for every result published in the meantime, and a task's results that were
+ * published before the last one was shown are skipped. The time each task
+ * waits in the queue, the time it runs and the time its results wait to be
+ * shown are recorded by key.
+ * @author Alex Gill
+ *
+ */
+public class ComputeScheduler {
+
+	private final ExecutorService pool;	// The worker threads
+	private final Map<String, Submission<?>> current = new ConcurrentHashMap<String, Submission<?>>();	// Latest task by key
+	private final ConcurrentLinkedQueue<Submission<?>> ready = new ConcurrentLinkedQueue<Submission<?>>();	// Tasks with results to show
+	private final AtomicBoolean flushPending = new AtomicBoolean();	// Whether a hand-off is waiting
+	private final Map<String, TaskStats> stats = new ConcurrentHashMap<String, TaskStats>();	// Latencies by key
+
+
+
+	/**
+	 * Instantiates a scheduler with one worker thread fewer than there are
+	 * processors, leaving one for the JavaFX Application Thread.
+	 */
+	public ComputeScheduler() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+
+
+	/**
+	 * Instantiates a scheduler.
+	 * @param numThreads The number of worker threads
+	 */
+	public ComputeScheduler(int numThreads) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		pool = Executors.newFixedThreadPool(numThreads, runnable -> {
+			Thread thread = new Thread(runnable, "Compute " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		});
+	}
+
+
+
+	/**
+	 * Submits a task, cancelling the task already submitted under the same key.
+	 * @param <T> The type of the results
+	 * @param key The key
+	 * @param task The task
+	 * @param onResult Shows each result, called on the JavaFX Application
+	 * Thread
+	 */
+	public <T> void submit(String key, Task<T> task, Consumer<T> onResult) {
+		Submission<T> submission = new Submission<T>(key, task, onResult,
+				stats.computeIfAbsent(key, k -> new TaskStats()));
+		synchronized (current) {
+			Submission<?> previous = current.put(key, submission);
+			if (previous != null)
+				previous.cancel();
+			submission.future = pool.submit(submission::execute);
+		}
+	}
+
+
+
+	/**
+	 * Cancels the task submitted under a key, if it has not finished. Results
+	 * it has published but that have not been shown yet are dropped.
+	 * @param key The key
+	 */
+	public void cancel(String key) {
+		synchronized (current) {
+			Submission<?> previous = current.remove(key);
+			if (previous != null)
+				previous.cancel();
+		}
+	}
+
+
+
+	/**
+	 * Cancels every task and stops the worker threads.
+	 */
+	public void shutdown() {
+		synchronized (current) {
+			for (Submission<?> submission: current.values())
+				submission.cancel();
+			current.clear();
+		}
+		pool.shutdownNow();
+	}
+
+
+
+	/**
+	 * Returns the latencies recorded for each key.
+	 * @return The latencies by key, sorted by key
+	 */
+	public Map<String, TaskStats> getStats() {
+		return new TreeMap<String, TaskStats>(stats);
+	}
+
+
+
+	/**
+	 * Queues a task's latest result to be shown, and asks the JavaFX
+	 * Application Thread to show the queued results if it has not already
+	 * been asked.
+	 * @param submission The task
+	 */
+	private void ready(Submission<?> submission) {
+		ready.add(submission);
+		if (flushPending.compareAndSet(false, true))
+			Platform.runLater(this::flush);
+	}
+
+
+
+	/**
+	 * Shows every queued result. Runs on the JavaFX Application Thread.
+	 */
+	private void flush() {
+		flushPending.set(false);
+		Submission<?> submission;
+		while ((submission = ready.poll()) != null)
+			submission.deliver();
+	}
+
+
+
+	/**
+	 * Work done off the JavaFX Application Thread.
+	 * @param <T> The type of the results
+	 */
+	@FunctionalInterface
+	public interface Task<T> {
+
+		/**
+		 * Does the work. The work should check
+		 * {@link Context#isCancelled()} often and return soon after it
+		 * becomes true.
+		 * @param context Publishes results and reports cancellation
+		 * @throws Exception if the work fails
+		 */
+		void run(Context<T> context) throws Exception;
+	}
+
+
+
+	/**
+	 * What a running task can see of the scheduler.
+	 * @param <T> The type of the results
+	 */
+	public interface Context<T> {
+
+		/**
+		 * Returns whether the task has been cancelled or superseded.
+		 * @return Whether the task has been cancelled
+		 */
+		boolean isCancelled();
+
+		/**
+		 * Publishes a result, replacing any result of the task that has not
+		 * been shown yet.
+		 * @param result The result
+		 */
+		void publish(T result);
+	}
+
+
+
+	/**
+	 * A submitted task.
+	 * @param <T> The type of the results
+	 */
+	private class Submission<T> implements Context<T> {
+
+		final String key;
+		final Task<T> task;
+		final Consumer<T> onResult;
+		final TaskStats taskStats;
+		final long submitted = System.nanoTime();
+		final AtomicReference<Published<T>> latest = new AtomicReference<Published<T>>();	// Waiting to be shown
+		final AtomicBoolean queued = new AtomicBoolean();	// Whether the task is in the ready queue
+		volatile boolean cancelled;
+		Future<?> future;
+
+		Submission(String key, Task<T> task, Consumer<T> onResult, TaskStats taskStats) {
+			this.key = key;
+			this.task = task;
+			this.onResult = onResult;
+			this.taskStats = taskStats;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled || Thread.currentThread().isInterrupted();
+		}
+
+		@Override
+		public void publish(T result) {
+			if (cancelled)
+				return;
+			latest.set(new Published<T>(result, System.nanoTime()));
+			if (queued.compareAndSet(false, true))
+				ready(this);
+		}
+
+		void cancel() {
+			cancelled = true;
+			latest.set(null);
+			if (future != null)
+				future.cancel(true);
+		}
+
+		void execute() {
+			if (cancelled)
+				return;
+			long started = System.nanoTime();
+			taskStats.queue.record(started - submitted);
+			try {
+				task.run(this);
+			} catch (InterruptedException e) {
+				// Cancelled
+			} catch (Exception e) {
+				if (!cancelled) {
+					System.out.println("Error running task " + key + "...");
+					e.printStackTrace();
+				}
+			}
+			taskStats.run.record(System.nanoTime() - started);
+			current.remove(key, this);
+		}
+
+		void deliver() {
+			queued.set(false);
+			Published<T> result = latest.getAndSet(null);
+			if (result == null || cancelled)
+				return;
+			taskStats.delivery.record(System.nanoTime() - result.time);
+			try {
+				onResult.accept(result.value);
+			} catch (RuntimeException e) {
+				System.out.println("Error showing the result of task " + key + "...");
+				e.printStackTrace();
+			}
+		}
+	}
+
+
+
+	/**
+	 * A result and when it was published.
+	 */
+	private static class Published<T> {
+
+		final T value;
+		final long time;
+
+		Published(T value, long time) {
+			this.value = value;
+			this.time = time;
+		}
+	}
+
+
+
+	/**
+	 * The latencies recorded for one key.
+	 */
+	public static class TaskStats {
+
+		/** The time from submission until a worker thread starts the task. */
+		public final Latency queue = new Latency();
+		/** The time a task runs, whether it finishes or is cancelled. */
+		public final Latency run = new Latency();
+		/** The time from a result being published until it is shown. */
+		public final Latency delivery = new Latency();
+	}
+
+
+
+	/**
+	 * A running summary of durations, with percentiles read from a histogram
+	 * of powers of two, accurate to within a factor of two.
+	 */
+	public static class Latency {
+
+		private static final int BUCKETS = 64;
+
+		private final long[] histogram = new long[BUCKETS];	// Counts by highest bit of the nanoseconds
+		private long count;
+		private long totalNanos;
+		private long maxNanos;
+
+		/**
+		 * Records a duration.
+		 * @param nanos The duration in nanoseconds
+		 */
+		public synchronized void record(long nanos) {
+			nanos = Math.max(0, nanos);
+			histogram[BUCKETS - Long.numberOfLeadingZeros(nanos)]++;
+			count++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		/**
+		 * Returns the number of durations recorded.
+		 * @return The number of durations
+		 */
+		public synchronized long count() {
+			return count;
+		}
+
+		/**
+		 * Returns the mean duration.
+		 * @return The mean in milliseconds, or 0 if none are recorded
+		 */
+		public synchronized double meanMillis() {
+			return count == 0 ? 0.0 : totalNanos / 1e6 / count;
+		}
+
+		/**
+		 * Returns the longest duration.
+		 * @return The longest duration in milliseconds
+		 */
+		public synchronized double maxMillis() {
+			return maxNanos / 1e6;
+		}
+
+		/**
+		 * Returns a percentile of the durations, as the upper end of the
+		 * histogram bucket it falls in, capped at the longest duration.
+		 * @param percent The percentile, from 0 to 100
+		 * @return The percentile in milliseconds, or 0 if none are recorded
+		 */
+		public synchronized double percentileMillis(double percent) {
+			if (count == 0)
+				return 0.0;
+			long rank = (long)Math.ceil(percent / 100.0 * count);
+			long seen = 0;
+			for (int bucket = 0; bucket < BUCKETS; bucket++) {
+				seen += histogram[bucket];
+				if (seen >= Math.max(1, rank))
+					return Math.min(bucket == 0 ? 0 : (1L << bucket) - 1, maxNanos) / 1e6;
+			}
+			return maxMillis();
+		}
+	}
+}
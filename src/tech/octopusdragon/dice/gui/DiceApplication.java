@@ -1,10 +1,18 @@
 package tech.octopusdragon.dice.gui;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -29,6 +37,9 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonBar.ButtonData;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Background;
 import javafx.scene.layout.BackgroundFill;
@@ -46,6 +57,15 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import tech.octopusdragon.dice.*;
+import tech.octopusdragon.dice.jfr.AnimationFinishedEvent;
+import tech.octopusdragon.dice.jfr.CategorySubmittedEvent;
+import tech.octopusdragon.dice.history.HistoryStore;
+import tech.octopusdragon.dice.jfr.RollRequestedEvent;
+import tech.octopusdragon.dice.leaderboard.Leaderboards;
+import tech.octopusdragon.dice.leaderboard.TimeWindow;
+import tech.octopusdragon.dice.rules.VariantRules;
+import tech.octopusdragon.dice.solver.GameSnapshot;
+import tech.octopusdragon.dice.solver.WinEstimator;
 import tech.octopusdragon.dice.variants.*;
 
 /**
@@ -64,6 +84,15 @@ public class DiceApplication extends Application {
 	public final static double CATEGORY_INFO_PANEL_HEIGHT = 100.0;
 	public final static double DIE_LENGTH = 70.0;	// The width and height of the die images
 	public final static double DELAY = 100.0; 	// Difference in time between each die roll
+	public final static int CANVAS_TRAY_DICE = 8;	// More dice than this are drawn on a canvas
+	public final static int TRAY_COLUMNS = 10;	// The number of dice per row on the canvas
+	public final static double TRAY_DIE_LENGTH = 48.0;	// The width and height of the dice on the canvas
+	
+	// Label styles, shared by the game screens of all variants
+	private final Font ROLLS_LEFT_FONT = new Font("Calibri Light", 20);
+	private final Font PLAYER_FONT = new Font("Consolas", 24);
+	private final Background LABEL_BACKGROUND = new Background(
+			new BackgroundFill(Color.web("#FFFFFF", 0.75), new CornerRadii(10.0), null));
 	
 	// Die images
 	public final static Map<Integer, Image> dieImages = new HashMap<Integer, Image>();
@@ -76,6 +105,17 @@ public class DiceApplication extends Application {
 	
 	public final static String BACKGROUND_IMAGE = "background.jpg";
 	
+	// Fast-play mode
+	public final static String FAST_PLAY_PARAMETER = "fast-play";	// Starts the game in fast-play mode
+	public final static String WIN_PROBABILITY_TASK = "win-probability";	// Key of the win probability task
+	public final static KeyCombination FAST_PLAY_KEY =		// Toggles fast-play mode
+			new KeyCodeCombination(KeyCode.F, KeyCombination.SHORTCUT_DOWN);
+	
+	// Leaderboards
+	public final static String SAVE_DIRECTORY = ".octopusdragon-dice";	// Under the user's home directory
+	public final static String LEADERBOARD_FILE = "leaderboards.dat";	// The snapshot of the leaderboards
+	public final static String HISTORY_DIRECTORY = "history";	// Holds the game history of each variant
+	
 	// Sounds
 	public final static String DICE_SOUND = "dice.wav";
 	public final static String CHEER_SOUND = "cheer.wav";
@@ -85,20 +125,35 @@ public class DiceApplication extends Application {
 	// GUI components
 	GridPane root;
 	List<ImageView> dieImageViews;	// The die image views
+	CanvasDiceTray diceTray;	// Draws the dice instead if there are many, or null
 	Label rollsLeftLabel;	// Shows the number of rolls the user has left
 	Button rollButton;			// The roll button
 	CategoryInfoPanel[] categoryInfoPanels;	// The category info panels
 	Label playerLabel;	// Shows the current player
 	Label totalScoreLabel;	// Shows total score of the current player
+	Label winProbabilityLabel;	// Shows each player's chance of winning
+	Map<Variant, GameLayout> layouts = new HashMap<Variant, GameLayout>();	// Game screens by variant
+	GameLayout currentLayout;	// The game screen being shown
+	
+	// Event handlers shared by every game
+	EventHandler<ActionEvent> rollButtonHandler = new RollButtonHandler();
+	EventHandler<ActionEvent> nextButtonHandler = e -> { nextPlayer(); };
 	
 	// The game
 	DiceGame game;
 	
 	// Other variables
-	Class<?>[] variants;	// List of regional variants
+	Variant[] variants;	// List of regional variants, then the variants defined by rules files
 	List<Integer> heldDice;	// Indexes of held dice
 	boolean diceDisabled;	// Whether dice can be interacted with
 	boolean animationRunning;	// Whether the animation is running
+	boolean fastPlay;		// Whether rolls are applied at once, without animation or sound
+	AnimationFinishedEvent animationEvent;	// Times the roll from the button press until the dice settle
+	ComputeScheduler scheduler;	// Runs heavy work off the JavaFX Application Thread
+	Leaderboards leaderboards;	// The best scores of every variant
+	Path leaderboardFile;	// Where the leaderboards are saved
+	Map<String, HistoryStore> histories = new HashMap<String, HistoryStore>();	// Game histories by variant name, used on the saver
+	ExecutorService saver;	// Saves the leaderboards and game histories, one at a time, finishing before exit
 	
 	
 	
@@ -121,6 +176,50 @@ public class DiceApplication extends Application {
 		dieImages.put(6, new Image(getClass().getClassLoader().getResourceAsStream(SIX_IMAGE)));
 		
 		// Initialize the sounds
+		loadSounds();
+		
+		// Run heavy work in the background
+		scheduler = new ComputeScheduler();
+		saver = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "Saver");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		// Load the leaderboards
+		leaderboardFile = Paths.get(System.getProperty("user.home"), SAVE_DIRECTORY, LEADERBOARD_FILE);
+		leaderboards = new Leaderboards();
+		if (Files.exists(leaderboardFile)) {
+			try {
+				leaderboards = Leaderboards.load(leaderboardFile, ZoneId.systemDefault());
+			} catch (IOException e) {
+				System.out.println("Error loading the leaderboards...");
+				e.printStackTrace();
+			}
+		}
+		
+		// Start in fast-play mode if asked to
+		fastPlay = Boolean.parseBoolean(getParameters().getNamed().get(FAST_PLAY_PARAMETER));
+		
+		// Instantiate the list of regional variants
+		List<Variant> variantList = new ArrayList<Variant>();
+		variantList.add(Variant.of(Yacht.class));
+		variantList.add(Variant.of(Crag.class));
+		try {
+			variantList.addAll(VariantRules.loadAll(getClass().getClassLoader()));
+		} catch (IOException | IllegalArgumentException e) {
+			System.out.println("Error reading variant rules files...");
+			e.printStackTrace();
+		}
+		variants = variantList.toArray(new Variant[0]);
+	}
+
+	
+	
+	/**
+	 * Loads the sound effects. If this is not called, the game is silent.
+	 */
+	public void loadSounds() {
 		diceSound = new MediaPlayer(new Media(getClass().getClassLoader().getResource(DICE_SOUND).toExternalForm()));
 		diceSound.setOnEndOfMedia(() -> {
 			diceSound.stop();
@@ -129,10 +228,17 @@ public class DiceApplication extends Application {
 		cheerSound.setOnEndOfMedia(() -> {
 			cheerSound.stop();
 		});
-		
-		// Instantiate the list of regional variants
-		variants = new Class<?>[] {Yacht.class,
-								   Crag.class};
+	}
+	
+	
+	
+	/**
+	 * Plays a sound effect if sounds have been loaded.
+	 * @param sound The sound effect
+	 */
+	public void playSound(MediaPlayer sound) {
+		if (sound != null)
+			sound.play();
 	}
 
 	
@@ -160,6 +266,7 @@ public class DiceApplication extends Application {
 		
 		// Set the scene
 		Scene scene = new Scene(root);
+		scene.getAccelerators().put(FAST_PLAY_KEY, () -> setFastPlay(!fastPlay));
 		primaryStage.setScene(scene);
 		primaryStage.setTitle("Unspecified dice game");
 		primaryStage.setResizable(false);
@@ -173,43 +280,183 @@ public class DiceApplication extends Application {
 
 	
 	
+	@Override
+	public void stop() {
+		scheduler.shutdown();
+		
+		// Close the histories once the leaderboards and games waiting to be
+		// saved are
+		saver.execute(() -> {
+			for (HistoryStore history: histories.values()) {
+				try {
+					history.close();
+				} catch (IOException e) {
+					System.out.println("Error closing the game history...");
+					e.printStackTrace();
+				}
+			}
+		});
+		saver.shutdown();
+		try {
+			saver.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	
+	
 	public static void main(String[] args) {
 		launch(args);
 	}
 	
 	
 	
-	public void newGame(Class<?> variant, int numPlayers) {
+	/**
+	 * Turns fast-play mode on or off. In fast-play mode, rolls are applied at
+	 * once with no animation and no sound, so turns can be played as fast as
+	 * the buttons are pressed. The game itself is played exactly the same way.
+	 * @param fastPlay Whether to turn fast-play mode on
+	 */
+	public void setFastPlay(boolean fastPlay) {
+		this.fastPlay = fastPlay;
+	}
+	
+	
+	
+	public void newGame(Variant variant, int numPlayers) {
 		
 		// Instantiate a new game
-		try {
-			game = (DiceGame) variant.getDeclaredConstructor(int.class).newInstance(numPlayers);
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-			System.out.println("Error instantiating checkers class...");
-			e.printStackTrace();
-			System.exit(1);
+		game = variant.newGame(numPlayers);
+		
+		
+		// Reuse the game screen of this variant, building it the first time
+		GameLayout layout = layouts.get(variant);
+		if (layout == null) {
+			layout = buildLayout();
+			layouts.put(variant, layout);
+		}
+		
+		// Show the layout if another one is showing
+		if (layout != currentLayout) {
+			root.getChildren().setAll(layout.nodes);
+			currentLayout = layout;
+		}
+		dieImageViews = layout.dieImageViews;
+		diceTray = layout.diceTray;
+		rollsLeftLabel = layout.rollsLeftLabel;
+		rollButton = layout.rollButton;
+		categoryInfoPanels = layout.categoryInfoPanels;
+		playerLabel = layout.playerLabel;
+		totalScoreLabel = layout.totalScoreLabel;
+		winProbabilityLabel = layout.winProbabilityLabel;
+		
+		
+		// Reset the dice images
+		for (ImageView die: dieImageViews) {
+			die.setImage(dieImages.get(1));
+			die.setRotate(0.0);
+		}
+		for (int i = 0; i < game.numDice(); i++) {
+			if (diceTray != null)
+				diceTray.setValue(i, 1);
+			setDieEffect(i, false, false);
+		}
+		
+		// Update the rolls left label
+		rollsLeftLabel.setText("Rolls left: " + game.rollsLeft());
+		
+		// Update the category info panes
+		for (int i = 0; i < game.categories().length; i++) {
+			categoryInfoPanels[i].setPanelDisabled(false);
+			Category category = categoryInfoPanels[i].getCategory();
+			categoryInfoPanels[i].setScore(
+					game.curPlayer().getPoints(category),
+					game.curPlayer().hasUsedCategory(category));
+			if (game.curPlayer().hasUsedCategory(category))
+				categoryInfoPanels[i].disable();
+			else
+				categoryInfoPanels[i].deselect();
+			categoryInfoPanels[i].setPanelDisabled(true);
 		}
 		
+		// Update the roll button
+		rollButton.setText("Roll");
+		rollButton.setOnAction(rollButtonHandler);
+		rollButton.setDisable(false);
 		
-		// Clear the grid pane
-		root.getChildren().clear();
+		// Update the player label
+		playerLabel.setText(game.curPlayer().getName());
+		
+		// Update the total score label
+		totalScoreLabel.setText("Total score: " + game.curPlayer().getTotalScore());
+		
+		// Update some other variables
+		heldDice = new ArrayList<Integer>();
+		diceDisabled = true;
+		animationRunning = false;
+		
+		// Show the chances of winning if there is more than one player
+		winProbabilityLabel.setText("");
+		winProbabilityLabel.setVisible(game.numPlayers() > 1);
+		updateWinProbability();
+		
+		
+		// Set stage title
+		((Stage)root.getScene().getWindow()).setTitle(game.name());
+	}
+	
+	
+	
+	/**
+	 * Builds the game screen for the variant of the current game. The layout
+	 * depends only on the variant, so it can be reused for later games of it.
+	 * @return The game screen
+	 */
+	private GameLayout buildLayout() {
+		
+		// Lay the components out on a scratch grid pane
+		GridPane grid = new GridPane();
+		
+		// Many dice, or dice with faces there are no images of, are drawn on
+		// one canvas in the first column. Otherwise, each die has a column of
+		// its own.
+		boolean useTray = game.numDice() > CANVAS_TRAY_DICE ||
+				game.numSides() > dieImages.size();
+		int diceColumns = useTray ? 1 : game.numDice();
 		
 		
 		// Create the rolls left label
-		rollsLeftLabel = new Label("Rolls left: " + game.rollsLeft());
-		rollsLeftLabel.setFont(new Font("Calibri Light", 20));
-		rollsLeftLabel.setBackground(new Background(
-			new BackgroundFill(Color.web("#FFFFFF", 0.75), new CornerRadii(10.0), null)));
+		Label rollsLeftLabel = new Label("Rolls left: " + game.rollsLeft());
+		rollsLeftLabel.setFont(ROLLS_LEFT_FONT);
+		rollsLeftLabel.setBackground(LABEL_BACKGROUND);
 		rollsLeftLabel.setPadding(new Insets(10.0));
 		
-		root.add(rollsLeftLabel, 0, 0);
-		GridPane.setColumnSpan(rollsLeftLabel, game.numDice());
+		grid.add(rollsLeftLabel, 0, 0);
+		GridPane.setColumnSpan(rollsLeftLabel, diceColumns);
 		GridPane.setHalignment(rollsLeftLabel, HPos.CENTER);
 		
 		
+		// Create the dice tray for many dice
+		CanvasDiceTray diceTray = null;
+		if (useTray) {
+			diceTray = new CanvasDiceTray(game.numDice(), TRAY_COLUMNS, TRAY_DIE_LENGTH, DICE_PADDING,
+					game.numSides(), dieImages);
+			diceTray.setOnDieHovered(new DieHoverHandler());
+			diceTray.setOnDieClicked(dieIndex -> toggleHold(dieIndex));
+			diceTray.setOnFirstSettled(() -> playSound(diceSound));
+			diceTray.setOnAllSettled(() -> rollSettled());
+			VBox trayPane = new VBox(diceTray);	// For padding
+			trayPane.setAlignment(Pos.CENTER);
+			trayPane.setPadding(new Insets(0.0, SPACING - DICE_PADDING, 0.0, 0.0));
+			
+			grid.add(trayPane, 0, 1);
+		}
+		
+		
 		// Create ImageViews for the die images
-		dieImageViews = new ArrayList<ImageView>(game.numDice());
-		for (int i = 0; i < game.numDice(); i++) {
+		List<ImageView> dieImageViews = new ArrayList<ImageView>(game.numDice());
+		for (int i = 0; i < (useTray ? 0 : game.numDice()); i++) {
 			ImageView curDieImageView = new ImageView(dieImages.get(1));
 			curDieImageView.setPreserveRatio(true);
 			curDieImageView.setFitWidth(DIE_LENGTH);
@@ -223,110 +470,104 @@ public class DiceApplication extends Application {
 				curPane.setPadding(new Insets(DICE_PADDING, SPACING, DICE_PADDING, DICE_PADDING));
 			dieImageViews.add(curDieImageView);
 			
-			root.add(curPane, i, 1);
+			grid.add(curPane, i, 1);
 		}
 		
 		
 		// Create the category info panes
-		categoryInfoPanels = new CategoryInfoPanel[game.categories().length];
+		CategoryInfoPanel[] categoryInfoPanels = new CategoryInfoPanel[game.categories().length];
 		for (int i = 0; i < game.categories().length; i++) {
 			categoryInfoPanels[i] = new CategoryInfoPanel(game.categories()[i], CATEGORY_INFO_PANEL_WIDTH, CATEGORY_INFO_PANEL_HEIGHT);
 			categoryInfoPanels[i].setOnMouseClicked(new CategoryClickHandler());
 			
 			int row = i % (game.categories().length / 2 + game.categories().length % 2);
-			int column = i < game.categories().length / 2 + game.categories().length % 2 ? game.numDice(): game.numDice() + 1;
-			root.add(categoryInfoPanels[i], column, row);
+			int column = i < game.categories().length / 2 + game.categories().length % 2 ? diceColumns: diceColumns + 1;
+			grid.add(categoryInfoPanels[i], column, row);
 		}
 		
 		
 		// Create the roll button
-		rollButton = new Button("Roll");
-		if (game.getClass() == Yacht.class) { 
-			rollButton.setFont(new Font("Bauhaus 93", 70));
-			rollButton.setTextFill(Color.LIGHTYELLOW);
-			rollButton.backgroundProperty().bind(Bindings.when(rollButton.pressedProperty())
-					.then(new Background(new BackgroundFill(Color.INDIANRED, new CornerRadii(20.0), null)))
-					.otherwise(Bindings.when(rollButton.hoverProperty()).then(new Background(new BackgroundFill(Color.DARKRED, new CornerRadii(20.0), null)))
-	                .otherwise(new Background(new BackgroundFill(Color.MAROON, new CornerRadii(20.0), null)))));
-			rollButton.setBorder(new Border(new BorderStroke(Color.BLACK, BorderStrokeStyle.SOLID, new CornerRadii(10.0), new BorderWidths(5.0))));
-		}
-		else if (game.getClass() == Crag.class) {
-			rollButton.setFont(new Font("Freestyle Script", 70));
-			rollButton.setTextFill(Color.AZURE);
-			rollButton.backgroundProperty().bind(Bindings.when(rollButton.pressedProperty())
-					.then(new Background(new BackgroundFill(Color.SEAGREEN, null, null)))
-					.otherwise(Bindings.when(rollButton.hoverProperty()).then(new Background(new BackgroundFill(Color.DARKSEAGREEN, null, null)))
-	                .otherwise(new Background(new BackgroundFill(Color.MEDIUMSEAGREEN, null, null)))));
-			rollButton.setBorder(new Border(new BorderStroke(Color.DARKGOLDENROD, BorderStrokeStyle.SOLID, null, new BorderWidths(3.0))));
-		}
-		rollButton.setOnAction(new RollButtonHandler());
-		
-		root.add(rollButton, 0, 2);
-		GridPane.setRowSpan(rollButton, game.categories().length / 2 + game.categories().length % 2 - 4);
-		GridPane.setColumnSpan(rollButton, game.numDice());
+		Button rollButton = new Button("Roll");
+		switch (game.theme()) {
+			case CRAG:
+				rollButton.setFont(new Font("Freestyle Script", 70));
+				rollButton.setTextFill(Color.AZURE);
+				rollButton.backgroundProperty().bind(Bindings.when(rollButton.pressedProperty())
+						.then(new Background(new BackgroundFill(Color.SEAGREEN, null, null)))
+						.otherwise(Bindings.when(rollButton.hoverProperty()).then(new Background(new BackgroundFill(Color.DARKSEAGREEN, null, null)))
+		                .otherwise(new Background(new BackgroundFill(Color.MEDIUMSEAGREEN, null, null)))));
+				rollButton.setBorder(new Border(new BorderStroke(Color.DARKGOLDENROD, BorderStrokeStyle.SOLID, null, new BorderWidths(3.0))));
+				break;
+			case YACHT:
+			default:
+				rollButton.setFont(new Font("Bauhaus 93", 70));
+				rollButton.setTextFill(Color.LIGHTYELLOW);
+				rollButton.backgroundProperty().bind(Bindings.when(rollButton.pressedProperty())
+						.then(new Background(new BackgroundFill(Color.INDIANRED, new CornerRadii(20.0), null)))
+						.otherwise(Bindings.when(rollButton.hoverProperty()).then(new Background(new BackgroundFill(Color.DARKRED, new CornerRadii(20.0), null)))
+		                .otherwise(new Background(new BackgroundFill(Color.MAROON, new CornerRadii(20.0), null)))));
+				rollButton.setBorder(new Border(new BorderStroke(Color.BLACK, BorderStrokeStyle.SOLID, new CornerRadii(10.0), new BorderWidths(5.0))));
+				break;
+		}
+		rollButton.setOnAction(rollButtonHandler);
+		
+		// Span the rows beside the categories, but at least one for variants with few
+		grid.add(rollButton, 0, 2);
+		GridPane.setRowSpan(rollButton, Math.max(1, game.categories().length / 2 + game.categories().length % 2 - 4));
+		GridPane.setColumnSpan(rollButton, diceColumns);
 		GridPane.setValignment(rollButton, VPos.CENTER);
 		GridPane.setHalignment(rollButton, HPos.CENTER);
 		
 		
 		// Create the player label
-		playerLabel = new Label();
-		playerLabel.setFont(new Font("Consolas", 24));
-		playerLabel.setBackground(new Background(
-				new BackgroundFill(Color.web("#FFFFFF", 0.75), new CornerRadii(10.0), null)));
+		Label playerLabel = new Label();
+		playerLabel.setFont(PLAYER_FONT);
+		playerLabel.setBackground(LABEL_BACKGROUND);
 		playerLabel.setPadding(new Insets(10.0));
 		
-		root.add(playerLabel, 0, game.categories().length / 2 + game.categories().length % 2 - 2);
-		GridPane.setColumnSpan(playerLabel, game.numDice());
+		grid.add(playerLabel, 0, game.categories().length / 2 + game.categories().length % 2 - 2);
+		GridPane.setColumnSpan(playerLabel, diceColumns);
 		GridPane.setHalignment(playerLabel, HPos.CENTER);
 		
 		
 		// Create the total score label
-		totalScoreLabel = new Label();
-		totalScoreLabel.setFont(new Font("Consolas", 24));
-		totalScoreLabel.setBackground(new Background(
-				new BackgroundFill(Color.web("#FFFFFF", 0.75), new CornerRadii(10.0), null)));
+		Label totalScoreLabel = new Label();
+		totalScoreLabel.setFont(PLAYER_FONT);
+		totalScoreLabel.setBackground(LABEL_BACKGROUND);
 		totalScoreLabel.setPadding(new Insets(10.0));
 		
-		root.add(totalScoreLabel, 0, game.categories().length / 2 + game.categories().length % 2 - 1);
-		GridPane.setColumnSpan(totalScoreLabel, game.numDice());
+		grid.add(totalScoreLabel, 0, game.categories().length / 2 + game.categories().length % 2 - 1);
+		GridPane.setColumnSpan(totalScoreLabel, diceColumns);
 		GridPane.setHalignment(totalScoreLabel, HPos.CENTER);
 		
 		
-		// Update the rolls left label
-		rollsLeftLabel.setText("Rolls left: " + game.rollsLeft());
+		// Create the win probability label below the others
+		Label winProbabilityLabel = new Label();
+		winProbabilityLabel.setFont(ROLLS_LEFT_FONT);
+		winProbabilityLabel.setBackground(LABEL_BACKGROUND);
+		winProbabilityLabel.setPadding(new Insets(10.0));
 		
-		// Update the category info panes
-		for (int i = 0; i < game.categories().length; i++) {
-			categoryInfoPanels[i].setPanelDisabled(false);
-			Category category = categoryInfoPanels[i].getCategory();
-			categoryInfoPanels[i].setScore(
-					game.curPlayer().getPoints(category),
-					game.curPlayer().hasUsedCategory(category));
-			if (game.curPlayer().hasUsedCategory(category))
-				categoryInfoPanels[i].disable();
-			else
-				categoryInfoPanels[i].deselect();
-			categoryInfoPanels[i].setPanelDisabled(true);
-		}
+		grid.add(winProbabilityLabel, 0, game.categories().length / 2 + game.categories().length % 2);
+		GridPane.setColumnSpan(winProbabilityLabel, diceColumns);
+		GridPane.setHalignment(winProbabilityLabel, HPos.CENTER);
 		
-		// Update the roll button
-		rollButton.setText("Roll");
-		rollButton.setOnAction(new RollButtonHandler());
-		
-		// Update the player label
-		playerLabel.setText(game.curPlayer().getName());
-		
-		// Update the total score label
-		totalScoreLabel.setText("Total score: " + game.curPlayer().getTotalScore());
 		
-		// Update some other variables
-		heldDice = new ArrayList<Integer>();
-		diceDisabled = true;
-		animationRunning = false;
+		GameLayout layout = new GameLayout(
+				dieImageViews,
+				diceTray,
+				rollsLeftLabel,
+				rollButton,
+				categoryInfoPanels,
+				playerLabel,
+				totalScoreLabel,
+				winProbabilityLabel,
+				grid.getChildren());
 		
+		// Release the components from the scratch grid pane. Their grid
+		// constraints stay with them.
+		grid.getChildren().clear();
 		
-		// Set stage title
-		((Stage)root.getScene().getWindow()).setTitle(game.name());
+		return layout;
 	}
 	
 	
@@ -343,8 +584,8 @@ public class DiceApplication extends Application {
 		heldDice.clear();
 		
 		// Reset dice highlight/glow effects
-		for (ImageView die: dieImageViews)
-			setDieEffect(die, false, false);
+		for (int i = 0; i < game.numDice(); i++)
+			setDieEffect(i, false, false);
 		
 		// Update the category info panel score labels
 		for (int i = 0; i < categoryInfoPanels.length; i++) {
@@ -365,7 +606,7 @@ public class DiceApplication extends Application {
 		
 		// Change the button back to a roll button.
 		rollButton.setText("Roll");
-		rollButton.setOnAction(new RollButtonHandler());
+		rollButton.setOnAction(rollButtonHandler);
 		
 		// Show the the new current player's name
 		playerLabel.setText(game.curPlayer().getName());
@@ -388,6 +629,10 @@ public class DiceApplication extends Application {
 			// Do nothing if animation is going.
 			if (animationRunning)
 				return;
+			RollRequestedEvent rollEvent = new RollRequestedEvent();
+			rollEvent.begin();
+			animationEvent = new AnimationFinishedEvent();
+			animationEvent.begin();
 			
 			// Get indexes of dice to roll in the form of an array
 			List<Integer> diceToRollList = new ArrayList<Integer>();
@@ -401,43 +646,61 @@ public class DiceApplication extends Application {
 			// Roll
 			game.roll(diceToRoll);
 			
-			// Animate the dice images to simulate rolling
-			RollAnimation[] animations = new RollAnimation[diceToRoll.length];
-			for (int i = 0; i < diceToRoll.length; i++) {
-				
-				// Get the relevant information
-				Die curDie = game.getDice()[diceToRoll[i]];
-				ImageView dieImageView = dieImageViews.get(diceToRoll[i]);
-				Image startImage = dieImageView.getImage();
-				Image endImage = dieImages.get(curDie.getValue());
-				
-				// Create the animation
-				animations[i] = new RollAnimation(
-						dieImageView,
-						startImage,
-						endImage,
-						i * DELAY);
-			}
+			// In fast-play mode, show the new values at once
 			animationRunning = true;
+			if (fastPlay) {
+				for (int i = 0; i < diceToRoll.length; i++) {
+					int value = game.getDice()[diceToRoll[i]].getValue();
+					if (diceTray != null)
+						diceTray.setValue(diceToRoll[i], value);
+					else
+						dieImageViews.get(diceToRoll[i]).setImage(dieImages.get(value));
+				}
+			}
 			
-			// Play sound upon the first animation finishing
-			animations[0].getAnimation().setOnFinished(e -> {// Play sound
-				diceSound.play();
-			});
+			// Draw many dice rolling on the dice tray
+			else if (diceTray != null) {
+				int[] endValues = new int[diceToRoll.length];
+				for (int i = 0; i < diceToRoll.length; i++)
+					endValues[i] = game.getDice()[diceToRoll[i]].getValue();
+				diceTray.roll(diceToRoll, endValues, DELAY);
+			}
 			
-			// Enable dice upon the last animation finishing
-			animations[diceToRoll.length - 1].getAnimation().setOnFinished(e -> {
-				if (diceToRoll.length == 1)
-					diceSound.play();
+			// Otherwise, animate the dice images to simulate rolling
+			else {
+				RollAnimation[] animations = new RollAnimation[diceToRoll.length];
+				for (int i = 0; i < diceToRoll.length; i++) {
+					
+					// Get the relevant information
+					Die curDie = game.getDice()[diceToRoll[i]];
+					ImageView dieImageView = dieImageViews.get(diceToRoll[i]);
+					Image startImage = dieImageView.getImage();
+					Image endImage = dieImages.get(curDie.getValue());
+					
+					// Create the animation
+					animations[i] = new RollAnimation(
+							dieImageView,
+							startImage,
+							endImage,
+							i * DELAY);
+				}
+				
+				// Play sound upon the first animation finishing
+				animations[0].getAnimation().setOnFinished(e -> {// Play sound
+					playSound(diceSound);
+				});
 				
-				if (game.rollsLeft() != 0)
-					diceDisabled = false;
-				animationRunning = false;
-			});
-			
-			// Start the animations
-			for (int i = 0; i < diceToRoll.length; i++) {
-				animations[i].play();
+				// Enable dice upon the last animation finishing
+				animations[diceToRoll.length - 1].getAnimation().setOnFinished(e -> {
+					if (diceToRoll.length == 1)
+						playSound(diceSound);
+					rollSettled();
+				});
+				
+				// Start the animations
+				for (int i = 0; i < diceToRoll.length; i++) {
+					animations[i].play();
+				}
 			}
 			
 			// Update the rolls left label text
@@ -452,17 +715,55 @@ public class DiceApplication extends Application {
 			// Disable the roll button and dice if there are no more rolls left.
 			if (game.rollsLeft() == 0) {
 				rollButton.setDisable(true);
-				for (ImageView die: dieImageViews)
-					setDieEffect(die, false, false);
+				for (int i = 0; i < game.numDice(); i++)
+					setDieEffect(i, false, false);
 			}
 			
 			// Disable the dice until the animation is done
 			diceDisabled = true;
+			
+			// Without an animation, the dice have already settled
+			if (fastPlay)
+				rollSettled();
+			
+			if (rollEvent.shouldCommit()) {
+				rollEvent.setGame(game);
+				rollEvent.diceRolled = diceToRoll.length;
+				rollEvent.rollsLeft = game.rollsLeft();
+				rollEvent.commit();
+			}
 		}
 	}
 	
 	
 	
+	/**
+	 * Lets the player act on the dice once they have stopped rolling.
+	 */
+	public void rollSettled() {
+		
+		// Enable the dice if the player can roll again
+		if (game.rollsLeft() != 0)
+			diceDisabled = false;
+		animationRunning = false;
+		
+		// Preview what the settled dice would score
+		showPotentialScores();
+		
+		// Estimate the chances of winning with the new dice
+		updateWinProbability();
+		
+		if (animationEvent != null && animationEvent.shouldCommit()) {
+			animationEvent.setGame(game);
+			animationEvent.diceRolled = game.numDice() - heldDice.size();
+			animationEvent.fastPlay = fastPlay;
+			animationEvent.commit();
+		}
+		animationEvent = null;
+	}
+	
+	
+	
 	/**
 	 * Submits the user's combination to the selected scoring category.
 	 * @author Alex Gill
@@ -484,6 +785,8 @@ public class DiceApplication extends Application {
 				game.rollsLeft() == game.numRolls()||
 				game.curPlayer().hasUsedCategory(category))
 				return;
+			CategorySubmittedEvent submittedEvent = new CategorySubmittedEvent();
+			submittedEvent.begin();
 			
 			// Submit the score.
 			game.submit(category);
@@ -496,6 +799,17 @@ public class DiceApplication extends Application {
 			// Update the total score label
 			totalScoreLabel.setText("Total score: " + game.curPlayer().getTotalScore());
 			
+			// Estimate the chances of winning with the new score
+			updateWinProbability();
+			
+			// Clear the previews of the other panels
+			for (int i = 0; i < categoryInfoPanels.length; i++) {
+				Category curCategory = categoryInfoPanels[i].getCategory();
+				categoryInfoPanels[i].setScore(
+						game.curPlayer().getPoints(curCategory),
+						game.curPlayer().hasUsedCategory(curCategory));
+			}
+			
 			// Deselect the panel
 			panel.disable();
 			
@@ -506,9 +820,16 @@ public class DiceApplication extends Application {
 			
 			// Temporarily change the roll button to a "next" button
 			rollButton.setText("Next");
-			rollButton.setOnAction(e -> { nextPlayer(); });
+			rollButton.setOnAction(nextButtonHandler);
 			rollButton.setDisable(false);
 			
+			if (submittedEvent.shouldCommit()) {
+				submittedEvent.setGame(game);
+				submittedEvent.category = category.getName();
+				submittedEvent.points = game.curPlayer().getPoints(category);
+				submittedEvent.commit();
+			}
+			
 			// If the game is over, display the results
 			if (game.isOver())
 				playAgainDialog();
@@ -517,6 +838,55 @@ public class DiceApplication extends Application {
 	
 	
 	
+	/**
+	 * Shows the number of points each open category would score with the
+	 * current dice. The points come from the game's per-roll scores, so no
+	 * category is scored here.
+	 */
+	public void showPotentialScores() {
+		for (int i = 0; i < categoryInfoPanels.length; i++) {
+			Category category = categoryInfoPanels[i].getCategory();
+			if (!game.curPlayer().hasUsedCategory(category))
+				categoryInfoPanels[i].setPreview(game.potentialScore(i));
+		}
+	}
+	
+	
+	
+	/**
+	 * Starts estimating the players' chances of winning from where the game
+	 * is now, if there is more than one player. The estimate is worked out in
+	 * the background and shown when it is ready.
+	 */
+	public void updateWinProbability() {
+		if (game.numPlayers() > 1) {
+			GameSnapshot snapshot = new GameSnapshot(game);
+			scheduler.submit(WIN_PROBABILITY_TASK,
+					context -> WinEstimator.estimate(snapshot, context::publish, context::isCancelled),
+					this::showWinProbability);
+		} else {
+			scheduler.cancel(WIN_PROBABILITY_TASK);
+		}
+	}
+	
+	
+	
+	/**
+	 * Shows the players' chances of winning.
+	 * @param estimate The chances of winning
+	 */
+	public void showWinProbability(WinEstimator.Estimate estimate) {
+		StringBuilder text = new StringBuilder(estimate.isExact() ? "Chance of winning: " : "Chance of winning (estimating): ");
+		for (int i = 0; i < game.numPlayers(); i++) {
+			if (i > 0)
+				text.append("   ");
+			text.append(String.format("%s %.0f%%", game.getPlayer(i).getName(), estimate.probability(i) * 100.0));
+		}
+		winProbabilityLabel.setText(text.toString());
+	}
+	
+	
+	
 	/**
 	 * Highlights the die and changes the cursor to a hand.
 	 * @author Alex Gill
@@ -586,45 +956,108 @@ public class DiceApplication extends Application {
 			if (diceDisabled)
 				return;
 			
-			// Get the image view and index of the die
-			ImageView die = (ImageView)event.getSource();
+			// Get the index of the die
 			int dieIndex = dieImageViews.indexOf((ImageView)event.getSource());
 			
-			// If supposed to hold...
-			if (heldDice.indexOf(dieIndex) == -1) {
-				
-				// Create a glow around the die
-				setDieEffect(die, true, true);
-				
-				// Add it to the held dice list
-				heldDice.add(dieIndex);
-			}
+			// Hold or release the die
+			toggleHold(dieIndex);
+		}
+	}
+	
+	
+	
+	/**
+	 * Highlights the die under the mouse on the dice tray and changes the
+	 * cursor to a hand, or undoes both when the mouse leaves the dice.
+	 * @author Alex Gill
+	 *
+	 */
+	public class DieHoverHandler implements IntConsumer {
+		private int hoveredDie = -1;	// The highlighted die
+		
+		@Override
+		public void accept(int dieIndex) {
 			
-			// If not supposed to hold... 
-			else {
-				
-				// Remove the glow around the die
-				setDieEffect(die, true, false);
-				
-				// Add it to the held dice list
-				heldDice.remove(Integer.valueOf(dieIndex));
-			}
+			// Dice must be enabled
+			if (diceDisabled)
+				return;
 			
-			// Sort the list
-			heldDice.sort(null);
+			// Undo the highlighting of the previous die
+			if (hoveredDie != -1)
+				setDieEffect(hoveredDie, false, heldDice.indexOf(hoveredDie) != -1);
 			
-			// If all of the dice are held, disable the roll button
-			if (heldDice.size() == game.numDice())
-				rollButton.setDisable(true);
+			// Highlight the new die
+			if (dieIndex != -1)
+				setDieEffect(dieIndex, true, heldDice.indexOf(dieIndex) != -1);
+			hoveredDie = dieIndex;
 			
-			// Otherwise, enable it
-			else
-				rollButton.setDisable(false);
+			// Change the cursor to a hand over a die and back to normal otherwise
+			diceTray.getScene().setCursor(dieIndex != -1 ? Cursor.HAND : Cursor.DEFAULT);
 		}
 	}
 	
 	
 	
+	/**
+	 * Holds a die so that it does not roll, or releases it if it is held.
+	 * @param dieIndex The index of the die
+	 */
+	public void toggleHold(int dieIndex) {
+		
+		// Dice must be enabled
+		if (diceDisabled)
+			return;
+		
+		// If supposed to hold...
+		if (heldDice.indexOf(dieIndex) == -1) {
+			
+			// Create a glow around the die
+			setDieEffect(dieIndex, true, true);
+			
+			// Add it to the held dice list
+			heldDice.add(dieIndex);
+		}
+		
+		// If not supposed to hold... 
+		else {
+			
+			// Remove the glow around the die
+			setDieEffect(dieIndex, true, false);
+			
+			// Add it to the held dice list
+			heldDice.remove(Integer.valueOf(dieIndex));
+		}
+		
+		// Sort the list
+		heldDice.sort(null);
+		
+		// If all of the dice are held, disable the roll button
+		if (heldDice.size() == game.numDice())
+			rollButton.setDisable(true);
+		
+		// Otherwise, enable it
+		else
+			rollButton.setDisable(false);
+	}
+	
+	
+	
+	/**
+	 * Sets the effect of a die, whether it is drawn on the dice tray or has an
+	 * image view of its own.
+	 * @param dieIndex The index of the die
+	 * @param highlight Whether to highlight the die
+	 * @param glow Whether to add glow to the die
+	 */
+	public void setDieEffect(int dieIndex, boolean highlight, boolean glow) {
+		if (diceTray != null)
+			diceTray.setDieEffect(dieIndex, highlight, glow);
+		else
+			setDieEffect(dieImageViews.get(dieIndex), highlight, glow);
+	}
+	
+	
+	
 	/**
 	 * Sets the effect of the die image.
 	 * @param die The die image view
@@ -669,7 +1102,8 @@ public class DiceApplication extends Application {
 	/**
 	 * Shows a dialog that asks whether the user would like to play again. If
 	 * Yes, the user will be shown the number of players dialog. If No, the
-	 * program will exit.
+	 * program will exit. The scores are added to the leaderboards and the game
+	 * history first, and each player's rank today is shown.
 	 */
 	public void playAgainDialog() {
 		
@@ -703,9 +1137,20 @@ public class DiceApplication extends Application {
 			winner.getTotalScore()));
 		else
 			messageLabel.setText("There was a tie");
-		results.add(messageLabel, 0, 3);
+		results.add(messageLabel, 0, 4);
 		GridPane.setColumnSpan(messageLabel, game.numPlayers());
 		
+		// Add the scores to the leaderboards and show today's ranks
+		long finished = System.currentTimeMillis();
+		for (int i = 0; i < game.numPlayers(); i++)
+			leaderboards.submit(game.name(), game.getPlayer(i).getName(), game.getPlayer(i).getTotalScore(), finished);
+		for (int i = 0; i < game.numPlayers(); i++) {
+			long rank = leaderboards.board(game.name(), TimeWindow.DAILY).rank(game.getPlayer(i).getName());
+			results.add(new Label(rank > 0 ? "#" + rank + " today" : ""), i, 3);
+		}
+		saveLeaderboards();
+		recordHistory(finished);
+		
 		// Create the dialog
 		Alert dialog = new Alert(AlertType.CONFIRMATION, null, playButtonType, exitButtonType);
 		dialog.setTitle(game.name() + " - New Game");
@@ -713,7 +1158,8 @@ public class DiceApplication extends Application {
 		dialog.getDialogPane().setContent(results);
 		
 		// Play cheer sound
-		cheerSound.play();
+		if (!fastPlay)
+			playSound(cheerSound);
 		
 		// Standby and act depending on the user's choice
 		dialog.showAndWait().ifPresent(response -> {
@@ -732,8 +1178,52 @@ public class DiceApplication extends Application {
 	
 	
 	
+	/**
+	 * Appends the finished game to the history of its variant in the
+	 * background, opening the history the first time. Games are recorded one
+	 * at a time, in the order they finished.
+	 * @param time When the game finished, in milliseconds since the epoch
+	 */
+	public void recordHistory(long time) {
+		DiceGame finished = game;
+		saver.execute(() -> {
+			try {
+				HistoryStore history = histories.get(finished.name());
+				if (history == null) {
+					history = new HistoryStore(Paths.get(System.getProperty("user.home"), SAVE_DIRECTORY,
+							HISTORY_DIRECTORY, finished.name().replaceAll("[^A-Za-z0-9_-]", "_")), finished);
+					histories.put(finished.name(), history);
+				}
+				history.append(finished, time);
+			} catch (IOException | IllegalArgumentException e) {
+				System.out.println("Error recording the game history...");
+				e.printStackTrace();
+			}
+		});
+	}
+	
+	
+	
+	/**
+	 * Saves the leaderboards in the background. Saves are never cancelled,
+	 * and the last one finishes before the application exits.
+	 */
+	public void saveLeaderboards() {
+		saver.execute(() -> {
+			try {
+				Files.createDirectories(leaderboardFile.getParent());
+				leaderboards.save(leaderboardFile);
+			} catch (IOException e) {
+				System.out.println("Error saving the leaderboards...");
+				e.printStackTrace();
+			}
+		});
+	}
+	
+	
+	
 	public void newGameDialog() {
-		Class<?> variant = NewGameDialog.showAndWait(variants);
+		Variant variant = NewGameDialog.showAndWait(variants);
 		numberOfPlayersDialog(variant);
 	}
 	
@@ -745,7 +1235,7 @@ public class DiceApplication extends Application {
 	 * presses Next, the user will advance to the player names dialog. The user
 	 * can also select Exit to exit the program.
 	 */
-	public void numberOfPlayersDialog(Class<?> variant) {
+	public void numberOfPlayersDialog(Variant variant) {
 		
 		// Create the buttons
 		ButtonType nextButtonType = new ButtonType("Next", ButtonData.OK_DONE);
@@ -755,14 +1245,7 @@ public class DiceApplication extends Application {
 		Spinner<Integer> playerCountSpinner = new Spinner<Integer>(1, 8, 1);
 		
 		// Instantiate the variant to get name
-		DiceGame variantInstance = null;
-		try {
-			variantInstance = (DiceGame) variant.getDeclaredConstructor(int.class).newInstance(1);
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-			System.out.println("Error instantiating dice game class...");
-			e.printStackTrace();
-			System.exit(1);
-		}
+		DiceGame variantInstance = variant.newGame(1);
 		
 		// Create the dialog
 		Alert dialog = new Alert(AlertType.CONFIRMATION, null, nextButtonType, exitButtonType);
@@ -793,7 +1276,7 @@ public class DiceApplication extends Application {
 	 * to the default. The user can select Play to start the game, Back to go
 	 * back to the number of players dialog, or Exit to exit the program.
 	 */
-	public void playerNamesDialog(Class<?> variant, int numPlayers) {
+	public void playerNamesDialog(Variant variant, int numPlayers) {
 		
 		// Create the buttons
 		ButtonType playButtonType = new ButtonType("Play", ButtonData.OK_DONE);
@@ -809,14 +1292,7 @@ public class DiceApplication extends Application {
 		}
 		
 		// Instantiate the variant to get name
-		DiceGame variantInstance = null;
-		try {
-			variantInstance = (DiceGame) variant.getDeclaredConstructor(int.class).newInstance(1);
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-			System.out.println("Error instantiating dice game class...");
-			e.printStackTrace();
-			System.exit(1);
-		}
+		DiceGame variantInstance = variant.newGame(1);
 		
 		// Create the dialog
 		Alert dialog = new Alert(AlertType.CONFIRMATION, null, playButtonType, backButtonType, exitButtonType);
@@ -0,0 +1,64 @@
+package tech.octopusdragon.dice.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.scene.Node;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.image.ImageView;
+
+/**
+ * The components of the game screen for one variant. A layout is built the
+ * first time its variant is played and is then reset in place for every new
+ * game of that variant, so playing again does not rebuild the scene graph.
+ * @author Alex Gill
+ *
+ */
+class GameLayout {
+
+	// GUI components
+	final List<Node> nodes;			// The children of the root, in order
+	final List<ImageView> dieImageViews;	// The die image views
+	final CanvasDiceTray diceTray;	// Draws the dice instead if there are many, or null
+	final Label rollsLeftLabel;		// Shows the number of rolls the user has left
+	final Button rollButton;		// The roll button
+	final CategoryInfoPanel[] categoryInfoPanels;	// The category info panels
+	final Label playerLabel;		// Shows the current player
+	final Label totalScoreLabel;	// Shows total score of the current player
+	final Label winProbabilityLabel;	// Shows each player's chance of winning
+
+
+
+	/**
+	 * Instantiates the layout.
+	 * @param dieImageViews The die image views
+	 * @param diceTray The dice tray, or null
+	 * @param rollsLeftLabel The rolls left label
+	 * @param rollButton The roll button
+	 * @param categoryInfoPanels The category info panels
+	 * @param playerLabel The player label
+	 * @param totalScoreLabel The total score label
+	 * @param winProbabilityLabel The win probability label
+	 * @param nodes The children of the root, in order
+	 */
+	GameLayout(List<ImageView> dieImageViews,
+			CanvasDiceTray diceTray,
+			Label rollsLeftLabel,
+			Button rollButton,
+			CategoryInfoPanel[] categoryInfoPanels,
+			Label playerLabel,
+			Label totalScoreLabel,
+			Label winProbabilityLabel,
+			List<Node> nodes) {
+		this.dieImageViews = dieImageViews;
+		this.diceTray = diceTray;
+		this.rollsLeftLabel = rollsLeftLabel;
+		this.rollButton = rollButton;
+		this.categoryInfoPanels = categoryInfoPanels;
+		this.playerLabel = playerLabel;
+		this.totalScoreLabel = totalScoreLabel;
+		this.winProbabilityLabel = winProbabilityLabel;
+		this.nodes = new ArrayList<Node>(nodes);
+	}
+}
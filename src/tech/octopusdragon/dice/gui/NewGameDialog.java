@@ -1,6 +1,5 @@
 package tech.octopusdragon.dice.gui;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Random;
 
 import javafx.application.Platform;
@@ -32,14 +31,14 @@ public class NewGameDialog {
 	private static final double V_SPACING = 12.0;
 	
 	// --- Variables ---
-	private static Class<?>[] variants;	// Array of checkers variants
-	private static Class<?> selectedVariant;	// The variant the user selected
+	private static Variant[] variants;	// Array of dice game variants
+	private static Variant selectedVariant;	// The variant the user selected
 	
 	/**
 	 * Constructs the selection.
 	 * @param variants
 	 */
-	public static Class<?> showAndWait(Class<?>[] variants) {
+	public static Variant showAndWait(Variant[] variants) {
 		
 		// Instantiate instance variables if not already instantiated
 		if (NewGameDialog.variants == null)
@@ -76,17 +75,10 @@ public class NewGameDialog {
 		variantGridPane.setHgap(H_SPACING);
 		variantGridPane.setVgap(V_SPACING);
 		for (int i = 0; i < variants.length; i++) {
-			Class<?> variant = variants[i];
+			Variant variant = variants[i];
 			
 			// Instantiate the variant
-			DiceGame variantInstance = null;
-			try {
-				variantInstance = (DiceGame) variants[i].getDeclaredConstructor(int.class).newInstance(1);
-			} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				System.out.println("Error instantiating dice game class...");
-				e.printStackTrace();
-				System.exit(1);
-			}
+			DiceGame variantInstance = variant.newGame(1);
 			
 			// Create the play button
 			Button playButton = new Button(variantInstance.name());
@@ -0,0 +1,437 @@
+package tech.octopusdragon.dice.gui;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.event.Event;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.stage.Stage;
+import tech.octopusdragon.dice.Variant;
+
+/**
+ * Measures the rendering cost of the dice application. The harness runs the
+ * real application, scripts a number of games by firing the roll button and
+ * clicking category panels, and records for each game:
+ * <ul>
+ * <li>the time between pulses (the frame time) and the number of dropped
+ * frames,</li>
+ * <li>the time each pulse spends on CSS and layout,</li>
+ * <li>the number of bytes allocated on the JavaFX Application Thread per
+ * second, and</li>
+ * <li>the heap in use after a garbage collection at the end of the game.</li>
+ * </ul>
+ * The time background tasks such as the win probability estimate wait to
+ * start, run and wait for their results to be shown is reported by task.
+ * <p>
+ * The results are written to a report. If a baseline report is given, every
+ * summary metric that is worse than the baseline by more than the tolerance
+ * is listed as a regression and the harness exits with status 1.
+ * <p>
+ * The harness is meant to run headless. With the Monocle glass platform on
+ * the class path, the harness selects it together with the software
+ * rendering pipeline unless other platforms were given on the command line.
+ * <p>
+ * Options, given as {@code --name=value}:
+ * <ul>
+ * <li>{@code games} - the number of games to play (default 10)</li>
+ * <li>{@code players} - the number of players per game (default 2)</li>
+ * <li>{@code variant} - the name of the variant (default
+ * Yacht)</li>
+ * <li>{@code seed} - the seed for the scripted choices (default 1)</li>
+ * <li>{@code report} - the report file (default gui-perf-report.properties)</li>
+ * <li>{@code baseline} - a previous report to compare against</li>
+ * <li>{@code tolerance} - the allowed regression in percent (default 10)</li>
+ * <li>{@code fast-play} - whether to play without animation (default false).
+ * In fast-play mode, the harness makes as many moves per frame as it can in
+ * a few milliseconds and reports the turns played per second.</li>
+ * </ul>
+ * @author Alex Gill
+ *
+ */
+public class PerformanceHarness extends DiceApplication {
+
+	// --- Constants ---
+	private static final double FRAME_MILLIS = 1000.0 / 60.0;	// The duration of one frame at 60 fps
+	private static final double DROP_FACTOR = 1.5;	// Frames longer than this many frames count as drops
+	private static final long FAST_PLAY_BUDGET = 8_000_000;	// Nanoseconds of moves per frame in fast-play mode
+	private static final String[] SUMMARY_METRICS = {	// Metrics compared against the baseline
+			"frame.p50.ms",
+			"frame.p99.ms",
+			"frame.drops",
+			"layout.p99.ms",
+			"alloc.mb.per.s",
+			"heap.after.mb"
+	};
+
+	// --- Options ---
+	private int numGames;
+	private int numPlayers;
+	private Variant variant;
+	private Random rand;
+	private String reportFile;
+	private String baselineFile;
+	private double tolerance;
+
+	// --- Measurements ---
+	private Samples frameTimes = new Samples();		// Frame times in nanoseconds
+	private Samples layoutTimes = new Samples();	// CSS and layout times in nanoseconds
+	private long frameDrops;		// Number of frames dropped
+	private long lastFrame;			// Time of the previous frame
+	private long layoutStart;		// Time the current pulse's layout began
+	private long gameStartTime;		// Time the current game began
+	private long gameStartBytes;	// Bytes allocated on the FX thread when the current game began
+	private int gameStartFrames;	// Number of frames recorded when the current game began
+	private int gamesPlayed;		// Number of games finished
+	private long turnsPlayed;		// Number of turns finished in all games
+	private long playStartTime;		// Time the first game began
+	private Properties report = new Properties();
+
+
+
+	public static void main(String[] args) {
+
+		// Run headless unless told otherwise
+		if (isMonoclePresent()) {
+			setDefaultProperty("glass.platform", "Monocle");
+			setDefaultProperty("monocle.platform", "Headless");
+			setDefaultProperty("prism.order", "sw");
+			setDefaultProperty("prism.text", "t2k");
+		}
+
+		launch(args);
+	}
+
+
+
+	@Override
+	public void init() {
+		super.init();
+
+		// Read the options
+		Map<String, String> options = getParameters().getNamed();
+		numGames = Integer.parseInt(options.getOrDefault("games", "10"));
+		numPlayers = Integer.parseInt(options.getOrDefault("players", "2"));
+		rand = new Random(Long.parseLong(options.getOrDefault("seed", "1")));
+		reportFile = options.getOrDefault("report", "gui-perf-report.properties");
+		baselineFile = options.get("baseline");
+		tolerance = Double.parseDouble(options.getOrDefault("tolerance", "10"));
+		String variantName = options.getOrDefault("variant", "Yacht");
+		for (Variant curVariant: variants)
+			if (curVariant.newGame(1).name().equalsIgnoreCase(variantName))
+				variant = curVariant;
+		if (variant == null)
+			throw new IllegalArgumentException("Unknown variant: " + variantName);
+	}
+
+
+
+	/**
+	 * The harness runs silently.
+	 */
+	@Override
+	public void loadSounds() {
+	}
+
+
+
+	@Override
+	public void start(Stage primaryStage) {
+		super.start(primaryStage);
+
+		// Time the CSS and layout pass of every pulse
+		root.getScene().addPreLayoutPulseListener(() -> {
+			layoutStart = System.nanoTime();
+		});
+		root.getScene().addPostLayoutPulseListener(() -> {
+			if (layoutStart != 0)
+				layoutTimes.add(System.nanoTime() - layoutStart);
+		});
+
+		// Time every frame and make a move whenever the game is idle
+		new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				if (lastFrame != 0) {
+					long frameTime = now - lastFrame;
+					frameTimes.add(frameTime);
+					double frames = frameTime / 1e6 / FRAME_MILLIS;
+					if (frames > DROP_FACTOR)
+						frameDrops += Math.round(frames) - 1;
+				}
+				lastFrame = now;
+
+				// Make one move per frame, or as many as fit in the budget in
+				// fast-play mode
+				long deadline = System.nanoTime() + FAST_PLAY_BUDGET;
+				do {
+					if (game == null || game.isOver())
+						break;
+					move();
+				} while (fastPlay && System.nanoTime() < deadline);
+			}
+		}.start();
+	}
+
+
+
+	/**
+	 * Starts the next game without asking the user anything.
+	 */
+	@Override
+	public void newGameDialog() {
+		newGame(variant, numPlayers);
+		if (playStartTime == 0)
+			playStartTime = System.nanoTime();
+		gameStartTime = System.nanoTime();
+		gameStartBytes = fxThreadAllocatedBytes();
+		gameStartFrames = frameTimes.size();
+	}
+
+
+
+	/**
+	 * Records the measurements of the finished game and starts the next one,
+	 * or writes the report after the last one.
+	 */
+	@Override
+	public void playAgainDialog() {
+
+		// Allocation rate over the game
+		double seconds = (System.nanoTime() - gameStartTime) / 1e9;
+		double allocMb = (fxThreadAllocatedBytes() - gameStartBytes) / 1e6;
+
+		// Heap after the game
+		System.gc();
+		double heapMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / 1e6;
+
+		String prefix = "game." + (gamesPlayed + 1) + ".";
+		report.setProperty(prefix + "seconds", format(seconds));
+		report.setProperty(prefix + "alloc.mb.per.s", format(allocMb / seconds));
+		report.setProperty(prefix + "heap.after.mb", format(heapMb));
+		report.setProperty(prefix + "frames", Integer.toString(frameTimes.size() - gameStartFrames));
+		gamesPlayed++;
+
+		// Continue with the next game after this handler returns
+		if (gamesPlayed < numGames) {
+			Platform.runLater(() -> newGameDialog());
+			return;
+		}
+
+		// Summarize
+		report.setProperty("variant", variant.newGame(1).name());
+		report.setProperty("games", Integer.toString(numGames));
+		report.setProperty("players", Integer.toString(numPlayers));
+		report.setProperty("fast.play", Boolean.toString(fastPlay));
+		report.setProperty("turns.per.s", format((turnsPlayed + numGames) /
+				((System.nanoTime() - playStartTime) / 1e9)));
+		report.setProperty("frame.p50.ms", format(frameTimes.percentile(50) / 1e6));
+		report.setProperty("frame.p99.ms", format(frameTimes.percentile(99) / 1e6));
+		report.setProperty("frame.max.ms", format(frameTimes.percentile(100) / 1e6));
+		report.setProperty("frame.drops", Long.toString(frameDrops));
+		report.setProperty("layout.p50.ms", format(layoutTimes.percentile(50) / 1e6));
+		report.setProperty("layout.p99.ms", format(layoutTimes.percentile(99) / 1e6));
+		double allocRate = 0.0;
+		double heap = 0.0;
+		for (int i = 1; i <= numGames; i++) {
+			allocRate += Double.parseDouble(report.getProperty("game." + i + ".alloc.mb.per.s"));
+			heap = Math.max(heap, Double.parseDouble(report.getProperty("game." + i + ".heap.after.mb")));
+		}
+		report.setProperty("alloc.mb.per.s", format(allocRate / numGames));
+		report.setProperty("heap.after.mb", format(heap));
+		for (Map.Entry<String, ComputeScheduler.TaskStats> task: scheduler.getStats().entrySet()) {
+			String taskPrefix = "task." + task.getKey() + ".";
+			report.setProperty(taskPrefix + "count", Long.toString(task.getValue().run.count()));
+			report.setProperty(taskPrefix + "queue.p99.ms", format(task.getValue().queue.percentileMillis(99)));
+			report.setProperty(taskPrefix + "run.p50.ms", format(task.getValue().run.percentileMillis(50)));
+			report.setProperty(taskPrefix + "delivery.p99.ms", format(task.getValue().delivery.percentileMillis(99)));
+		}
+
+		boolean regressed = writeReport();
+		Platform.exit();
+		if (regressed)
+			System.exit(1);
+	}
+
+
+
+	/**
+	 * Makes the next move of the scripted game through the same handlers the
+	 * user would trigger: the roll button, or a click on a category panel.
+	 */
+	private void move() {
+
+		// Wait for the dice to settle
+		if (animationRunning)
+			return;
+
+		// After submitting, move on to the next player
+		if (game.curPlayerHasGone()) {
+			turnsPlayed++;
+			rollButton.fire();
+			return;
+		}
+
+		// Roll at least once, and sometimes again while rolls are left
+		if (game.rollsLeft() == game.numRolls() ||
+			(game.rollsLeft() > 0 && rand.nextBoolean())) {
+			rollButton.fire();
+			return;
+		}
+
+		// Submit to the open category scoring the most points
+		int best = -1;
+		for (int i = 0; i < categoryInfoPanels.length; i++)
+			if (!game.curPlayer().hasUsedCategory(categoryInfoPanels[i].getCategory()) &&
+				(best == -1 || game.potentialScore(i) > game.potentialScore(best)))
+				best = i;
+		Event.fireEvent(categoryInfoPanels[best], new MouseEvent(
+				MouseEvent.MOUSE_CLICKED, 0.0, 0.0, 0.0, 0.0, MouseButton.PRIMARY, 1,
+				false, false, false, false, true, false, false, false, false, true, null));
+	}
+
+
+
+	/**
+	 * Writes the report and compares it with the baseline, if any.
+	 * @return Whether any metric regressed
+	 */
+	private boolean writeReport() {
+		boolean regressed = false;
+
+		// Compare with the baseline
+		if (baselineFile != null) {
+			Properties baseline = new Properties();
+			try (InputStream in = new FileInputStream(baselineFile)) {
+				baseline.load(in);
+			} catch (IOException e) {
+				System.out.println("Error reading baseline " + baselineFile + "...");
+				e.printStackTrace();
+			}
+			for (String metric: SUMMARY_METRICS) {
+				String before = baseline.getProperty(metric);
+				if (before == null)
+					continue;
+				double oldValue = Double.parseDouble(before);
+				double newValue = Double.parseDouble(report.getProperty(metric));
+				double change = oldValue == 0.0 ? (newValue == 0.0 ? 0.0 : 100.0) :
+						(newValue - oldValue) / oldValue * 100.0;
+				report.setProperty("change." + metric + ".percent", format(change));
+				if (change > tolerance) {
+					report.setProperty("regression." + metric, before + " -> " + report.getProperty(metric));
+					regressed = true;
+				}
+			}
+		}
+
+		// Write the report and echo the summary
+		try (OutputStream out = new FileOutputStream(reportFile)) {
+			report.store(out, "Dice GUI performance report");
+		} catch (IOException e) {
+			System.out.println("Error writing report " + reportFile + "...");
+			e.printStackTrace();
+		}
+		PrintStream console = System.out;
+		for (String metric: SUMMARY_METRICS)
+			console.printf("%-16s %12s%n", metric, report.getProperty(metric));
+		for (String key: report.stringPropertyNames())
+			if (key.startsWith("regression."))
+				console.printf("REGRESSION %s: %s%n", key.substring(11), report.getProperty(key));
+
+		return regressed;
+	}
+
+
+
+	/**
+	 * Returns the number of bytes allocated so far on the calling thread, which
+	 * is the JavaFX Application Thread, or 0 if the JVM cannot tell.
+	 * @return The number of bytes allocated
+	 */
+	private static long fxThreadAllocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+					Thread.currentThread().getId());
+		return 0;
+	}
+
+
+
+	/**
+	 * Returns whether the Monocle glass platform is on the class path.
+	 * @return Whether Monocle is available
+	 */
+	private static boolean isMonoclePresent() {
+		try {
+			Class.forName("com.sun.glass.ui.monocle.MonocleApplication");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+
+
+	/**
+	 * Sets a system property unless it was already set.
+	 * @param key The name of the property
+	 * @param value The value of the property
+	 */
+	private static void setDefaultProperty(String key, String value) {
+		if (System.getProperty(key) == null)
+			System.setProperty(key, value);
+	}
+
+
+
+	/**
+	 * Formats a measurement for the report.
+	 * @param value The measurement
+	 * @return The formatted measurement
+	 */
+	private static String format(double value) {
+		return String.format("%.3f", value);
+	}
+
+
+
+	/**
+	 * A growable list of nanosecond samples which does not box its values, so
+	 * that recording does not distort the allocation measurements.
+	 */
+	private static class Samples {
+		private long[] values = new long[4096];
+		private int size;
+
+		void add(long value) {
+			if (size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = value;
+		}
+
+		int size() {
+			return size;
+		}
+
+		double percentile(double p) {
+			if (size == 0)
+				return 0.0;
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(p / 100.0 * size) - 1;
+			return sorted[Math.max(0, Math.min(size - 1, index))];
+		}
+	}
+}
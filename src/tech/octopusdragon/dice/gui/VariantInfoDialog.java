@@ -1,6 +1,5 @@
 package tech.octopusdragon.dice.gui;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Random;
 
 import javafx.geometry.Insets;
@@ -9,6 +8,7 @@ import javafx.scene.control.Label;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Variant;
 
 public class VariantInfoDialog {
 	
@@ -20,16 +20,10 @@ public class VariantInfoDialog {
 	// --- Variables ---
 	private static DiceGame variantInstance;
 	
-	public static void show(Class<?> variant) {
+	public static void show(Variant variant) {
 		
 		// Instantiate variant
-		try {
-			variantInstance = (DiceGame) variant.getDeclaredConstructor(int.class).newInstance(1);
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | NoSuchMethodException | SecurityException e) {
-			System.out.println("Error instantiating dice game class...");
-			e.printStackTrace();
-			System.exit(1);
-		}
+		variantInstance = variant.newGame(1);
 		
 		// Create the stage
 		Stage stage = new Stage();
@@ -0,0 +1,730 @@
+package tech.octopusdragon.dice.history;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.BufferedInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Player;
+
+/**
+ * The history of every finished game of one variant: for each player of each
+ * game, the points in every category, the total and when the game finished.
+ * Games are only ever appended, in order of time.
+ * <p>
+ * The games are kept in a directory of two files. The players' names are
+ * appended to one, each given the number of its place in the file. The other
+ * is a header followed by blocks of a fixed number of games, stored a column
+ * at a time like a {@link tech.octopusdragon.dice.data.DecisionWriter decision
+ * file}: the times, then the players, the totals and the points of each
+ * category. The blocks are mapped into memory in chunks, written in place and
+ * grown a chunk at a time. The number of games in the header is only raised
+ * once the games it counts have been forced to disk, so the header never
+ * counts a game that is not all there, even if the machine loses power. The
+ * players of a game appended together are counted together, so a game is
+ * never counted for some of its players and not others. By default this is
+ * done after every game; a store that syncs less often
+ * appends faster, but loses the games appended since the last sync if it is
+ * stopped before the next.
+ * <p>
+ * Queries read only the columns they need. The games of each player are
+ * indexed in memory, built from the column of players when the store is
+ * opened, and as the times only go up, the games in a period are found by
+ * binary search.
+ * <p>
+ * One thread at a time may append, while any number of threads query.
+ * @author Alex Gill
+ *
+ */
+public class HistoryStore implements Closeable {
+
+	// --- Constants ---
+	static final int MAGIC = 0x48495331;		// Starts every games file
+	static final int VERSION = 1;				// The file format
+	static final int NUM_RECORDS_AT = 8;		// Where the number of games is in the header
+	static final int ALIGNMENT = 4096;			// The first block starts at a multiple of this
+	public static final int BLOCK_RECORDS = 4096;	// The games in each block
+	public static final int BLOCKS_PER_CHUNK = 64;	// The blocks in each mapping
+	public static final String GAMES_FILE = "games.hist";		// The file of games
+	public static final String PLAYERS_FILE = "players.dat";	// The file of players' names
+	private static final int MAX_NAME_BYTES = 1 << 16;		// The longest name read back
+	public static final int DEFAULT_SYNC_INTERVAL = 1;		// The games appended between syncs by default
+
+	// --- Variant ---
+	private final String variant;			// The name of the variant
+	private final Category[] categories;	// The categories of the variant
+
+	// --- Files ---
+	private final FileChannel games;		// The file of games
+	private final FileChannel names;		// The file of players' names
+	private final MappedByteBuffer header;	// The header of the file of games
+	private final long dataOffset;			// Where the first block starts
+	private final int blockBytes;			// The bytes of each block
+	private volatile MappedByteBuffer[] chunks;	// The blocks, mapped into memory
+	private final int syncInterval;			// The games appended between syncs
+
+	// --- Games ---
+	private volatile long numRecords;		// The games in the store
+	private long numCounted;				// The games counted in the header
+	private boolean namesWritten;			// Whether names have been written since the last sync
+	private long lastTime = Long.MIN_VALUE;	// When the last game finished
+	private final List<String> players = new ArrayList<String>();	// The names, by number
+	private final Map<String, Integer> playerNumbers = new HashMap<String, Integer>();	// The numbers, by name
+	private int[][] records = new int[0][];	// The games of each player, by number
+	private int[] numPlayerRecords = new int[0];	// The games of each player, by number
+
+
+
+	/**
+	 * Opens the store of a variant, creating it if the directory has none,
+	 * syncing after every game appended.
+	 * @param directory The directory of the store
+	 * @param game A game of the variant
+	 * @throws IOException if the store cannot be read or written, or is of a
+	 * different variant
+	 */
+	public HistoryStore(Path directory, DiceGame game) throws IOException {
+		this(directory, game, DEFAULT_SYNC_INTERVAL);
+	}
+
+
+
+	/**
+	 * Opens the store of a variant, creating it if the directory has none.
+	 * @param directory The directory of the store
+	 * @param game A game of the variant
+	 * @param syncInterval The games appended between syncs
+	 * @throws IOException if the store cannot be read or written, or is of a
+	 * different variant
+	 */
+	public HistoryStore(Path directory, DiceGame game, int syncInterval) throws IOException {
+		if (syncInterval < 1)
+			throw new IllegalArgumentException("Must sync at least every game appended");
+		this.syncInterval = syncInterval;
+		variant = game.name();
+		categories = game.categories();
+		blockBytes = recordWidth() * BLOCK_RECORDS;
+		Files.createDirectories(directory);
+		games = FileChannel.open(directory.resolve(GAMES_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		names = FileChannel.open(directory.resolve(PLAYERS_FILE), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			if (games.size() == 0)
+				games.write(header(), 0);
+			ByteBuffer first = ByteBuffer.allocate((int)Math.min(games.size(), ALIGNMENT * 16))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			while (first.hasRemaining())
+				if (games.read(first, first.position()) < 0)
+					break;
+			first.flip();
+			dataOffset = readHeader(first, directory.resolve(GAMES_FILE));
+			header = games.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			numRecords = header.getLong(NUM_RECORDS_AT);
+			numCounted = numRecords;
+			chunks = new MappedByteBuffer[0];
+			mapChunks(numRecords);
+			readPlayers(directory.resolve(PLAYERS_FILE));
+			indexPlayers();
+			if (numRecords > 0)
+				lastTime = time(numRecords - 1);
+		} catch (IOException | RuntimeException e) {
+			games.close();
+			names.close();
+			throw e instanceof IOException ? (IOException) e :
+				new IOException(directory + " is not a valid history store", e);
+		}
+	}
+
+
+
+	/**
+	 * Returns the bytes of one game.
+	 * @return The width of every column together
+	 */
+	private int recordWidth() {
+		return Long.BYTES + 2 * Integer.BYTES + categories.length * Integer.BYTES;
+	}
+
+
+
+	/**
+	 * Builds the header of a new file of games.
+	 * @return The header, padded to where the first block starts
+	 */
+	private ByteBuffer header() {
+		List<byte[]> strings = new ArrayList<byte[]>();
+		strings.add(variant.getBytes(StandardCharsets.UTF_8));
+		for (Category category: categories)
+			strings.add(category.getName().getBytes(StandardCharsets.UTF_8));
+		int length = 5 * Integer.BYTES + Long.BYTES;
+		for (byte[] string: strings)
+			length += Integer.BYTES + string.length;
+		int offset = (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+
+		ByteBuffer header = ByteBuffer.allocate(offset).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putLong(0);
+		header.putInt(offset);
+		header.putInt(BLOCK_RECORDS);
+		header.putInt(categories.length);
+		for (byte[] string: strings) {
+			header.putInt(string.length);
+			header.put(string);
+		}
+		header.clear();
+		return header;
+	}
+
+
+
+	/**
+	 * Checks the header of a file of games is of this variant.
+	 * @param header The start of the file
+	 * @param file The file
+	 * @return Where the first block starts
+	 * @throws IOException if the file is not a file of games of this variant
+	 */
+	private long readHeader(ByteBuffer header, Path file) throws IOException {
+		if (header.remaining() < 6 * Integer.BYTES || header.getInt() != MAGIC || header.getInt() != VERSION)
+			throw new IOException(file + " is not a history file");
+		header.getLong();
+		int offset = header.getInt();
+		if (header.getInt() != BLOCK_RECORDS || header.getInt() != categories.length ||
+				!readString(header).equals(variant))
+			throw new IOException(file + " is for a different variant");
+		for (Category category: categories)
+			if (!readString(header).equals(category.getName()))
+				throw new IOException(file + " is for a different variant");
+		if (offset < header.position() || offset % ALIGNMENT != 0)
+			throw new IOException(file + " has an invalid header");
+		return offset;
+	}
+
+
+
+	/**
+	 * Reads a string from a header.
+	 * @param header The header
+	 * @return The string
+	 */
+	private static String readString(ByteBuffer header) {
+		byte[] bytes = new byte[header.getInt()];
+		header.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+
+
+	/**
+	 * Reads the players' names. A name cut off by a store stopped while
+	 * appending is dropped.
+	 * @param file The file of names
+	 * @throws IOException if the file cannot be read
+	 */
+	private void readPlayers(Path file) throws IOException {
+		long end = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			while (true) {
+				int length = in.readInt();
+				if (length < 0 || length > MAX_NAME_BYTES)
+					throw new IOException(file + " is not a valid players file");
+				byte[] name = new byte[length];
+				in.readFully(name);
+				addPlayer(new String(name, StandardCharsets.UTF_8));
+				end += Integer.BYTES + length;
+			}
+		} catch (EOFException e) {
+			names.truncate(end);
+		}
+	}
+
+
+
+	/**
+	 * Builds the index of each player's games from the column of players.
+	 * @throws IOException if a game is of a player with no name
+	 */
+	private void indexPlayers() throws IOException {
+		int[] counts = new int[players.size()];
+		for (long record = 0; record < numRecords; record++) {
+			int player = player(record);
+			if (player < 0 || player >= counts.length)
+				throw new IOException("Game " + record + " is of an unknown player");
+			counts[player]++;
+		}
+		for (int player = 0; player < counts.length; player++)
+			records[player] = new int[Math.max(4, counts[player])];
+		for (int record = 0; record < numRecords; record++) {
+			int player = player(record);
+			records[player][numPlayerRecords[player]++] = record;
+		}
+	}
+
+
+
+	/**
+	 * Gives a name the next player number.
+	 * @param name The name
+	 * @return The number
+	 */
+	private int addPlayer(String name) {
+		int number = players.size();
+		players.add(name);
+		playerNumbers.put(name, number);
+		if (number == records.length) {
+			records = Arrays.copyOf(records, Math.max(16, 2 * number));
+			numPlayerRecords = Arrays.copyOf(numPlayerRecords, records.length);
+		}
+		records[number] = new int[4];
+		return number;
+	}
+
+
+
+	/**
+	 * Maps the chunks needed to hold a number of games, growing the file if
+	 * it is too short.
+	 * @param numGames The number of games
+	 * @throws IOException if the file cannot be grown or mapped
+	 */
+	private void mapChunks(long numGames) throws IOException {
+		long numBlocks = (numGames + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+		int needed = (int)((numBlocks + BLOCKS_PER_CHUNK - 1) / BLOCKS_PER_CHUNK);
+		if (needed <= chunks.length)
+			return;
+		MappedByteBuffer[] mapped = Arrays.copyOf(chunks, needed);
+		long chunkBytes = (long)blockBytes * BLOCKS_PER_CHUNK;
+		for (int chunk = chunks.length; chunk < needed; chunk++) {
+			mapped[chunk] = games.map(FileChannel.MapMode.READ_WRITE, dataOffset + chunk * chunkBytes, chunkBytes);
+			mapped[chunk].order(ByteOrder.LITTLE_ENDIAN);
+		}
+		chunks = mapped;
+	}
+
+
+
+	/**
+	 * Appends the result of a player of a finished game.
+	 * @param player The player
+	 * @param time When the game finished, in milliseconds since the epoch;
+	 * a time earlier than the last game's, such as after the clock was set
+	 * back, is taken as the last game's
+	 * @throws IOException if the game cannot be written
+	 */
+	public synchronized void append(Player player, long time) throws IOException {
+		write(player, time);
+		syncIfDue();
+	}
+
+
+
+	/**
+	 * Appends the result of every player of a finished game. The players are
+	 * all written before any of them is counted, so the game is kept whole.
+	 * @param game The game
+	 * @param time When the game finished, in milliseconds since the epoch;
+	 * a time earlier than the last game's, such as after the clock was set
+	 * back, is taken as the last game's
+	 * @throws IOException if the game cannot be written
+	 */
+	public synchronized void append(DiceGame game, long time) throws IOException {
+		for (int i = 0; i < game.numPlayers(); i++)
+			write(game.getPlayer(i), time);
+		syncIfDue();
+	}
+
+
+
+	/**
+	 * Appends the result of a player of a finished game.
+	 * @param player The name of the player
+	 * @param points The points in each category, in the order of the
+	 * variant's categories
+	 * @param total The total score
+	 * @param time When the game finished, in milliseconds since the epoch; no
+	 * earlier than the last game appended
+	 * @throws IOException if the game cannot be written
+	 */
+	public synchronized void append(String player, int[] points, int total, long time) throws IOException {
+		write(player, points, total, time);
+		syncIfDue();
+	}
+
+
+
+	/**
+	 * Writes the result of a player of a finished game without counting it.
+	 * @param player The player
+	 * @param time When the game finished, in milliseconds since the epoch;
+	 * a time earlier than the last game's is taken as the last game's
+	 * @throws IOException if the game cannot be written
+	 */
+	private void write(Player player, long time) throws IOException {
+		int[] points = new int[categories.length];
+		for (int c = 0; c < categories.length; c++)
+			points[c] = player.getPoints(categories[c]);
+		write(player.getName(), points, player.getTotalScore(), Math.max(time, lastTime));
+	}
+
+
+
+	/**
+	 * Writes the result of a player of a finished game without counting it.
+	 * It is counted in the header at the next sync.
+	 * @param player The name of the player
+	 * @param points The points in each category, in the order of the
+	 * variant's categories
+	 * @param total The total score
+	 * @param time When the game finished, in milliseconds since the epoch; no
+	 * earlier than the last game appended
+	 * @throws IOException if the game cannot be written
+	 */
+	private void write(String player, int[] points, int total, long time) throws IOException {
+		if (points.length != categories.length)
+			throw new IllegalArgumentException("Need the points of " + categories.length + " categories");
+		if (time < lastTime)
+			throw new IllegalArgumentException("Games must be appended in order of time");
+		if (numRecords == Integer.MAX_VALUE)
+			throw new IOException("The history store is full");
+
+		// Name a new player
+		Integer number = playerNumbers.get(player);
+		if (number == null) {
+			byte[] name = player.getBytes(StandardCharsets.UTF_8);
+			if (name.length > MAX_NAME_BYTES)
+				throw new IllegalArgumentException("Name too long");
+			ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + name.length);
+			entry.putInt(name.length).put(name).flip();
+			long at = names.size();
+			while (entry.hasRemaining())
+				at += names.write(entry, at);
+			number = addPlayer(player);
+			namesWritten = true;
+		}
+
+		// Write the game
+		long record = numRecords;
+		mapChunks(record + 1);
+		ByteBuffer chunk = chunk(record);
+		chunk.putLong(position(record, 0, Long.BYTES), time);
+		chunk.putInt(position(record, Long.BYTES, Integer.BYTES), number);
+		chunk.putInt(position(record, Long.BYTES + Integer.BYTES, Integer.BYTES), total);
+		for (int c = 0; c < categories.length; c++)
+			chunk.putInt(position(record, categoryColumn(c), Integer.BYTES), points[c]);
+
+		int[] games = records[number];
+		if (numPlayerRecords[number] == games.length)
+			records[number] = games = Arrays.copyOf(games, 2 * games.length);
+		games[numPlayerRecords[number]++] = (int)record;
+		lastTime = time;
+		numRecords = record + 1;
+	}
+
+
+
+	/**
+	 * Syncs if enough games have been written since the last sync.
+	 * @throws IOException if the files cannot be written
+	 */
+	private void syncIfDue() throws IOException {
+		if (numRecords - numCounted >= syncInterval)
+			sync();
+	}
+
+
+
+	/**
+	 * Forces the games appended since the last sync to disk, then counts them
+	 * in the header and forces that too. The games are forced first so the
+	 * header never reaches the disk counting a game that has not.
+	 * @throws IOException if the files cannot be written
+	 */
+	public synchronized void sync() throws IOException {
+		if (numCounted == numRecords)
+			return;
+		if (namesWritten) {
+			names.force(false);
+			namesWritten = false;
+		}
+		for (long block = numCounted / BLOCK_RECORDS; block <= (numRecords - 1) / BLOCK_RECORDS; block++)
+			chunks[(int)(block / BLOCKS_PER_CHUNK)].force((int)(block % BLOCKS_PER_CHUNK) * blockBytes, blockBytes);
+		header.putLong(NUM_RECORDS_AT, numRecords);
+		header.force();
+		numCounted = numRecords;
+	}
+
+
+
+	/**
+	 * Returns the bytes of the columns before a category's column, in one
+	 * record.
+	 * @param category The index of the category
+	 * @return The bytes
+	 */
+	private static int categoryColumn(int category) {
+		return Long.BYTES + 2 * Integer.BYTES + category * Integer.BYTES;
+	}
+
+
+
+	/**
+	 * Returns the mapping a game is in.
+	 * @param record The index of the game
+	 * @return The mapping
+	 */
+	private ByteBuffer chunk(long record) {
+		return chunks[(int)(record / BLOCK_RECORDS / BLOCKS_PER_CHUNK)];
+	}
+
+
+
+	/**
+	 * Returns where a value of a game is in its mapping.
+	 * @param record The index of the game
+	 * @param columnStart The bytes of the columns before the value's in one
+	 * record
+	 * @param width The bytes of the value
+	 * @return The offset in bytes
+	 */
+	private int position(long record, int columnStart, int width) {
+		long block = record / BLOCK_RECORDS;
+		int inBlock = (int)(record % BLOCK_RECORDS);
+		return (int)(block % BLOCKS_PER_CHUNK) * blockBytes + columnStart * BLOCK_RECORDS + inBlock * width;
+	}
+
+
+
+	/**
+	 * Returns when a game finished.
+	 * @param record The index of the game
+	 * @return The time, in milliseconds since the epoch
+	 */
+	public long time(long record) {
+		return chunk(record).getLong(position(record, 0, Long.BYTES));
+	}
+
+
+
+	/**
+	 * Returns the number of the player of a game.
+	 * @param record The index of the game
+	 * @return The number of the player
+	 */
+	public int player(long record) {
+		return chunk(record).getInt(position(record, Long.BYTES, Integer.BYTES));
+	}
+
+
+
+	/**
+	 * Returns the total score of a game.
+	 * @param record The index of the game
+	 * @return The total
+	 */
+	public int total(long record) {
+		return chunk(record).getInt(position(record, Long.BYTES + Integer.BYTES, Integer.BYTES));
+	}
+
+
+
+	/**
+	 * Returns the points of a game in a category.
+	 * @param record The index of the game
+	 * @param category The index of the category
+	 * @return The points
+	 */
+	public int points(long record, int category) {
+		return chunk(record).getInt(position(record, categoryColumn(category), Integer.BYTES));
+	}
+
+
+
+	/**
+	 * Returns the indexes of a player's games.
+	 * @param player The name of the player
+	 * @return The indexes, in order of time
+	 */
+	public synchronized int[] games(String player) {
+		Integer number = playerNumbers.get(player);
+		return number == null ? new int[0] : Arrays.copyOf(records[number], numPlayerRecords[number]);
+	}
+
+
+
+	/**
+	 * Works out a player's average points in a category.
+	 * @param player The name of the player
+	 * @param category The index of the category
+	 * @return The average, or NaN if the player has no games
+	 */
+	public double averagePoints(String player, int category) {
+		int[] games = games(player);
+		long sum = 0;
+		for (int record: games)
+			sum += points(record, category);
+		return games.length == 0 ? Double.NaN : (double)sum / games.length;
+	}
+
+
+
+	/**
+	 * Works out a player's average total score.
+	 * @param player The name of the player
+	 * @return The average, or NaN if the player has no games
+	 */
+	public double averageTotal(String player) {
+		int[] games = games(player);
+		long sum = 0;
+		for (int record: games)
+			sum += total(record);
+		return games.length == 0 ? Double.NaN : (double)sum / games.length;
+	}
+
+
+
+	/**
+	 * Returns a player's best total score.
+	 * @param player The name of the player
+	 * @return The best total, or 0 if the player has no games
+	 */
+	public int bestTotal(String player) {
+		int best = 0;
+		for (int record: games(player))
+			best = Math.max(best, total(record));
+		return best;
+	}
+
+
+
+	/**
+	 * Counts the total scores of the games finished in a period, in bins of
+	 * equal width.
+	 * @param from The start of the period, in milliseconds since the epoch
+	 * @param to The end of the period, not included
+	 * @param binWidth The range of totals in each bin
+	 * @return The number of games by bin; bin i holds the totals from
+	 * i * binWidth, and there are enough bins for the highest total
+	 */
+	public long[] histogram(long from, long to, int binWidth) {
+		if (binWidth < 1)
+			throw new IllegalArgumentException("Bins must be at least 1 wide");
+		long end = firstGameAt(to);
+		long[] bins = new long[16];
+		for (long record = firstGameAt(from); record < end; record++) {
+			int bin = Math.max(0, total(record)) / binWidth;
+			if (bin >= bins.length)
+				bins = Arrays.copyOf(bins, Math.max(bin + 1, 2 * bins.length));
+			bins[bin]++;
+		}
+		int length = bins.length;
+		while (length > 0 && bins[length - 1] == 0)
+			length--;
+		return Arrays.copyOf(bins, length);
+	}
+
+
+
+	/**
+	 * Finds the first game finished at or after a time, by binary search.
+	 * @param time The time, in milliseconds since the epoch
+	 * @return The index of the game, or the number of games if there is none
+	 */
+	public long firstGameAt(long time) {
+		long low = 0;
+		long high = numRecords;
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (time(middle) < time)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+
+
+	/**
+	 * Returns the number of games, counting each player of a game apart.
+	 * @return The number of games
+	 */
+	public long numGames() {
+		return numRecords;
+	}
+
+
+
+	/**
+	 * Returns the names of the players, in order of number.
+	 * @return The names
+	 */
+	public synchronized String[] players() {
+		return players.toArray(new String[0]);
+	}
+
+
+
+	/**
+	 * Returns the name of a player.
+	 * @param number The number of the player
+	 * @return The name
+	 */
+	public synchronized String playerName(int number) {
+		return players.get(number);
+	}
+
+
+
+	/**
+	 * Returns the name of the variant.
+	 * @return The name
+	 */
+	public String variant() {
+		return variant;
+	}
+
+
+
+	/**
+	 * Returns the categories of the variant.
+	 * @return The categories, in the order of the columns of points
+	 */
+	public Category[] categories() {
+		return categories.clone();
+	}
+
+
+
+	/**
+	 * Syncs the games appended and closes the store.
+	 * @throws IOException if the files cannot be written
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (!games.isOpen())
+			return;
+		try (games; names) {
+			sync();
+			names.force(true);
+		}
+	}
+}
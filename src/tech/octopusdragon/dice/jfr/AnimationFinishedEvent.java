@@ -0,0 +1,23 @@
+package tech.octopusdragon.dice.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when the dice of a roll have settled on the screen. Its duration is
+ * the time from the press of the roll button to the dice settling, which is the
+ * latency the player sees.
+ */
+@Name("tech.octopusdragon.dice.AnimationFinished")
+@Label("Animation Finished")
+@Description("The rolled dice settled on the screen")
+public class AnimationFinishedEvent extends TurnEvent {
+
+	@Label("Dice Rolled")
+	public int diceRolled;
+
+	@Label("Fast Play")
+	@Description("Whether the roll was shown without animation")
+	public boolean fastPlay;
+}
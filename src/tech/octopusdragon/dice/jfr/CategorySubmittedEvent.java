@@ -0,0 +1,21 @@
+package tech.octopusdragon.dice.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when the player clicks a category to submit the dice. Its duration
+ * is the time the GUI takes to handle the click, including the submission.
+ */
+@Name("tech.octopusdragon.dice.CategorySubmitted")
+@Label("Category Submitted")
+@Description("The player submitted the dice to a category")
+public class CategorySubmittedEvent extends TurnEvent {
+
+	@Label("Category")
+	public String category;
+
+	@Label("Points")
+	public int points;
+}
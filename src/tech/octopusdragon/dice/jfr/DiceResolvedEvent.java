@@ -0,0 +1,25 @@
+package tech.octopusdragon.dice.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when the game rolls dice. Its duration is the time the game takes to
+ * roll the dice and score them in every open category.
+ */
+@Name("tech.octopusdragon.dice.DiceResolved")
+@Label("Dice Resolved")
+@Description("The game rolled the dice and scored them")
+public class DiceResolvedEvent extends TurnEvent {
+
+	@Label("Dice Rolled")
+	public int diceRolled;
+
+	@Label("Dice")
+	@Description("The values of all of the dice after the roll")
+	public String dice;
+
+	@Label("Rolls Left")
+	public int rollsLeft;
+}
@@ -0,0 +1,15 @@
+package tech.octopusdragon.dice.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when the game advances to the next player. Its fields describe the
+ * new turn.
+ */
+@Name("tech.octopusdragon.dice.NextPlayer")
+@Label("Next Player")
+@Description("The game advanced to the next player")
+public class NextPlayerEvent extends TurnEvent {
+}
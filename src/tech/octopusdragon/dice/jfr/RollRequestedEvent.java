@@ -0,0 +1,22 @@
+package tech.octopusdragon.dice.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when the player presses the roll button. Its duration is the time
+ * the GUI takes to handle the press, including the roll itself.
+ */
+@Name("tech.octopusdragon.dice.RollRequested")
+@Label("Roll Requested")
+@Description("The player pressed the roll button")
+public class RollRequestedEvent extends TurnEvent {
+
+	@Label("Dice Rolled")
+	public int diceRolled;
+
+	@Label("Rolls Left")
+	@Description("The number of rolls left after this roll")
+	public int rollsLeft;
+}
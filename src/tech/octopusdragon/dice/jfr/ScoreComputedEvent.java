@@ -0,0 +1,21 @@
+package tech.octopusdragon.dice.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded when the game scores the dice in the category the player submitted
+ * them to. Its duration is the time the game takes to score and record them.
+ */
+@Name("tech.octopusdragon.dice.ScoreComputed")
+@Label("Score Computed")
+@Description("The game scored the submitted dice")
+public class ScoreComputedEvent extends TurnEvent {
+
+	@Label("Category")
+	public String category;
+
+	@Label("Points")
+	public int points;
+}
@@ -0,0 +1,46 @@
+package tech.octopusdragon.dice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * The base of the Flight Recorder events of a turn. Every event carries the
+ * variant, the index of the player whose turn it is and the number of the
+ * turn, so the events of one turn can be matched up across the GUI and the
+ * game engine. The duration of an event is the time between its begin and
+ * commit.
+ * <p>
+ * Events are used in the usual way to cost nothing while they are disabled:
+ * the event is created and begun, and its fields are only filled in after
+ * {@link #shouldCommit()} returns true.
+ */
+@Category({"Dice", "Turn"})
+@StackTrace(false)
+public abstract class TurnEvent extends Event {
+
+	@Label("Variant")
+	public String variant;
+
+	@Label("Player Index")
+	public int playerIndex;
+
+	@Label("Turn")
+	@Description("The number of the turn in the game, counting from 1")
+	public long turn;
+
+
+
+	/**
+	 * Fills in the variant, player and turn from a game.
+	 * @param game The game
+	 */
+	public void setGame(DiceGame game) {
+		variant = game.name();
+		playerIndex = game.curPlayerIndex();
+		turn = game.turn();
+	}
+}
@@ -0,0 +1,245 @@
+package tech.octopusdragon.dice.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The best score of each player over one period, such as one day of one
+ * variant. Any number of threads may submit scores and query the board at
+ * once, and no lock covers the whole board.
+ * <p>
+ * The entries are kept in a skip list in order of rank, so the top entries are
+ * read straight off its head. How many players have each score is kept in a
+ * Fenwick tree of atomic counts, so the rank of a score is two sums of
+ * O(log of the highest score) counts, however many players there are. Scores
+ * above the highest the tree was made for are counted as the highest.
+ * <p>
+ * A player's entry is only replaced while holding the lock of the player's
+ * bin in a concurrent map, so two scores of the same player cannot cross. A
+ * query running while scores are submitted sees each entry either before or
+ * after it changed, but may see some changes and not others.
+ * @author Alex Gill
+ *
+ */
+public class Leaderboard {
+
+	// The order of the board: highest score first, then earliest, then by name
+	private static final Comparator<Entry> RANKING = (a, b) -> {
+		if (a.score != b.score)
+			return Integer.compare(b.score, a.score);
+		if (a.time != b.time)
+			return Long.compare(a.time, b.time);
+		return a.player.compareTo(b.player);
+	};
+
+	private final long period;		// When the board's period started, in milliseconds since the epoch
+	private final int maxScore;		// The highest score counted apart
+	private final AtomicLongArray counts;	// The Fenwick tree of the number of players by score
+	private final ConcurrentSkipListSet<Entry> ranking =
+			new ConcurrentSkipListSet<Entry>(RANKING);	// The entries in order of rank
+	private final Map<String, Entry> best = new ConcurrentHashMap<String, Entry>();	// The entries by player
+
+
+
+	/**
+	 * Instantiates an empty board.
+	 * @param period When the board's period started, in milliseconds since the
+	 * epoch
+	 * @param maxScore The highest score counted apart from those below it
+	 */
+	public Leaderboard(long period, int maxScore) {
+		if (maxScore < 0)
+			throw new IllegalArgumentException("The highest score cannot be negative");
+		this.period = period;
+		this.maxScore = maxScore;
+		counts = new AtomicLongArray(maxScore + 2);
+	}
+
+
+
+	/**
+	 * Submits a player's score. The board keeps the player's best.
+	 * @param player The name of the player
+	 * @param score The score; negative scores count as 0
+	 * @param time When the score was made, in milliseconds since the epoch
+	 * @return Whether the score is the player's new best
+	 */
+	public boolean submit(String player, int score, long time) {
+		Entry entry = new Entry(player, Math.max(0, score), time);
+		return best.compute(player, (name, old) -> {
+			if (old != null && old.score >= entry.score)
+				return old;
+			ranking.add(entry);
+			add(entry.score, 1);
+			if (old != null) {
+				ranking.remove(old);
+				add(old.score, -1);
+			}
+			return entry;
+		}) == entry;
+	}
+
+
+
+	/**
+	 * Returns a player's rank. Players with the same score share a rank.
+	 * @param player The name of the player
+	 * @return The rank, from 1, or 0 if the player has no score on the board
+	 */
+	public long rank(String player) {
+		Entry entry = best.get(player);
+		return entry == null ? 0 : rankOf(entry.score);
+	}
+
+
+
+	/**
+	 * Returns the rank a score would have.
+	 * @param score The score
+	 * @return The rank, from 1
+	 */
+	public long rankOf(int score) {
+		return 1 + sum(maxScore) - sum(Math.max(0, Math.min(score, maxScore)));
+	}
+
+
+
+	/**
+	 * Returns a player's entry.
+	 * @param player The name of the player
+	 * @return The entry, or null if the player has no score on the board
+	 */
+	public Entry get(String player) {
+		return best.get(player);
+	}
+
+
+
+	/**
+	 * Returns the entries with the highest scores.
+	 * @param k The most entries to return
+	 * @return The entries, in order of rank
+	 */
+	public List<Entry> top(int k) {
+		List<Entry> top = new ArrayList<Entry>(Math.min(k, 1024));
+		Iterator<Entry> entries = ranking.iterator();
+		while (top.size() < k && entries.hasNext())
+			top.add(entries.next());
+		return top;
+	}
+
+
+
+	/**
+	 * Returns every entry, in order of rank.
+	 * @return The entries; changes made while iterating may or may not be
+	 * seen
+	 */
+	public Iterable<Entry> entries() {
+		return ranking;
+	}
+
+
+
+	/**
+	 * Returns the number of players on the board.
+	 * @return The number of players
+	 */
+	public long size() {
+		return sum(maxScore);
+	}
+
+
+
+	/**
+	 * Returns when the board's period started.
+	 * @return The start, in milliseconds since the epoch
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+
+
+	/**
+	 * Returns the highest score counted apart from those below it.
+	 * @return The highest score
+	 */
+	public int getMaxScore() {
+		return maxScore;
+	}
+
+
+
+	/**
+	 * Adds to the number of players with a score.
+	 * @param score The score, at least 0
+	 * @param delta The number to add
+	 */
+	private void add(int score, long delta) {
+		for (int i = Math.min(score, maxScore) + 1; i < counts.length(); i += i & -i)
+			counts.addAndGet(i, delta);
+	}
+
+
+
+	/**
+	 * Counts the players with a score up to a given one.
+	 * @param score The score, from 0 to the highest score
+	 * @return The number of players
+	 */
+	private long sum(int score) {
+		long sum = 0;
+		for (int i = score + 1; i > 0; i -= i & -i)
+			sum += counts.get(i);
+		return sum;
+	}
+
+
+
+	/**
+	 * A player's best score on a board.
+	 */
+	public static final class Entry {
+
+		private final String player;	// The name of the player
+		private final int score;		// The score
+		private final long time;		// When the score was made
+
+		Entry(String player, int score, long time) {
+			this.player = player;
+			this.score = score;
+			this.time = time;
+		}
+
+		/**
+		 * Returns the name of the player.
+		 * @return The name
+		 */
+		public String getPlayer() {
+			return player;
+		}
+
+		/**
+		 * Returns the score.
+		 * @return The score
+		 */
+		public int getScore() {
+			return score;
+		}
+
+		/**
+		 * Returns when the score was made.
+		 * @return The time, in milliseconds since the epoch
+		 */
+		public long getTime() {
+			return time;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package tech.octopusdragon.dice.leaderboard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The leaderboards of every variant: one of all time, one for today and one
+ * for this week. A board of today or this week is swapped for an empty one
+ * the first time it is used after its period ends, and scores made before
+ * the current period are left off it.
+ * <p>
+ * Any number of threads may submit scores and query the boards at once. The
+ * boards can be saved to a snapshot file and loaded from it again.
+ * @author Alex Gill
+ *
+ */
+public class Leaderboards {
+
+	// --- Constants ---
+	static final int MAGIC = 0x4C424431;		// Starts every snapshot file
+	static final int VERSION = 1;				// The snapshot file format
+	public static final int DEFAULT_MAX_SCORE = 1 << 16;	// The highest score counted apart by default
+
+	private final ZoneId zone;		// The time zone the days are in
+	private final int maxScore;		// The highest score each board counts apart
+	private final Map<String, AtomicReferenceArray<Leaderboard>> boards =
+			new ConcurrentHashMap<String, AtomicReferenceArray<Leaderboard>>();	// Boards by variant and window
+
+
+
+	/**
+	 * Instantiates empty leaderboards with days in the system's time zone.
+	 */
+	public Leaderboards() {
+		this(ZoneId.systemDefault(), DEFAULT_MAX_SCORE);
+	}
+
+
+
+	/**
+	 * Instantiates empty leaderboards.
+	 * @param zone The time zone the days are in
+	 * @param maxScore The highest score each board counts apart from those
+	 * below it
+	 */
+	public Leaderboards(ZoneId zone, int maxScore) {
+		this.zone = zone;
+		this.maxScore = maxScore;
+	}
+
+
+
+	/**
+	 * Submits the score of a finished game to every board of its variant it
+	 * falls in the period of.
+	 * @param variant The name of the variant
+	 * @param player The name of the player
+	 * @param score The player's total score
+	 * @param time When the game finished, in milliseconds since the epoch
+	 */
+	public void submit(String variant, String player, int score, long time) {
+		for (TimeWindow window: TimeWindow.values()) {
+			long period = window.start(time, zone);
+			Leaderboard board = board(variant, window, period);
+			if (board.getPeriod() == period)
+				board.submit(player, score, time);
+		}
+	}
+
+
+
+	/**
+	 * Returns the board of a variant for the current period.
+	 * @param variant The name of the variant
+	 * @param window The period
+	 * @return The board
+	 */
+	public Leaderboard board(String variant, TimeWindow window) {
+		return board(variant, window, window.start(System.currentTimeMillis(), zone));
+	}
+
+
+
+	/**
+	 * Returns the board of a variant, starting a new one if the board is for
+	 * an earlier period than a given one.
+	 * @param variant The name of the variant
+	 * @param window The period
+	 * @param period When the period started, in milliseconds since the epoch
+	 * @return The board, which is for a later period than the one given if
+	 * that period has already ended
+	 */
+	private Leaderboard board(String variant, TimeWindow window, long period) {
+		AtomicReferenceArray<Leaderboard> windows = boards.computeIfAbsent(variant,
+				name -> new AtomicReferenceArray<Leaderboard>(TimeWindow.values().length));
+		while (true) {
+			Leaderboard board = windows.get(window.ordinal());
+			if (board != null && board.getPeriod() >= period)
+				return board;
+			Leaderboard started = new Leaderboard(period, maxScore);
+			if (windows.compareAndSet(window.ordinal(), board, started))
+				return started;
+		}
+	}
+
+
+
+	/**
+	 * Saves a snapshot of every board. Scores submitted while saving may or
+	 * may not be in it. The file is written in full before it replaces the old
+	 * one, so a snapshot stopped while saving leaves the last one as it was.
+	 * @param file The file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		Path absolute = file.toAbsolutePath();
+		Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(maxScore);
+				List<String> variants = new ArrayList<String>(boards.keySet());
+				out.writeInt(variants.size() * TimeWindow.values().length);
+				for (String variant: variants) {
+					for (TimeWindow window: TimeWindow.values()) {
+						Leaderboard board = boards.get(variant).get(window.ordinal());
+						List<Leaderboard.Entry> entries = new ArrayList<Leaderboard.Entry>();
+						if (board != null)
+							board.entries().forEach(entries::add);
+						out.writeUTF(variant);
+						out.writeUTF(window.name());
+						out.writeLong(board == null ? window.start(System.currentTimeMillis(), zone) : board.getPeriod());
+						out.writeInt(entries.size());
+						for (Leaderboard.Entry entry: entries) {
+							out.writeUTF(entry.getPlayer());
+							out.writeInt(entry.getScore());
+							out.writeLong(entry.getTime());
+						}
+					}
+				}
+			}
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+
+
+	/**
+	 * Loads boards saved by {@link #save(Path)}. Boards of periods that have
+	 * since ended are replaced the first time they are used.
+	 * @param file The file
+	 * @param zone The time zone the days are in
+	 * @return The boards
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public static Leaderboards load(Path file, ZoneId zone) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(file + " is not a leaderboard snapshot");
+			int maxScore = in.readInt();
+			if (maxScore < 0)
+				throw new IOException(file + " is not a valid leaderboard snapshot");
+			Leaderboards leaderboards = new Leaderboards(zone, maxScore);
+			int numBoards = in.readInt();
+			for (int b = 0; b < numBoards; b++) {
+				String variant = in.readUTF();
+				TimeWindow window;
+				try {
+					window = TimeWindow.valueOf(in.readUTF());
+				} catch (IllegalArgumentException e) {
+					throw new IOException(file + " is not a valid leaderboard snapshot", e);
+				}
+				Leaderboard board = new Leaderboard(in.readLong(), leaderboards.maxScore);
+				int numEntries = in.readInt();
+				for (int e = 0; e < numEntries; e++)
+					board.submit(in.readUTF(), in.readInt(), in.readLong());
+				leaderboards.boards.computeIfAbsent(variant,
+						name -> new AtomicReferenceArray<Leaderboard>(TimeWindow.values().length))
+						.set(window.ordinal(), board);
+			}
+			return leaderboards;
+		}
+	}
+}
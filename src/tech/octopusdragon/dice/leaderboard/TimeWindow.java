@@ -0,0 +1,42 @@
+package tech.octopusdragon.dice.leaderboard;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * The periods a leaderboard can cover. Each board holds the scores of one
+ * period, and a board for a new period starts empty.
+ * @author Alex Gill
+ *
+ */
+public enum TimeWindow {
+
+	/** Every score ever made. */
+	ALL_TIME,
+
+	/** The scores made since midnight. */
+	DAILY,
+
+	/** The scores made since midnight on Monday. */
+	WEEKLY;
+
+
+
+	/**
+	 * Works out when the period a time falls in started.
+	 * @param time The time, in milliseconds since the epoch
+	 * @param zone The time zone the days are in
+	 * @return The start of the period, in milliseconds since the epoch
+	 */
+	public long start(long time, ZoneId zone) {
+		if (this == ALL_TIME)
+			return Long.MIN_VALUE;
+		LocalDate day = Instant.ofEpochMilli(time).atZone(zone).toLocalDate();
+		if (this == WEEKLY)
+			day = day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+		return day.atStartOfDay(zone).toInstant().toEpochMilli();
+	}
+}
@@ -0,0 +1,185 @@
+package tech.octopusdragon.dice.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.octopusdragon.dice.CategoryScorer;
+import tech.octopusdragon.dice.DiceCondition;
+import tech.octopusdragon.dice.Scorers;
+
+/**
+ * Compiles the scoring rule of a category into a scoring function. The rule is
+ * read once, when the variant is loaded, and turned into the same building
+ * blocks the standard categories are made of, so scoring a category never
+ * looks at the rule again.
+ * <p>
+ * A rule names the points awarded, optionally followed by {@code if} and one
+ * or more combinations joined by {@code and}:
+ * <pre>
+ * points:      N              a fixed number of points
+ *              sum            the sum of all of the dice
+ *              count F        the sum of the dice showing face F
+ *              kind N         the sum of N dice showing the same face
+ * combination: faces F F ...  at least one die showing each face
+ *              straight N     a run of N consecutive faces
+ *              kind N         at least N dice showing the same face
+ *              exactly N      exactly N dice showing the same face
+ *              all            all of the dice showing the same face
+ *              fullhouse      three of one face and two of another
+ *              total N        dice totalling N
+ * </pre>
+ * For example, {@code 50 if kind 2 and total 13} is the Crag category.
+ * @author Alex Gill
+ *
+ */
+public final class RuleCompiler {
+
+	/**
+	 * Cannot be instantiated.
+	 */
+	private RuleCompiler() {
+	}
+
+
+
+	/**
+	 * Compiles a scoring rule.
+	 * @param rule The rule
+	 * @return The scoring function
+	 * @throws IllegalArgumentException if the rule cannot be read
+	 */
+	public static CategoryScorer compile(String rule) {
+		Tokens tokens = new Tokens(rule);
+
+		// The points
+		CategoryScorer points;
+		Integer fixedPoints = null;
+		String word = tokens.next("points");
+		switch (word) {
+			case "sum":
+				points = Scorers.sum();
+				break;
+			case "count":
+				points = Scorers.count(tokens.nextInt());
+				break;
+			case "kind":
+				points = Scorers.ofAKind(tokens.nextInt());
+				break;
+			default:
+				fixedPoints = parseInt(word, rule);
+				points = null;
+				break;
+		}
+
+		// No combination means the points are always awarded
+		if (!tokens.hasNext()) {
+			if (fixedPoints != null) {
+				int constant = fixedPoints;
+				return (faceCounts, total) -> constant;
+			}
+			return points;
+		}
+
+		// The combinations
+		if (!tokens.next("if").equals("if"))
+			throw new IllegalArgumentException("Expected 'if' in rule: " + rule);
+		DiceCondition condition = condition(tokens);
+		while (tokens.hasNext()) {
+			if (!tokens.next("and").equals("and"))
+				throw new IllegalArgumentException("Expected 'and' in rule: " + rule);
+			condition = Scorers.and(condition, condition(tokens));
+		}
+
+		return fixedPoints != null ?
+				Scorers.when(fixedPoints, condition) :
+				Scorers.when(points, condition);
+	}
+
+
+
+	/**
+	 * Reads one combination.
+	 * @param tokens The rest of the rule
+	 * @return The combination
+	 */
+	private static DiceCondition condition(Tokens tokens) {
+		String word = tokens.next("combination");
+		switch (word) {
+			case "faces":
+				List<Integer> faces = new ArrayList<Integer>();
+				while (tokens.hasInt())
+					faces.add(tokens.nextInt());
+				if (faces.isEmpty())
+					throw new IllegalArgumentException("Expected faces in rule: " + tokens.rule);
+				int[] faceArray = new int[faces.size()];
+				for (int i = 0; i < faceArray.length; i++)
+					faceArray[i] = faces.get(i);
+				return Scorers.faces(faceArray);
+			case "straight":
+				return Scorers.straight(tokens.nextInt());
+			case "kind":
+				return Scorers.atLeastOfAKind(tokens.nextInt());
+			case "exactly":
+				return Scorers.exactlyOfAKind(tokens.nextInt());
+			case "all":
+				return Scorers.allSame();
+			case "fullhouse":
+				return Scorers.fullHouse();
+			case "total":
+				return Scorers.total(tokens.nextInt());
+			default:
+				throw new IllegalArgumentException("Unknown combination '" + word + "' in rule: " + tokens.rule);
+		}
+	}
+
+
+
+	/**
+	 * Reads a number.
+	 * @param word The number as a string
+	 * @param rule The rule, for the error message
+	 * @return The number
+	 */
+	private static int parseInt(String word, String rule) {
+		try {
+			return Integer.parseInt(word);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a number instead of '" + word + "' in rule: " + rule);
+		}
+	}
+
+
+
+	/**
+	 * The words of a rule, read from left to right.
+	 */
+	private static class Tokens {
+		private final String rule;
+		private final String[] words;
+		private int position;
+
+		Tokens(String rule) {
+			this.rule = rule;
+			String trimmed = rule.trim().toLowerCase();
+			words = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+		}
+
+		boolean hasNext() {
+			return position < words.length;
+		}
+
+		boolean hasInt() {
+			return hasNext() && words[position].matches("-?\\d+");
+		}
+
+		String next(String expected) {
+			if (!hasNext())
+				throw new IllegalArgumentException("Expected " + expected + " at the end of rule: " + rule);
+			return words[position++];
+		}
+
+		int nextInt() {
+			return parseInt(next("a number"), rule);
+		}
+	}
+}
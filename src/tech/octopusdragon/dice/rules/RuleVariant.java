@@ -0,0 +1,64 @@
+package tech.octopusdragon.dice.rules;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Theme;
+
+/**
+ * A game of a variant defined by a rules file.
+ * @author Alex Gill
+ *
+ */
+public class RuleVariant extends DiceGame {
+
+	private final VariantRules rules;	// The rules of the variant
+
+
+
+	/**
+	 * Instantiates a new game of a variant.
+	 * @param rules The rules of the variant
+	 * @param numPlayers The number of players
+	 */
+	public RuleVariant(VariantRules rules, int numPlayers) {
+		super();
+		this.rules = rules;
+		setUp(numPlayers);
+	}
+
+	@Override
+	public String name() {
+		return rules.getName();
+	}
+
+	@Override
+	public String description() {
+		return rules.getDescription();
+	}
+
+	@Override
+	public int numDice() {
+		return rules.getNumDice();
+	}
+
+	@Override
+	public int numSides() {
+		return rules.getNumSides();
+	}
+
+	@Override
+	public int numRolls() {
+		return rules.getNumRolls();
+	}
+
+	@Override
+	public Theme theme() {
+		return rules.getTheme();
+	}
+
+	@Override
+	public Category[] categories() {
+		return rules.getCategories();
+	}
+
+}
@@ -0,0 +1,265 @@
+package tech.octopusdragon.dice.rules;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.Theme;
+import tech.octopusdragon.dice.Variant;
+
+/**
+ * The rules of a variant read from a rules file. A rules file has one setting
+ * per line, written as {@code key = value}. Blank lines and lines starting
+ * with {@code #} are ignored, and a line ending in {@code \} continues on the
+ * next line. The settings are:
+ * <pre>
+ * name        = the name of the variant
+ * description = a description of the variant
+ * dice        = the number of dice
+ * sides       = the number of sides on each die (default 6)
+ * rolls       = the number of rolls per turn
+ * theme       = the theme it is shown with, yacht or crag (default yacht)
+ * category    = name | description | how it is scored | rule
+ * </pre>
+ * There is one {@code category} line per category, in the order they are
+ * shown. The rule is compiled by {@link RuleCompiler} when the file is read.
+ * @author Alex Gill
+ *
+ */
+public class VariantRules implements Variant {
+
+	// --- Constants ---
+	public static final String DIRECTORY = "variants";	// Where the rules files are on the class path
+	public static final String INDEX = DIRECTORY + "/variants.txt";	// Lists the rules files
+
+	// --- Rules ---
+	private String name;		// The name of the variant
+	private String description;	// A description of the variant
+	private int numDice;		// The number of dice
+	private int numSides = Die.DEFAULT_SIDES;	// The number of sides on each die
+	private int numRolls;		// The number of rolls per turn
+	private Theme theme = Theme.YACHT;	// The theme it is shown with
+	private Category[] categories;	// The scoring categories
+
+
+
+	/**
+	 * Instantiates the rules. Use {@link #load(Reader)} to read them.
+	 */
+	private VariantRules() {
+	}
+
+
+
+	/**
+	 * Reads the rules of a variant.
+	 * @param reader Reads the rules file
+	 * @return The rules
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the rules are not valid
+	 */
+	public static VariantRules load(Reader reader) throws IOException {
+		VariantRules rules = new VariantRules();
+		List<Category> categories = new ArrayList<Category>();
+
+		BufferedReader lines = new BufferedReader(reader);
+		String line;
+		int lineNumber = 0;
+		while ((line = lines.readLine()) != null) {
+			lineNumber++;
+
+			// Join continued lines
+			while (line.endsWith("\\")) {
+				String next = lines.readLine();
+				lineNumber++;
+				line = line.substring(0, line.length() - 1) + (next == null ? "" : next.trim());
+			}
+
+			// Skip blank lines and comments
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			// Read the setting
+			int equals = line.indexOf('=');
+			if (equals == -1)
+				throw new IllegalArgumentException("Line " + lineNumber + ": expected key = value");
+			String key = line.substring(0, equals).trim();
+			String value = line.substring(equals + 1).trim();
+			try {
+				switch (key) {
+					case "name":
+						rules.name = value;
+						break;
+					case "description":
+						rules.description = value;
+						break;
+					case "dice":
+						rules.numDice = Integer.parseInt(value);
+						break;
+					case "sides":
+						rules.numSides = Integer.parseInt(value);
+						break;
+					case "rolls":
+						rules.numRolls = Integer.parseInt(value);
+						break;
+					case "theme":
+						try {
+							rules.theme = Theme.valueOf(value.toUpperCase());
+						} catch (IllegalArgumentException e) {
+							throw new IllegalArgumentException("unknown theme '" + value + "'");
+						}
+						break;
+					case "category":
+						String[] parts = value.split("\\|");
+						if (parts.length != 4)
+							throw new IllegalArgumentException("expected name | description | scoring | rule");
+						categories.add(new Category(
+								parts[0].trim(),
+								parts[1].trim(),
+								parts[2].trim(),
+								RuleCompiler.compile(parts[3])));
+						break;
+					default:
+						throw new IllegalArgumentException("unknown setting '" + key + "'");
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+			}
+		}
+
+		// Check that nothing is missing
+		if (rules.name == null)
+			throw new IllegalArgumentException("The variant has no name");
+		if (rules.description == null)
+			rules.description = "";
+		if (rules.numDice < 1 || rules.numSides < 1 || rules.numRolls < 1)
+			throw new IllegalArgumentException(rules.name + " needs at least one die, side and roll");
+		if (categories.isEmpty())
+			throw new IllegalArgumentException(rules.name + " has no categories");
+		rules.categories = categories.toArray(new Category[0]);
+
+		return rules;
+	}
+
+
+
+	/**
+	 * Reads the rules of every variant listed in the index on the class path.
+	 * @param loader The class loader to find the files with
+	 * @return The rules of the variants, in the order they are listed
+	 * @throws IOException if a file cannot be read
+	 * @throws IllegalArgumentException if the rules of a variant are not valid
+	 */
+	public static List<VariantRules> loadAll(ClassLoader loader) throws IOException {
+		List<VariantRules> variants = new ArrayList<VariantRules>();
+
+		InputStream index = loader.getResourceAsStream(INDEX);
+		if (index == null)
+			return variants;
+		try (BufferedReader files = new BufferedReader(new InputStreamReader(index, StandardCharsets.UTF_8))) {
+			String file;
+			while ((file = files.readLine()) != null) {
+				file = file.trim();
+				if (file.isEmpty() || file.startsWith("#"))
+					continue;
+				InputStream in = loader.getResourceAsStream(DIRECTORY + "/" + file);
+				if (in == null)
+					throw new IOException("Missing rules file " + file);
+				try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+					variants.add(load(reader));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(file + ": " + e.getMessage(), e);
+				}
+			}
+		}
+
+		return variants;
+	}
+
+
+
+	@Override
+	public DiceGame newGame(int numPlayers) {
+		return new RuleVariant(this, numPlayers);
+	}
+
+
+
+	/**
+	 * Returns the name of the variant.
+	 * @return The name of the variant
+	 */
+	public String getName() {
+		return name;
+	}
+
+
+
+	/**
+	 * Returns a description of the variant.
+	 * @return A description of the variant
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+
+
+	/**
+	 * Returns the number of dice.
+	 * @return The number of dice
+	 */
+	public int getNumDice() {
+		return numDice;
+	}
+
+
+
+	/**
+	 * Returns the number of sides on each die.
+	 * @return The number of sides
+	 */
+	public int getNumSides() {
+		return numSides;
+	}
+
+
+
+	/**
+	 * Returns the number of rolls per turn.
+	 * @return The number of rolls
+	 */
+	public int getNumRolls() {
+		return numRolls;
+	}
+
+
+
+	/**
+	 * Returns the theme the variant is shown with.
+	 * @return The theme
+	 */
+	public Theme getTheme() {
+		return theme;
+	}
+
+
+
+	/**
+	 * Returns the scoring categories. The same categories are shared by every
+	 * game of the variant.
+	 * @return The scoring categories
+	 */
+	public Category[] getCategories() {
+		return categories.clone();
+	}
+}
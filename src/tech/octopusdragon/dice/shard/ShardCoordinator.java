@@ -0,0 +1,292 @@
+package tech.octopusdragon.dice.shard;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link SimulationJob} across several JVMs on one machine, so a big
+ * simulation is not limited by one heap and one garbage collector. Each shard
+ * is played by a {@link ShardWorker} launched with {@link ProcessBuilder},
+ * a few at a time, and streams its results back over a pipe. The coordinator
+ * adds up the batches of a shard as they arrive, and once the worker says the
+ * shard is done and exits cleanly, merges them into the job's results.
+ * <p>
+ * A worker that crashes, hangs past the time limit or sends anything it
+ * should not loses the shard's results so far, and the shard is played again
+ * from the start, up to a number of attempts. A shard plays the same games
+ * every time, so the results are the same however often workers fail.
+ * <p>
+ * Options, given as {@code --name=value}, as well as those of the job:
+ * <ul>
+ * <li>{@code workers} - the most workers at once (default the number of
+ * processors)</li>
+ * <li>{@code attempts} - the most times to play each shard (default 3)</li>
+ * <li>{@code timeout} - the seconds a shard may take (default 3600)</li>
+ * <li>{@code heap} - the heap of each worker, such as 256m (default the
+ * JVM's)</li>
+ * <li>{@code out} - a file to write the merged results to</li>
+ * </ul>
+ * @author Alex Gill
+ *
+ */
+public class ShardCoordinator {
+
+	// --- Constants ---
+	private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+	// --- Job ---
+	private final SimulationJob job;	// The simulation
+	private final int numWorkers;		// The most workers at once
+	private final int maxAttempts;		// The most times to play each shard
+	private final long timeoutMillis;	// The time a shard may take
+	private final List<String> jvmOptions;	// Options of each worker's JVM
+
+	// --- Workers ---
+	private final Set<Process> running = ConcurrentHashMap.newKeySet();	// Workers still running
+	private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "Shard watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+
+
+	/**
+	 * Instantiates a coordinator.
+	 * @param job The simulation
+	 * @param numWorkers The most workers at once
+	 * @param maxAttempts The most times to play each shard
+	 * @param timeoutMillis The time a shard may take, in milliseconds
+	 * @param jvmOptions Options of each worker's JVM, such as -Xmx256m
+	 */
+	public ShardCoordinator(SimulationJob job, int numWorkers, int maxAttempts, long timeoutMillis,
+			List<String> jvmOptions) {
+		if (numWorkers < 1 || maxAttempts < 1 || timeoutMillis < 1)
+			throw new IllegalArgumentException("Need at least one worker, attempt and millisecond");
+		this.job = job;
+		this.numWorkers = numWorkers;
+		this.maxAttempts = maxAttempts;
+		this.timeoutMillis = timeoutMillis;
+		this.jvmOptions = new ArrayList<String>(jvmOptions);
+	}
+
+
+
+	/**
+	 * Plays every shard and merges the results.
+	 * @return The results of the whole job
+	 * @throws IOException if a shard fails every attempt
+	 * @throws InterruptedException if interrupted while waiting, in which case
+	 * the workers are stopped
+	 */
+	public ShardResult run() throws IOException, InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(numWorkers, runnable -> {
+			Thread thread = new Thread(runnable, "Shard coordinator");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<ShardResult>> shards = new ArrayList<Future<ShardResult>>();
+			for (int shard = 0; shard < job.numShards(); shard++) {
+				int index = shard;
+				shards.add(pool.submit(() -> runShard(index)));
+			}
+
+			// Merge in shard order, so the results do not depend on timing
+			ShardResult total = new ShardResult(job.numPlayers());
+			for (Future<ShardResult> shard: shards) {
+				try {
+					total.merge(shard.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException)
+						throw (IOException) e.getCause();
+					throw new IOException(e.getCause());
+				}
+			}
+			return total;
+		} finally {
+			pool.shutdownNow();
+			for (Process process: running)
+				process.destroyForcibly();
+		}
+	}
+
+
+
+	/**
+	 * Plays a shard, trying again if the worker fails.
+	 * @param shard The index of the shard
+	 * @return The results of the shard
+	 * @throws IOException if every attempt fails
+	 * @throws InterruptedException if interrupted
+	 */
+	private ShardResult runShard(int shard) throws IOException, InterruptedException {
+		IOException failure = null;
+		for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+			try {
+				ShardResult result = attempt(shard);
+				System.out.println("Shard " + shard + " done: " + result.numGames() + " games");
+				return result;
+			} catch (IOException e) {
+				System.out.println("Shard " + shard + " failed on attempt " + attempt + ": " + e.getMessage());
+				if (failure == null)
+					failure = new IOException("Shard " + shard + " failed " + maxAttempts + " times", e);
+				else
+					failure.addSuppressed(e);
+			}
+		}
+		throw failure;
+	}
+
+
+
+	/**
+	 * Plays a shard in a new worker.
+	 * @param shard The index of the shard
+	 * @return The results of the shard
+	 * @throws IOException if the worker fails, times out or sends results
+	 * that are not valid
+	 * @throws InterruptedException if interrupted
+	 */
+	private ShardResult attempt(int shard) throws IOException, InterruptedException {
+		Process process = new ProcessBuilder(command(shard))
+				.redirectError(ProcessBuilder.Redirect.INHERIT)
+				.start();
+		running.add(process);
+		ScheduledFuture<?> timeout = watchdog.schedule(process::destroyForcibly, timeoutMillis, TimeUnit.MILLISECONDS);
+		try {
+			ShardResult result = new ShardResult(job.numPlayers());
+			int batches = 0;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(process.getInputStream()))) {
+				if (in.readInt() != ShardWorker.MAGIC || in.readInt() != ShardWorker.VERSION)
+					throw new IOException("Not the output of a shard worker");
+				if (in.readInt() != shard)
+					throw new IOException("The worker played the wrong shard");
+				while (true) {
+					byte record = in.readByte();
+					if (record == ShardWorker.BATCH) {
+						result.merge(ShardResult.read(in));
+						batches++;
+					} else if (record == ShardWorker.DONE) {
+						if (in.readInt() != batches || batches != job.batchesPerShard())
+							throw new IOException("The worker played " + batches + " batches");
+						break;
+					} else {
+						throw new IOException("Unknown record " + record);
+					}
+				}
+			} catch (EOFException e) {
+				throw new IOException("The worker stopped before the shard was done", e);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("The worker sent results that are not valid", e);
+			}
+
+			int status = process.waitFor();
+			if (status != 0)
+				throw new IOException("The worker exited with status " + status);
+			if (result.numGames() != job.gamesPerShard())
+				throw new IOException("The worker played " + result.numGames() + " games");
+			return result;
+		} finally {
+			timeout.cancel(false);
+			process.destroyForcibly();
+			running.remove(process);
+		}
+	}
+
+
+
+	/**
+	 * Builds the command that launches a worker.
+	 * @param shard The index of the shard
+	 * @return The command
+	 */
+	private List<String> command(int shard) {
+		List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(jvmOptions);
+		if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent())
+			command.add("--add-modules=" + VECTOR_MODULE);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ShardWorker.class.getName());
+		command.addAll(job.toOptions());
+		command.add("--shard=" + shard);
+		return command;
+	}
+
+
+
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> options = SimulationJob.parseOptions(args);
+		SimulationJob job;
+		int numWorkers;
+		int maxAttempts;
+		long timeoutMillis;
+		List<String> jvmOptions = new ArrayList<String>();
+		try {
+			job = SimulationJob.fromOptions(args);
+			job.newGame();
+			job.newPlayers();
+			numWorkers = Integer.parseInt(options.getOrDefault("workers",
+					Integer.toString(Runtime.getRuntime().availableProcessors())));
+			maxAttempts = Integer.parseInt(options.getOrDefault("attempts", "3"));
+			timeoutMillis = Long.parseLong(options.getOrDefault("timeout", "3600")) * 1000;
+			if (options.containsKey("heap"))
+				jvmOptions.add("-Xmx" + options.get("heap"));
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid job: " + e.getMessage());
+			System.exit(ShardWorker.EXIT_INVALID_JOB);
+			return;
+		}
+
+		long start = System.nanoTime();
+		ShardResult result;
+		try {
+			result = new ShardCoordinator(job, numWorkers, maxAttempts, timeoutMillis, jvmOptions).run();
+		} catch (IOException e) {
+			System.out.println("Error running the job...");
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		// Summarize
+		PrintStream console = System.out;
+		console.printf("%d games in %.1f s (%.0f games/s)%n", result.numGames(), seconds, result.numGames() / seconds);
+		for (int seat = 0; seat < result.numPlayers(); seat++)
+			console.printf("Seat %d: won %.4f, mean %.2f, p5 %d, p50 %d, p95 %d%n", seat + 1,
+					result.winRate(seat), result.meanScore(seat),
+					result.percentile(seat, 5), result.percentile(seat, 50), result.percentile(seat, 95));
+
+		// Keep the merged results
+		String outFile = options.get("out");
+		if (outFile != null) {
+			try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(Paths.get(outFile)))) {
+				result.write(out);
+			} catch (IOException e) {
+				System.out.println("Error writing results " + outFile + "...");
+				e.printStackTrace();
+			}
+		}
+	}
+}
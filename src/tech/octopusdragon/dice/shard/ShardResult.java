@@ -0,0 +1,273 @@
+package tech.octopusdragon.dice.shard;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import tech.octopusdragon.dice.batch.BatchGameEngine;
+
+/**
+ * The results of some finished games: how many were played, each seat's wins
+ * and a histogram of each seat's final scores. Results of different games
+ * merge by adding them up, so shards can be played anywhere and combined in
+ * any order.
+ * <p>
+ * Results are written in a compact binary form: the counts, then for each
+ * seat only the part of the histogram between its lowest and highest score.
+ * @author Alex Gill
+ *
+ */
+public class ShardResult {
+
+	// --- Constants ---
+	public static final int MAX_PLAYERS = 20;	// The most seats whose shared wins can be counted exactly
+
+	private final int numPlayers;	// The number of seats
+	private final long shareUnits;	// Parts a win is split into, so any shared win is a whole number of parts
+	private long numGames;			// The number of games
+	private final long[] winShares;	// Each seat's wins, in parts
+	private final long[][] histograms;	// Each seat's games, by final score
+
+	// Scratch space
+	private final int[] scores;		// The final scores of one game
+
+
+
+	/**
+	 * Instantiates empty results.
+	 * @param numPlayers The number of players in each game
+	 */
+	public ShardResult(int numPlayers) {
+		if (numPlayers < 1 || numPlayers > MAX_PLAYERS)
+			throw new IllegalArgumentException("Can only count games of 1 to " + MAX_PLAYERS + " players");
+		this.numPlayers = numPlayers;
+		long units = 1;
+		for (int n = 2; n <= numPlayers; n++)
+			units = units / gcd(units, n) * n;
+		shareUnits = units;
+		winShares = new long[numPlayers];
+		histograms = new long[numPlayers][0];
+		scores = new int[numPlayers];
+	}
+
+
+
+	/**
+	 * Adds the games of an engine that have been played to the end. A win
+	 * shared by several seats is split between them.
+	 * @param engine The games
+	 */
+	public void record(BatchGameEngine engine) {
+		if (engine.numPlayers() != numPlayers)
+			throw new IllegalArgumentException("Expected games of " + numPlayers + " players");
+		if (!engine.isOver())
+			throw new IllegalStateException("The games are not over");
+
+		for (int game = 0; game < engine.numGames(); game++) {
+			int best = Integer.MIN_VALUE;
+			int numBest = 0;
+			for (int seat = 0; seat < numPlayers; seat++) {
+				scores[seat] = engine.totalScore(game, seat);
+				if (scores[seat] > best) {
+					best = scores[seat];
+					numBest = 1;
+				} else if (scores[seat] == best) {
+					numBest++;
+				}
+			}
+			for (int seat = 0; seat < numPlayers; seat++) {
+				if (scores[seat] == best)
+					winShares[seat] += shareUnits / numBest;
+				count(seat, scores[seat], 1);
+			}
+		}
+		numGames += engine.numGames();
+	}
+
+
+
+	/**
+	 * Adds other results to these.
+	 * @param other The other results
+	 */
+	public void merge(ShardResult other) {
+		if (other.numPlayers != numPlayers)
+			throw new IllegalArgumentException("Expected results of " + numPlayers + " players");
+		numGames += other.numGames;
+		for (int seat = 0; seat < numPlayers; seat++) {
+			winShares[seat] += other.winShares[seat];
+			long[] histogram = other.histograms[seat];
+			for (int score = 0; score < histogram.length; score++)
+				if (histogram[score] != 0)
+					count(seat, score, histogram[score]);
+		}
+	}
+
+
+
+	/**
+	 * Adds games to a seat's histogram, growing it if needed.
+	 * @param seat The seat
+	 * @param score The final score
+	 * @param games The number of games
+	 */
+	private void count(int seat, int score, long games) {
+		if (score < 0)
+			throw new IllegalArgumentException("Negative score " + score);
+		if (score >= histograms[seat].length)
+			histograms[seat] = Arrays.copyOf(histograms[seat], Math.max(score + 1, histograms[seat].length * 2));
+		histograms[seat][score] += games;
+	}
+
+
+
+	/**
+	 * Works out the greatest common divisor of two numbers.
+	 * @param a The first number
+	 * @param b The second number
+	 * @return The greatest common divisor
+	 */
+	private static long gcd(long a, long b) {
+		while (b != 0) {
+			long r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+
+
+
+	/**
+	 * Writes the results.
+	 * @param out Receives the results
+	 * @throws IOException if the results cannot be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(numPlayers);
+		out.writeLong(numGames);
+		for (int seat = 0; seat < numPlayers; seat++) {
+			out.writeLong(winShares[seat]);
+			long[] histogram = histograms[seat];
+			int min = 0;
+			while (min < histogram.length && histogram[min] == 0)
+				min++;
+			int max = histogram.length - 1;
+			while (max >= min && histogram[max] == 0)
+				max--;
+			out.writeInt(min);
+			out.writeInt(max - min + 1);
+			for (int score = min; score <= max; score++)
+				out.writeLong(histogram[score]);
+		}
+	}
+
+
+
+	/**
+	 * Reads results written by {@link #write(DataOutput)}.
+	 * @param in Supplies the results
+	 * @return The results
+	 * @throws IOException if the results cannot be read or are not valid
+	 */
+	public static ShardResult read(DataInput in) throws IOException {
+		int numPlayers = in.readInt();
+		if (numPlayers < 1 || numPlayers > MAX_PLAYERS)
+			throw new IOException("Invalid number of players " + numPlayers);
+		ShardResult result = new ShardResult(numPlayers);
+		result.numGames = in.readLong();
+		for (int seat = 0; seat < numPlayers; seat++) {
+			result.winShares[seat] = in.readLong();
+			int min = in.readInt();
+			int length = in.readInt();
+			if (min < 0 || length < 0 || min > 1 << 24 || length > 1 << 24)
+				throw new IOException("Invalid histogram of " + length + " scores from " + min);
+			result.histograms[seat] = new long[min + length];
+			for (int score = min; score < min + length; score++)
+				result.histograms[seat][score] = in.readLong();
+		}
+		return result;
+	}
+
+
+
+	/**
+	 * Returns the number of players in each game.
+	 * @return The number of players
+	 */
+	public int numPlayers() {
+		return numPlayers;
+	}
+
+
+
+	/**
+	 * Returns the number of games.
+	 * @return The number of games
+	 */
+	public long numGames() {
+		return numGames;
+	}
+
+
+
+	/**
+	 * Returns the share of the games a seat won, counting a win shared by
+	 * several seats as a share of a win.
+	 * @param seat The seat
+	 * @return The share of the games won
+	 */
+	public double winRate(int seat) {
+		return numGames == 0 ? 0.0 : (double)winShares[seat] / shareUnits / numGames;
+	}
+
+
+
+	/**
+	 * Returns a seat's mean final score.
+	 * @param seat The seat
+	 * @return The mean score
+	 */
+	public double meanScore(int seat) {
+		long[] histogram = histograms[seat];
+		double sum = 0.0;
+		for (int score = 0; score < histogram.length; score++)
+			sum += (double)score * histogram[score];
+		return numGames == 0 ? 0.0 : sum / numGames;
+	}
+
+
+
+	/**
+	 * Returns a percentile of a seat's final scores.
+	 * @param seat The seat
+	 * @param percent The percentile, from 0 to 100
+	 * @return The lowest score at least that percent of games are at or
+	 * below, or 0 if there are no games
+	 */
+	public int percentile(int seat, double percent) {
+		long[] histogram = histograms[seat];
+		long rank = Math.max(1, (long)Math.ceil(percent / 100.0 * numGames));
+		long seen = 0;
+		for (int score = 0; score < histogram.length; score++) {
+			seen += histogram[score];
+			if (seen >= rank)
+				return score;
+		}
+		return 0;
+	}
+
+
+
+	/**
+	 * Returns the number of games in which a seat finished with a score.
+	 * @param seat The seat
+	 * @param score The final score
+	 * @return The number of games
+	 */
+	public long games(int seat, int score) {
+		long[] histogram = histograms[seat];
+		return score >= 0 && score < histogram.length ? histogram[score] : 0;
+	}
+}
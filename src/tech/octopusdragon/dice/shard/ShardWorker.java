@@ -0,0 +1,82 @@
+package tech.octopusdragon.dice.shard;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Plays one shard of a {@link SimulationJob} in its own JVM, launched by a
+ * {@link ShardCoordinator}. The results are streamed to standard output in
+ * binary, one record per batch as it finishes, followed by a record saying
+ * the shard is done. Anything else the worker prints goes to standard error.
+ * <p>
+ * Arguments: the options of the job and {@code --shard=index}.
+ * @author Alex Gill
+ *
+ */
+public class ShardWorker {
+
+	// --- Protocol ---
+	static final int MAGIC = 0x53485244;	// Starts the output of every worker
+	static final int VERSION = 1;			// The output format
+	static final byte BATCH = 1;			// Followed by the results of a batch
+	static final byte DONE = 2;				// Followed by the number of batches played
+
+	// --- Exit statuses ---
+	static final int EXIT_INVALID_JOB = 2;	// The job could not be read
+
+
+
+	/**
+	 * Cannot be instantiated.
+	 */
+	private ShardWorker() {
+	}
+
+
+
+	public static void main(String[] args) {
+
+		// Keep standard output for the results
+		PrintStream stdout = System.out;
+		System.setOut(System.err);
+
+		SimulationJob job;
+		int shard;
+		try {
+			job = SimulationJob.fromOptions(args);
+			String shardOption = SimulationJob.parseOptions(args).get("shard");
+			if (shardOption == null)
+				throw new IllegalArgumentException("Missing option --shard");
+			shard = Integer.parseInt(shardOption);
+			if (shard < 0 || shard >= job.numShards())
+				throw new IllegalArgumentException("No shard " + shard);
+			job.newGame();
+			job.newPlayers();
+		} catch (IllegalArgumentException e) {	// Including NumberFormatException
+			System.err.println("Invalid job: " + e.getMessage());
+			System.exit(EXIT_INVALID_JOB);
+			return;
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stdout))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(shard);
+			int[] batches = new int[1];
+			job.playShard(shard, result -> {
+				out.writeByte(BATCH);
+				result.write(out);
+				out.flush();
+				batches[0]++;
+			});
+			out.writeByte(DONE);
+			out.writeInt(batches[0]);
+		} catch (IOException e) {
+			System.err.println("Error writing the results of shard " + shard + "...");
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
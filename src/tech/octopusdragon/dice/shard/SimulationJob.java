@@ -0,0 +1,301 @@
+package tech.octopusdragon.dice.shard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Variant;
+import tech.octopusdragon.dice.batch.BatchGameEngine;
+import tech.octopusdragon.dice.batch.BatchPlayer;
+import tech.octopusdragon.dice.rules.VariantRules;
+import tech.octopusdragon.dice.variants.Crag;
+import tech.octopusdragon.dice.variants.Yacht;
+
+/**
+ * A simulation split into shards: a number of games of a variant between
+ * some {@link BatchPlayer}s, played in batches. Every batch has its own seed,
+ * and the seeds of each shard are a range of their own, so a shard played
+ * again plays exactly the same games and no two shards play the same ones.
+ * <p>
+ * A job is passed to a worker as options of the form {@code --name=value}.
+ * @author Alex Gill
+ *
+ */
+public class SimulationJob {
+
+	private final String variant;		// The name of the variant
+	private final String[] players;		// The class of each seat's player, or one for every seat
+	private final int numPlayers;		// The number of players in each game
+	private final int numShards;		// The number of shards
+	private final int batchesPerShard;	// The number of batches in each shard
+	private final int gamesPerBatch;	// The number of games in each batch
+	private final long seed;			// The seed of the first batch of the first shard
+
+
+
+	/**
+	 * Instantiates a job.
+	 * @param variant The name of the variant
+	 * @param players The names of the classes of each seat's player, or of
+	 * one for every seat. Each must be a {@link BatchPlayer} with a public
+	 * constructor taking no arguments.
+	 * @param numPlayers The number of players in each game
+	 * @param numShards The number of shards
+	 * @param batchesPerShard The number of batches in each shard
+	 * @param gamesPerBatch The number of games in each batch
+	 * @param seed The seed of the first batch of the first shard
+	 */
+	public SimulationJob(String variant, String[] players, int numPlayers,
+			int numShards, int batchesPerShard, int gamesPerBatch, long seed) {
+		if (players.length != 1 && players.length != numPlayers)
+			throw new IllegalArgumentException("Expected 1 or " + numPlayers + " players");
+		if (numShards < 1 || batchesPerShard < 1 || gamesPerBatch < 1)
+			throw new IllegalArgumentException("Need at least one shard, batch and game");
+		this.variant = variant;
+		this.players = players.clone();
+		this.numPlayers = numPlayers;
+		this.numShards = numShards;
+		this.batchesPerShard = batchesPerShard;
+		this.gamesPerBatch = gamesPerBatch;
+		this.seed = seed;
+	}
+
+
+
+	/**
+	 * Reads a job from options written by {@link #toOptions()}.
+	 * @param args The options
+	 * @return The job
+	 * @throws IllegalArgumentException if an option is missing or not valid
+	 */
+	public static SimulationJob fromOptions(String[] args) {
+		Map<String, String> options = parseOptions(args);
+		try {
+			return new SimulationJob(
+					required(options, "variant"),
+					required(options, "player").split(","),
+					Integer.parseInt(required(options, "players")),
+					Integer.parseInt(required(options, "shards")),
+					Integer.parseInt(required(options, "batches")),
+					Integer.parseInt(required(options, "batch-size")),
+					Long.parseLong(required(options, "seed")));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid number: " + e.getMessage(), e);
+		}
+	}
+
+
+
+	/**
+	 * Writes the job as options.
+	 * @return The options
+	 */
+	public List<String> toOptions() {
+		List<String> options = new ArrayList<String>();
+		options.add("--variant=" + variant);
+		options.add("--player=" + String.join(",", players));
+		options.add("--players=" + numPlayers);
+		options.add("--shards=" + numShards);
+		options.add("--batches=" + batchesPerShard);
+		options.add("--batch-size=" + gamesPerBatch);
+		options.add("--seed=" + seed);
+		return options;
+	}
+
+
+
+	/**
+	 * Reads options of the form {@code --name=value}. Other arguments are
+	 * ignored.
+	 * @param args The arguments
+	 * @return The values, by name
+	 */
+	public static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new HashMap<String, String>();
+		for (String arg: args) {
+			int equals = arg.indexOf('=');
+			if (arg.startsWith("--") && equals != -1)
+				options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		return options;
+	}
+
+
+
+	/**
+	 * Returns an option that must be given.
+	 * @param options The options
+	 * @param name The name of the option
+	 * @return The value
+	 */
+	private static String required(Map<String, String> options, String name) {
+		String value = options.get(name);
+		if (value == null)
+			throw new IllegalArgumentException("Missing option --" + name);
+		return value;
+	}
+
+
+
+	/**
+	 * Creates a game of the variant.
+	 * @return A game of the variant
+	 * @throws IllegalArgumentException if there is no such variant
+	 */
+	public DiceGame newGame() {
+		return newGame(variant, numPlayers);
+	}
+
+
+
+	/**
+	 * Creates a game of a variant, looking it up among the regional variants
+	 * and the variants defined by rules files.
+	 * @param variant The name of the variant
+	 * @param numPlayers The number of players
+	 * @return A game of the variant
+	 * @throws IllegalArgumentException if there is no such variant
+	 */
+	public static DiceGame newGame(String variant, int numPlayers) {
+		List<Variant> variants = new ArrayList<Variant>();
+		variants.add(Variant.of(Yacht.class));
+		variants.add(Variant.of(Crag.class));
+		try {
+			variants.addAll(VariantRules.loadAll(SimulationJob.class.getClassLoader()));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Error reading variant rules files", e);
+		}
+		for (Variant candidate: variants) {
+			DiceGame game = candidate.newGame(numPlayers);
+			if (game.name().equalsIgnoreCase(variant))
+				return game;
+		}
+		throw new IllegalArgumentException("Unknown variant " + variant);
+	}
+
+
+
+	/**
+	 * Creates the players.
+	 * @return One player for each seat, or one for every seat
+	 * @throws IllegalArgumentException if a player cannot be created
+	 */
+	public BatchPlayer[] newPlayers() {
+		BatchPlayer[] created = new BatchPlayer[players.length];
+		for (int i = 0; i < players.length; i++) {
+			try {
+				created[i] = Class.forName(players[i]).asSubclass(BatchPlayer.class)
+						.getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IllegalArgumentException("Cannot create player " + players[i], e);
+			}
+		}
+		return created;
+	}
+
+
+
+	/**
+	 * Plays one shard.
+	 * @param shard The index of the shard
+	 * @param batchDone Told the results of each batch as it finishes
+	 * @throws IOException if the results cannot be passed on
+	 */
+	public void playShard(int shard, BatchListener batchDone) throws IOException {
+		if (shard < 0 || shard >= numShards)
+			throw new IllegalArgumentException("No shard " + shard);
+		DiceGame game = newGame();
+		BatchPlayer[] seats = newPlayers();
+		for (int batch = 0; batch < batchesPerShard; batch++) {
+			BatchGameEngine engine = newEngine(game, shard, batch);
+			engine.play(seats);
+			ShardResult result = new ShardResult(numPlayers);
+			result.record(engine);
+			batchDone.batchDone(result);
+		}
+	}
+
+
+
+	/**
+	 * Creates the engine of a batch, with the batch's own seed.
+	 * @param game A game of the variant
+	 * @param shard The index of the shard
+	 * @param batch The index of the batch in the shard
+	 * @return The engine, with the games not yet started
+	 */
+	public BatchGameEngine newEngine(DiceGame game, int shard, int batch) {
+		SplittableRandom random = new SplittableRandom(seed + (long)shard * batchesPerShard + batch);
+		return new BatchGameEngine(game, numPlayers, gamesPerBatch, random);
+	}
+
+
+
+	/**
+	 * Returns the number of players in each game.
+	 * @return The number of players
+	 */
+	public int numPlayers() {
+		return numPlayers;
+	}
+
+
+
+	/**
+	 * Returns the number of shards.
+	 * @return The number of shards
+	 */
+	public int numShards() {
+		return numShards;
+	}
+
+
+
+	/**
+	 * Returns the number of batches in each shard.
+	 * @return The number of batches
+	 */
+	public int batchesPerShard() {
+		return batchesPerShard;
+	}
+
+
+
+	/**
+	 * Returns the number of games in each batch.
+	 * @return The number of games
+	 */
+	public int gamesPerBatch() {
+		return gamesPerBatch;
+	}
+
+
+
+	/**
+	 * Returns the number of games in each shard.
+	 * @return The number of games
+	 */
+	public long gamesPerShard() {
+		return (long)batchesPerShard * gamesPerBatch;
+	}
+
+
+
+	/**
+	 * Told the results of each batch of a shard.
+	 */
+	@FunctionalInterface
+	public interface BatchListener {
+
+		/**
+		 * Called when a batch finishes.
+		 * @param result The results of the batch
+		 * @throws IOException if the results cannot be passed on
+		 */
+		void batchDone(ShardResult result) throws IOException;
+	}
+}
@@ -0,0 +1,148 @@
+package tech.octopusdragon.dice.solver;
+
+/**
+ * Puts a {@link DecisionCache} in front of another policy, so a decision
+ * already made for the same categories, rolls left and dice is looked up
+ * rather than worked out again. The other policy is only asked for a turn's
+ * decisions when one of them is missing from the cache, which for a policy
+ * like {@link OptimalPolicy} saves solving the whole turn. A caching policy
+ * given the dice states of the variant puts every decision of a turn into the
+ * cache once it has had to solve it, so a search that visits many positions
+ * of the same turn, like {@link tech.octopusdragon.dice.bot.MctsBot}'s, only
+ * solves each turn once while it stays in the cache.
+ * <p>
+ * A cache may be shared by any number of caching policies, on any threads,
+ * as long as they all play the same variant the same way.
+ * @author Alex Gill
+ *
+ */
+public class CachingPolicy implements Policy {
+
+	// --- Constants ---
+	private static final int STATE_BITS = 24;		// The bits of a key holding the dice
+	private static final int ROLLS_LEFT_BITS = 8;	// The bits of a key holding the rolls left
+
+	private final Policy policy;		// Works out the decisions not cached
+	private final DecisionCache cache;	// The decisions made so far
+	private final DiceStates states;	// The dice states to cache whole turns over, or null
+	private final int numRolls;			// The number of rolls per turn
+
+
+
+	/**
+	 * Instantiates a caching policy.
+	 * @param policy Works out the decisions not cached
+	 * @param cache The decisions made so far
+	 */
+	public CachingPolicy(Policy policy, DecisionCache cache) {
+		this(policy, cache, null, 0);
+	}
+
+
+
+	/**
+	 * Instantiates a caching policy that caches the whole of every turn it
+	 * has to solve.
+	 * @param policy Works out the decisions not cached
+	 * @param cache The decisions made so far
+	 * @param states The dice states of the variant, or null to cache only
+	 * the decisions asked for
+	 * @param numRolls The number of rolls per turn
+	 */
+	public CachingPolicy(Policy policy, DecisionCache cache, DiceStates states, int numRolls) {
+		this.policy = policy;
+		this.cache = cache;
+		this.states = states;
+		this.numRolls = numRolls;
+	}
+
+
+
+	/**
+	 * Packs a decision's state into a key. Decisions of which category to
+	 * score in have 0 rolls left.
+	 * @param usedMask The categories used
+	 * @param rollsLeft The rolls left
+	 * @param rolledState The dice as rolled
+	 * @return The key
+	 */
+	public static long key(int usedMask, int rollsLeft, int rolledState) {
+		if (rolledState >>> STATE_BITS != 0 || rollsLeft >>> ROLLS_LEFT_BITS != 0)
+			throw new IllegalArgumentException("State too big to pack into a key");
+		return (long)usedMask << (STATE_BITS + ROLLS_LEFT_BITS) | (long)rollsLeft << STATE_BITS | rolledState;
+	}
+
+
+
+	@Override
+	public TurnPolicy turn(int usedMask) {
+		return new CachedTurn(usedMask);
+	}
+
+
+
+	/**
+	 * Returns the cache of decisions.
+	 * @return The cache
+	 */
+	public DecisionCache getCache() {
+		return cache;
+	}
+
+
+
+	/**
+	 * The decisions for one turn, from the cache where they can be.
+	 */
+	private class CachedTurn implements TurnPolicy {
+
+		private final int usedMask;		// The categories used
+		private TurnPolicy turn;		// The other policy's decisions, once one is missing
+
+		CachedTurn(int usedMask) {
+			this.usedMask = usedMask;
+		}
+
+		@Override
+		public int keep(int rollsLeft, int rolledState) {
+			long key = key(usedMask, rollsLeft, rolledState);
+			long kept = cache.get(key);
+			if (kept == DecisionCache.ABSENT) {
+				kept = solved().keep(rollsLeft, rolledState);
+				cache.put(key, kept);
+			}
+			return (int)kept;
+		}
+
+		@Override
+		public int category(int rolledState) {
+			long key = key(usedMask, 0, rolledState);
+			long category = cache.get(key);
+			if (category == DecisionCache.ABSENT) {
+				category = solved().category(rolledState);
+				cache.put(key, category);
+			}
+			return (int)category;
+		}
+
+		/**
+		 * Returns the other policy's decisions for the turn, asking for them
+		 * the first time and then caching all of them if the dice states are
+		 * known.
+		 * @return The decisions
+		 */
+		private TurnPolicy solved() {
+			if (turn == null) {
+				turn = policy.turn(usedMask);
+				if (states != null) {
+					for (int rolledState: states.rolledStates()) {
+						cache.put(key(usedMask, 0, rolledState), turn.category(rolledState));
+						for (int rollsLeft = 1; rollsLeft < numRolls; rollsLeft++)
+							cache.put(key(usedMask, rollsLeft, rolledState), turn.keep(rollsLeft, rolledState));
+					}
+				}
+			}
+			return turn;
+		}
+	}
+}
@@ -0,0 +1,477 @@
+package tech.octopusdragon.dice.solver;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A cache of decisions or values, keyed by a {@code long} the caller packs a
+ * state into, holding at most a fixed number of entries. Keys and values are
+ * kept in primitive arrays, so looking one up allocates nothing and the memory
+ * used, about 30 bytes per entry, is fixed when the cache is made.
+ * <p>
+ * The entries are split into stripes by the hash of their key, each with its
+ * own lock, so threads working on different states seldom meet. Looking up an
+ * entry takes no lock at all unless a thread is adding to the same stripe at
+ * the time. When a stripe is full, the entry to drop is picked by the CLOCK
+ * algorithm: a hand goes round the entries, giving any looked up since it last
+ * passed a second chance, and drops the first that has not been.
+ * <p>
+ * The numbers of hits, misses and evictions are counted for checking how well
+ * the cache fits the memory it has.
+ * @author Alex Gill
+ *
+ */
+public class DecisionCache {
+
+	// --- Constants ---
+	public static final long ABSENT = Long.MIN_VALUE;	// Returned for a key not in the cache
+	private static final int STRIPES_PER_PROCESSOR = 4;	// Stripes for each processor
+	private static final int MIN_STRIPE_ENTRIES = 64;	// The fewest entries worth a stripe of their own
+
+	private final Stripe[] stripes;		// The entries, split by the hash of their keys
+	private final int stripeShift;		// Shifts a hash down to the index of its stripe
+
+	// --- Metrics ---
+	private final LongAdder hits = new LongAdder();			// Keys found
+	private final LongAdder misses = new LongAdder();		// Keys not found
+	private final LongAdder evictions = new LongAdder();	// Entries dropped to make room
+
+
+
+	/**
+	 * Instantiates an empty cache.
+	 * @param capacity The most entries to hold; a little more may be allowed
+	 * so every stripe is the same size
+	 */
+	public DecisionCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Need room for at least one entry");
+		int numStripes = numStripes(capacity);
+		stripes = new Stripe[numStripes];
+		for (int i = 0; i < numStripes; i++)
+			stripes[i] = new Stripe(stripeEntries(capacity, numStripes));
+		stripeShift = Long.SIZE - Integer.numberOfTrailingZeros(numStripes);
+	}
+
+
+
+	/**
+	 * Instantiates the biggest empty cache whose entries fit in a given amount
+	 * of memory.
+	 * @param bytes The memory the entries may take
+	 * @return The cache, with room for at least one entry
+	 */
+	public static DecisionCache withMemory(long bytes) {
+		int low = 1;
+		int high = Integer.MAX_VALUE / 4;
+		while (low < high) {
+			int capacity = low + (high - low + 1) / 2;
+			if (memory(capacity) <= bytes)
+				low = capacity;
+			else
+				high = capacity - 1;
+		}
+		return new DecisionCache(low);
+	}
+
+
+
+	/**
+	 * Works out the number of stripes of a cache.
+	 * @param capacity The most entries the cache holds
+	 * @return The number of stripes, a power of 2
+	 */
+	private static int numStripes(int capacity) {
+		return Integer.highestOneBit(Math.max(1, Math.min(
+				Runtime.getRuntime().availableProcessors() * STRIPES_PER_PROCESSOR,
+				capacity / MIN_STRIPE_ENTRIES)));
+	}
+
+
+
+	/**
+	 * Works out the entries of each stripe of a cache.
+	 * @param capacity The most entries the cache holds
+	 * @param numStripes The number of stripes
+	 * @return The entries of each stripe
+	 */
+	private static int stripeEntries(int capacity, int numStripes) {
+		return (capacity + numStripes - 1) / numStripes;
+	}
+
+
+
+	/**
+	 * Works out the memory the entries of a cache take.
+	 * @param capacity The most entries the cache holds
+	 * @return The memory in bytes
+	 */
+	private static long memory(int capacity) {
+		int numStripes = numStripes(capacity);
+		int entries = stripeEntries(capacity, numStripes);
+		return (long)numStripes * (entries * (2L * Long.BYTES + 1) + (long)Stripe.tableSize(entries) * Integer.BYTES);
+	}
+
+
+
+	/**
+	 * Looks up a key.
+	 * @param key The key
+	 * @return The value, or {@link #ABSENT} if the key is not in the cache
+	 */
+	public long get(long key) {
+		long hash = hash(key);
+		long value = stripe(hash).get(key, (int)hash);
+		if (value == ABSENT)
+			misses.increment();
+		else
+			hits.increment();
+		return value;
+	}
+
+
+
+	/**
+	 * Adds a key, or changes its value if it is already in the cache. If the
+	 * cache is full, an entry not looked up lately is dropped to make room.
+	 * @param key The key
+	 * @param value The value; anything but {@link #ABSENT}
+	 */
+	public void put(long key, long value) {
+		if (value == ABSENT)
+			throw new IllegalArgumentException("The value cannot be ABSENT");
+		long hash = hash(key);
+		if (stripe(hash).put(key, value, (int)hash))
+			evictions.increment();
+	}
+
+
+
+	/**
+	 * Looks up a key, working out and adding its value if it is not in the
+	 * cache. The value is worked out without holding a lock, so two threads
+	 * missing the same key at once may both work it out.
+	 * @param key The key
+	 * @param compute Works out the value of a key
+	 * @return The value
+	 */
+	public long computeIfAbsent(long key, LongUnaryOperator compute) {
+		long value = get(key);
+		if (value == ABSENT) {
+			value = compute.applyAsLong(key);
+			put(key, value);
+		}
+		return value;
+	}
+
+
+
+	/**
+	 * Drops every entry. The counts are kept.
+	 */
+	public void clear() {
+		for (Stripe stripe: stripes)
+			stripe.clear();
+	}
+
+
+
+	/**
+	 * Returns the number of entries.
+	 * @return The number of entries
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe: stripes)
+			size += stripe.size();
+		return size;
+	}
+
+
+
+	/**
+	 * Returns the most entries the cache holds.
+	 * @return The capacity
+	 */
+	public int capacity() {
+		return stripes.length * stripes[0].keys.length;
+	}
+
+
+
+	/**
+	 * Returns the memory the entries take.
+	 * @return The memory in bytes
+	 */
+	public long memory() {
+		return memory(capacity());
+	}
+
+
+
+	/**
+	 * Returns the number of times a key was found.
+	 * @return The number of hits
+	 */
+	public long hits() {
+		return hits.sum();
+	}
+
+
+
+	/**
+	 * Returns the number of times a key was not found.
+	 * @return The number of misses
+	 */
+	public long misses() {
+		return misses.sum();
+	}
+
+
+
+	/**
+	 * Returns the number of entries dropped to make room for others.
+	 * @return The number of evictions
+	 */
+	public long evictions() {
+		return evictions.sum();
+	}
+
+
+
+	/**
+	 * Returns the share of look-ups that found their key.
+	 * @return The hit rate, from 0 to 1, or 0 if nothing has been looked up
+	 */
+	public double hitRate() {
+		long found = hits.sum();
+		long total = found + misses.sum();
+		return total == 0 ? 0.0 : (double)found / total;
+	}
+
+
+
+	/**
+	 * Returns the stripe of a hash.
+	 * @param hash The hash of a key
+	 * @return The stripe
+	 */
+	private Stripe stripe(long hash) {
+		return stripes.length == 1 ? stripes[0] : stripes[(int)(hash >>> stripeShift)];
+	}
+
+
+
+	/**
+	 * Mixes the bits of a key, so keys differing in a few bits spread over
+	 * the stripes and slots.
+	 * @param key The key
+	 * @return The hash
+	 */
+	private static long hash(long key) {
+		key = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+		key = (key ^ (key >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return key ^ (key >>> 33);
+	}
+
+
+
+	/**
+	 * A part of the cache with its own lock. The entries are kept in arrays in
+	 * the order they were added, and found by a hash table of their indexes
+	 * with linear probing, kept at most half full.
+	 */
+	private static class Stripe {
+
+		private final StampedLock lock = new StampedLock();	// Guards the entries
+		private final long[] keys;			// The key of each entry
+		private final long[] values;		// The value of each entry
+		private final byte[] referenced;	// Whether each entry was looked up since the hand passed
+		private final int[] table;			// The index of an entry plus 1 by slot, or 0 if empty
+		private final int tableMask;		// The number of slots - 1
+		private int size;					// The entries in use
+		private int hand;					// The next entry the clock hand looks at
+
+		Stripe(int capacity) {
+			keys = new long[capacity];
+			values = new long[capacity];
+			referenced = new byte[capacity];
+			table = new int[tableSize(capacity)];
+			tableMask = table.length - 1;
+		}
+
+
+
+		/**
+		 * Works out the slots of the hash table of a stripe, at least twice
+		 * its entries.
+		 * @param capacity The most entries the stripe holds
+		 * @return The number of slots, a power of 2
+		 */
+		static int tableSize(int capacity) {
+			return Integer.highestOneBit(2 * capacity - 1) << 1;
+		}
+
+
+
+		/**
+		 * Looks up a key, without locking unless a writer gets in the way.
+		 * @param key The key
+		 * @param hash The low bits of the hash of the key
+		 * @return The value, or {@link DecisionCache#ABSENT}
+		 */
+		long get(long key, int hash) {
+			long stamp = lock.tryOptimisticRead();
+			int entry = find(key, hash);
+			long value = entry < 0 ? ABSENT : values[entry];
+			if (!lock.validate(stamp)) {
+				stamp = lock.readLock();
+				try {
+					entry = find(key, hash);
+					value = entry < 0 ? ABSENT : values[entry];
+				} finally {
+					lock.unlockRead(stamp);
+				}
+			}
+
+			// A stale mark only gives some entry a second chance it did not earn
+			if (entry >= 0)
+				referenced[entry] = 1;
+			return value;
+		}
+
+
+
+		/**
+		 * Adds a key or changes its value.
+		 * @param key The key
+		 * @param value The value
+		 * @param hash The low bits of the hash of the key
+		 * @return Whether an entry was dropped to make room
+		 */
+		boolean put(long key, long value, int hash) {
+			long stamp = lock.writeLock();
+			try {
+				int entry = find(key, hash);
+				if (entry >= 0) {
+					values[entry] = value;
+					referenced[entry] = 1;
+					return false;
+				}
+				boolean evicted = size == keys.length;
+				if (evicted) {
+					entry = victim();
+					unlink(entry);
+				} else {
+					entry = size++;
+				}
+				keys[entry] = key;
+				values[entry] = value;
+				referenced[entry] = 0;
+				int slot = hash & tableMask;
+				while (table[slot] != 0)
+					slot = (slot + 1) & tableMask;
+				table[slot] = entry + 1;
+				return evicted;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+
+
+		/**
+		 * Finds the entry of a key. Safe to call without the lock: the table
+		 * always holds valid indexes, and probing gives up after every slot.
+		 * @param key The key
+		 * @param hash The low bits of the hash of the key
+		 * @return The index of the entry, or -1 if there is none
+		 */
+		private int find(long key, int hash) {
+			int slot = hash & tableMask;
+			for (int probes = 0; probes <= tableMask; probes++) {
+				int entry = table[slot] - 1;
+				if (entry < 0)
+					return -1;
+				if (keys[entry] == key)
+					return entry;
+				slot = (slot + 1) & tableMask;
+			}
+			return -1;
+		}
+
+
+
+		/**
+		 * Moves the clock hand round to an entry not looked up since it last
+		 * passed, clearing the marks of those that were.
+		 * @return The index of the entry to drop
+		 */
+		private int victim() {
+			while (true) {
+				int entry = hand;
+				hand = hand + 1 == keys.length ? 0 : hand + 1;
+				if (referenced[entry] == 0)
+					return entry;
+				referenced[entry] = 0;
+			}
+		}
+
+
+
+		/**
+		 * Takes an entry out of the hash table, moving later entries of the
+		 * same run back so none is cut off from its slot.
+		 * @param entry The index of the entry
+		 */
+		private void unlink(int entry) {
+			int hole = (int)hash(keys[entry]) & tableMask;
+			while (table[hole] != entry + 1)
+				hole = (hole + 1) & tableMask;
+			int next = (hole + 1) & tableMask;
+			while (table[next] != 0) {
+				int home = (int)hash(keys[table[next] - 1]) & tableMask;
+				if (((next - home) & tableMask) >= ((next - hole) & tableMask)) {
+					table[hole] = table[next];
+					hole = next;
+				}
+				next = (next + 1) & tableMask;
+			}
+			table[hole] = 0;
+		}
+
+
+
+		/**
+		 * Drops every entry.
+		 */
+		void clear() {
+			long stamp = lock.writeLock();
+			try {
+				Arrays.fill(table, 0);
+				Arrays.fill(referenced, (byte)0);
+				size = 0;
+				hand = 0;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+
+
+
+		/**
+		 * Returns the number of entries.
+		 * @return The number of entries
+		 */
+		int size() {
+			long stamp = lock.readLock();
+			try {
+				return size;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+	}
+}
@@ -0,0 +1,351 @@
+package tech.octopusdragon.dice.solver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.Die;
+
+/**
+ * Numbers every state a set of dice can be in when the order of the dice does
+ * not matter. A state is a multiset of faces: how many dice show each face.
+ * States with every die are the results of a roll; smaller states are the dice
+ * a player keeps before rolling the rest. Every state has an index, and the
+ * probabilities of going from the dice kept to each result of rolling the rest
+ * are worked out once, so solvers can work on arrays indexed by state.
+ * <p>
+ * Five six-sided dice have 252 rolled states and 462 states in all.
+ * @author Alex Gill
+ *
+ */
+public class DiceStates {
+
+	private final int numDice;		// The number of dice
+	private final int numSides;		// The number of sides on each die
+	private final int[][] faceCounts;	// The dice showing each face, by state
+	private final int[] sizes;		// The number of dice in each state
+	private final int[] totals;		// The total of the dice in each state
+	private final int[] rolledStates;	// The states with every die
+	private final int emptyState;	// The state with no dice
+	private final Map<Long, Integer> indexes = new HashMap<Long, Integer>();	// States by key
+	private final int[][] keeps;	// The states that can be kept from each rolled state
+	private final int[][] outcomes;	// The rolled states that can follow each kept state
+	private final double[][] probabilities;	// The probabilities of the outcomes
+
+
+
+	/**
+	 * Numbers the states of some dice.
+	 * @param numDice The number of dice
+	 * @param numSides The number of sides on each die
+	 */
+	public DiceStates(int numDice, int numSides) {
+		if (numDice < 1 || numDice > 15)
+			throw new IllegalArgumentException("Can only number the states of 1 to 15 dice");
+		if (numSides < 1 || numSides > 16)
+			throw new IllegalArgumentException("Can only number the states of dice with 1 to 16 sides");
+		this.numDice = numDice;
+		this.numSides = numSides;
+
+		// Every multiset of at most numDice faces
+		List<int[]> states = new ArrayList<int[]>();
+		enumerate(new int[numSides + 1], 1, numDice, states);
+		faceCounts = states.toArray(new int[0][]);
+		sizes = new int[faceCounts.length];
+		totals = new int[faceCounts.length];
+		List<Integer> rolled = new ArrayList<Integer>();
+		for (int state = 0; state < faceCounts.length; state++) {
+			for (int face = 1; face <= numSides; face++) {
+				sizes[state] += faceCounts[state][face];
+				totals[state] += faceCounts[state][face] * face;
+			}
+			indexes.put(key(faceCounts[state]), state);
+			if (sizes[state] == numDice)
+				rolled.add(state);
+		}
+		rolledStates = rolled.stream().mapToInt(Integer::intValue).toArray();
+		emptyState = index(new int[numSides + 1]);
+
+		// The states that can be kept from each rolled state
+		keeps = new int[faceCounts.length][];
+		for (int state: rolledStates) {
+			List<Integer> subStates = new ArrayList<Integer>();
+			subsets(faceCounts[state], new int[numSides + 1], 1, subStates);
+			keeps[state] = subStates.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		// The results of rolling the rest of the dice from each kept state
+		outcomes = new int[faceCounts.length][];
+		probabilities = new double[faceCounts.length][];
+		for (int kept = 0; kept < faceCounts.length; kept++) {
+			int numRolled = numDice - sizes[kept];
+			List<Integer> results = new ArrayList<Integer>();
+			List<Double> chances = new ArrayList<Double>();
+			for (int rolledPart = 0; rolledPart < faceCounts.length; rolledPart++) {
+				if (sizes[rolledPart] != numRolled)
+					continue;
+				int[] result = faceCounts[kept].clone();
+				for (int face = 1; face <= numSides; face++)
+					result[face] += faceCounts[rolledPart][face];
+				results.add(index(result));
+				chances.add(multinomial(faceCounts[rolledPart], numRolled) / Math.pow(numSides, numRolled));
+			}
+			outcomes[kept] = results.stream().mapToInt(Integer::intValue).toArray();
+			probabilities[kept] = chances.stream().mapToDouble(Double::doubleValue).toArray();
+		}
+	}
+
+
+
+	/**
+	 * Adds every multiset of at most a number of faces, from a face upwards.
+	 */
+	private static void enumerate(int[] counts, int face, int left, List<int[]> states) {
+		if (face == counts.length) {
+			states.add(counts.clone());
+			return;
+		}
+		for (int count = 0; count <= left; count++) {
+			counts[face] = count;
+			enumerate(counts, face + 1, left - count, states);
+		}
+		counts[face] = 0;
+	}
+
+
+
+	/**
+	 * Adds the index of every sub-multiset of a state, from a face upwards.
+	 */
+	private void subsets(int[] of, int[] counts, int face, List<Integer> states) {
+		if (face == counts.length) {
+			states.add(index(counts));
+			return;
+		}
+		for (int count = 0; count <= of[face]; count++) {
+			counts[face] = count;
+			subsets(of, counts, face + 1, states);
+		}
+		counts[face] = 0;
+	}
+
+
+
+	/**
+	 * Returns the number of orders a multiset of dice can be rolled in.
+	 */
+	private static double multinomial(int[] counts, int numDice) {
+		double orders = factorial(numDice);
+		for (int face = 1; face < counts.length; face++)
+			orders /= factorial(counts[face]);
+		return orders;
+	}
+
+
+
+	private static double factorial(int n) {
+		double result = 1.0;
+		for (int i = 2; i <= n; i++)
+			result *= i;
+		return result;
+	}
+
+
+
+	/**
+	 * Packs face counts into a key, four bits per face.
+	 */
+	private static long key(int[] counts) {
+		long key = 0;
+		for (int face = 1; face < counts.length; face++)
+			key |= (long) counts[face] << ((face - 1) * 4);
+		return key;
+	}
+
+
+
+	/**
+	 * Returns the number of dice.
+	 * @return The number of dice
+	 */
+	public int numDice() {
+		return numDice;
+	}
+
+
+
+	/**
+	 * Returns the number of sides on each die.
+	 * @return The number of sides
+	 */
+	public int numSides() {
+		return numSides;
+	}
+
+
+
+	/**
+	 * Returns the number of states, kept and rolled.
+	 * @return The number of states
+	 */
+	public int numStates() {
+		return faceCounts.length;
+	}
+
+
+
+	/**
+	 * Returns the states with every die, which are the results of a roll.
+	 * @return The rolled states
+	 */
+	public int[] rolledStates() {
+		return rolledStates.clone();
+	}
+
+
+
+	/**
+	 * Returns the state with no dice, which is kept at the start of a turn.
+	 * @return The empty state
+	 */
+	public int emptyState() {
+		return emptyState;
+	}
+
+
+
+	/**
+	 * Returns the index of a state.
+	 * @param counts The number of dice showing each face, indexed by face.
+	 * Index 0 is ignored.
+	 * @return The index of the state
+	 */
+	public int index(int[] counts) {
+		Integer state = indexes.get(key(counts));
+		if (state == null)
+			throw new IllegalArgumentException("Not a state of " + numDice + " dice with " + numSides + " sides");
+		return state;
+	}
+
+
+
+	/**
+	 * Returns the index of the state of some dice.
+	 * @param dice The dice
+	 * @return The index of the state
+	 */
+	public int index(Die[] dice) {
+		return index(Category.countFaces(dice));
+	}
+
+
+
+	/**
+	 * Returns the number of dice showing each face in a state. The array must
+	 * not be changed.
+	 * @param state The index of the state
+	 * @return The counts, indexed by face. Index 0 is unused.
+	 */
+	public int[] faceCounts(int state) {
+		return faceCounts[state];
+	}
+
+
+
+	/**
+	 * Returns the number of dice in a state.
+	 * @param state The index of the state
+	 * @return The number of dice
+	 */
+	public int size(int state) {
+		return sizes[state];
+	}
+
+
+
+	/**
+	 * Returns the total of the dice in a state.
+	 * @param state The index of the state
+	 * @return The total
+	 */
+	public int total(int state) {
+		return totals[state];
+	}
+
+
+
+	/**
+	 * Returns the states that can be kept from a rolled state, including the
+	 * empty state and the rolled state itself. The array must not be changed.
+	 * @param rolledState The index of the rolled state
+	 * @return The indexes of the states that can be kept
+	 */
+	public int[] keeps(int rolledState) {
+		return keeps[rolledState];
+	}
+
+
+
+	/**
+	 * Returns the rolled states that can follow rolling every die not in a
+	 * kept state. The array must not be changed.
+	 * @param keptState The index of the kept state
+	 * @return The indexes of the rolled states
+	 */
+	public int[] outcomes(int keptState) {
+		return outcomes[keptState];
+	}
+
+
+
+	/**
+	 * Returns the probabilities of the outcomes of rolling every die not in a
+	 * kept state, in the same order as {@link #outcomes(int)}. The array must
+	 * not be changed.
+	 * @param keptState The index of the kept state
+	 * @return The probabilities
+	 */
+	public double[] probabilities(int keptState) {
+		return probabilities[keptState];
+	}
+
+
+
+	/**
+	 * Returns the score of every rolled state in a category.
+	 * @param category The category
+	 * @return The scores, indexed by state. Kept states score 0.
+	 */
+	public int[] scores(Category category) {
+		int[] scores = new int[faceCounts.length];
+		for (int state: rolledStates)
+			scores[state] = category.score(faceCounts[state], totals[state]);
+		return scores;
+	}
+
+
+
+	/**
+	 * Works out which dice to roll to keep a state.
+	 * @param values The values of the dice
+	 * @param keptState The index of the state to keep, which must be part of
+	 * the dice
+	 * @return The indexes of the dice to roll
+	 */
+	public int[] diceToRoll(int[] values, int keptState) {
+		int[] toKeep = faceCounts[keptState].clone();
+		int[] toRoll = new int[values.length - sizes[keptState]];
+		int numToRoll = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (toKeep[values[i]] > 0)
+				toKeep[values[i]]--;
+			else if (numToRoll < toRoll.length)
+				toRoll[numToRoll++] = i;
+			else
+				throw new IllegalArgumentException("The kept state is not part of the dice");
+		}
+		return toRoll;
+	}
+}
@@ -0,0 +1,533 @@
+package tech.octopusdragon.dice.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Variant;
+import tech.octopusdragon.dice.rules.VariantRules;
+import tech.octopusdragon.dice.variants.Crag;
+import tech.octopusdragon.dice.variants.Yacht;
+
+/**
+ * The exact chance of winning every two-player endgame of a variant, played
+ * perfectly by both players. An endgame is the start of a turn where neither
+ * player has more than a few categories open, and is described from the point
+ * of view of the player to move by their open categories, their opponent's
+ * open categories and how many points they are ahead.
+ * <p>
+ * The table is worked out backwards from the end of the game, from the
+ * endgames with the fewest open categories in all, since each turn leads to
+ * one with one fewer. Every endgame with the same number of open categories
+ * is worked out in parallel, for every score difference at once. A
+ * difference too big to be made up is a certain result and is not stored, so
+ * each pair of open categories stores only the differences that could still
+ * go either way.
+ * <p>
+ * Chances are stored as 16-bit fractions, and a table can be saved to a file
+ * and mapped back into memory, so looking up an endgame takes constant time
+ * and no search. The decisions for a turn follow from the chances of the
+ * endgames it leads to, and are worked out when asked for.
+ * @author Alex Gill
+ *
+ */
+public class EndgameTablebase {
+
+	// --- Constants ---
+	private static final int MAGIC = 0x44544231;	// Starts every file
+	private static final int VERSION = 1;			// The file format
+	private static final double SCALE = 65535.0;	// A certain win, as a stored value
+
+	// --- Variant ---
+	private final DiceStates states;	// The dice states
+	private final int[] rolledStates;	// The states with every die
+	private final Category[] categories;	// The categories
+	private final int numRolls;			// The number of rolls per turn
+	private final int depth;			// The most categories a player can have open
+	private final int[][] scores;		// The score of each rolled state, by category
+	private final int[] maxPoints;		// The most points the categories can score, by open mask
+	private final int[][] layers;		// The open masks, by number of categories open
+
+	// --- Index ---
+	private final int[] setRanks;		// The rank of each open mask of at most depth categories, or -1
+	private final int numSets;			// The number of such masks
+	private final int[] offsets;		// Where each endgame's chances start, by pair of ranks, or -1
+	private final int numValues;		// The number of chances stored
+
+	// --- Solution ---
+	private final CharBuffer values;	// The chances, as fractions of SCALE
+
+
+
+	/**
+	 * Instantiates a table, numbering its endgames.
+	 * @param states The dice states of the variant
+	 * @param categories The categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 * @param depth The most categories a player can have open
+	 * @param values The chances, or null to make room for them
+	 */
+	private EndgameTablebase(DiceStates states, Category[] categories, int numRolls, int depth, CharBuffer values) {
+		if (categories.length > OptimalPolicy.MAX_CATEGORIES)
+			throw new IllegalArgumentException("Can only solve up to " + OptimalPolicy.MAX_CATEGORIES + " categories");
+		if (depth < 1 || depth > categories.length)
+			throw new IllegalArgumentException("The depth must be from 1 to the number of categories");
+		this.states = states;
+		rolledStates = states.rolledStates();
+		this.categories = categories.clone();
+		this.numRolls = numRolls;
+		this.depth = depth;
+
+		// The most each set of categories can score
+		int numCategories = categories.length;
+		scores = new int[numCategories][];
+		int[] maxScores = new int[numCategories];
+		for (int c = 0; c < numCategories; c++) {
+			scores[c] = states.scores(categories[c]);
+			for (int state: rolledStates)
+				maxScores[c] = Math.max(maxScores[c], scores[c][state]);
+		}
+		maxPoints = new int[1 << numCategories];
+		for (int mask = 1; mask < maxPoints.length; mask++) {
+			int c = Integer.numberOfTrailingZeros(mask);
+			maxPoints[mask] = maxPoints[mask & mask - 1] + maxScores[c];
+		}
+
+		// Number the sets of open categories, then the endgames. The player to
+		// move has as many categories open as their opponent, or one more.
+		layers = OptimalPolicy.layers(numCategories);
+		setRanks = new int[1 << numCategories];
+		Arrays.fill(setRanks, -1);
+		int sets = 0;
+		for (int numOpen = 0; numOpen <= depth; numOpen++)
+			for (int mask: layers[numOpen])
+				setRanks[mask] = sets++;
+		numSets = sets;
+		offsets = new int[numSets * numSets];
+		Arrays.fill(offsets, -1);
+		long size = 0;
+		for (int numOpen = 0; numOpen <= 2 * depth; numOpen++) {
+			for (int[] endgame: endgames((numOpen + 1) / 2, numOpen / 2)) {
+				offsets[setRanks[endgame[0]] * numSets + setRanks[endgame[1]]] = (int)size;
+				size += numDiffs(endgame[0], endgame[1]);
+				if (size > Integer.MAX_VALUE)
+					throw new IllegalArgumentException("The table is too big at depth " + depth);
+			}
+		}
+		numValues = (int)size;
+		this.values = values != null ? values : CharBuffer.allocate(numValues);
+		if (this.values.capacity() != numValues)
+			throw new IllegalArgumentException("Expected " + numValues + " chances, not " + this.values.capacity());
+	}
+
+
+
+	/**
+	 * Works out the table of a variant.
+	 * @param states The dice states of the variant
+	 * @param categories The categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 * @param depth The most categories a player can have open
+	 * @return The table
+	 */
+	public static EndgameTablebase solve(DiceStates states, Category[] categories, int numRolls, int depth) {
+		EndgameTablebase table = new EndgameTablebase(states, categories, numRolls, depth, null);
+
+		// Each turn leads to an endgame with one fewer open category in all
+		for (int numOpen = 0; numOpen <= 2 * depth; numOpen++) {
+			int[][] endgames = table.endgames((numOpen + 1) / 2, numOpen / 2);
+			IntStream.range(0, endgames.length).parallel().forEach(i -> {
+				int mover = endgames[i][0];
+				int other = endgames[i][1];
+				double[] chances = table.turnChances(mover, other, -table.maxPoints[mover], table.numDiffs(mover, other), null);
+				int offset = table.offset(mover, other);
+				for (int diff = 0; diff < chances.length; diff++)
+					table.values.put(offset + diff, (char)Math.round(chances[diff] * SCALE));
+			});
+		}
+
+		return table;
+	}
+
+
+
+	/**
+	 * Works out the table of the variant of a game.
+	 * @param game A game of the variant
+	 * @param depth The most categories a player can have open
+	 * @return The table
+	 */
+	public static EndgameTablebase solve(DiceGame game, int depth) {
+		return solve(new DiceStates(game.numDice(), game.numSides()), game.categories(), game.numRolls(), depth);
+	}
+
+
+
+	/**
+	 * Lists the endgames where the players have some numbers of categories
+	 * open.
+	 * @param numMoverOpen The number of categories the player to move has open
+	 * @param numOtherOpen The number of categories their opponent has open
+	 * @return The open masks of the player to move and of their opponent, by
+	 * endgame
+	 */
+	private int[][] endgames(int numMoverOpen, int numOtherOpen) {
+		int[][] endgames = new int[layers[numMoverOpen].length * layers[numOtherOpen].length][];
+		int i = 0;
+		for (int mover: layers[numMoverOpen])
+			for (int other: layers[numOtherOpen])
+				endgames[i++] = new int[] {mover, other};
+		return endgames;
+	}
+
+
+
+	/**
+	 * Returns the number of score differences stored for an endgame: those
+	 * from the player to move being unable to catch up even if they score
+	 * the most they can, to their opponent being unable to catch up.
+	 * @param moverOpen The categories the player to move has open
+	 * @param otherOpen The categories their opponent has open
+	 * @return The number of differences
+	 */
+	private int numDiffs(int moverOpen, int otherOpen) {
+		return maxPoints[moverOpen] + maxPoints[otherOpen] + 1;
+	}
+
+
+
+	/**
+	 * Returns where an endgame's chances start.
+	 * @param moverOpen The categories the player to move has open
+	 * @param otherOpen The categories their opponent has open
+	 * @return The offset, or -1 if the endgame is not in the table
+	 */
+	private int offset(int moverOpen, int otherOpen) {
+		if (moverOpen >= setRanks.length || otherOpen >= setRanks.length)
+			return -1;
+		int moverRank = setRanks[moverOpen];
+		int otherRank = setRanks[otherOpen];
+		return moverRank == -1 || otherRank == -1 ? -1 : offsets[moverRank * numSets + otherRank];
+	}
+
+
+
+	/**
+	 * Returns whether an endgame is in the table.
+	 * @param moverOpen The categories the player to move has open, one bit per
+	 * category in the order of the variant's categories
+	 * @param otherOpen The categories their opponent has open
+	 * @return Whether the endgame is in the table
+	 */
+	public boolean covers(int moverOpen, int otherOpen) {
+		return offset(moverOpen, otherOpen) != -1;
+	}
+
+
+
+	/**
+	 * Looks up the chance that the player to move wins an endgame, counting a
+	 * tie as half a win.
+	 * @param moverOpen The categories the player to move has open, one bit per
+	 * category in the order of the variant's categories
+	 * @param otherOpen The categories their opponent has open
+	 * @param diff The points the player to move is ahead by
+	 * @return The chance of winning
+	 * @throws IllegalArgumentException if the endgame is not in the table
+	 */
+	public double winProbability(int moverOpen, int otherOpen, int diff) {
+		int offset = offset(moverOpen, otherOpen);
+		if (offset == -1)
+			throw new IllegalArgumentException("The endgame is not in the table");
+		if (diff > maxPoints[otherOpen])
+			return 1.0;
+		if (diff < -maxPoints[moverOpen])
+			return 0.0;
+		return values.get(offset + diff + maxPoints[moverOpen]) / SCALE;
+	}
+
+
+
+	/**
+	 * Returns the decisions that give the player to move the best chance of
+	 * winning their turn.
+	 * @param moverOpen The categories the player to move has open
+	 * @param otherOpen The categories their opponent has open
+	 * @param diff The points the player to move is ahead by
+	 * @return The decisions
+	 * @throws IllegalArgumentException if the endgame is not in the table
+	 */
+	public Policy.TurnPolicy turn(int moverOpen, int otherOpen, int diff) {
+		if (!covers(moverOpen, otherOpen) || moverOpen == 0)
+			throw new IllegalArgumentException("The endgame is not in the table");
+		Plan plan = new Plan(numRolls, states.numStates());
+		turnChances(moverOpen, otherOpen, diff, 1, plan);
+		return plan;
+	}
+
+
+
+	/**
+	 * Works out the chance of winning from the start of a turn for a range of
+	 * score differences. Scoring the dice leads to the opponent's turn, whose
+	 * chances are looked up.
+	 * @param moverOpen The categories the player to move has open
+	 * @param otherOpen The categories their opponent has open
+	 * @param minDiff The first score difference
+	 * @param numDiffs The number of score differences
+	 * @param plan Receives the decisions for the first difference, or null
+	 * @return The chances of winning, by difference from the first
+	 */
+	private double[] turnChances(int moverOpen, int otherOpen, int minDiff, int numDiffs, Plan plan) {
+
+		// At the end of the game, the points decide
+		if (moverOpen == 0) {
+			double[] chances = new double[numDiffs];
+			for (int i = 0; i < numDiffs; i++) {
+				int diff = minDiff + i;
+				chances[i] = diff > 0 ? 1.0 : diff == 0 ? 0.5 : 0.0;
+			}
+			return chances;
+		}
+
+		// With no rolls left, score in the best category
+		double[][] value = new double[states.numStates()][];
+		for (int state: rolledStates) {
+			double[] best = new double[numDiffs];
+			Arrays.fill(best, Double.NEGATIVE_INFINITY);
+			for (int open = moverOpen; open != 0; open &= open - 1) {
+				int c = Integer.numberOfTrailingZeros(open);
+				int points = scores[c][state];
+				for (int i = 0; i < numDiffs; i++) {
+					double chance = 1.0 - winProbability(otherOpen, moverOpen & ~(1 << c), -(minDiff + i + points));
+					if (chance > best[i]) {
+						best[i] = chance;
+						if (plan != null && i == 0)
+							plan.category[state] = c;
+					}
+				}
+			}
+			value[state] = best;
+		}
+
+		// With rolls left, keep the dice that give the best chance
+		for (int rollsLeft = 1; rollsLeft < numRolls; rollsLeft++) {
+			double[][] keptValue = keptValues(value, numDiffs);
+			double[][] newValue = new double[value.length][];
+			for (int state: rolledStates) {
+				double[] best = new double[numDiffs];
+				Arrays.fill(best, Double.NEGATIVE_INFINITY);
+				for (int kept: states.keeps(state)) {
+					double[] chances = keptValue[kept];
+					for (int i = 0; i < numDiffs; i++) {
+						if (chances[i] > best[i]) {
+							best[i] = chances[i];
+							if (plan != null && i == 0)
+								plan.keep[rollsLeft][state] = kept;
+						}
+					}
+				}
+				newValue[state] = best;
+			}
+			value = newValue;
+		}
+
+		// The turn starts by rolling every die
+		return keptValues(value, numDiffs)[states.emptyState()];
+	}
+
+
+
+	/**
+	 * Works out the average chances of rolling the rest of the dice from each
+	 * kept state.
+	 * @param value The chances of each rolled state, by difference
+	 * @param numDiffs The number of score differences
+	 * @return The chances of each kept state, by difference
+	 */
+	private double[][] keptValues(double[][] value, int numDiffs) {
+		double[][] keptValue = new double[value.length][];
+		for (int kept = 0; kept < value.length; kept++) {
+			int[] outcomes = states.outcomes(kept);
+			double[] probabilities = states.probabilities(kept);
+			double[] sum = new double[numDiffs];
+			for (int o = 0; o < outcomes.length; o++) {
+				double probability = probabilities[o];
+				double[] chances = value[outcomes[o]];
+				for (int i = 0; i < numDiffs; i++)
+					sum[i] += probability * chances[i];
+			}
+			keptValue[kept] = sum;
+		}
+		return keptValue;
+	}
+
+
+
+	/**
+	 * Saves the table to a file.
+	 * @param file The file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(states.numDice());
+			out.writeInt(states.numSides());
+			out.writeInt(numRolls);
+			out.writeInt(depth);
+			out.writeInt(categories.length);
+			for (Category category: categories) {
+				byte[] name = category.getName().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(name.length);
+				out.write(name);
+			}
+			out.writeInt(numValues);
+			for (int i = 0; i < numValues; i++)
+				out.writeChar(values.get(i));
+		}
+	}
+
+
+
+	/**
+	 * Maps a table saved by {@link #save(Path)} into memory.
+	 * @param file The file
+	 * @param game A game of the variant the table is for
+	 * @return The table
+	 * @throws IOException if the file cannot be read, or is not a table for
+	 * the variant
+	 */
+	public static EndgameTablebase load(Path file, DiceGame game) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		// Check that the table is for the variant
+		Category[] categories = game.categories();
+		try {
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException(file + " is not an endgame table");
+			if (buffer.getInt() != game.numDice() || buffer.getInt() != game.numSides() ||
+					buffer.getInt() != game.numRolls())
+				throw new IOException(file + " is for a different variant");
+			int depth = buffer.getInt();
+			if (buffer.getInt() != categories.length)
+				throw new IOException(file + " is for a different variant");
+			for (Category category: categories) {
+				byte[] name = new byte[buffer.getInt()];
+				buffer.get(name);
+				if (!category.getName().equals(new String(name, StandardCharsets.UTF_8)))
+					throw new IOException(file + " is for a different variant");
+			}
+			int numValues = buffer.getInt();
+			if (buffer.remaining() != 2L * numValues)
+				throw new IOException(file + " is truncated");
+			CharBuffer values = buffer.slice().asCharBuffer();
+			return new EndgameTablebase(new DiceStates(game.numDice(), game.numSides()),
+					categories, game.numRolls(), depth, values);
+		} catch (RuntimeException e) {
+			throw new IOException(file + " is not a valid endgame table", e);
+		}
+	}
+
+
+
+	/**
+	 * Returns the most categories a player can have open in the table.
+	 * @return The depth
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+
+
+	/**
+	 * Returns the dice states the decisions are in terms of.
+	 * @return The dice states
+	 */
+	public DiceStates getStates() {
+		return states;
+	}
+
+
+
+	/**
+	 * Works out the table of a variant and saves it.
+	 * <p>
+	 * Arguments: the name of the variant, the most categories a player can
+	 * have open, and the file to save the table to.
+	 * @param args The arguments
+	 * @throws IOException if the variants or the file cannot be read or
+	 * written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.out.println("Usage: EndgameTablebase <variant> <depth> <file>");
+			return;
+		}
+
+		// Find the variant
+		List<Variant> variants = new ArrayList<Variant>();
+		variants.add(Variant.of(Yacht.class));
+		variants.add(Variant.of(Crag.class));
+		variants.addAll(VariantRules.loadAll(EndgameTablebase.class.getClassLoader()));
+		DiceGame game = null;
+		for (Variant variant: variants)
+			if (variant.newGame(2).name().equalsIgnoreCase(args[0]))
+				game = variant.newGame(2);
+		if (game == null) {
+			System.out.println("Unknown variant " + args[0]);
+			return;
+		}
+
+		long start = System.nanoTime();
+		EndgameTablebase table = solve(game, Integer.parseInt(args[1]));
+		table.save(Paths.get(args[2]));
+		System.out.printf("Solved %d endgame chances of %s in %.1f s%n",
+				table.numValues, game.name(), (System.nanoTime() - start) / 1e9);
+	}
+
+
+
+	/**
+	 * The decisions for one turn of an endgame.
+	 */
+	private static class Plan implements Policy.TurnPolicy {
+
+		final int[][] keep;		// The state to keep, by rolls left and rolled state
+		final int[] category;	// The category to score in, by rolled state
+
+		Plan(int numRolls, int numStates) {
+			keep = new int[numRolls][numStates];
+			category = new int[numStates];
+		}
+
+		@Override
+		public int keep(int rollsLeft, int rolledState) {
+			return keep[rollsLeft][rolledState];
+		}
+
+		@Override
+		public int category(int rolledState) {
+			return category[rolledState];
+		}
+	}
+}
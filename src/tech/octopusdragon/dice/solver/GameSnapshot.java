@@ -0,0 +1,180 @@
+package tech.octopusdragon.dice.solver;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.Player;
+
+/**
+ * A copy of where a game is, taken so that it can be analysed on another
+ * thread while the game goes on.
+ * @author Alex Gill
+ *
+ */
+public final class GameSnapshot {
+
+	// --- Variant ---
+	private final Category[] categories;	// The categories
+	private final int numDice;			// The number of dice
+	private final int numSides;			// The number of sides on each die
+	private final int numRolls;			// The number of rolls per turn
+
+	// --- Position ---
+	private final int[] usedMasks;		// The categories each player has used
+	private final int[] totals;			// Each player's total score
+	private final int curPlayerIndex;	// The current player
+	private final boolean curPlayerHasGone;	// Whether the current player has scored
+	private final int rollsLeft;		// The current player's rolls left
+	private final int[] diceValues;		// The values of the dice
+
+
+
+	/**
+	 * Copies where a game is.
+	 * @param game The game
+	 */
+	public GameSnapshot(DiceGame game) {
+		categories = game.categories();
+		numDice = game.numDice();
+		numSides = game.numSides();
+		numRolls = game.numRolls();
+
+		usedMasks = new int[game.numPlayers()];
+		totals = new int[game.numPlayers()];
+		for (int i = 0; i < usedMasks.length; i++) {
+			Player player = game.getPlayer(i);
+			usedMasks[i] = Policy.usedMask(player, categories);
+			totals[i] = player.getTotalScore();
+		}
+		curPlayerIndex = game.curPlayerIndex();
+		curPlayerHasGone = game.curPlayerHasGone();
+		rollsLeft = game.rollsLeft();
+		Die[] dice = game.getDice();
+		diceValues = new int[dice.length];
+		for (int i = 0; i < dice.length; i++)
+			diceValues[i] = dice[i].getValue();
+	}
+
+
+
+	/**
+	 * Returns the categories of the variant.
+	 * @return The categories
+	 */
+	public Category[] categories() {
+		return categories.clone();
+	}
+
+
+
+	/**
+	 * Returns the number of dice.
+	 * @return The number of dice
+	 */
+	public int numDice() {
+		return numDice;
+	}
+
+
+
+	/**
+	 * Returns the number of sides on each die.
+	 * @return The number of sides
+	 */
+	public int numSides() {
+		return numSides;
+	}
+
+
+
+	/**
+	 * Returns the number of rolls per turn.
+	 * @return The number of rolls
+	 */
+	public int numRolls() {
+		return numRolls;
+	}
+
+
+
+	/**
+	 * Returns the number of players.
+	 * @return The number of players
+	 */
+	public int numPlayers() {
+		return usedMasks.length;
+	}
+
+
+
+	/**
+	 * Returns the categories a player has used.
+	 * @param playerIndex The index of the player
+	 * @return The mask, with bit i set if category i has been used
+	 */
+	public int usedMask(int playerIndex) {
+		return usedMasks[playerIndex];
+	}
+
+
+
+	/**
+	 * Returns a player's total score.
+	 * @param playerIndex The index of the player
+	 * @return The total score
+	 */
+	public int totalScore(int playerIndex) {
+		return totals[playerIndex];
+	}
+
+
+
+	/**
+	 * Returns the index of the current player.
+	 * @return The index of the current player
+	 */
+	public int curPlayerIndex() {
+		return curPlayerIndex;
+	}
+
+
+
+	/**
+	 * Returns whether the current player has scored this turn.
+	 * @return Whether the current player has scored
+	 */
+	public boolean curPlayerHasGone() {
+		return curPlayerHasGone;
+	}
+
+
+
+	/**
+	 * Returns the number of rolls the current player has left.
+	 * @return The number of rolls left
+	 */
+	public int rollsLeft() {
+		return rollsLeft;
+	}
+
+
+
+	/**
+	 * Returns whether the current player is part way through their turn, with
+	 * dice rolled and not yet scored.
+	 * @return Whether the current player is part way through their turn
+	 */
+	public boolean isMidTurn() {
+		return !curPlayerHasGone && rollsLeft != numRolls;
+	}
+
+
+
+	/**
+	 * Returns the values of the dice.
+	 * @return The values of the dice
+	 */
+	public int[] diceValues() {
+		return diceValues.clone();
+	}
+}
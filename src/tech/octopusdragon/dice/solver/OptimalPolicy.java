@@ -0,0 +1,212 @@
+package tech.octopusdragon.dice.solver;
+
+import java.util.stream.IntStream;
+
+import tech.octopusdragon.dice.Category;
+
+/**
+ * Plays to score as many points as possible on average. The expected number
+ * of points still to come is worked out for every set of used categories,
+ * starting from the one with every category used and working back one
+ * category at a time. The sets with the same number of used categories depend
+ * only on sets with more, so each layer is worked out in parallel.
+ * <p>
+ * The decisions for a turn follow from the expected points of the sets of
+ * categories it can lead to, and are worked out when asked for.
+ * @author Alex Gill
+ *
+ */
+public class OptimalPolicy implements Policy {
+
+	// --- Constants ---
+	public static final int MAX_CATEGORIES = 20;	// The most categories that can be solved
+
+	// --- Variant ---
+	private final DiceStates states;	// The dice states
+	private final int[] rolledStates;	// The states with every die
+	private final int numRolls;			// The number of rolls per turn
+	private final int numCategories;	// The number of categories
+	private final int[][] scores;		// The score of each rolled state, by category
+
+	// --- Solution ---
+	private final double[] expected;	// Expected points still to come, by used mask
+
+
+
+	/**
+	 * Solves a variant.
+	 * @param states The dice states of the variant
+	 * @param categories The categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 */
+	public OptimalPolicy(DiceStates states, Category[] categories, int numRolls) {
+		if (categories.length > MAX_CATEGORIES)
+			throw new IllegalArgumentException("Can only solve up to " + MAX_CATEGORIES + " categories");
+		this.states = states;
+		rolledStates = states.rolledStates();
+		this.numRolls = numRolls;
+		numCategories = categories.length;
+		scores = new int[numCategories][];
+		for (int c = 0; c < numCategories; c++)
+			scores[c] = states.scores(categories[c]);
+
+		// Work back from every category used, a layer at a time
+		expected = new double[1 << numCategories];
+		int[][] layers = layers(numCategories);
+		for (int numUsed = numCategories - 1; numUsed >= 0; numUsed--)
+			IntStream.of(layers[numUsed]).parallel().forEach(mask -> expected[mask] = solve(mask, null));
+	}
+
+
+
+	/**
+	 * Groups every mask of a number of categories by how many are used.
+	 * @param numCategories The number of categories
+	 * @return The masks, indexed by the number of categories used
+	 */
+	static int[][] layers(int numCategories) {
+		int[] sizes = new int[numCategories + 1];
+		for (int mask = 0; mask < 1 << numCategories; mask++)
+			sizes[Integer.bitCount(mask)]++;
+		int[][] layers = new int[numCategories + 1][];
+		for (int numUsed = 0; numUsed <= numCategories; numUsed++)
+			layers[numUsed] = new int[sizes[numUsed]];
+		int[] filled = new int[numCategories + 1];
+		for (int mask = 0; mask < 1 << numCategories; mask++) {
+			int numUsed = Integer.bitCount(mask);
+			layers[numUsed][filled[numUsed]++] = mask;
+		}
+		return layers;
+	}
+
+
+
+	/**
+	 * Works out the expected points of a turn and those still to come after
+	 * it, given the categories used before it.
+	 * @param usedMask The categories used
+	 * @param plan Receives the decisions, or null
+	 * @return The expected points from the start of the turn
+	 */
+	private double solve(int usedMask, Plan plan) {
+		double[] value = new double[states.numStates()];
+
+		// With no rolls left, score in the best category
+		for (int state: rolledStates) {
+			double best = Double.NEGATIVE_INFINITY;
+			for (int c = 0; c < numCategories; c++) {
+				if ((usedMask & 1 << c) != 0)
+					continue;
+				double categoryValue = scores[c][state] + expected[usedMask | 1 << c];
+				if (categoryValue > best) {
+					best = categoryValue;
+					if (plan != null)
+						plan.category[state] = c;
+				}
+			}
+			value[state] = best;
+		}
+
+		// With rolls left, keep the dice that are best on average. Keeping
+		// every die has the value of scoring them now.
+		for (int rollsLeft = 1; rollsLeft < numRolls; rollsLeft++) {
+			double[] keptValue = keptValues(value);
+			double[] newValue = new double[value.length];
+			for (int state: rolledStates) {
+				double best = Double.NEGATIVE_INFINITY;
+				for (int kept: states.keeps(state)) {
+					if (keptValue[kept] > best) {
+						best = keptValue[kept];
+						if (plan != null)
+							plan.keep[rollsLeft][state] = kept;
+					}
+				}
+				newValue[state] = best;
+			}
+			value = newValue;
+		}
+
+		// The turn starts by rolling every die
+		return keptValues(value)[states.emptyState()];
+	}
+
+
+
+	/**
+	 * Works out the average value of rolling the rest of the dice from each
+	 * kept state.
+	 * @param value The value of each rolled state
+	 * @return The value of each kept state
+	 */
+	private double[] keptValues(double[] value) {
+		double[] keptValue = new double[value.length];
+		for (int kept = 0; kept < value.length; kept++) {
+			int[] outcomes = states.outcomes(kept);
+			double[] probabilities = states.probabilities(kept);
+			double sum = 0.0;
+			for (int i = 0; i < outcomes.length; i++)
+				sum += probabilities[i] * value[outcomes[i]];
+			keptValue[kept] = sum;
+		}
+		return keptValue;
+	}
+
+
+
+	@Override
+	public TurnPolicy turn(int usedMask) {
+		if (usedMask == (1 << numCategories) - 1)
+			throw new IllegalArgumentException("Every category has been used");
+		Plan plan = new Plan(numRolls, states.numStates());
+		solve(usedMask, plan);
+		return plan;
+	}
+
+
+
+	/**
+	 * Returns the expected number of points still to come when playing this
+	 * policy.
+	 * @param usedMask The categories used
+	 * @return The expected points
+	 */
+	public double expectedRemaining(int usedMask) {
+		return expected[usedMask];
+	}
+
+
+
+	/**
+	 * Returns the dice states the policy is in terms of.
+	 * @return The dice states
+	 */
+	public DiceStates getStates() {
+		return states;
+	}
+
+
+
+	/**
+	 * The decisions for one turn.
+	 */
+	private static class Plan implements TurnPolicy {
+
+		final int[][] keep;		// The state to keep, by rolls left and rolled state
+		final int[] category;	// The category to score in, by rolled state
+
+		Plan(int numRolls, int numStates) {
+			keep = new int[numRolls][numStates];
+			category = new int[numStates];
+		}
+
+		@Override
+		public int keep(int rollsLeft, int rolledState) {
+			return keep[rollsLeft][rolledState];
+		}
+
+		@Override
+		public int category(int rolledState) {
+			return category[rolledState];
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package tech.octopusdragon.dice.solver;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.Player;
+
+/**
+ * A way of playing a variant alone: which dice to keep and which category to
+ * score in, given the categories already used. A policy gives its decisions
+ * for a whole turn at once, so they can be worked out once per turn.
+ * @author Alex Gill
+ *
+ */
+@FunctionalInterface
+public interface Policy {
+
+	/**
+	 * Returns the decisions for a turn.
+	 * @param usedMask The categories already used, one bit per category in
+	 * the order of the variant's categories
+	 * @return The decisions for the turn
+	 */
+	TurnPolicy turn(int usedMask);
+
+
+
+	/**
+	 * Returns the categories a player has used as a mask.
+	 * @param player The player
+	 * @param categories The categories of the variant
+	 * @return The mask, with bit i set if category i has been used
+	 */
+	static int usedMask(Player player, Category[] categories) {
+		int mask = 0;
+		for (int i = 0; i < categories.length; i++)
+			if (player.hasUsedCategory(categories[i]))
+				mask |= 1 << i;
+		return mask;
+	}
+
+
+
+	/**
+	 * The decisions of a policy for one turn, in terms of the states of a
+	 * {@link DiceStates}.
+	 */
+	interface TurnPolicy {
+
+		/**
+		 * Chooses the dice to keep before rolling again. Keeping every die
+		 * ends the turn.
+		 * @param rollsLeft The number of rolls left, at least 1
+		 * @param rolledState The dice as rolled
+		 * @return The state to keep, one of {@link DiceStates#keeps(int)}
+		 */
+		int keep(int rollsLeft, int rolledState);
+
+		/**
+		 * Chooses the category to score the dice in.
+		 * @param rolledState The dice as rolled
+		 * @return The index of an unused category
+		 */
+		int category(int rolledState);
+	}
+}
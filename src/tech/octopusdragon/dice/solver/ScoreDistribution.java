@@ -0,0 +1,152 @@
+package tech.octopusdragon.dice.solver;
+
+/**
+ * The probability of each number of points. Both tails are summed when the
+ * distribution is made, so the chance of scoring at least or at most a number
+ * of points is looked up without adding up small probabilities again, and
+ * keeps its precision far out in the tails.
+ * @author Alex Gill
+ *
+ */
+public final class ScoreDistribution {
+
+	private final int min;				// The fewest points with a probability
+	private final double[] probabilities;	// The probability of min + i points
+	private final double[] upperTail;	// The probability of at least min + i points
+	private final double[] lowerTail;	// The probability of at most min + i points
+
+
+
+	/**
+	 * Instantiates a distribution.
+	 * @param min The fewest points with a probability
+	 * @param probabilities The probability of min + i points, which must not
+	 * be changed afterwards
+	 */
+	ScoreDistribution(int min, double[] probabilities) {
+		this.min = min;
+		this.probabilities = probabilities;
+		upperTail = new double[probabilities.length];
+		lowerTail = new double[probabilities.length];
+		double sum = 0.0;
+		for (int i = probabilities.length - 1; i >= 0; i--)
+			upperTail[i] = sum += probabilities[i];
+		sum = 0.0;
+		for (int i = 0; i < probabilities.length; i++)
+			lowerTail[i] = sum += probabilities[i];
+	}
+
+
+
+	/**
+	 * Instantiates a distribution sharing the probabilities of another.
+	 */
+	private ScoreDistribution(int min, ScoreDistribution other) {
+		this.min = min;
+		probabilities = other.probabilities;
+		upperTail = other.upperTail;
+		lowerTail = other.lowerTail;
+	}
+
+
+
+	/**
+	 * Returns the distribution of a certain number of points.
+	 * @param points The number of points
+	 * @return The distribution
+	 */
+	static ScoreDistribution of(int points) {
+		return new ScoreDistribution(points, new double[] {1.0});
+	}
+
+
+
+	/**
+	 * Returns this distribution with a number of points added to every score.
+	 * @param points The number of points
+	 * @return The shifted distribution
+	 */
+	public ScoreDistribution plus(int points) {
+		return points == 0 ? this : new ScoreDistribution(min + points, this);
+	}
+
+
+
+	/**
+	 * Returns the fewest points with a probability.
+	 * @return The fewest points
+	 */
+	public int min() {
+		return min;
+	}
+
+
+
+	/**
+	 * Returns the most points with a probability.
+	 * @return The most points
+	 */
+	public int max() {
+		return min + probabilities.length - 1;
+	}
+
+
+
+	/**
+	 * Returns the probability of scoring a number of points.
+	 * @param points The number of points
+	 * @return The probability
+	 */
+	public double probability(int points) {
+		int i = points - min;
+		return i < 0 || i >= probabilities.length ? 0.0 : probabilities[i];
+	}
+
+
+
+	/**
+	 * Returns the probability of scoring at least a number of points.
+	 * @param points The number of points
+	 * @return The probability
+	 */
+	public double atLeast(int points) {
+		int i = points - min;
+		if (i <= 0)
+			return upperTail[0];
+		return i >= upperTail.length ? 0.0 : upperTail[i];
+	}
+
+
+
+	/**
+	 * Returns the probability of scoring at most a number of points.
+	 * @param points The number of points
+	 * @return The probability
+	 */
+	public double atMost(int points) {
+		int i = points - min;
+		if (i < 0)
+			return 0.0;
+		return i >= lowerTail.length ? lowerTail[lowerTail.length - 1] : lowerTail[i];
+	}
+
+
+
+	/**
+	 * Returns the average number of points.
+	 * @return The average
+	 */
+	public double mean() {
+		double sum = 0.0;
+		for (int i = 0; i < probabilities.length; i++)
+			sum += probabilities[i] * (min + i);
+		return sum;
+	}
+
+
+
+	@Override
+	public String toString() {
+		return String.format("ScoreDistribution[%d..%d, mean %.2f]", min(), max(), mean());
+	}
+}
@@ -0,0 +1,324 @@
+package tech.octopusdragon.dice.solver;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * Works out the full probability distribution of the points a player will
+ * score, not just the average, when playing a {@link Policy}. Variants have no
+ * bonuses, so the points still to come depend only on the categories used.
+ * The distribution for every set of used categories is worked out once, from
+ * the set with every category used back to the empty set: the chance of each
+ * way a turn can end (the category scored and its points) is found by
+ * following the policy through the turn, and the distributions of the sets it
+ * leads to are shifted by those points and added up. Each layer of sets with
+ * the same number of used categories is worked out in parallel.
+ * <p>
+ * Working it out takes a few seconds for a variant with 13 categories, so the
+ * engines of optimal play are cached by {@link #optimal(DiceGame)}.
+ * @author Alex Gill
+ *
+ */
+public class ScoreDistributionEngine {
+
+	// Engines of optimal play, by variant
+	private static final Map<List<Object>, ScoreDistributionEngine> OPTIMAL =
+			new ConcurrentHashMap<List<Object>, ScoreDistributionEngine>();
+
+	// --- Variant ---
+	private final DiceStates states;	// The dice states
+	private final Category[] categories;	// The categories
+	private final int numRolls;			// The number of rolls per turn
+	private final int[][] scores;		// The score of each rolled state, by category
+	private final int[] maxScores;		// The most points of each category
+	private final Policy policy;		// The way the player plays
+
+	// --- Solution ---
+	private final ScoreDistribution[] remaining;	// Points still to come, by used mask
+
+
+
+	/**
+	 * Works out the distributions for a policy.
+	 * @param states The dice states of the variant
+	 * @param categories The categories of the variant
+	 * @param numRolls The number of rolls per turn
+	 * @param policy The way the player plays
+	 */
+	public ScoreDistributionEngine(DiceStates states, Category[] categories, int numRolls, Policy policy) {
+		if (categories.length > OptimalPolicy.MAX_CATEGORIES)
+			throw new IllegalArgumentException("Can only solve up to " + OptimalPolicy.MAX_CATEGORIES + " categories");
+		this.states = states;
+		this.categories = categories.clone();
+		this.numRolls = numRolls;
+		this.policy = policy;
+		scores = new int[categories.length][];
+		maxScores = new int[categories.length];
+		for (int c = 0; c < categories.length; c++) {
+			scores[c] = states.scores(categories[c]);
+			maxScores[c] = Arrays.stream(scores[c]).max().orElse(0);
+		}
+
+		// Work back from every category used, a layer at a time
+		int fullMask = (1 << categories.length) - 1;
+		remaining = new ScoreDistribution[fullMask + 1];
+		remaining[fullMask] = ScoreDistribution.of(0);
+		int[][] layers = OptimalPolicy.layers(categories.length);
+		for (int numUsed = categories.length - 1; numUsed >= 0; numUsed--) {
+			IntStream.of(layers[numUsed]).parallel().forEach(mask -> {
+				double[] start = states.probabilities(states.emptyState());
+				double[] mass = new double[states.numStates()];
+				int[] outcomes = states.outcomes(states.emptyState());
+				for (int i = 0; i < outcomes.length; i++)
+					mass[outcomes[i]] = start[i];
+				remaining[mask] = combine(mask, turnOutcomes(policy.turn(mask), numRolls - 1, mass));
+			});
+		}
+	}
+
+
+
+	/**
+	 * Returns the engine of optimal play for the variant of a game, working
+	 * it out the first time it is asked for.
+	 * @param game A game of the variant
+	 * @return The engine
+	 */
+	public static ScoreDistributionEngine optimal(DiceGame game) {
+		return optimal(game.categories(), game.numDice(), game.numSides(), game.numRolls());
+	}
+
+
+
+	/**
+	 * Returns the engine of optimal play for a variant, working it out the
+	 * first time it is asked for.
+	 * @param categories The categories of the variant
+	 * @param numDice The number of dice
+	 * @param numSides The number of sides on each die
+	 * @param numRolls The number of rolls per turn
+	 * @return The engine
+	 */
+	public static ScoreDistributionEngine optimal(Category[] categories, int numDice, int numSides, int numRolls) {
+		return OPTIMAL.computeIfAbsent(key(categories, numDice, numSides, numRolls), k -> {
+			DiceStates states = new DiceStates(numDice, numSides);
+			OptimalPolicy policy = new OptimalPolicy(states, categories, numRolls);
+			return new ScoreDistributionEngine(states, categories, numRolls, policy);
+		});
+	}
+
+
+
+	/**
+	 * Returns the engine of optimal play for a variant if it has been worked
+	 * out already.
+	 * @param categories The categories of the variant
+	 * @param numDice The number of dice
+	 * @param numSides The number of sides on each die
+	 * @param numRolls The number of rolls per turn
+	 * @return The engine, or null if it has not been worked out
+	 */
+	public static ScoreDistributionEngine optimalIfSolved(Category[] categories, int numDice, int numSides, int numRolls) {
+		return OPTIMAL.get(key(categories, numDice, numSides, numRolls));
+	}
+
+
+
+	/**
+	 * Returns the cache key of a variant.
+	 */
+	static List<Object> key(Category[] categories, int numDice, int numSides, int numRolls) {
+		return Arrays.asList(numDice, numSides, numRolls, Arrays.asList(categories.clone()));
+	}
+
+
+
+	/**
+	 * Follows the policy through the rest of a turn.
+	 * @param turn The decisions for the turn
+	 * @param rollsLeft The rolls left after the dice in the mass were rolled
+	 * @param mass The probability of each rolled state, which is used up
+	 * @return The probability of each way the turn can end, indexed by
+	 * category and then by points
+	 */
+	private double[][] turnOutcomes(Policy.TurnPolicy turn, int rollsLeft, double[] mass) {
+		double[][] ends = new double[categories.length][];
+		for (int c = 0; c < categories.length; c++)
+			ends[c] = new double[maxScores[c] + 1];
+
+		for (int left = rollsLeft; left >= 1; left--) {
+			double[] keptMass = new double[mass.length];
+			for (int state = 0; state < mass.length; state++) {
+				if (mass[state] == 0.0)
+					continue;
+				int kept = turn.keep(left, state);
+				if (kept == state) {
+					int c = turn.category(state);
+					ends[c][scores[c][state]] += mass[state];
+				}
+				else {
+					keptMass[kept] += mass[state];
+				}
+			}
+			double[] rolledMass = new double[mass.length];
+			for (int kept = 0; kept < keptMass.length; kept++) {
+				if (keptMass[kept] == 0.0)
+					continue;
+				int[] outcomes = states.outcomes(kept);
+				double[] probabilities = states.probabilities(kept);
+				for (int i = 0; i < outcomes.length; i++)
+					rolledMass[outcomes[i]] += keptMass[kept] * probabilities[i];
+			}
+			mass = rolledMass;
+		}
+
+		// Score whatever is left after the last roll
+		for (int state = 0; state < mass.length; state++) {
+			if (mass[state] != 0.0) {
+				int c = turn.category(state);
+				ends[c][scores[c][state]] += mass[state];
+			}
+		}
+		return ends;
+	}
+
+
+
+	/**
+	 * Adds up the distributions the ends of a turn lead to.
+	 * @param usedMask The categories used before the turn
+	 * @param ends The probability of each way the turn can end
+	 * @return The distribution of the points from the start of the turn
+	 */
+	private ScoreDistribution combine(int usedMask, double[][] ends) {
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int c = 0; c < ends.length; c++) {
+			ScoreDistribution after = remaining[usedMask | 1 << c];
+			for (int points = 0; points < ends[c].length; points++) {
+				if (ends[c][points] != 0.0) {
+					min = Math.min(min, points + after.min());
+					max = Math.max(max, points + after.max());
+				}
+			}
+		}
+
+		double[] probabilities = new double[max - min + 1];
+		for (int c = 0; c < ends.length; c++) {
+			ScoreDistribution after = remaining[usedMask | 1 << c];
+			for (int points = 0; points < ends[c].length; points++) {
+				double p = ends[c][points];
+				if (p == 0.0)
+					continue;
+				for (int total = after.min(); total <= after.max(); total++)
+					probabilities[points + total - min] += p * after.probability(total);
+			}
+		}
+		return new ScoreDistribution(min, probabilities);
+	}
+
+
+
+	/**
+	 * Returns the distribution of the points still to come.
+	 * @param usedMask The categories used, one bit per category
+	 * @return The distribution
+	 */
+	public ScoreDistribution remaining(int usedMask) {
+		return remaining[usedMask];
+	}
+
+
+
+	/**
+	 * Returns the distribution of a player's final total score from where a
+	 * game is now, including the rest of the current turn if it is theirs.
+	 * @param game The game
+	 * @param playerIndex The index of the player
+	 * @return The distribution
+	 */
+	public ScoreDistribution finalTotal(DiceGame game, int playerIndex) {
+		return finalTotal(new GameSnapshot(game), playerIndex);
+	}
+
+
+
+	/**
+	 * Returns the distribution of a player's final total score from where a
+	 * game was, including the rest of the current turn if it is theirs.
+	 * @param game A snapshot of the game
+	 * @param playerIndex The index of the player
+	 * @return The distribution
+	 */
+	public ScoreDistribution finalTotal(GameSnapshot game, int playerIndex) {
+		int usedMask = game.usedMask(playerIndex);
+		int total = game.totalScore(playerIndex);
+
+		// Between turns, or before the first roll of this one
+		if (playerIndex != game.curPlayerIndex() || !game.isMidTurn())
+			return remaining[usedMask].plus(total);
+
+		// Part way through the turn, from the dice as they are
+		int[] faceCounts = new int[states.numSides() + 1];
+		for (int value: game.diceValues())
+			faceCounts[value]++;
+		double[] mass = new double[states.numStates()];
+		mass[states.index(faceCounts)] = 1.0;
+		return combine(usedMask, turnOutcomes(policy.turn(usedMask), game.rollsLeft(), mass)).plus(total);
+	}
+
+
+
+	/**
+	 * Returns every player's chance of winning from where a game was, taking
+	 * each player to play this engine's policy on their own.
+	 * @param game A snapshot of the game
+	 * @return The chance of each player winning
+	 */
+	public double[] winProbabilities(GameSnapshot game) {
+		ScoreDistribution[] finals = new ScoreDistribution[game.numPlayers()];
+		for (int i = 0; i < finals.length; i++)
+			finals[i] = finalTotal(game, i);
+		return WinProbability.of(finals);
+	}
+
+
+
+	/**
+	 * Returns the probability that a player's final total score is at least a
+	 * number of points.
+	 * @param game The game
+	 * @param playerIndex The index of the player
+	 * @param points The number of points
+	 * @return The probability
+	 */
+	public double probabilityAtLeast(DiceGame game, int playerIndex, int points) {
+		return finalTotal(game, playerIndex).atLeast(points);
+	}
+
+
+
+	/**
+	 * Returns the policy the distributions are for.
+	 * @return The policy
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+
+
+
+	/**
+	 * Returns the dice states the engine works in.
+	 * @return The dice states
+	 */
+	public DiceStates getStates() {
+		return states;
+	}
+}
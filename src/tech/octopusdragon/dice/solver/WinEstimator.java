@@ -0,0 +1,310 @@
+package tech.octopusdragon.dice.solver;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import tech.octopusdragon.dice.Category;
+
+/**
+ * Estimates every player's chance of winning from where a game is, getting
+ * better the longer it runs. If the variant's score distributions have been
+ * worked out by a {@link ScoreDistributionEngine}, the answer is exact for
+ * players playing for the most points and is given straight away. If not,
+ * they start being worked out in the background, on a thread of their own
+ * shared by every estimate, and until they are ready the
+ * estimate comes from playing the rest of the game out many times with a
+ * simple strategy: keep the face showing most and score in the category worth
+ * the most. These play-outs are run in batches of doubling size, and the
+ * estimate is passed on after each batch.
+ * <p>
+ * Estimating stops as soon as it is cancelled, so a newer estimate can take
+ * over without waiting. Working out the distributions carries on, since
+ * every later estimate of the variant uses them, but only one variant is
+ * worked out at a time and only a few more wait for their turn. A variant
+ * that could not be worked out is tried again by the next estimate.
+ * @author Alex Gill
+ *
+ */
+public final class WinEstimator {
+
+	// --- Constants ---
+	private static final int FIRST_BATCH = 64;			// Play-outs before the first estimate
+	private static final int MAX_BATCH = 8192;			// The most play-outs between estimates
+	private static final long MAX_PLAYOUTS = 200_000;	// Play-outs before waiting for the solution
+	private static final long POLL_MILLIS = 50;			// How often to check for cancellation while waiting
+	private static final int MAX_WAITING_SOLVES = 4;	// Variants waiting to be worked out before more are refused
+
+	// Variants being solved, by engine cache key
+	private static final Map<List<Object>, CompletableFuture<ScoreDistributionEngine>> SOLVING =
+			new ConcurrentHashMap<List<Object>, CompletableFuture<ScoreDistributionEngine>>();
+
+	// Works out the variants, one at a time
+	private static final ExecutorService SOLVER;
+	static {
+		ThreadPoolExecutor solver = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(MAX_WAITING_SOLVES), runnable -> {
+					Thread thread = new Thread(runnable, "Variant solver");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				});
+		solver.allowCoreThreadTimeOut(true);
+		SOLVER = solver;
+	}
+
+
+
+	/**
+	 * Cannot be instantiated.
+	 */
+	private WinEstimator() {
+	}
+
+
+
+	/**
+	 * Estimates every player's chance of winning, passing on each better
+	 * estimate as it is made. Runs on the calling thread until the estimate is
+	 * exact, the play-outs run out or it is cancelled.
+	 * @param game A snapshot of the game
+	 * @param progress Told each estimate
+	 * @param cancelled Says whether to stop
+	 */
+	public static void estimate(GameSnapshot game, Consumer<Estimate> progress, BooleanSupplier cancelled) {
+		if (game.numPlayers() == 1) {
+			progress.accept(new Estimate(new double[] {1.0}, true, 0));
+			return;
+		}
+
+		// Exact if the variant has been solved, or once it is
+		Category[] categories = game.categories();
+		ScoreDistributionEngine engine = ScoreDistributionEngine.optimalIfSolved(
+				categories, game.numDice(), game.numSides(), game.numRolls());
+		if (engine != null) {
+			progress.accept(new Estimate(engine.winProbabilities(game), true, 0));
+			return;
+		}
+		CompletableFuture<ScoreDistributionEngine> solution = solve(game);
+
+		// Play the game out until then
+		SplittableRandom random = new SplittableRandom();
+		double[] wins = new double[game.numPlayers()];
+		long playouts = 0;
+		int batch = FIRST_BATCH;
+		while (playouts < MAX_PLAYOUTS && !cancelled.getAsBoolean()) {
+			if (solution.isDone() && !solution.isCompletedExceptionally()) {
+				progress.accept(new Estimate(solution.join().winProbabilities(game), true, playouts));
+				return;
+			}
+			for (int i = 0; i < batch; i++)
+				playout(game, categories, random, wins);
+			playouts += batch;
+			double[] probabilities = new double[wins.length];
+			for (int i = 0; i < wins.length; i++)
+				probabilities[i] = wins[i] / playouts;
+			progress.accept(new Estimate(probabilities, false, playouts));
+			batch = Math.min(batch * 2, MAX_BATCH);
+		}
+
+		// Wait for the exact answer, unless the variant cannot be solved
+		while (!cancelled.getAsBoolean()) {
+			try {
+				engine = solution.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				progress.accept(new Estimate(engine.winProbabilities(game), true, playouts));
+				return;
+			} catch (TimeoutException e) {
+				// Check for cancellation and keep waiting
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				return;
+			}
+		}
+	}
+
+
+
+	/**
+	 * Starts working out the score distributions of the variant of a game in
+	 * the background, unless they are already being worked out. If they
+	 * cannot be worked out, or too many variants are waiting, the variant is
+	 * forgotten so the next estimate tries again.
+	 * @param game A snapshot of the game
+	 * @return The engine once it is worked out
+	 */
+	private static CompletableFuture<ScoreDistributionEngine> solve(GameSnapshot game) {
+		Category[] categories = game.categories();
+		List<Object> key = ScoreDistributionEngine.key(categories, game.numDice(), game.numSides(), game.numRolls());
+		CompletableFuture<ScoreDistributionEngine> solution = new CompletableFuture<ScoreDistributionEngine>();
+		CompletableFuture<ScoreDistributionEngine> solving = SOLVING.putIfAbsent(key, solution);
+		if (solving != null)
+			return solving;
+		try {
+			SOLVER.execute(() -> {
+				try {
+					solution.complete(ScoreDistributionEngine.optimal(
+							categories, game.numDice(), game.numSides(), game.numRolls()));
+				} catch (Throwable t) {
+					SOLVING.remove(key, solution);
+					solution.completeExceptionally(t);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			SOLVING.remove(key, solution);
+			solution.completeExceptionally(e);
+		}
+		return solution;
+	}
+
+
+
+	/**
+	 * Plays the rest of a game out once with the simple strategy and adds
+	 * each player's share of the win.
+	 * @param game A snapshot of the game
+	 * @param categories The categories of the variant
+	 * @param random Rolls the dice
+	 * @param wins Each player's win shares so far
+	 */
+	private static void playout(GameSnapshot game, Category[] categories, SplittableRandom random, double[] wins) {
+		int numPlayers = game.numPlayers();
+		int numSides = game.numSides();
+		int fullMask = (1 << categories.length) - 1;
+		int[] usedMasks = new int[numPlayers];
+		int[] totals = new int[numPlayers];
+		for (int i = 0; i < numPlayers; i++) {
+			usedMasks[i] = game.usedMask(i);
+			totals[i] = game.totalScore(i);
+		}
+		int[] dice = game.diceValues();
+		int[] faceCounts = new int[numSides + 1];
+
+		int player = game.curPlayerIndex();
+		int rollsLeft = game.rollsLeft();
+		boolean midTurn = game.isMidTurn();
+		if (game.curPlayerHasGone())
+			player = (player + 1) % numPlayers;
+
+		while (usedMasks[player] != fullMask) {
+
+			// Roll every die to start the turn
+			if (!midTurn) {
+				for (int i = 0; i < dice.length; i++)
+					dice[i] = random.nextInt(numSides) + 1;
+				rollsLeft = game.numRolls() - 1;
+			}
+			midTurn = false;
+
+			// Keep the face showing most and roll the rest
+			for (; rollsLeft > 0; rollsLeft--) {
+				countFaces(dice, faceCounts);
+				int kept = numSides;
+				for (int face = numSides - 1; face >= 1; face--)
+					if (faceCounts[face] > faceCounts[kept])
+						kept = face;
+				if (faceCounts[kept] == dice.length)
+					break;
+				for (int i = 0; i < dice.length; i++)
+					if (dice[i] != kept)
+						dice[i] = random.nextInt(numSides) + 1;
+			}
+
+			// Score in the category worth the most
+			int total = countFaces(dice, faceCounts);
+			int best = -1;
+			int bestPoints = -1;
+			for (int c = 0; c < categories.length; c++) {
+				if ((usedMasks[player] & 1 << c) != 0)
+					continue;
+				int points = categories[c].score(faceCounts, total);
+				if (points > bestPoints) {
+					best = c;
+					bestPoints = points;
+				}
+			}
+			usedMasks[player] |= 1 << best;
+			totals[player] += bestPoints;
+			player = (player + 1) % numPlayers;
+		}
+
+		double[] shares = WinProbability.of(totals);
+		for (int i = 0; i < numPlayers; i++)
+			wins[i] += shares[i];
+	}
+
+
+
+	/**
+	 * Counts the dice showing each face.
+	 * @param dice The values of the dice
+	 * @param faceCounts Receives the counts
+	 * @return The total of the dice
+	 */
+	private static int countFaces(int[] dice, int[] faceCounts) {
+		Arrays.fill(faceCounts, 0);
+		int total = 0;
+		for (int value: dice) {
+			faceCounts[value]++;
+			total += value;
+		}
+		return total;
+	}
+
+
+
+	/**
+	 * An estimate of every player's chance of winning.
+	 */
+	public static final class Estimate {
+
+		private final double[] probabilities;	// Each player's chance of winning
+		private final boolean exact;			// Whether it is the exact answer
+		private final long playouts;			// The play-outs it is based on
+
+		Estimate(double[] probabilities, boolean exact, long playouts) {
+			this.probabilities = probabilities;
+			this.exact = exact;
+			this.playouts = playouts;
+		}
+
+		/**
+		 * Returns a player's chance of winning.
+		 * @param playerIndex The index of the player
+		 * @return The chance of winning
+		 */
+		public double probability(int playerIndex) {
+			return probabilities[playerIndex];
+		}
+
+		/**
+		 * Returns whether the estimate is exact for players playing for the
+		 * most points, rather than from play-outs.
+		 * @return Whether the estimate is exact
+		 */
+		public boolean isExact() {
+			return exact;
+		}
+
+		/**
+		 * Returns the number of play-outs the estimate is based on.
+		 * @return The number of play-outs, 0 if none were needed
+		 */
+		public long getPlayouts() {
+			return playouts;
+		}
+	}
+}
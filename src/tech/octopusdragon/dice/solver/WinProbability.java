@@ -0,0 +1,86 @@
+package tech.octopusdragon.dice.solver;
+
+/**
+ * Works out each player's chance of winning from the distributions of their
+ * final total scores, taking the players' scores to be independent. A tie
+ * for the most points is shared equally between the players tied.
+ * @author Alex Gill
+ *
+ */
+public final class WinProbability {
+
+	/**
+	 * Cannot be instantiated.
+	 */
+	private WinProbability() {
+	}
+
+
+
+	/**
+	 * Returns each player's chance of winning.
+	 * @param finals The distribution of each player's final total score
+	 * @return The chance of each player winning, adding up to 1
+	 */
+	public static double[] of(ScoreDistribution[] finals) {
+		double[] wins = new double[finals.length];
+		if (finals.length == 1) {
+			wins[0] = 1.0;
+			return wins;
+		}
+
+		for (int i = 0; i < finals.length; i++) {
+			double win = 0.0;
+			for (int points = finals[i].min(); points <= finals[i].max(); points++) {
+				double p = finals[i].probability(points);
+				if (p == 0.0)
+					continue;
+
+				// Every other player scores less, or ties and the tie is
+				// shared. Ties between three or more players are shared as
+				// if each were a separate two-player tie.
+				for (int j = 0; j < finals.length && p != 0.0; j++)
+					if (j != i)
+						p *= finals[j].atMost(points - 1) + 0.5 * finals[j].probability(points);
+				win += p;
+			}
+			wins[i] = win;
+		}
+
+		// Bring the approximate shares of multi-way ties back to a total of 1
+		double sum = 0.0;
+		for (double win: wins)
+			sum += win;
+		if (sum > 0.0)
+			for (int i = 0; i < wins.length; i++)
+				wins[i] /= sum;
+		return wins;
+	}
+
+
+
+	/**
+	 * Returns each player's share of a win once the scores are final.
+	 * @param totals The final total score of each player
+	 * @return 1 for the player with the most points, or an equal share for
+	 * each player tied for the most, and 0 for the others
+	 */
+	public static double[] of(int[] totals) {
+		int best = Integer.MIN_VALUE;
+		int numBest = 0;
+		for (int total: totals) {
+			if (total > best) {
+				best = total;
+				numBest = 1;
+			}
+			else if (total == best) {
+				numBest++;
+			}
+		}
+		double[] wins = new double[totals.length];
+		for (int i = 0; i < totals.length; i++)
+			if (totals[i] == best)
+				wins[i] = 1.0 / numBest;
+		return wins;
+	}
+}
@@ -0,0 +1,527 @@
+package tech.octopusdragon.dice.tune;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.batch.BatchGameEngine;
+import tech.octopusdragon.dice.bot.HeuristicBatchPlayer;
+import tech.octopusdragon.dice.bot.HeuristicPolicy;
+import tech.octopusdragon.dice.shard.SimulationJob;
+
+/**
+ * Tunes the parameters of a {@link HeuristicPolicy} by evolution: a
+ * self-adaptive evolution strategy in which each candidate carries its own
+ * step size for every parameter, so the search settles on how far to move
+ * each one as it goes.
+ * <p>
+ * Every generation, each candidate plays a few thousand headless games on its
+ * own, and its fitness is its mean final score. The candidates are played in
+ * parallel, and all of them play the same games with common random numbers,
+ * so the differences between them are down to their play rather than their
+ * luck. Each generation plays new games, so no candidate is chosen for having
+ * got lucky once. Since one generation's games may be easier than another's,
+ * the best candidate of each generation is played again on a fixed set of
+ * held-out games, and it only replaces the best found so far if it does
+ * better on those. The best few candidates are the parents of the next
+ * generation: each child takes each parameter from one of two parents,
+ * averages their step sizes, and mutates both. The very best parent also
+ * carries on unchanged.
+ * <p>
+ * The population is saved to a checkpoint file after every generation, and a
+ * tuner started with the file of one that stopped carries on where it left
+ * off, playing exactly the same games it would have.
+ * <p>
+ * Options, given as {@code --name=value}:
+ * <ul>
+ * <li>{@code variant} - the variant to tune for (default Yacht)</li>
+ * <li>{@code games} - the games each candidate plays per generation (default
+ * 4000)</li>
+ * <li>{@code population} - the candidates in each generation (default 32)</li>
+ * <li>{@code parents} - the candidates chosen as parents (default 8)</li>
+ * <li>{@code generations} - the generation to stop after (default 50)</li>
+ * <li>{@code seed} - decides the games and the mutations (default 1)</li>
+ * <li>{@code threads} - the threads to play on (default the number of
+ * processors)</li>
+ * <li>{@code checkpoint} - the file to keep the population in (default
+ * tuner.properties)</li>
+ * </ul>
+ * A new population is only started if the checkpoint file does not exist;
+ * otherwise the settings are those it was started with.
+ * @author Alex Gill
+ *
+ */
+public class HeuristicTuner {
+
+	// --- Constants ---
+	private static final double MIN_STEP = 1e-6;	// The smallest step size, so none collapses to nothing
+	private static final String HELD_OUT = "held-out";	// Marks a best fitness scored on the held-out games
+	private static final long HELD_OUT_SALT = 0x6A09E667F3BCC909L;	// Sets the held-out seed apart from the generations'
+
+	// --- Settings ---
+	private final DiceGame game;		// A game of the variant
+	private final int populationSize;	// The candidates in each generation
+	private final int numParents;		// The candidates chosen as parents
+	private final int numGames;			// The games each candidate plays per generation
+	private final long seed;			// Decides the games and the mutations
+
+	// --- Population ---
+	private int generation;				// The number of generations played
+	private double[][] population;		// The parameters of each candidate
+	private double[][] steps;			// The step size of each candidate's parameters
+	private double[] best;				// The best parameters found so far, or null
+	private double bestFitness = Double.NEGATIVE_INFINITY;	// Their mean score on the held-out games
+	private int bestGeneration;			// The generation they were found in
+
+
+
+	/**
+	 * Instantiates a tuner with a new population around the default
+	 * parameters.
+	 * @param game A game of the variant
+	 * @param populationSize The candidates in each generation
+	 * @param numParents The candidates chosen as parents
+	 * @param numGames The games each candidate plays per generation
+	 * @param seed Decides the games and the mutations
+	 */
+	public HeuristicTuner(DiceGame game, int populationSize, int numParents, int numGames, long seed) {
+		if (numParents < 1 || populationSize <= numParents || numGames < 1)
+			throw new IllegalArgumentException("Need a parent, more candidates than parents and a game");
+		this.game = game;
+		this.populationSize = populationSize;
+		this.numParents = numParents;
+		this.numGames = numGames;
+		this.seed = seed;
+
+		// Scatter the candidates around the defaults
+		double[] start = HeuristicPolicy.defaults(game.categories().length, game.numRolls(), game.numDice());
+		double[] startSteps = initialSteps();
+		SplittableRandom random = new SplittableRandom(seed);
+		population = new double[populationSize][];
+		steps = new double[populationSize][];
+		for (int i = 0; i < populationSize; i++) {
+			population[i] = start.clone();
+			steps[i] = startSteps.clone();
+			if (i > 0)
+				for (int p = 0; p < start.length; p++)
+					population[i][p] += startSteps[p] * random.nextGaussian();
+		}
+	}
+
+
+
+	/**
+	 * Returns the step sizes to start from: a fifth of a point for weights,
+	 * and about a fifth of the usual range for the rest.
+	 * @return The step size of each parameter
+	 */
+	private double[] initialSteps() {
+		int numCategories = game.categories().length;
+		double[] initial = new double[HeuristicPolicy.numParameters(numCategories, game.numRolls())];
+		int at = 0;
+		for (int c = 0; c < numCategories; c++)
+			initial[at++] = 0.2;
+		for (int c = 0; c < numCategories; c++)
+			initial[at++] = 5.0;
+		for (int rollsLeft = 1; rollsLeft < game.numRolls(); rollsLeft++)
+			initial[at++] = 5.0;
+		initial[at++] = 0.5;
+		initial[at++] = 0.5;
+		return initial;
+	}
+
+
+
+	/**
+	 * Plays one generation: plays every candidate, keeps the best and breeds
+	 * the next generation from them.
+	 * @param pool Plays the candidates
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 */
+	public void step(ExecutorService pool) throws InterruptedException {
+		SplittableRandom random = new SplittableRandom(seed + generation + 1);
+		long gamesSeed = random.nextLong();
+
+		// Play every candidate on the same games
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+		for (double[] candidate: population)
+			tasks.add(() -> evaluate(candidate, gamesSeed));
+		double[] fitness = new double[populationSize];
+		List<Future<Double>> results = pool.invokeAll(tasks);
+		for (int i = 0; i < populationSize; i++) {
+			try {
+				fitness[i] = results.get(i).get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Error playing candidate " + i, e.getCause());
+			}
+		}
+
+		// Rank the candidates, best first
+		Integer[] ranked = new Integer[populationSize];
+		for (int i = 0; i < populationSize; i++)
+			ranked[i] = i;
+		Arrays.sort(ranked, (a, b) -> Double.compare(fitness[b], fitness[a]));
+		// Play the generation's best again on the held-out games, which every
+		// best so far has been scored on, so they are compared on equal terms
+		double[] top = population[ranked[0]];
+		double heldOutFitness;
+		try {
+			heldOutFitness = pool.submit(() -> evaluate(top, heldOutSeed())).get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error playing the held-out games", e.getCause());
+		}
+		if (heldOutFitness > bestFitness) {
+			best = top.clone();
+			bestFitness = heldOutFitness;
+			bestGeneration = generation + 1;
+		}
+
+		// Breed the next generation, keeping the best parent as it is
+		int numParameters = population[0].length;
+		double globalRate = 1.0 / Math.sqrt(2.0 * numParameters);
+		double localRate = 1.0 / Math.sqrt(2.0 * Math.sqrt(numParameters));
+		double[][] children = new double[populationSize][];
+		double[][] childSteps = new double[populationSize][];
+		children[0] = population[ranked[0]];
+		childSteps[0] = steps[ranked[0]];
+		for (int i = 1; i < populationSize; i++) {
+			int mother = ranked[random.nextInt(numParents)];
+			int father = ranked[random.nextInt(numParents)];
+			double global = globalRate * random.nextGaussian();
+			children[i] = new double[numParameters];
+			childSteps[i] = new double[numParameters];
+			for (int p = 0; p < numParameters; p++) {
+				double step = (steps[mother][p] + steps[father][p]) / 2.0;
+				step = Math.max(MIN_STEP, step * Math.exp(global + localRate * random.nextGaussian()));
+				double parent = random.nextBoolean() ? population[mother][p] : population[father][p];
+				children[i][p] = parent + step * random.nextGaussian();
+				childSteps[i][p] = step;
+			}
+		}
+		population = children;
+		steps = childSteps;
+		generation++;
+	}
+
+
+
+	/**
+	 * Returns the seed of the held-out games, which is the same for every
+	 * generation and played by no generation. It is mixed from the salted
+	 * seed with a different function than the generations' random number
+	 * generators use, so it is not one of their seeds for any tuner seed.
+	 * @return The seed
+	 */
+	private long heldOutSeed() {
+		return mix(seed ^ HELD_OUT_SALT);
+	}
+
+
+
+	/**
+	 * Scrambles the bits of a number (the MurmurHash3 finalizer).
+	 * @param z The number
+	 * @return The scrambled number
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return z ^ (z >>> 33);
+	}
+
+
+
+	/**
+	 * Plays a candidate on a set of games.
+	 * @param parameters The candidate's parameters
+	 * @param gamesSeed Decides the games
+	 * @return The candidate's mean final score
+	 */
+	public double evaluate(double[] parameters, long gamesSeed) {
+		HeuristicPolicy policy = new HeuristicPolicy(game.categories().length, game.numRolls(), parameters);
+		BatchGameEngine engine = new BatchGameEngine(game, 1, numGames, gamesSeed);
+		engine.play(new HeuristicBatchPlayer(policy));
+		long total = 0;
+		for (int g = 0; g < numGames; g++)
+			total += engine.totalScore(g, 0);
+		return (double)total / numGames;
+	}
+
+
+
+	/**
+	 * Saves the tuner to a checkpoint file. The file is written in full
+	 * before it replaces the old one, so a tuner stopped while saving leaves
+	 * the last checkpoint as it was.
+	 * @param file The file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		Properties checkpoint = new Properties();
+		checkpoint.setProperty("variant", game.name());
+		checkpoint.setProperty("population", Integer.toString(populationSize));
+		checkpoint.setProperty("parents", Integer.toString(numParents));
+		checkpoint.setProperty("games", Integer.toString(numGames));
+		checkpoint.setProperty("seed", Long.toString(seed));
+		checkpoint.setProperty("generation", Integer.toString(generation));
+		for (int i = 0; i < populationSize; i++) {
+			checkpoint.setProperty("candidate." + i, format(population[i]));
+			checkpoint.setProperty("steps." + i, format(steps[i]));
+		}
+		if (best != null) {
+			checkpoint.setProperty("best", format(best));
+			checkpoint.setProperty("best.fitness", Double.toString(bestFitness));
+			checkpoint.setProperty("best.games", HELD_OUT);
+			checkpoint.setProperty("best.generation", Integer.toString(bestGeneration));
+		}
+
+		Path absolute = file.toAbsolutePath();
+		Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(temp)) {
+				checkpoint.store(out, "Heuristic tuner checkpoint");
+			}
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+
+
+	/**
+	 * Loads a tuner saved by {@link #save(Path)}.
+	 * @param file The checkpoint file
+	 * @return The tuner, with the settings it was started with
+	 * @throws IOException if the file cannot be read or is not valid
+	 */
+	public static HeuristicTuner load(Path file) throws IOException {
+		Properties checkpoint = read(file);
+		try {
+			DiceGame game = SimulationJob.newGame(required(checkpoint, "variant"), 1);
+			HeuristicTuner tuner = new HeuristicTuner(game,
+					Integer.parseInt(required(checkpoint, "population")),
+					Integer.parseInt(required(checkpoint, "parents")),
+					Integer.parseInt(required(checkpoint, "games")),
+					Long.parseLong(required(checkpoint, "seed")));
+			tuner.generation = Integer.parseInt(required(checkpoint, "generation"));
+			int numParameters = tuner.population[0].length;
+			for (int i = 0; i < tuner.populationSize; i++) {
+				tuner.population[i] = parse(required(checkpoint, "candidate." + i), numParameters);
+				tuner.steps[i] = parse(required(checkpoint, "steps." + i), numParameters);
+			}
+			if (checkpoint.getProperty("best") != null) {
+				tuner.best = parse(checkpoint.getProperty("best"), numParameters);
+				tuner.bestFitness = Double.parseDouble(required(checkpoint, "best.fitness"));
+				tuner.bestGeneration = Integer.parseInt(required(checkpoint, "best.generation"));
+				if (!HELD_OUT.equals(required(checkpoint, "best.games")))
+					throw new IllegalArgumentException("Best was not scored on the held-out games");
+			}
+			return tuner;
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid checkpoint " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+
+
+	/**
+	 * Loads the best policy found by a tuner, to play with.
+	 * @param file The tuner's checkpoint file
+	 * @param game A game of the variant it was tuned for
+	 * @return The policy
+	 * @throws IOException if the file cannot be read, is not valid, is for
+	 * another variant or has no best policy yet
+	 */
+	public static HeuristicPolicy loadBest(Path file, DiceGame game) throws IOException {
+		Properties checkpoint = read(file);
+		if (!game.name().equalsIgnoreCase(checkpoint.getProperty("variant")))
+			throw new IOException("Checkpoint " + file + " is not for " + game.name());
+		String best = checkpoint.getProperty("best");
+		if (best == null)
+			throw new IOException("Checkpoint " + file + " has no best policy yet");
+		int numCategories = game.categories().length;
+		try {
+			return new HeuristicPolicy(numCategories, game.numRolls(),
+					parse(best, HeuristicPolicy.numParameters(numCategories, game.numRolls())));
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid checkpoint " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+
+
+	/**
+	 * Reads a checkpoint file.
+	 * @param file The file
+	 * @return The checkpoint
+	 * @throws IOException if the file cannot be read
+	 */
+	private static Properties read(Path file) throws IOException {
+		Properties checkpoint = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			checkpoint.load(in);
+		}
+		return checkpoint;
+	}
+
+
+
+	/**
+	 * Returns a setting of a checkpoint that must be there.
+	 * @param checkpoint The checkpoint
+	 * @param name The name of the setting
+	 * @return The value
+	 */
+	private static String required(Properties checkpoint, String name) {
+		String value = checkpoint.getProperty(name);
+		if (value == null)
+			throw new IllegalArgumentException("Missing " + name);
+		return value;
+	}
+
+
+
+	/**
+	 * Writes parameters as a list separated by commas, exactly enough to read
+	 * them back.
+	 * @param parameters The parameters
+	 * @return The list
+	 */
+	private static String format(double[] parameters) {
+		StringBuilder list = new StringBuilder();
+		for (double parameter: parameters) {
+			if (list.length() > 0)
+				list.append(',');
+			list.append(parameter);
+		}
+		return list.toString();
+	}
+
+
+
+	/**
+	 * Reads parameters written by {@link #format(double[])}.
+	 * @param list The list
+	 * @param numParameters The number of parameters expected
+	 * @return The parameters
+	 */
+	private static double[] parse(String list, int numParameters) {
+		String[] values = list.split(",");
+		if (values.length != numParameters)
+			throw new IllegalArgumentException("Expected " + numParameters + " parameters");
+		double[] parameters = new double[numParameters];
+		for (int p = 0; p < numParameters; p++)
+			parameters[p] = Double.parseDouble(values[p].trim());
+		return parameters;
+	}
+
+
+
+	/**
+	 * Returns the number of generations played.
+	 * @return The number of generations
+	 */
+	public int generation() {
+		return generation;
+	}
+
+
+
+	/**
+	 * Returns the best parameters found so far.
+	 * @return A copy of the parameters, or null if no generation has been
+	 * played
+	 */
+	public double[] getBest() {
+		return best == null ? null : best.clone();
+	}
+
+
+
+	/**
+	 * Returns the mean score of the best parameters found so far on the
+	 * held-out games.
+	 * @return The mean score
+	 */
+	public double getBestFitness() {
+		return bestFitness;
+	}
+
+
+
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> options = SimulationJob.parseOptions(args);
+		Path checkpoint = Paths.get(options.getOrDefault("checkpoint", "tuner.properties"));
+		HeuristicTuner tuner;
+		int numGenerations;
+		int numThreads;
+		try {
+			numGenerations = Integer.parseInt(options.getOrDefault("generations", "50"));
+			numThreads = Integer.parseInt(options.getOrDefault("threads",
+					Integer.toString(Runtime.getRuntime().availableProcessors())));
+			if (Files.exists(checkpoint)) {
+				tuner = load(checkpoint);
+				System.out.println("Resuming from generation " + tuner.generation + " of " + checkpoint);
+			} else {
+				tuner = new HeuristicTuner(
+						SimulationJob.newGame(options.getOrDefault("variant", "Yacht"), 1),
+						Integer.parseInt(options.getOrDefault("population", "32")),
+						Integer.parseInt(options.getOrDefault("parents", "8")),
+						Integer.parseInt(options.getOrDefault("games", "4000")),
+						Long.parseLong(options.getOrDefault("seed", "1")));
+			}
+		} catch (IllegalArgumentException | IOException e) {
+			System.out.println("Invalid options: " + e.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads), runnable -> {
+			Thread thread = new Thread(runnable, "Tuner");
+			thread.setDaemon(true);
+			return thread;
+		});
+		PrintStream console = System.out;
+		try {
+			while (tuner.generation < numGenerations) {
+				long start = System.nanoTime();
+				tuner.step(pool);
+				console.printf("Generation %d: best %.2f on held-out games (generation %d) in %.1f s%n", tuner.generation,
+						tuner.bestFitness, tuner.bestGeneration, (System.nanoTime() - start) / 1e9);
+				try {
+					tuner.save(checkpoint);
+				} catch (IOException e) {
+					System.out.println("Error saving checkpoint " + checkpoint + "...");
+					e.printStackTrace();
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		// Show the best parameters by name
+		if (tuner.best != null) {
+			String[] names = HeuristicPolicy.parameterNames(tuner.game.categories(), tuner.game.numRolls());
+			for (int p = 0; p < names.length; p++)
+				console.printf("%-24s %10.3f%n", names[p], tuner.best[p]);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package tech.octopusdragon.dice.tune;
+
+/**
+ * Fits a linear model by ridge regression, from samples added one at a time.
+ * Only the sums of the normal equations are kept, so any number of samples
+ * takes the same memory, and sums of different samples can be merged.
+ * @author Alex Gill
+ *
+ */
+class LeastSquares {
+
+	private final int numFeatures;		// The number of features
+	private final double[][] xtx;		// The sum of the products of each pair of features
+	private final double[] xty;			// The sum of each feature times the target
+	private long numSamples;			// The number of samples
+
+
+
+	/**
+	 * Instantiates an empty fit.
+	 * @param numFeatures The number of features
+	 */
+	LeastSquares(int numFeatures) {
+		this.numFeatures = numFeatures;
+		xtx = new double[numFeatures][numFeatures];
+		xty = new double[numFeatures];
+	}
+
+
+
+	/**
+	 * Adds a sample.
+	 * @param features The features
+	 * @param target The value the model should give
+	 */
+	void add(double[] features, double target) {
+		for (int i = 0; i < numFeatures; i++) {
+			double x = features[i];
+			if (x == 0.0)
+				continue;
+			double[] row = xtx[i];
+			for (int j = 0; j <= i; j++)
+				row[j] += x * features[j];
+			xty[i] += x * target;
+		}
+		numSamples++;
+	}
+
+
+
+	/**
+	 * Adds the samples of another fit to this one.
+	 * @param other The other fit
+	 */
+	void merge(LeastSquares other) {
+		for (int i = 0; i < numFeatures; i++) {
+			for (int j = 0; j <= i; j++)
+				xtx[i][j] += other.xtx[i][j];
+			xty[i] += other.xty[i];
+		}
+		numSamples += other.numSamples;
+	}
+
+
+
+	/**
+	 * Returns the number of samples added.
+	 * @return The number of samples
+	 */
+	long numSamples() {
+		return numSamples;
+	}
+
+
+
+	/**
+	 * Solves for the weights that fit the samples best, by Cholesky
+	 * decomposition.
+	 * @param ridge Added to each feature's own sum of squares, so features
+	 * that were never seen or that move together still get small, sensible
+	 * weights
+	 * @return The weights
+	 */
+	double[] solve(double ridge) {
+		int n = numFeatures;
+		double[][] l = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j <= i; j++) {
+				double sum = xtx[i][j] + (i == j ? ridge : 0.0);
+				for (int k = 0; k < j; k++)
+					sum -= l[i][k] * l[j][k];
+				l[i][j] = i == j ? Math.sqrt(Math.max(sum, ridge)) : sum / l[j][j];
+			}
+		}
+
+		// Solve L z = X'y, then L' w = z
+		double[] z = new double[n];
+		for (int i = 0; i < n; i++) {
+			double sum = xty[i];
+			for (int k = 0; k < i; k++)
+				sum -= l[i][k] * z[k];
+			z[i] = sum / l[i][i];
+		}
+		double[] weights = new double[n];
+		for (int i = n - 1; i >= 0; i--) {
+			double sum = z[i];
+			for (int k = i + 1; k < n; k++)
+				sum -= l[k][i] * weights[k];
+			weights[i] = sum / l[i][i];
+		}
+		return weights;
+	}
+}
@@ -0,0 +1,351 @@
+package tech.octopusdragon.dice.tune;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.batch.BatchGameEngine;
+import tech.octopusdragon.dice.batch.PackedDice;
+import tech.octopusdragon.dice.bot.ValueFunction;
+import tech.octopusdragon.dice.bot.ValueFunctionBatchPlayer;
+import tech.octopusdragon.dice.data.DecisionReader;
+import tech.octopusdragon.dice.data.DecisionRecorder;
+import tech.octopusdragon.dice.data.DecisionWriter;
+import tech.octopusdragon.dice.shard.SimulationJob;
+
+/**
+ * Trains a {@link ValueFunction} offline from simulated games, a round at a
+ * time. Each round plays games with the function of the round before, keeping
+ * the dice some way at random now and then, and writes every decision to
+ * decision files. The function of the next round is fitted to those files by
+ * ridge regression: the start value to the points scored from the start of
+ * each turn, and the keep value to the points scored from each time the dice
+ * were rolled again. The start value is fitted first, as the features of the
+ * keep value use it. The files are read a shard at a time in parallel, and
+ * only the sums of the regression are kept, so a round can have any number
+ * of games.
+ * <p>
+ * After each round the new function plays games of its own, the same games
+ * every round, and the function with the best mean score is saved.
+ * <p>
+ * Options, given as {@code --name=value}:
+ * <ul>
+ * <li>{@code variant} - the variant to train for (default Yacht)</li>
+ * <li>{@code rounds} - the number of rounds (default 5)</li>
+ * <li>{@code games} - the games played in each round (default 100000)</li>
+ * <li>{@code eval-games} - the games played to score each function (default
+ * 20000)</li>
+ * <li>{@code exploration} - the chance of keeping the dice some way at
+ * random (default 0.1)</li>
+ * <li>{@code seed} - decides the games (default 1)</li>
+ * <li>{@code threads} - the threads to play on (default the number of
+ * processors)</li>
+ * <li>{@code work} - the directory to keep the decision files in (default a
+ * temporary directory, deleted afterwards)</li>
+ * <li>{@code out} - the file to save the best function to (default
+ * value-function.bin)</li>
+ * </ul>
+ * @author Alex Gill
+ *
+ */
+public class ValueFunctionTrainer {
+
+	// --- Constants ---
+	private static final int SHARD_GAMES = 10000;	// The most games in each decision file
+	private static final double RIDGE = 1.0;		// Keeps weights of features seldom seen small
+
+	private final DiceGame game;		// A game of the variant, of one player
+	private final int numGames;			// The games played in each round
+	private final double exploration;	// The chance of keeping the dice some way at random
+	private final long seed;			// Decides the games
+	private final Path directory;		// Where the decision files go
+	private final ExecutorService pool;	// Plays and reads the shards
+
+
+
+	/**
+	 * Instantiates a trainer.
+	 * @param game A game of the variant
+	 * @param numGames The games played in each round
+	 * @param exploration The chance of keeping the dice some way at random
+	 * @param seed Decides the games
+	 * @param directory The directory to write the decision files to
+	 * @param pool Plays and reads the shards
+	 */
+	public ValueFunctionTrainer(DiceGame game, int numGames, double exploration, long seed,
+			Path directory, ExecutorService pool) {
+		if (numGames < 1)
+			throw new IllegalArgumentException("Need at least one game");
+		this.game = game;
+		this.numGames = numGames;
+		this.exploration = exploration;
+		this.seed = seed;
+		this.directory = directory;
+		this.pool = pool;
+	}
+
+
+
+	/**
+	 * Plays a round and fits the next function to its decisions: first the
+	 * start value, then the keep value, whose features depend on it.
+	 * @param round The number of the round, from 0
+	 * @param function The function to play with
+	 * @return The next function
+	 * @throws IOException if the decision files cannot be written or read
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public ValueFunction round(int round, ValueFunction function) throws IOException, InterruptedException {
+		int numShards = (numGames + SHARD_GAMES - 1) / SHARD_GAMES;
+		List<Callable<Path>> plays = new ArrayList<Callable<Path>>();
+		for (int shard = 0; shard < numShards; shard++) {
+			Path file = directory.resolve("round-" + round + "-" + shard + ".dec");
+			int games = Math.min(SHARD_GAMES, numGames - shard * SHARD_GAMES);
+			long shardSeed = seed + (long)round * numShards + shard;
+			plays.add(() -> {
+				play(function, file, games, shardSeed);
+				return file;
+			});
+		}
+		List<Path> files = await(plays);
+
+		// Fit the start value
+		List<Callable<LeastSquares[]>> fits = new ArrayList<Callable<LeastSquares[]>>();
+		for (Path file: files)
+			fits.add(() -> new LeastSquares[] { fitStart(function, new DecisionReader(file)) });
+		double[] startWeights = merge(await(fits))[0].solve(RIDGE);
+		ValueFunction next = function.withStartWeights(startWeights);
+
+		// Fit the keep value on top of it
+		fits.clear();
+		for (Path file: files)
+			fits.add(() -> fitKeep(next, new DecisionReader(file)));
+		LeastSquares[] keep = merge(await(fits));
+		double[][] keepWeights = new double[keep.length][];
+		for (int r = 0; r < keep.length; r++)
+			keepWeights[r] = keep[r].solve(RIDGE);
+		return next.withKeepWeights(keepWeights);
+	}
+
+
+
+	/**
+	 * Plays one shard of a round and writes its decisions.
+	 * @param function The function to play with
+	 * @param file The file to write to
+	 * @param games The number of games
+	 * @param shardSeed Decides the games and the ways picked at random
+	 * @throws IOException if the file cannot be written
+	 */
+	private void play(ValueFunction function, Path file, int games, long shardSeed) throws IOException {
+		SplittableRandom random = new SplittableRandom(shardSeed);
+		BatchGameEngine engine = new BatchGameEngine(game, 1, games, random.split());
+		DecisionRecorder recorder = new DecisionRecorder();
+		engine.play(recorder.wrap(new ValueFunctionBatchPlayer(function, exploration, random.split())));
+		try (DecisionWriter writer = new DecisionWriter(file, game)) {
+			recorder.finish(engine, 0, writer);
+		}
+	}
+
+
+
+	/**
+	 * Adds up the regression of the start value, over the first decision of
+	 * each turn in a file.
+	 * @param function Works out the features
+	 * @param reader The decisions
+	 * @return The sums of the regression
+	 */
+	private LeastSquares fitStart(ValueFunction function, DecisionReader reader) {
+		int numCategories = game.categories().length;
+		int numRolls = game.numRolls();
+		int full = (1 << numCategories) - 1;
+		LeastSquares fit = new LeastSquares(ValueFunction.numStartFeatures(numCategories));
+		double[] features = new double[ValueFunction.numStartFeatures(numCategories)];
+		for (long record = 0; record < reader.numRecords(); record++) {
+			int kind = reader.kind(record);
+			boolean first = numRolls > 1 ? kind == DecisionWriter.ROLL && reader.rollsLeft(record) == numRolls - 1 :
+					kind == DecisionWriter.SCORE;
+			if (!first)
+				continue;
+			function.startFeatures(full & ~reader.usedMask(record), features);
+			fit.add(features, reader.finalScore(record) - reader.score(record));
+		}
+		return fit;
+	}
+
+
+
+	/**
+	 * Adds up the regression of the keep value, over every decision in a file
+	 * to roll again.
+	 * @param function Works out the features
+	 * @param reader The decisions
+	 * @return The sums of the regression, by rolls left - 1
+	 */
+	private LeastSquares[] fitKeep(ValueFunction function, DecisionReader reader) {
+		int numCategories = game.categories().length;
+		int full = (1 << numCategories) - 1;
+		LeastSquares[] fits = new LeastSquares[game.numRolls() - 1];
+		for (int r = 0; r < fits.length; r++)
+			fits[r] = new LeastSquares(ValueFunction.numKeepFeatures(numCategories));
+		double[] features = new double[ValueFunction.numKeepFeatures(numCategories)];
+		int[] kept = new int[game.numSides() + 1];
+		for (long record = 0; record < reader.numRecords(); record++) {
+			int rolled = reader.action(record);
+			if (reader.kind(record) != DecisionWriter.ROLL || rolled == 0)
+				continue;
+			int dice = reader.dice(record);
+			Arrays.fill(kept, 0);
+			for (int die = 0; die < game.numDice(); die++)
+				if ((rolled & 1 << die) == 0)
+					kept[PackedDice.value(dice, die)]++;
+			function.keepFeatures(kept, full & ~reader.usedMask(record), features);
+			fits[reader.rollsLeft(record) - 1].add(features, reader.finalScore(record) - reader.score(record));
+		}
+		return fits;
+	}
+
+
+
+	/**
+	 * Adds up the sums of regressions of different files.
+	 * @param fits The sums of each file
+	 * @return The total sums
+	 */
+	private static LeastSquares[] merge(List<LeastSquares[]> fits) {
+		LeastSquares[] total = fits.get(0);
+		for (int i = 1; i < fits.size(); i++)
+			for (int j = 0; j < total.length; j++)
+				total[j].merge(fits.get(i)[j]);
+		return total;
+	}
+
+
+
+	/**
+	 * Works out a function's mean score, playing the same games every time.
+	 * @param function The function
+	 * @param games The number of games
+	 * @return The mean score
+	 */
+	public double evaluate(ValueFunction function, int games) {
+		BatchGameEngine engine = new BatchGameEngine(game, 1, games, seed);
+		engine.play(new ValueFunctionBatchPlayer(function));
+		long total = 0;
+		for (int g = 0; g < games; g++)
+			total += engine.totalScore(g, 0);
+		return (double)total / games;
+	}
+
+
+
+	/**
+	 * Runs tasks on the pool and waits for their results.
+	 * @param tasks The tasks
+	 * @return The results, in order
+	 * @throws IOException if a task fails
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private <T> List<T> await(List<Callable<T>> tasks) throws IOException, InterruptedException {
+		List<T> results = new ArrayList<T>();
+		for (Future<T> future: pool.invokeAll(tasks)) {
+			try {
+				results.add(future.get());
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IOException(e.getCause());
+			}
+		}
+		return results;
+	}
+
+
+
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> options = SimulationJob.parseOptions(args);
+		DiceGame game;
+		int numRounds;
+		int numGames;
+		int evalGames;
+		double exploration;
+		long seed;
+		int numThreads;
+		Path out = Paths.get(options.getOrDefault("out", "value-function.bin"));
+		try {
+			game = SimulationJob.newGame(options.getOrDefault("variant", "Yacht"), 1);
+			numRounds = Integer.parseInt(options.getOrDefault("rounds", "5"));
+			numGames = Integer.parseInt(options.getOrDefault("games", "100000"));
+			evalGames = Integer.parseInt(options.getOrDefault("eval-games", "20000"));
+			exploration = Double.parseDouble(options.getOrDefault("exploration", "0.1"));
+			seed = Long.parseLong(options.getOrDefault("seed", "1"));
+			numThreads = Integer.parseInt(options.getOrDefault("threads",
+					Integer.toString(Runtime.getRuntime().availableProcessors())));
+		} catch (IllegalArgumentException e) {
+			System.out.println("Invalid options: " + e.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads), runnable -> {
+			Thread thread = new Thread(runnable, "Value function trainer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		PrintStream console = System.out;
+		Path directory = null;
+		boolean temporary = !options.containsKey("work");
+		try {
+			directory = temporary ? Files.createTempDirectory("decisions") :
+					Files.createDirectories(Paths.get(options.get("work")));
+			ValueFunctionTrainer trainer = new ValueFunctionTrainer(game, numGames, exploration, seed, directory, pool);
+			ValueFunction function = ValueFunction.untrained(game);
+			ValueFunction best = function;
+			double bestScore = trainer.evaluate(function, evalGames);
+			console.printf("Untrained: mean %.2f%n", bestScore);
+			for (int round = 0; round < numRounds; round++) {
+				long start = System.nanoTime();
+				function = trainer.round(round, function);
+				double score = trainer.evaluate(function, evalGames);
+				console.printf("Round %d: mean %.2f in %.1f s%n", round + 1, score, (System.nanoTime() - start) / 1e9);
+				if (score > bestScore) {
+					best = function;
+					bestScore = score;
+				}
+			}
+			best.save(out);
+			console.printf("Saved the best function, mean %.2f, to %s%n", bestScore, out);
+		} catch (IOException e) {
+			System.out.println("Error training the value function...");
+			e.printStackTrace();
+			System.exit(1);
+		} finally {
+			pool.shutdownNow();
+			if (temporary && directory != null) {
+				try (Stream<Path> files = Files.list(directory)) {
+					for (Path file: (Iterable<Path>) files::iterator)
+						Files.deleteIfExists(file);
+					Files.deleteIfExists(directory);
+				} catch (IOException e) {
+					System.out.println("Error deleting " + directory + "...");
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -2,6 +2,7 @@ package tech.octopusdragon.dice.variants;
 
 import tech.octopusdragon.dice.Category;
 import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Theme;
 
 public class Crag extends DiceGame {
 
@@ -30,6 +31,11 @@ public class Crag extends DiceGame {
 	public int numDice() {
 		return 3;
 	}
+	
+	@Override
+	public Theme theme() {
+		return Theme.CRAG;
+	}
 
 	@Override
 	public int numRolls() {
@@ -0,0 +1,389 @@
+package tech.octopusdragon.dice.wire;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import tech.octopusdragon.dice.DiceGame;
+
+/**
+ * Reads messages of the {@link WireFormat} straight from a buffer. The decoder
+ * keeps the fields of the last message read, to be read back with its
+ * methods, and reuses its arrays, so reading a message allocates nothing once
+ * the arrays are big enough.
+ * <p>
+ * Messages are read up to the length in their header, so a newer writer can
+ * add fields to the end of a message without breaking older readers, and
+ * messages of a type or version the decoder does not know are skipped. The
+ * state of a game says how many categories it has, so states of variants
+ * with categories added can still be read.
+ * <p>
+ * A decoder is for one variant and is not thread-safe.
+ * @author Alex Gill
+ *
+ */
+public class WireDecoder {
+
+	// --- Constants ---
+	public static final int UNKNOWN = -1;	// The type of a message skipped
+
+	// --- Variant ---
+	private final int numDice;			// The number of dice
+	private final int numSides;			// The number of sides on each die
+	private final int bitsPerDie;		// The bits of each packed die
+
+	// --- Message ---
+	private int type = UNKNOWN;			// The type of the last message
+	private int numRolls;				// The number of rolls per turn
+	private int numCategories;			// The number of categories
+	private int numPlayers;				// The number of players
+	private long turn;					// The number of the turn
+	private int curPlayerIndex;			// The current player
+	private int rollsLeft;				// The current player's rolls left
+	private boolean curPlayerHasGone;	// Whether the current player has scored
+	private final int[] dice;			// The values of the dice
+	private long[] usedMasks = new long[0];	// The categories each player has used
+	private int[] points = new int[0];	// The points of each player, by category
+	private long mask;					// The dice rolled or held
+	private int player;					// The player scoring
+	private int category;				// The category scored
+	private int submittedPoints;		// The points scored
+
+
+
+	/**
+	 * Instantiates a decoder for the variant of a game.
+	 * @param game A game of the variant
+	 */
+	public WireDecoder(DiceGame game) {
+		numDice = game.numDice();
+		numSides = game.numSides();
+		bitsPerDie = WireFormat.bitsPerDie(numSides);
+		dice = new int[numDice];
+	}
+
+
+
+	/**
+	 * Works out how long the message at the front of a buffer is, for reading
+	 * messages from a stream.
+	 * @param in The buffer, which is not moved
+	 * @return The bytes of the whole message, or -1 if the buffer does not
+	 * hold its header yet
+	 */
+	public static int messageLength(ByteBuffer in) {
+		if (in.remaining() < WireFormat.HEADER_BYTES)
+			return -1;
+		int at = in.position() + 2;
+		return WireFormat.HEADER_BYTES + ((in.get(at) & 0xFF) << 8 | in.get(at + 1) & 0xFF);
+	}
+
+
+
+	/**
+	 * Reads a message.
+	 * @param in The buffer, holding the whole message, which is left after it
+	 * @return The type of the message, or {@link #UNKNOWN} if it was skipped
+	 * @throws BufferUnderflowException if the buffer does not hold the whole
+	 * message, leaving it where it was
+	 * @throws IllegalArgumentException if the message is not valid, leaving
+	 * the buffer after it
+	 */
+	public int decode(ByteBuffer in) {
+		int length = messageLength(in);
+		if (length < 0 || in.remaining() < length)
+			throw new BufferUnderflowException();
+		int version = in.get() & 0xFF;
+		int messageType = in.get() & 0xFF;
+		in.position(in.position() + Short.BYTES);
+		int end = in.position() + length - WireFormat.HEADER_BYTES;
+		int limit = in.limit();
+		in.limit(end);
+		type = UNKNOWN;
+		try {
+			if (version < 1 || version > WireFormat.VERSION)
+				return UNKNOWN;
+			switch (messageType) {
+			case WireFormat.STATE:
+				decodeState(in);
+				break;
+			case WireFormat.ROLL:
+				mask = WireFormat.getVarLong(in);
+				rollsLeft = WireFormat.getVarInt(in);
+				getDice(in);
+				break;
+			case WireFormat.HOLD:
+				mask = WireFormat.getVarLong(in);
+				break;
+			case WireFormat.SUBMIT:
+				player = WireFormat.getVarInt(in);
+				category = WireFormat.getVarInt(in);
+				submittedPoints = WireFormat.getSignedVarInt(in);
+				break;
+			case WireFormat.NEXT_PLAYER:
+				curPlayerIndex = WireFormat.getVarInt(in);
+				turn = WireFormat.getVarLong(in);
+				break;
+			default:
+				return UNKNOWN;
+			}
+			type = messageType;
+			return type;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Message cut short", e);
+		} finally {
+			in.limit(limit);
+			in.position(end);
+		}
+	}
+
+
+
+	/**
+	 * Reads the whole state of a game.
+	 * @param in The buffer, after the header
+	 */
+	private void decodeState(ByteBuffer in) {
+		if (WireFormat.getVarInt(in) != numDice || WireFormat.getVarInt(in) != numSides)
+			throw new IllegalArgumentException("State of a different variant");
+		numRolls = WireFormat.getVarInt(in);
+		numCategories = WireFormat.getVarInt(in);
+		numPlayers = WireFormat.getVarInt(in);
+		if (numCategories > WireFormat.MAX_CATEGORIES || numPlayers > in.remaining())
+			throw new IllegalArgumentException("Too many categories or players");
+		turn = WireFormat.getVarLong(in);
+		curPlayerIndex = WireFormat.getVarInt(in);
+		rollsLeft = WireFormat.getVarInt(in);
+		curPlayerHasGone = in.get() != 0;
+		getDice(in);
+		if (usedMasks.length < numPlayers)
+			usedMasks = new long[numPlayers];
+		if (points.length < numPlayers * numCategories)
+			points = new int[numPlayers * numCategories];
+		for (int i = 0; i < numPlayers; i++) {
+			long used = WireFormat.getVarLong(in);
+			if (numCategories < Long.SIZE && used >>> numCategories != 0)
+				throw new IllegalArgumentException("Unknown category used");
+			usedMasks[i] = used;
+			for (int c = 0; c < numCategories; c++)
+				points[i * numCategories + c] = (used & 1L << c) != 0 ? WireFormat.getSignedVarInt(in) : 0;
+		}
+	}
+
+
+
+	/**
+	 * Reads the values of the dice.
+	 * @param in The buffer
+	 */
+	private void getDice(ByteBuffer in) {
+		long bits = 0;
+		int numBits = 0;
+		long dieMask = (1L << bitsPerDie) - 1;
+		for (int i = 0; i < numDice; i++) {
+			while (numBits < bitsPerDie) {
+				bits |= (long)(in.get() & 0xFF) << numBits;
+				numBits += Byte.SIZE;
+			}
+			int value = (int)(bits & dieMask) + 1;
+			if (value > numSides)
+				throw new IllegalArgumentException("Die value out of range: " + value);
+			dice[i] = value;
+			bits >>>= bitsPerDie;
+			numBits -= bitsPerDie;
+		}
+	}
+
+
+
+	/**
+	 * Returns the type of the last message read.
+	 * @return One of the types of {@link WireFormat}, or {@link #UNKNOWN}
+	 */
+	public int type() {
+		return type;
+	}
+
+
+
+	/**
+	 * Returns the number of rolls per turn, from the last state.
+	 * @return The number of rolls
+	 */
+	public int numRolls() {
+		return numRolls;
+	}
+
+
+
+	/**
+	 * Returns the number of categories, from the last state.
+	 * @return The number of categories
+	 */
+	public int numCategories() {
+		return numCategories;
+	}
+
+
+
+	/**
+	 * Returns the number of players, from the last state.
+	 * @return The number of players
+	 */
+	public int numPlayers() {
+		return numPlayers;
+	}
+
+
+
+	/**
+	 * Returns the number of the turn, from the last state or next player.
+	 * @return The turn, counting every player's turns from 1
+	 */
+	public long turn() {
+		return turn;
+	}
+
+
+
+	/**
+	 * Returns the current player, from the last state or next player.
+	 * @return The index of the player
+	 */
+	public int curPlayerIndex() {
+		return curPlayerIndex;
+	}
+
+
+
+	/**
+	 * Returns the current player's rolls left, from the last state or roll.
+	 * @return The rolls left
+	 */
+	public int rollsLeft() {
+		return rollsLeft;
+	}
+
+
+
+	/**
+	 * Returns whether the current player has scored, from the last state.
+	 * @return Whether the current player has scored
+	 */
+	public boolean curPlayerHasGone() {
+		return curPlayerHasGone;
+	}
+
+
+
+	/**
+	 * Returns the number of dice.
+	 * @return The number of dice
+	 */
+	public int numDice() {
+		return numDice;
+	}
+
+
+
+	/**
+	 * Returns the value of a die, from the last state or roll.
+	 * @param i The index of the die
+	 * @return The value, from 1
+	 */
+	public int die(int i) {
+		return dice[i];
+	}
+
+
+
+	/**
+	 * Returns the categories a player has used, from the last state.
+	 * @param playerIndex The index of the player
+	 * @return The mask, with bit i set if category i has been used
+	 */
+	public long usedMask(int playerIndex) {
+		checkPlayer(playerIndex);
+		return usedMasks[playerIndex];
+	}
+
+
+
+	/**
+	 * Returns a player's points in a category, from the last state.
+	 * @param playerIndex The index of the player
+	 * @param categoryIndex The index of the category
+	 * @return The points, or 0 if the category has not been used
+	 */
+	public int points(int playerIndex, int categoryIndex) {
+		checkPlayer(playerIndex);
+		if (categoryIndex < 0 || categoryIndex >= numCategories)
+			throw new IndexOutOfBoundsException("No category " + categoryIndex);
+		return points[playerIndex * numCategories + categoryIndex];
+	}
+
+
+
+	/**
+	 * Returns a player's total score, from the last state.
+	 * @param playerIndex The index of the player
+	 * @return The total score
+	 */
+	public int totalScore(int playerIndex) {
+		checkPlayer(playerIndex);
+		int total = 0;
+		for (int c = 0; c < numCategories; c++)
+			total += points[playerIndex * numCategories + c];
+		return total;
+	}
+
+
+
+	/**
+	 * Returns the dice rolled or held, from the last roll or hold.
+	 * @return The mask, one bit per die
+	 */
+	public long mask() {
+		return mask;
+	}
+
+
+
+	/**
+	 * Returns the player who scored, from the last submit.
+	 * @return The index of the player
+	 */
+	public int player() {
+		return player;
+	}
+
+
+
+	/**
+	 * Returns the category scored, from the last submit.
+	 * @return The index of the category
+	 */
+	public int category() {
+		return category;
+	}
+
+
+
+	/**
+	 * Returns the points scored, from the last submit.
+	 * @return The points
+	 */
+	public int submittedPoints() {
+		return submittedPoints;
+	}
+
+
+
+	/**
+	 * Checks a player is in the last state.
+	 * @param playerIndex The index of the player
+	 */
+	private void checkPlayer(int playerIndex) {
+		if (playerIndex < 0 || playerIndex >= numPlayers)
+			throw new IndexOutOfBoundsException("No player " + playerIndex);
+	}
+}
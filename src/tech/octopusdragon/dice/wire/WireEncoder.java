@@ -0,0 +1,232 @@
+package tech.octopusdragon.dice.wire;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import tech.octopusdragon.dice.Category;
+import tech.octopusdragon.dice.DiceGame;
+import tech.octopusdragon.dice.Die;
+import tech.octopusdragon.dice.Player;
+
+/**
+ * Writes the state of games and the events of their turns as messages of the
+ * {@link WireFormat}, straight into a buffer. Nothing is allocated, so an
+ * encoder can write a message for every event of many games.
+ * <p>
+ * The state of a game is the variant's numbers of dice, sides, rolls and
+ * categories, the turn, the current player and their rolls left, the dice,
+ * and for each player a mask of the categories used followed by the points
+ * of each. Players' names are not part of it. A full game of Yacht of two
+ * players takes under 70 bytes.
+ * <p>
+ * An encoder is for one variant and may be shared by any number of threads.
+ * @author Alex Gill
+ *
+ */
+public class WireEncoder {
+
+	private final Category[] categories;	// The categories of the variant
+	private final int numDice;				// The number of dice
+	private final int bitsPerDie;			// The bits of each packed die
+
+
+
+	/**
+	 * Instantiates an encoder for the variant of a game.
+	 * @param game A game of the variant
+	 */
+	public WireEncoder(DiceGame game) {
+		categories = game.categories();
+		numDice = game.numDice();
+		bitsPerDie = WireFormat.bitsPerDie(game.numSides());
+		if (numDice > WireFormat.MAX_DICE || categories.length > WireFormat.MAX_CATEGORIES)
+			throw new IllegalArgumentException("Too many dice or categories to encode");
+	}
+
+
+
+	/**
+	 * Writes the whole state of a game.
+	 * @param game The game
+	 * @param out The buffer, left after the message
+	 * @throws BufferOverflowException if the buffer is too small, leaving it
+	 * where it was
+	 */
+	public void encodeState(DiceGame game, ByteBuffer out) {
+		int start = out.position();
+		try {
+			int length = begin(out, WireFormat.STATE);
+			WireFormat.putVarLong(out, numDice);
+			WireFormat.putVarLong(out, game.numSides());
+			WireFormat.putVarLong(out, game.numRolls());
+			WireFormat.putVarLong(out, categories.length);
+			WireFormat.putVarLong(out, game.numPlayers());
+			WireFormat.putVarLong(out, game.turn());
+			WireFormat.putVarLong(out, game.curPlayerIndex());
+			WireFormat.putVarLong(out, game.rollsLeft());
+			out.put((byte)(game.curPlayerHasGone() ? 1 : 0));
+			putDice(out, game.getDice());
+			for (int i = 0; i < game.numPlayers(); i++) {
+				Player player = game.getPlayer(i);
+				long usedMask = 0;
+				for (int c = 0; c < categories.length; c++)
+					if (player.hasUsedCategory(categories[c]))
+						usedMask |= 1L << c;
+				WireFormat.putVarLong(out, usedMask);
+				for (int c = 0; c < categories.length; c++)
+					if ((usedMask & 1L << c) != 0)
+						WireFormat.putSignedVarInt(out, player.getPoints(categories[c]));
+			}
+			end(out, length);
+		} catch (BufferOverflowException | IllegalArgumentException e) {
+			out.position(start);
+			throw e;
+		}
+	}
+
+
+
+	/**
+	 * Writes a roll of the current player.
+	 * @param game The game, after the roll
+	 * @param rolledMask The dice rolled, one bit per die
+	 * @param out The buffer, left after the message
+	 * @throws BufferOverflowException if the buffer is too small, leaving it
+	 * where it was
+	 */
+	public void encodeRoll(DiceGame game, long rolledMask, ByteBuffer out) {
+		int start = out.position();
+		try {
+			int length = begin(out, WireFormat.ROLL);
+			WireFormat.putVarLong(out, rolledMask);
+			WireFormat.putVarLong(out, game.rollsLeft());
+			putDice(out, game.getDice());
+			end(out, length);
+		} catch (BufferOverflowException e) {
+			out.position(start);
+			throw e;
+		}
+	}
+
+
+
+	/**
+	 * Writes the dice the current player holds.
+	 * @param heldMask The dice held, one bit per die
+	 * @param out The buffer, left after the message
+	 * @throws BufferOverflowException if the buffer is too small, leaving it
+	 * where it was
+	 */
+	public void encodeHold(long heldMask, ByteBuffer out) {
+		int start = out.position();
+		try {
+			int length = begin(out, WireFormat.HOLD);
+			WireFormat.putVarLong(out, heldMask);
+			end(out, length);
+		} catch (BufferOverflowException e) {
+			out.position(start);
+			throw e;
+		}
+	}
+
+
+
+	/**
+	 * Writes a category scored.
+	 * @param player The index of the player scoring
+	 * @param category The index of the category
+	 * @param points The points scored
+	 * @param out The buffer, left after the message
+	 * @throws BufferOverflowException if the buffer is too small, leaving it
+	 * where it was
+	 */
+	public void encodeSubmit(int player, int category, int points, ByteBuffer out) {
+		int start = out.position();
+		try {
+			int length = begin(out, WireFormat.SUBMIT);
+			WireFormat.putVarLong(out, player);
+			WireFormat.putVarLong(out, category);
+			WireFormat.putSignedVarInt(out, points);
+			end(out, length);
+		} catch (BufferOverflowException e) {
+			out.position(start);
+			throw e;
+		}
+	}
+
+
+
+	/**
+	 * Writes the start of the next player's turn.
+	 * @param game The game, after moving on to the next player
+	 * @param out The buffer, left after the message
+	 * @throws BufferOverflowException if the buffer is too small, leaving it
+	 * where it was
+	 */
+	public void encodeNextPlayer(DiceGame game, ByteBuffer out) {
+		int start = out.position();
+		try {
+			int length = begin(out, WireFormat.NEXT_PLAYER);
+			WireFormat.putVarLong(out, game.curPlayerIndex());
+			WireFormat.putVarLong(out, game.turn());
+			end(out, length);
+		} catch (BufferOverflowException e) {
+			out.position(start);
+			throw e;
+		}
+	}
+
+
+
+	/**
+	 * Writes the header of a message, leaving room for its length.
+	 * @param out The buffer
+	 * @param type The type of the message
+	 * @return Where the length goes
+	 */
+	private static int begin(ByteBuffer out, int type) {
+		out.put((byte)WireFormat.VERSION);
+		out.put((byte)type);
+		int length = out.position();
+		out.putShort((short)0);
+		return length;
+	}
+
+
+
+	/**
+	 * Fills in the length of a message once it is written.
+	 * @param out The buffer, after the message
+	 * @param length Where the length goes
+	 */
+	private static void end(ByteBuffer out, int length) {
+		int bytes = out.position() - length - Short.BYTES;
+		if (bytes > WireFormat.MAX_LENGTH)
+			throw new IllegalArgumentException("Message too long");
+		out.put(length, (byte)(bytes >>> 8));
+		out.put(length + 1, (byte)bytes);
+	}
+
+
+
+	/**
+	 * Writes the values of the dice, packed into as few bits as they need.
+	 * @param out The buffer
+	 * @param dice The dice
+	 */
+	private void putDice(ByteBuffer out, Die[] dice) {
+		long bits = 0;
+		int numBits = 0;
+		for (Die die: dice) {
+			bits |= (long)(die.getValue() - 1) << numBits;
+			numBits += bitsPerDie;
+			while (numBits >= Byte.SIZE) {
+				out.put((byte)bits);
+				bits >>>= Byte.SIZE;
+				numBits -= Byte.SIZE;
+			}
+		}
+		if (numBits > 0)
+			out.put((byte)bits);
+	}
+}
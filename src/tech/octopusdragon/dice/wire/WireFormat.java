@@ -0,0 +1,124 @@
+package tech.octopusdragon.dice.wire;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of the binary messages for sending games over a network or
+ * storing them. Every message starts with the version of the format, the type
+ * of the message and the length of the rest in two bytes, so a reader can
+ * skip messages of types it does not know. Whole numbers are written as
+ * varints, seven bits to a byte with the top bit set on every byte but the
+ * last; numbers that can be negative are zigzag encoded first, so small
+ * negative numbers are short too. Dice are packed into as few bits as their
+ * sides need.
+ * @author Alex Gill
+ *
+ */
+public final class WireFormat {
+
+	// --- Constants ---
+	public static final int VERSION = 1;		// The version of the format written
+	public static final int HEADER_BYTES = 4;	// The version, type and length of every message
+	public static final int MAX_LENGTH = 0xFFFF;	// The most bytes after the header
+	public static final int MAX_DICE = Long.SIZE;		// The most dice a mask can hold
+	public static final int MAX_CATEGORIES = Long.SIZE;	// The most categories a mask can hold
+
+	// --- Types ---
+	public static final int STATE = 0;			// The whole state of a game
+	public static final int ROLL = 1;			// Dice rolled, with their new values
+	public static final int HOLD = 2;			// The dice held
+	public static final int SUBMIT = 3;			// A category scored
+	public static final int NEXT_PLAYER = 4;	// The next player's turn started
+
+
+
+	/**
+	 * Cannot be instantiated.
+	 */
+	private WireFormat() {
+	}
+
+
+
+	/**
+	 * Works out the bits needed for each die.
+	 * @param numSides The number of sides on each die
+	 * @return The number of bits
+	 */
+	public static int bitsPerDie(int numSides) {
+		return Integer.SIZE - Integer.numberOfLeadingZeros(numSides - 1);
+	}
+
+
+
+	/**
+	 * Writes a varint.
+	 * @param out The buffer
+	 * @param value The value, taken as unsigned
+	 */
+	static void putVarLong(ByteBuffer out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.put((byte)(value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte)value);
+	}
+
+
+
+	/**
+	 * Reads a varint.
+	 * @param in The buffer
+	 * @return The value, taken as unsigned
+	 */
+	static long getVarLong(ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			byte b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+		throw new IllegalArgumentException("Varint too long");
+	}
+
+
+
+	/**
+	 * Reads a varint that must fit in an int.
+	 * @param in The buffer
+	 * @return The value
+	 */
+	static int getVarInt(ByteBuffer in) {
+		long value = getVarLong(in);
+		if (value < 0 || value > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Value out of range: " + value);
+		return (int)value;
+	}
+
+
+
+	/**
+	 * Writes a number that can be negative as a zigzag varint.
+	 * @param out The buffer
+	 * @param value The value
+	 */
+	static void putSignedVarInt(ByteBuffer out, int value) {
+		putVarLong(out, (value << 1 ^ value >> 31) & 0xFFFFFFFFL);
+	}
+
+
+
+	/**
+	 * Reads a number written by {@link #putSignedVarInt(ByteBuffer, int)}.
+	 * @param in The buffer
+	 * @return The value
+	 */
+	static int getSignedVarInt(ByteBuffer in) {
+		long zigzag = getVarLong(in);
+		if (zigzag >>> Integer.SIZE != 0)
+			throw new IllegalArgumentException("Value out of range: " + zigzag);
+		int bits = (int)zigzag;
+		return bits >>> 1 ^ -(bits & 1);
+	}
+}